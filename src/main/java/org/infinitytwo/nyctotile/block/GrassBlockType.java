@@ -2,19 +2,20 @@ package org.infinitytwo.nyctotile.block;
 
 import org.infinitytwo.nyctotile.core.data.BlockType;
 import org.infinitytwo.nyctotile.core.data.RGBA;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.model.builder.CubeModelBuilder;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
-import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
 
 public class GrassBlockType extends BlockType {
     public GrassBlockType(int index) {
         super("grassy",false,"grass_block",index);
+        cube = true;
     }
 
     @Override
-    public void buildModel(GridMap map, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light) {
-        CubeModelBuilder.standardVerticesList(map,x,y,z,atlas.getUVCoords(textureIndex), light, buffer);
+    public void buildModel(BlockAccess map, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
+        CubeModelBuilder.standardVerticesList(map,x,y,z,textureIndex, light, buffer);
     }
 }
@@ -2,10 +2,10 @@ package org.infinitytwo.nyctotile.block;
 
 import org.infinitytwo.nyctotile.core.data.BlockType;
 import org.infinitytwo.nyctotile.core.data.RGBA;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
-import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
 
 public class ServerBlockType extends BlockType {
     public ServerBlockType(String material, boolean b, String name) {
@@ -13,7 +13,7 @@ public class ServerBlockType extends BlockType {
     }
 
     @Override
-    public void buildModel(GridMap map, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light) {
+    public void buildModel(BlockAccess map, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
 
     }
 }
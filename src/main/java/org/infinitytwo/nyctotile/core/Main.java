@@ -15,6 +15,8 @@ import org.infinitytwo.nyctotile.core.event.input.VelocityChangedEvent;
 import org.infinitytwo.nyctotile.core.event.state.WindowResizedEvent;
 import org.infinitytwo.nyctotile.core.manager.*;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
+import org.infinitytwo.nyctotile.core.network.EntitySnapshots;
+import org.infinitytwo.nyctotile.core.network.Network;
 import org.infinitytwo.nyctotile.core.network.thread.ClientNetwork;
 import org.infinitytwo.nyctotile.core.network.data.Packets;
 import org.infinitytwo.nyctotile.core.network.thread.ServerNetwork;
@@ -41,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.UUID;
 
 import static org.infinitytwo.nyctotile.core.Game.*;
@@ -67,9 +70,11 @@ public class Main {
     private static boolean started;
     private static ServerNetwork serverNetwork;
     private static ClientNetwork clientNetwork;
+    private static final EntitySnapshots.Receiver snapshots = new EntitySnapshots.Receiver();
     private static Overworld overworld;
     private static final float fixedDelta = (float) 1 / 60;
     private static double accumulator;
+    private static int tick; // Physics steps so far
     private static boolean locked;
     
     public static void main(String[] args) {
@@ -93,7 +98,7 @@ public class Main {
             }
             
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-            WorkerThreads.run();
+            MainThreadExecutor.runFrame();
             render();
             glfwSwapBuffers(window.getWindow()); // Swap the color buffers
             glfwPollEvents();       // Poll for window events
@@ -102,6 +107,7 @@ public class Main {
     }
     
     private static void applyPhysics() {
+        tick++;
         if (world.getLocalPlayer() != null && world.getCurrent() != null &&
                 world.getMap().getChunk(GMap.worldToChunk((int) world.getLocalPlayer().getPosition().x, (int) world.getLocalPlayer().getPosition().z)) != null)
             World.getInstance().getLocalPlayer().update(fixedDelta, map);
@@ -151,16 +157,11 @@ public class Main {
                     world.setCurrent(DimensionRegistry.getRegistry().get(args[1]));
                 }
             } else if (packet instanceof Packets.PChunk chunkP) {
-                int chunkX = chunkP.x();
-                int chunkZ = chunkP.y();
-                
-                ChunkData chunkData = ChunkData.of(chunkX, chunkZ, chunkP.blocks());
-                
-                WorkerThreads.dispatch(() -> {
-                    Chunk chunk = Chunk.of(chunkData, World.getInstance().getMap(), World.getInstance().getTextureAtlas(), BlockRegistry.getMainBlockRegistry());
-                    World.getInstance().getMap().addChunk(chunk);
-//                    world.getRequested().remove(new ChunkPos(chunkX,chunkZ));
-                });
+                receiveChunk(chunkP.x(), chunkP.y(), chunkP.blocks());
+            } else if (packet instanceof Packets.PCompressedChunk chunkP) {
+                receiveChunk(chunkP.x(), chunkP.y(), chunkP.blocks());
+            } else if (packet instanceof Packets.PSnapshot snapshot) {
+                snapshots.receive(snapshot, Main::moveRemoteEntity);
             } else if (packet instanceof Packets.PPosition pos) {
                 logger.info("GOT POSITION: X={}, Y={}, Z={}",
                         pos.x(), pos.y(), pos.z());
@@ -200,20 +201,7 @@ public class Main {
                     // --- 2. REMOTE ENTITIES (Smooth Visualization) ---
                 } else {
                     // This handles other entities (other players).
-                    Entity entity = EntityManager.getEntityFromId(new UUID(pos.mostSignificant(), pos.leastSignificant()));
-                    
-                    if (entity != null) {
-                        // Target position from the server
-                        Vector3f serverPos = new Vector3f(pos.x(), pos.y(), pos.z());
-                        Vector3f currentPos = entity.getPosition();
-                        
-                        // LERP calculation: current + (target - current) * factor
-                        float newX = currentPos.x + (serverPos.x - currentPos.x) * LERP_FACTOR;
-                        float newY = currentPos.y + (serverPos.y - currentPos.y) * LERP_FACTOR;
-                        float newZ = currentPos.z + (serverPos.z - currentPos.z) * LERP_FACTOR;
-                        
-                        entity.setPosition(newX, newY, newZ);
-                    }
+                    moveRemoteEntity(new UUID(pos.mostSignificant(), pos.leastSignificant()), pos.x(), pos.y(), pos.z());
                 }
             }
         }, "Dev", "");
@@ -225,6 +213,31 @@ public class Main {
         world.setCurrent(overworld);
     }
     
+    private static void receiveChunk(int chunkX, int chunkZ, int[] blocks) {
+        ChunkData chunkData = ChunkData.of(chunkX, chunkZ, blocks);
+        LightingEngine.lightSky(chunkData, BlockRegistry.getMainBlockRegistry()); // Here, off the main thread
+        
+        MainThreadExecutor.execute(MainThreadExecutor.Priority.UPLOAD, () -> {
+            Chunk chunk = Chunk.of(chunkData, World.getInstance().getMap(), World.getInstance().getTextureAtlas(), BlockRegistry.getMainBlockRegistry());
+            World.getInstance().getMap().addChunk(chunk);
+        });
+    }
+    
+    // Eases another entity toward where the server has it, a position or a snapshot
+    private static void moveRemoteEntity(UUID uuid, float x, float y, float z) {
+        final float LERP_FACTOR = 0.3f;
+        Entity entity = EntityManager.getEntityFromId(uuid);
+        if (entity == null) return;
+        
+        // LERP calculation: current + (target - current) * factor
+        Vector3f currentPos = entity.getPosition();
+        float newX = currentPos.x + (x - currentPos.x) * LERP_FACTOR;
+        float newY = currentPos.y + (y - currentPos.y) * LERP_FACTOR;
+        float newZ = currentPos.z + (z - currentPos.z) * LERP_FACTOR;
+        
+        entity.setPosition(newX, newY, newZ);
+    }
+        
     private static void init() {
         Display.init();
         Packets.register();
@@ -253,6 +266,9 @@ public class Main {
         world.getLocalPlayer().getEventBus().register(new Object() {
             private final Vector3f lastSentPosition = new Vector3f();
             private static final float EPSILON = 0.01f; // Tolerance for movement distance
+            // The last inputs, oldest first, each packet carries them in case the ones before it got lost
+            private final Packets.PMovement.Input[] recent = new Packets.PMovement.Input[Packets.PMovement.MAX_INPUTS];
+            private int sequence; // Inputs sent so far
             
             @SubscribeEvent
             public void e(VelocityChangedEvent e) {
@@ -266,8 +282,16 @@ public class Main {
                         Math.abs(currentPosition.z - lastSentPosition.z) > EPSILON) {
                     
                     // Send the authoritative position packet
-                    clientNetwork.send(new Packets.PCommand(String.format("setposition %.3f %.3f %.3f",
-                            currentPosition.x, currentPosition.y, currentPosition.z)), false);
+                    if (clientNetwork.hasFeature(Network.FEATURE_MOVEMENT)) {
+                        System.arraycopy(recent, 1, recent, 0, recent.length - 1);
+                        recent[recent.length - 1] = new Packets.PMovement.Input(tick, currentPosition.x, currentPosition.y, currentPosition.z);
+                        int count = Math.min(++sequence, recent.length);
+                        clientNetwork.send(new Packets.PMovement(sequence - count,
+                                Arrays.copyOfRange(recent, recent.length - count, recent.length)), false);
+                    } else {
+                        clientNetwork.send(new Packets.PCommand(String.format("setposition %.3f %.3f %.3f",
+                                currentPosition.x, currentPosition.y, currentPosition.z)), false);
+                    }
                     
                     // Update the last-sent position
                     lastSentPosition.set(currentPosition);
@@ -375,6 +399,9 @@ public class Main {
     }
     
     public static void cleanup() {
+        if (world != null && world.getMap() != null) world.getMap().clear();
+        MeshBufferPool.getMain().clear();
+        Chunk.cleanupShaderProgram();
         fontRenderer.cleanup();
         renderer.cleanup();
         window.cleanup();
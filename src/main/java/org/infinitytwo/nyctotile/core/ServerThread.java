@@ -1,32 +1,58 @@
 package org.infinitytwo.nyctotile.core;
 
+import com.esotericsoftware.kryonet.Connection;
 import org.infinitytwo.nyctotile.block.ServerBlockType;
+import org.infinitytwo.nyctotile.core.data.io.WorldData;
 import org.infinitytwo.nyctotile.core.data.world.Block;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
 import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
 import org.infinitytwo.nyctotile.core.data.PlayerData;
 import org.infinitytwo.nyctotile.core.data.SpawnLocation;
 import org.infinitytwo.nyctotile.core.entity.Entity;
 import org.infinitytwo.nyctotile.core.entity.Player;
 import org.infinitytwo.nyctotile.core.event.bus.EventBus;
+import org.infinitytwo.nyctotile.core.intervals.Interval;
 import org.infinitytwo.nyctotile.core.exception.UnknownRegistryException;
 import org.infinitytwo.nyctotile.core.manager.EntityManager;
 import org.infinitytwo.nyctotile.core.manager.Players;
 import org.infinitytwo.nyctotile.core.manager.World;
+import org.infinitytwo.nyctotile.core.network.EntitySnapshots;
+import org.infinitytwo.nyctotile.core.network.Network;
+import org.infinitytwo.nyctotile.core.network.data.PacketDispatcher;
 import org.infinitytwo.nyctotile.core.network.data.Packets;
 import org.infinitytwo.nyctotile.core.network.thread.ServerNetwork;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
 import org.infinitytwo.nyctotile.core.registry.DimensionRegistry;
 import org.infinitytwo.nyctotile.core.security.AntiCheat;
+import org.infinitytwo.nyctotile.core.world.ChunkCache;
+import org.infinitytwo.nyctotile.core.world.Pregeneration;
 import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
 import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
 import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
-import org.joml.Vector2i;
 import org.joml.Vector3f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.infinitytwo.nyctotile.core.data.io.WorldData.CHUNK_SIZE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ServerThread extends Thread {
     private volatile boolean closing = false;
@@ -41,11 +67,21 @@ public class ServerThread extends Thread {
     private ServerBlockType stone;
     private final Logger logger = LoggerFactory.getLogger(ServerThread.class);
     
-    private final AntiCheat antiCheat = new AntiCheat(9);
+    private static final int VIEW_DISTANCE = 9;
+    private final AntiCheat antiCheat = new AntiCheat(VIEW_DISTANCE);
     private ServerNetwork network;
     private final double fixedDelta = 1.0 / 60.0;
     private double delta;
     private double accumulator;
+    private volatile String worldName = "world";
+    // Chunks are serialized, encrypted and sent on a thread of their connection, one at a time so their fragments
+    // go out in order, and a client slow to read only holds up its own chunks
+    private final Map<Connection, ExecutorService> chunkSenders = new ConcurrentHashMap<>();
+    private final Set<PendingChunk> pendingChunks = ConcurrentHashMap.newKeySet();
+    private final Interval viewerUpdate = new Interval(1000, this::updateViewers);
+    private final EntitySnapshots snapshots = new EntitySnapshots(VIEW_DISTANCE);
+    // The sequence number of the last movement input applied, by connection
+    private final Map<Connection, Integer> movementSequences = new ConcurrentHashMap<>();
     
     public ServerThread(int seed) {
         eventBus.register(this);
@@ -102,33 +138,16 @@ public class ServerThread extends Thread {
             if (!(entity instanceof Player)) {
                 entity.update((float) fixedDelta);
             }
-            
-            if (!entity.getPosition().equals(entity.getPrevPosition())) {
-                if (entity instanceof Player player) {
-                    // If the entity is a player, the server MUST NOT broadcast its position
-                    // based on server-side physics, as that physics is now DISABLED.
-                    // The position will be broadcast when the client sends the "setposition" command.
-                    
-                    // We do nothing here for the player entity for now,
-                    // as its position will be updated and broadcasted by the new command handler (Action B).
-                } else {
-                    // Keep the broadcast logic for all other entities (NPCs, Mobs, etc.)
-                    network.broadcastUDP(
-                            new Packets.PPosition(
-                                    entity.getUUID().getLeastSignificantBits(),
-                                    entity.getUUID().getMostSignificantBits(),
-                                    entity.getPosition().x,
-                                    entity.getPosition().y,
-                                    entity.getPosition().z
-                            )
-                    );
-                }
-            }
         }
+        
+        // Every entity that moved, players included (their position comes from "setposition"),
+        // to the players that can see it: one snapshot per connection
+        snapshots.broadcast(network, Players.getPlayers(), entities);
     }
     
     private void construct() {
-        seed = (int) Math.floor(Math.random() * 1000000);
+        seed = loadSeed();
+        World.setSeed(seed);
         registry = new BlockRegistry();
         overworld = new Overworld(seed, registry);
         
@@ -144,163 +163,204 @@ public class ServerThread extends Thread {
         
         DimensionRegistry.getRegistry().register(overworld);
         
-        network = new ServerNetwork(5896, 4789, ((packet, connection) -> {
-            // --- HANDLER: PCommand (Simple commands, e.g., 'getdimension') ---
-            if (packet instanceof Packets.PCommand pCommand) {
-                String line = pCommand.command().toLowerCase().trim();
-                String[] args = line.split("\\s+");
-                if (args.length == 0) return;
-                logger.info("Got command: {}", line);
-                String cmd = args[0];
-                
-                if (cmd.equals("getdimension")) {
-                    Player player = Players.getPlayer(Players.getPlayerByConnection(connection));
-                    if (player != null) {
-                        network.send(new Packets.PCommand("dimension " + player.getDimension().getId()), connection, true);
-                    } else {
-                        network.sendFailure(connection, "Player not authenticated.");
-                    }
-                } else if (cmd.equals("setvelocity")) {
-                    if (args.length >= 4) {
-                        float x, y, z;
-                        try {
-                            x = Float.parseFloat(args[1]);
-                            y = Float.parseFloat(args[2]);
-                            z = Float.parseFloat(args[3]);
-                        } catch (Exception e) {
-                            logger.error("ERROR: Float parsing failed for velocity command.", e);
-                            
-                            // FIX 2: Change message to reflect the correct input type
-                            network.sendFailure(connection, "Non-standard input has been detected: Velocity components must be valid numbers (float).");
-                            return;
-                        }
-                        
-                        Player player = Players.getPlayer(Players.getPlayerByConnection(connection));
-                        
-                        if (player != null) {
-//                            synchronized (player) {
-//                                if (antiCheat.isAcceptableVelocity(x, y, z, player)) {
-//                                    if (y > 0) {
-//                                        player.setVelocity(x, y, z); // Trust client jump/up movement
-//                                    } else {
-//                                        Vector3f currentVelocity = player.getVelocity(); // Get synchronized copy
-//
-//                                        player.setVelocity(x, currentVelocity.y, z);
-//                                    }
-//                                }
-//                            }
-                            
-                            logger.error("Service Unavaliable: set velocity is deprecated!");
-                            network.send(new Packets.Failure("SERVICE_ERROR Service Unavaliable: set velocity is deprecated!"),connection,true);
-                        }
-                    }
-                } else if (cmd.equals("setposition")) {
-                    if (args.length >= 4) {
-                        float x, y, z;
-                        try {
-                            x = Float.parseFloat(args[1]);
-                            y = Float.parseFloat(args[2]);
-                            z = Float.parseFloat(args[3]);
-                        } catch (Exception e) {
-                            network.sendFailure(connection, "Position components must be valid numbers (float).");
-                            return;
-                        }
-                        
-                        Player player = Players.getPlayer(Players.getPlayerByConnection(connection));
-                        
-                        if (player != null) {
-                            // 1. Synchronize to ensure thread safety when modifying position
-                            synchronized (player) {
-                                // 2. Anti-cheat: Validate the reported position
-                                if (antiCheat.isAcceptablePosition(x, y, z, player)) {
-                                    // 3. Set the player's new authoritative position
-                                    player.setPosition(x, y, z);
-                                    
-                                    // 4. Broadcast the new position to all other clients
-                                    network.broadcastUDPExcept(
-                                            connection,  // Exclude the sending client
-                                            new Packets.PPosition(
-                                                    player.getUUID().getLeastSignificantBits(),
-                                                    player.getUUID().getMostSignificantBits(),
-                                                    x, y, z
-                                            )
-                                    );
-                                } else {
-                                    logger.warn("Anti-cheat System has detected a violation at client {}", player.getData().name());
-                                    network.send(new Packets.PPosition(0, 0, player.getPosition().x, player.getPosition().y, player.getPosition().z), connection, true);
-                                }
-                            }
-                        }
-                    }
-                } else if (cmd.startsWith("getchunk")) {
-                    if (args.length < 4) return;
-                    int x, y, dimension;
-                    
-                    try {
-                        x = Integer.parseInt(args[1]);
-                        y = Integer.parseInt(args[2]);
-                        dimension = Integer.parseInt(args[3]);
-                    } catch (NumberFormatException e) {
-                        logger.error("ERROR: Int parsing failed for getchunk command.", e);
-                        network.sendFailure(connection, "Chunk coordinates or dimension ID must be integers.");
-                        return;
-                    }
-                    
-                    PlayerData playerData = Players.getPlayerByConnection(connection);
-                    Player player = Players.getPlayer(playerData);
-                    
-                    if (player == null) {
-                        logger.error("Couldn't access the PlayerData");
-                        network.sendFailure(connection, "Player not authenticated or entity missing.");
-                        return;
-                    }
-                    
-                    if (antiCheat.shouldSendRequestedChunk(x, y, player.getPosition())) {
-                        Dimension d;
-                        try {
-                            d = DimensionRegistry.getRegistry().get(dimension);
-                        } catch (UnknownRegistryException e) {
-                            logger.error("Failed to get the dimension id: {}", dimension);
-                            network.sendFailure(connection, "Dimension id is invalid.");
-                            return;
-                        }
-                        
-                        // Retrieve or generate the chunk
-                        try {
-                            // Assuming getChunk returns an object that can be converted to int[] blocks
-                            int[] blocks = d.getWorld().getChunkOrGenerate(new Vector2i(x, y)).getBlockIds();
-                            
-                            // FIX 1: Instantiate the PChunk object and send it directly.
-                            // The Network.send method will handle the encryption and wrapping.
-                            network.send(new Packets.PChunk(x, y, blocks), connection, true);
-                            
-                        } catch (Exception e) {
-                            logger.error("Error retrieving/generating chunk ({}, {}) in dimension {}.", x, y, dimension, e);
-                            network.sendFailure(connection, "Server failed to load requested chunk.");
-                        }
-                        
-                    } else {
-                        network.sendFailure(connection, "Anti-Cheat system has detected suspicious activity from this client");
-                        logger.warn("Anti-Cheat system has detected a violation at client \"{}\"", playerData.name());
-                    }
-                } else if (cmd.equals("getposition")) {
-                    if (args[1].equals("self")) {
-                        PlayerData playerData = Players.getPlayerByConnection(connection);
-                        
-                        if (playerData != null) {
-                            Vector3f player = Players.getPlayer(playerData).getPosition();
-                            network.send(new Packets.PPosition(0, 0, player.x, player.y, player.z), connection, false);
-                        }
-                    } else {
-                        Entity entity = EntityManager.getEntityFromId(UUID.fromString(args[1]));
-                        if (entity == null) {
-                            network.sendFailure(connection, "Entity does not exists.");
-                        } else
-                            network.send(new Packets.PPosition(entity.getUUID().getLeastSignificantBits(), entity.getUUID().getMostSignificantBits(), entity.getPosition().x, entity.getPosition().y, entity.getPosition().z), connection, false);
-                    }
+        // One handler per packet type and per command, looked up instead of tested for one after another
+        PacketDispatcher dispatcher = new PacketDispatcher()
+                .on(Packets.PMovement.class, this::move)
+                .command("getdimension", this::getDimension)
+                .command("setvelocity", this::setVelocity)
+                .command("setposition", this::setPosition)
+                .command("getchunk", this::getChunk)
+                .command("getposition", this::getPosition);
+        network = new ServerNetwork(5896, 4789, dispatcher);
+    }
+    
+    // The seed the world was created with, so chunks generated next to the saved ones match them. A new world gets a random one.
+    private int loadSeed() {
+        try {
+            OptionalLong saved = WorldData.loadSeed(worldName);
+            if (saved.isPresent()) return (int) saved.getAsLong();
+            
+            if (Files.isDirectory(Path.of("worlds", worldName, "regions"))) {
+                logger.warn("World \"{}\" has region files but no seed, new chunks will not match the saved ones", worldName);
+            }
+            int seed = (int) Math.floor(Math.random() * 1000000);
+            WorldData.saveInfo(worldName, seed);
+            return seed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the seed of world \"" + worldName + "\"", e);
+        }
+    }
+    
+    // --- HANDLER: PMovement (the inputs of a client, the newest last) ---
+    private void move(Packets.PMovement movement, Connection connection) {
+        Player player = Players.getPlayer(connection);
+        if (player == null) return;
+        
+        Packets.PMovement.Input[] inputs = movement.inputs();
+        Integer last = movementSequences.get(connection);
+        for (int i = 0; i < inputs.length; i++) {
+            int sequence = movement.sequence() + i;
+            if (last != null && sequence - last <= 0) continue; // Came in an earlier packet
+            Packets.PMovement.Input input = inputs[i];
+            last = sequence;
+            if (!moveTo(player, input.x(), input.y(), input.z(), connection)) {
+                // The inputs after a rejected one start from where the client should not be
+                last = movement.sequence() + inputs.length - 1;
+                break;
+            }
+        }
+        if (last != null) movementSequences.put(connection, last);
+    }
+    
+    // Anti-cheat checks the reported position, the next snapshot takes it to the clients that can see the player
+    private boolean moveTo(Player player, float x, float y, float z, Connection connection) {
+        // 1. Synchronize to ensure thread safety when modifying position
+        synchronized (player) {
+            // 2. Anti-cheat: Validate the reported position
+            if (antiCheat.isAcceptablePosition(x, y, z, player)) {
+                // 3. Set the player's new authoritative position
+                player.setPosition(x, y, z);
+                return true;
+            }
+            logger.warn("Anti-cheat System has detected a violation at client {}", player.getData().name());
+            network.send(new Packets.PPosition(0, 0, player.getPosition().x, player.getPosition().y, player.getPosition().z), connection, true);
+            return false;
+        }
+    }
+    
+    // --- HANDLERS: PCommand (Simple commands, e.g., 'getdimension') ---
+    
+    private void getDimension(String[] args, Connection connection) {
+        Player player = Players.getPlayer(connection);
+        if (player != null) {
+            network.send(new Packets.PCommand("dimension " + player.getDimension().getId()), connection, true);
+        } else {
+            network.sendFailure(connection, "Player not authenticated.");
+        }
+    }
+    
+    private void setVelocity(String[] args, Connection connection) {
+        if (args.length < 4) return;
+        try {
+            Float.parseFloat(args[1]);
+            Float.parseFloat(args[2]);
+            Float.parseFloat(args[3]);
+        } catch (Exception e) {
+            logger.error("ERROR: Float parsing failed for velocity command.", e);
+            
+            // FIX 2: Change message to reflect the correct input type
+            network.sendFailure(connection, "Non-standard input has been detected: Velocity components must be valid numbers (float).");
+            return;
+        }
+        
+        Player player = Players.getPlayer(connection);
+        if (player != null) {
+            logger.error("Service Unavaliable: set velocity is deprecated!");
+            network.send(new Packets.Failure("SERVICE_ERROR Service Unavaliable: set velocity is deprecated!"),connection,true);
+        }
+    }
+    
+    // Clients from before PMovement
+    private void setPosition(String[] args, Connection connection) {
+        if (args.length < 4) return;
+        float x, y, z;
+        try {
+            x = Float.parseFloat(args[1]);
+            y = Float.parseFloat(args[2]);
+            z = Float.parseFloat(args[3]);
+        } catch (Exception e) {
+            network.sendFailure(connection, "Position components must be valid numbers (float).");
+            return;
+        }
+        
+        Player player = Players.getPlayer(connection);
+        if (player != null) moveTo(player, x, y, z, connection);
+    }
+    
+    private void getChunk(String[] args, Connection connection) {
+        if (args.length < 4) return;
+        int x, y, dimension;
+        
+        try {
+            x = Integer.parseInt(args[1]);
+            y = Integer.parseInt(args[2]);
+            dimension = Integer.parseInt(args[3]);
+        } catch (NumberFormatException e) {
+            logger.error("ERROR: Int parsing failed for getchunk command.", e);
+            network.sendFailure(connection, "Chunk coordinates or dimension ID must be integers.");
+            return;
+        }
+        
+        Player player = Players.getPlayer(connection);
+        
+        if (player == null) {
+            logger.error("Couldn't access the PlayerData");
+            network.sendFailure(connection, "Player not authenticated or entity missing.");
+            return;
+        }
+        
+        if (antiCheat.shouldSendRequestedChunk(x, y, player.getPosition())) {
+            Dimension d;
+            try {
+                d = DimensionRegistry.getRegistry().get(dimension);
+            } catch (UnknownRegistryException e) {
+                logger.error("Failed to get the dimension id: {}", dimension);
+                network.sendFailure(connection, "Dimension id is invalid.");
+                return;
+            }
+            
+            // Retrieve or generate the chunk without holding up the other packets, then send it from the sender
+            PendingChunk pending = new PendingChunk(connection.getID(), dimension, x, y);
+            if (!pendingChunks.add(pending)) return; // Already on its way to this client
+            d.requestChunk(x, y).whenComplete((chunk, e) -> {
+                pendingChunks.remove(pending);
+                if (!connection.isConnected()) return;
+                try {
+                    chunkSender(connection).execute(() -> sendChunk(connection, dimension, x, y, chunk, e));
+                } catch (RejectedExecutionException closed) {
+                    // The connection closed meanwhile and its sender was shut down
                 }
+            });
+            
+        } else {
+            network.sendFailure(connection, "Anti-Cheat system has detected suspicious activity from this client");
+            logger.warn("Anti-Cheat system has detected a violation at client \"{}\"", player.getData().name());
+        }
+    }
+    
+    private void sendChunk(Connection connection, int dimension, int x, int y, ChunkData chunk, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() instanceof RejectedExecutionException) {
+            // The client asks for the chunks it is missing again after a while
+            network.sendFailure(connection, "Server is busy generating chunks, request chunk (" + x + ", " + y + ") again later.");
+            return;
+        }
+        if (e != null || chunk == null) {
+            if (e != null) logger.error("Error retrieving/generating chunk ({}, {}) in dimension {}.", x, y, dimension, e);
+            else logger.error("Chunk ({}, {}) in dimension {} was neither loaded nor generated.", x, y, dimension);
+            network.sendFailure(connection, "Server failed to load requested chunk.");
+            return;
+        }
+        int[] blocks = chunk.getBlockIds();
+        network.send(network.hasFeature(connection, Network.FEATURE_CHUNK_COMPRESSION)
+                ? new Packets.PCompressedChunk(x, y, blocks) : new Packets.PChunk(x, y, blocks), connection, true);
+    }
+    
+    private void getPosition(String[] args, Connection connection) {
+        if (args.length < 2) return;
+        if (args[1].equals("self")) {
+            Player player = Players.getPlayer(connection);
+            
+            if (player != null) {
+                Vector3f position = player.getPosition();
+                network.send(new Packets.PPosition(0, 0, position.x, position.y, position.z), connection, false);
             }
-        }));
+        } else {
+            Entity entity = EntityManager.getEntityFromId(UUID.fromString(args[1]));
+            if (entity == null) {
+                network.sendFailure(connection, "Entity does not exists.");
+            } else
+                network.send(new Packets.PPosition(entity.getUUID().getLeastSignificantBits(), entity.getUUID().getMostSignificantBits(), entity.getPosition().x, entity.getPosition().y, entity.getPosition().z), connection, false);
+        }
     }
     
     private void init() {
@@ -311,19 +371,120 @@ public class ServerThread extends Thread {
         else throw new RuntimeException();
         
         
-        for (int x = -5; x < 5; x++) {
-            for (int y = -5; y < 5; y++) {
-                overworld.generate(new ChunkPos(x, y));
+        // Unreferenced chunks beyond a quarter of the heap are unloaded into the world's region files
+        ServerProcedureGridMap world = overworld.getWorld();
+        world.setChunkCache(new ChunkCache(world, WorldData.getLevelPath(overworld, worldName),
+                Runtime.getRuntime().maxMemory() / 4, VIEW_DISTANCE).start(1000));
+        viewerUpdate.start();
+        
+        // Around spawn in a spiral on the generation threads, players can join meanwhile
+        overworld.pregenerate(null, -5, -5, 5, 5);
+        
+        network.start();
+        startConsole();
+    }
+    
+    private void startConsole() {
+        Thread console = new Thread(() -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            try {
+                String line;
+                while (!closing && (line = reader.readLine()) != null) {
+                    if (!line.isBlank()) runConsoleCommand(line);
+                }
+            } catch (IOException e) {
+                logger.error("Server console closed", e);
+            }
+        }, "Server Console");
+        console.setDaemon(true);
+        console.start();
+    }
+    
+    /**
+     * Runs a command typed into the server console:
+     * <ul>
+     *     <li>{@code pregen <radius> [centerX centerZ]} pregenerates a square of chunks, around spawn by default</li>
+     *     <li>{@code pregen <minX> <minZ> <maxX> <maxZ>} pregenerates a rectangle of chunks, max exclusive</li>
+     *     <li>{@code pregen status} and {@code pregen stop}</li>
+     *     <li>{@code cache status} and {@code cache budget <MiB>} for the chunk cache of the overworld</li>
+     *     <li>{@code cache compact} squeezes the free space out of the region files of the overworld</li>
+     * </ul>
+     * Pregenerated chunks are saved into {@link #getWorldName()}.
+     */
+    public void runConsoleCommand(String line) {
+        String[] args = line.toLowerCase().trim().split("\\s+");
+        logger.info("Console command: {}", line);
+        if (args[0].equals("cache") && args.length >= 2) {
+            ChunkCache cache = overworld.getWorld().getChunkCache();
+            if (args[1].equals("compact")) {
+                try {
+                    WorldData.compactRegions(WorldData.getLevelPath(overworld, worldName));
+                    logger.info("Compacted the region files of {}", overworld.getId());
+                } catch (IOException e) {
+                    logger.error("Failed to compact the region files", e);
+                }
+                return;
+            }
+            if (args[1].equals("budget") && args.length >= 3) {
+                try {
+                    cache.setBudget(Long.parseLong(args[2]) << 20);
+                } catch (NumberFormatException e) {
+                    logger.warn("The budget must be a whole number of MiB");
+                    return;
+                }
             }
+            logger.info(cache.getStatus());
+            return;
+        }
+        if (!args[0].equals("pregen") || args.length < 2) {
+            logger.warn("Unknown command, try: pregen <radius> [centerX centerZ] | pregen <minX> <minZ> <maxX> <maxZ> | pregen status | pregen stop"
+                    + " | cache status | cache budget <MiB> | cache compact");
+            return;
         }
         
-        network.start();
+        Pregeneration running = overworld.getPregeneration();
+        if (args[1].equals("status")) {
+            logger.info(running == null ? "No pregeneration was started" : running.getStatus());
+        } else if (args[1].equals("stop")) {
+            if (running != null) running.stop();
+        } else {
+            int[] numbers = new int[args.length - 1];
+            try {
+                for (int i = 0; i < numbers.length; i++) numbers[i] = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException e) {
+                logger.warn("Pregeneration bounds must be integers");
+                return;
+            }
+            
+            try {
+                if (numbers.length == 4) {
+                    overworld.pregenerate(worldName, numbers[0], numbers[1], numbers[2], numbers[3]);
+                } else {
+                    Vector3f spawn = World.getSpawnLocation().position();
+                    int centerX = numbers.length >= 3 ? numbers[1] : Math.floorDiv((int) Math.floor(spawn.x), CHUNK_SIZE);
+                    int centerZ = numbers.length >= 3 ? numbers[2] : Math.floorDiv((int) Math.floor(spawn.z), CHUNK_SIZE);
+                    overworld.pregenerate(worldName, centerX, centerZ, numbers[0]);
+                }
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                logger.warn(e.getMessage());
+            }
+        }
+    }
+    
+    public String getWorldName() {
+        return worldName;
+    }
+    
+    public void setWorldName(String worldName) {
+        this.worldName = worldName;
     }
     
     private void tick() {
         for (int id : registry.getIds()) {
             if (!(registry.get(id) instanceof ServerBlockType)) throw new RuntimeException("E");
         }
+        overworld.getWorld().getLightingEngine().update();
+        viewerUpdate.update();
         try {
             Thread.sleep(10); // To prevent high CPU usage
         } catch (InterruptedException e) {
@@ -331,12 +492,46 @@ public class ServerThread extends Thread {
         }
     }
     
+    // Keeps the chunks around every player in the overworld loaded
+    private void updateViewers() {
+        Map<UUID, ChunkPos> positions = new HashMap<>();
+        for (Player player : Players.getPlayers()) {
+            if (player.getDimension() != overworld) continue;
+            Vector3f position = player.getPosition();
+            positions.put(player.getUUID(), new ChunkPos(Math.floorDiv((int) Math.floor(position.x), CHUNK_SIZE),
+                    Math.floorDiv((int) Math.floor(position.z), CHUNK_SIZE)));
+        }
+        overworld.getWorld().getChunkCache().updateViewers(positions);
+        movementSequences.keySet().removeIf(connection -> !connection.isConnected());
+        chunkSenders.entrySet().removeIf(sender -> {
+            if (sender.getKey().isConnected()) return false;
+            sender.getValue().shutdown(); // What is left fails fast on the closed connection
+            return true;
+        });
+    }
+    
+    private ExecutorService chunkSender(Connection connection) {
+        return chunkSenders.computeIfAbsent(connection, c -> Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Chunk Sender " + c.getID());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+    
     public ServerNetwork getNetwork() {
         return network;
     }
     
     private void cleanup() {
+        ChunkCache cache = overworld.getWorld().getChunkCache();
+        if (cache != null) cache.stop();
+        chunkSenders.values().forEach(ExecutorService::shutdown);
         network.shutdown();
+        try {
+            WorldData.closeRegions();
+        } catch (IOException e) {
+            logger.error("Failed to close the region files", e);
+        }
     }
     
     public void shutdown() {
@@ -354,4 +549,7 @@ public class ServerThread extends Thread {
     public BlockRegistry getBlockRegistry() {
         return registry;
     }
+    
+    private record PendingChunk(int connection, int dimension, int x, int z) {
+    }
 }
@@ -82,4 +82,84 @@ void main() {
                 FragColor = vec4(uTextColor, alpha);
             }
             """;
+    /** Chunk sections, see {@link org.infinitytwo.nyctotile.core.model.builder.CompactVertex} for the vertex layout. */
+    public static final String chunkVertex = """
+            #version 330 core
+            // See CompactVertex for the layout
+            layout (location = 0) in uvec2 aPacked;
+            
+            out vec2 TexCoord;
+            flat out vec2 TileOrigin;
+            out float Brightness;
+            out vec4 Light;
+            
+            uniform mat4 model;
+            uniform mat4 view;
+            uniform mat4 projection;
+            uniform vec3 sectionOrigin;
+            uniform vec2 tileSize;
+            uniform int atlasColumns;
+            
+            // UP, DOWN, NORTH, SOUTH, EAST, WEST
+            const float BRIGHTNESS[6] = float[6](0.8, 0.5, 0.7, 0.7, 0.8, 0.7);
+            
+            void main() {
+                uint position = aPacked.x;
+                uint attributes = aPacked.y;
+            
+                vec3 pos = vec3(position & 0xFFu, (position >> 8u) & 0xFFu, (position >> 16u) & 0xFFu) / 8.0;
+                int face = int((position >> 24u) & 7u);
+            
+                // Tile-local UV from the position, same orientation as the old per-block UVs
+                if (face == 0) TexCoord = pos.xz;                      // UP
+                else if (face == 1) TexCoord = vec2(pos.x, -pos.z);    // DOWN
+                else if (face == 2) TexCoord = pos.xy;                 // NORTH
+                else if (face == 3) TexCoord = vec2(-pos.x, pos.y);    // SOUTH
+                else if (face == 4) TexCoord = pos.zy;                 // EAST
+                else TexCoord = vec2(-pos.z, pos.y);                   // WEST
+            
+                int tile = int(attributes & 0xFFFu);
+                int column = tile % atlasColumns, row = tile / atlasColumns;
+                // Same as TextureAtlas.getUVCoords, rows are flipped for OpenGL
+                TileOrigin = vec2(column * tileSize.x, 1.0 - (row + 1) * tileSize.y);
+                Brightness = BRIGHTNESS[face];
+                Light = vec4(
+                        float((attributes >> 12u) & 0xFu) / 15.0,
+                        float((attributes >> 16u) & 0xFu) / 15.0,
+                        float((attributes >> 20u) & 0xFu) / 15.0,
+                        float((attributes >> 24u) & 0xFu) / 15.0
+                );
+                gl_Position = projection * view * model * vec4(sectionOrigin + pos, 1.0);
+            }
+            """;
+    public static final String chunkFragment = """
+            #version 330 core
+            in vec2 TexCoord;
+            flat in vec2 TileOrigin;
+            in float Brightness;
+            in vec4 Light;
+            
+            uniform sampler2D ourTexture;
+            uniform vec2 tileSize;
+            
+            out vec4 FragColor;
+            
+            void main() {
+                // TexCoord is in blocks, so a merged face repeats the tile instead of stretching it
+                vec4 texColor = texture(ourTexture, TileOrigin + fract(TexCoord) * tileSize);
+            
+                // Step 1: Apply initial shading (e.g., ambient occlusion from Brightness)
+                vec3 brightenedColor = texColor.rgb * Brightness;
+            
+                // Step 2: Apply the light color (R, G, B) as a tint/filter
+                vec3 tintedColor = brightenedColor * (Light.rgb + 0.4);
+            
+                // Step 3: Apply the Light Level Intensity (Light.a)
+                // This scales the entire color from 0.0 (pitch black) to 1.0 (full brightness).
+                vec3 finalColor = tintedColor * Light.a;
+            
+                // Final Output
+                FragColor = vec4(finalColor, texColor.a);
+            }
+            """;
 }
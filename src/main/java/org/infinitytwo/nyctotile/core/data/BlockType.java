@@ -1,11 +1,11 @@
 package org.infinitytwo.nyctotile.core.data;
 
 import org.infinitytwo.nyctotile.core.data.world.AABB;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
 import org.infinitytwo.nyctotile.core.registry.Registerable;
-import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
 import org.joml.Vector3i;
 
 public abstract class BlockType implements Registerable {
@@ -17,6 +17,7 @@ public abstract class BlockType implements Registerable {
     protected boolean collidable = true;
     protected float friction = 1;
     protected Light lightSource = new Light();
+    protected boolean cube = false;
 
     public BlockType(String material, boolean invisible, String name, int textureIndex) {
         this.textureIndex = textureIndex;
@@ -48,12 +49,12 @@ public abstract class BlockType implements Registerable {
     public static BlockType standard(String material, String name) {
         return new BlockType(material, false, name, 0) {
             @Override
-            public void buildModel(GridMap gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light) {
+            public void buildModel(BlockAccess gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
             }
         };
     }
 
-    public void buildModel(GridMap map, Vector3i pos, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light) {
+    public void buildModel(BlockAccess map, Vector3i pos, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
         buildModel(map, pos.x, pos.y, pos.z, atlas, registry, buffer, light);
     }
 
@@ -65,8 +66,25 @@ public abstract class BlockType implements Registerable {
         return hitboxes;
     }
 
-    public abstract void buildModel(GridMap gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light);
+    /**
+     * Writes this block's faces into a chunk section mesh, as {@link org.infinitytwo.nyctotile.core.model.builder.CompactVertex}
+     * vertices in section-local coordinates. {@code x, y, z} are world coordinates, for culling against {@code gridMap}.
+     */
+    public abstract void buildModel(BlockAccess gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light);
 
+    /**
+     * @return {@code true} if this block renders as a plain 1x1x1 cube with the same texture on every
+     * face. The chunk mesher merges the faces of these blocks (greedy meshing) instead of calling
+     * {@link #buildModel}, so only return {@code true} if {@link #buildModel} would draw exactly that.
+     */
+    public boolean isCube() {
+        return cube;
+    }
+    
+    public int getTextureIndex() {
+        return textureIndex;
+    }
+    
     public float getFriction() {
         return friction;
     }
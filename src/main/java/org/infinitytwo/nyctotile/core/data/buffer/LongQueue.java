@@ -0,0 +1,55 @@
+package org.infinitytwo.nyctotile.core.data.buffer;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A growable FIFO of primitive longs (a ring buffer), for BFS queues that would otherwise box
+ * every entry. Not thread safe.
+ */
+public final class LongQueue {
+    private long[] elements;
+    private int head, size;
+
+    public LongQueue() {
+        this(256);
+    }
+
+    public LongQueue(int capacity) {
+        elements = new long[Math.max(4, Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1)];
+    }
+
+    public void add(long value) {
+        if (size == elements.length) grow();
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    public long poll() {
+        if (size == 0) throw new NoSuchElementException("Queue is empty");
+        long value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = size = 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[elements.length * 2];
+        int tail = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, tail);
+        System.arraycopy(elements, 0, grown, tail, head);
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,76 @@
+package org.infinitytwo.nyctotile.core.data.buffer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles {@link NIntBuffer}s that are filled and thrown away all the time, like the staging buffers meshes
+ * are built in before they go to the GPU. A released buffer keeps its native memory, so once the pool is warm
+ * meshing does not allocate at all. Buffers that grew past {@code maxKeptCapacity} ints are freed instead of
+ * kept, like the ones beyond {@code maxIdle}.
+ * <br><br>
+ * Thread safe, a buffer can be acquired on one thread and released on another.
+ */
+public final class NIntBufferPool {
+    private final ConcurrentLinkedQueue<NIntBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+    private final int maxKeptCapacity;
+    private final LongAdder allocated = new LongAdder(), reused = new LongAdder();
+
+    public NIntBufferPool(int maxIdle, int maxKeptCapacity) {
+        this.maxIdle = maxIdle;
+        this.maxKeptCapacity = maxKeptCapacity;
+    }
+
+    /**
+     * @return An empty buffer, give it back with {@link #release}
+     */
+    public NIntBuffer acquire() {
+        NIntBuffer buffer = idle.poll();
+        if (buffer == null) {
+            allocated.increment();
+            return new NIntBuffer();
+        }
+        idleCount.decrementAndGet();
+        reused.increment();
+        return buffer;
+    }
+
+    /**
+     * Takes the buffer back, it must not be used anymore.
+     */
+    public void release(NIntBuffer buffer) {
+        if (buffer.capacity() > maxKeptCapacity || idleCount.incrementAndGet() > maxIdle) {
+            if (buffer.capacity() <= maxKeptCapacity) idleCount.decrementAndGet();
+            buffer.cleanup();
+            return;
+        }
+        buffer.reset();
+        idle.add(buffer);
+    }
+
+    /**
+     * Frees the idle buffers.
+     */
+    public void clear() {
+        NIntBuffer buffer;
+        while ((buffer = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            buffer.cleanup();
+        }
+    }
+
+    public int getIdle() {
+        return idleCount.get();
+    }
+
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+}
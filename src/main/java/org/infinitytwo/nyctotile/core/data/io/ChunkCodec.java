@@ -0,0 +1,165 @@
+package org.infinitytwo.nyctotile.core.data.io;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Compresses the blocks of a chunk for the region files and the network.
+ * <br><br>
+ * Blocks come in long runs along Y, stone up to the surface and air above it, so every column is first written
+ * as runs: the length of a run less one in a byte, then its block id as a varint, from the bottom up. The runs of
+ * all columns, x major like {@link ChunkData#getBlockIds()}, then go through a {@link Deflater}, which finds what
+ * neighbouring columns have in common. A generated chunk takes a few KiB instead of 128 KiB of ints.
+ * <br><br>
+ * A record of a chunk, as the region files keep it, starts with a byte naming its format: {@link #RAW} for
+ * {@link ChunkData#serialize()}, {@link #COMPRESSED} for {@link #encode(ChunkData)}. Thread safe, every thread
+ * keeps its own deflater and buffers.
+ */
+public final class ChunkCodec {
+    public static final byte RAW = 0;
+    public static final byte COMPRESSED = 1;
+    public static final int LEVEL = Deflater.BEST_SPEED;
+    // One run per block at worst, a byte of length and up to five of block id
+    private static final int MAX_RUN_BYTES = VOLUME * 6;
+
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private ChunkCodec() {}
+
+    /**
+     * @param blocks the blocks of a chunk, indexed like {@link ChunkData#getBlockIds()}
+     * @return The blocks run length encoded along Y and deflated
+     */
+    public static byte[] compress(int[] blocks) {
+        Buffers buffers = ChunkCodec.buffers.get();
+        int length = writeRuns(blocks, buffers.runs);
+
+        Deflater deflater = buffers.deflater;
+        deflater.reset();
+        deflater.setInput(buffers.runs, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == buffers.out.length) buffers.out = Arrays.copyOf(buffers.out, size * 2);
+            size += deflater.deflate(buffers.out, size, buffers.out.length - size);
+        }
+        return Arrays.copyOf(buffers.out, size);
+    }
+
+    /**
+     * Reads blocks written by {@link #compress(int[])} into {@code blocks}, leaving {@code data} positioned after them.
+     * @throws IllegalArgumentException if the data is not a compressed chunk
+     */
+    public static void decompress(ByteBuffer data, int[] blocks) {
+        Buffers buffers = ChunkCodec.buffers.get();
+        Inflater inflater = buffers.inflater;
+        inflater.reset();
+        inflater.setInput(data);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffers.runs, length, buffers.runs.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary() || length == buffers.runs.length)) {
+                    throw new IllegalArgumentException("Compressed chunk is truncated or too long");
+                }
+                length += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed chunk is corrupt", e);
+        }
+        readRuns(buffers.runs, length, blocks);
+    }
+
+    /**
+     * @return A record of the chunk in the {@link #COMPRESSED} format: the format, chunk x, chunk z, then the
+     * compressed blocks. Light is not part of it.
+     */
+    public static byte[] encode(ChunkData chunk) {
+        byte[] blocks = compress(chunk.getBlockIds());
+        return ByteBuffer.allocate(1 + 2 * Integer.BYTES + blocks.length)
+                .put(COMPRESSED)
+                .putInt(chunk.getPosition().x)
+                .putInt(chunk.getPosition().y)
+                .put(blocks)
+                .array();
+    }
+
+    /**
+     * Reads a record in either format.
+     * @throws IllegalArgumentException if the format is unknown or the compressed blocks are corrupt
+     */
+    public static ChunkData decode(ByteBuffer record) {
+        byte format = record.get();
+        return switch (format) {
+            case RAW -> ChunkData.unserialize(record);
+            case COMPRESSED -> {
+                int x = record.getInt(), z = record.getInt();
+                int[] blocks = new int[VOLUME];
+                decompress(record, blocks);
+                yield ChunkData.of(x, z, blocks);
+            }
+            default -> throw new IllegalArgumentException("Unknown chunk format " + format);
+        };
+    }
+
+    private static int writeRuns(int[] blocks, byte[] out) {
+        int length = 0;
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int column = x * SIZE_Y * SIZE + z;
+                int y = 0;
+                while (y < SIZE_Y) {
+                    int id = blocks[column + y * SIZE];
+                    int run = 1;
+                    while (y + run < SIZE_Y && blocks[column + (y + run) * SIZE] == id) run++;
+                    y += run;
+
+                    out[length++] = (byte) (run - 1);
+                    while ((id & ~0x7F) != 0) {
+                        out[length++] = (byte) ((id & 0x7F) | 0x80);
+                        id >>>= 7;
+                    }
+                    out[length++] = (byte) id;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static void readRuns(byte[] runs, int length, int[] blocks) {
+        int position = 0;
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int column = x * SIZE_Y * SIZE + z;
+                int y = 0;
+                while (y < SIZE_Y) {
+                    if (position >= length) throw new IllegalArgumentException("Compressed chunk ends in column " + x + ", " + z);
+                    int run = (runs[position++] & 0xFF) + 1;
+                    int id = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        if (position >= length || shift > 28) throw new IllegalArgumentException("Bad block id in column " + x + ", " + z);
+                        byte b = runs[position++];
+                        id |= (b & 0x7F) << shift;
+                        if (b >= 0) break;
+                    }
+                    if (y + run > SIZE_Y) throw new IllegalArgumentException("Run past the top of column " + x + ", " + z);
+                    for (int end = y + run; y < end; y++) blocks[column + y * SIZE] = id;
+                }
+            }
+        }
+    }
+
+    private static final class Buffers {
+        final Deflater deflater = new Deflater(LEVEL);
+        final Inflater inflater = new Inflater();
+        final byte[] runs = new byte[MAX_RUN_BYTES];
+        byte[] out = new byte[16384];
+    }
+}
@@ -1,42 +1,27 @@
 package org.infinitytwo.nyctotile.core.data.io;
 
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
-import org.joml.Vector2i;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
+/**
+ * Chunks as standalone byte arrays, in the {@link ChunkCodec#COMPRESSED} format.
+ */
 public final class ChunkSerializer {
     public static byte[] serialize(ChunkData data) throws IOException {
-        ByteArrayOutputStream arrayOutStream = new ByteArrayOutputStream();
-        DataOutputStream outStream = new DataOutputStream(arrayOutStream);
-        ByteBuffer buffer = ByteBuffer.allocate(data.getBlockIds().length * Integer.BYTES);
-
-        for (int block : data.getBlockIds()) {
-            buffer.putInt(block);
-        }
-
-        outStream.writeInt(data.getPosition().x);
-        outStream.writeInt(data.getPosition().y);
-        outStream.write(buffer.array());
-
-        outStream.flush();
-        return arrayOutStream.toByteArray();
+        return ChunkCodec.encode(data);
     }
 
+    /**
+     * Reads either format of {@link ChunkCodec}.
+     */
     public static ChunkData deserialize(byte[] data) throws IOException {
-        ByteArrayInputStream arrayInputStream = new ByteArrayInputStream(data);
-        DataInputStream inStream = new DataInputStream(arrayInputStream);
-
-        int x = inStream.readInt(), y = inStream.readInt();
-        ChunkData chunk = new ChunkData(new Vector2i(x,y));
-        int[] blocks = new int[chunk.getBlockIds().length];
-
-        for (int i = 0; i < chunk.getBlockIds().length; i++) {
-            blocks[i] = inStream.readInt();
+        try {
+            return ChunkCodec.decode(ByteBuffer.wrap(data));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Chunk data is corrupt (" + data.length + " bytes)", e);
         }
-
-        chunk.modify(blocks);
-        return chunk;
     }
 }
@@ -14,14 +14,55 @@ public class DataSchematica {
     public interface Data {
         byte[] serialize();
         Data deserialize(byte[] data);
+        
+        /**
+         * Writes the bytes of {@link #serialize()} at the position of {@code buffer}, which is little endian.
+         * Throws {@link java.nio.BufferOverflowException} if they do not fit, the caller tries again with a
+         * larger buffer. Overridden by packets sent often, to skip the array.
+         */
+        default void write(ByteBuffer buffer) {
+            buffer.put(serialize());
+        }
+        
+        /**
+         * Reads what {@link #write(ByteBuffer)} wrote from the rest of {@code buffer}, which is little endian.
+         */
+        default Data read(ByteBuffer buffer) {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return deserialize(data);
+        }
     }
     
     public static void register(Data data) {
-        registries.put(data.getClass().getSimpleName().toLowerCase(),data);
+        registries.put(getName(data.getClass()), data);
     }
     
+    /**
+     * @return The name a type of data is registered and sent under
+     */
+    public static String getName(Class<? extends Data> type) {
+        return type.getSimpleName().toLowerCase();
+    }
+    
+    /**
+     * @return The registered data of that name, whose {@link Data#read(ByteBuffer)} reads more of it, or {@code null}
+     */
+    public static Data get(String name) {
+        return registries.get(name);
+    }
+    
+    /**
+     * @return The names of every registered type of data, sorted
+     */
+    public static String[] getNames() {
+        return registries.keySet().stream().sorted().toArray(String[]::new);
+    }
+    
+    /**
+     * Reads data with the name header, from the position of {@code buffer} on.
+     */
     public static Data deserialize(ByteBuffer buffer) {
-        buffer.position(0);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         
         if (buffer.remaining() < 4)
@@ -45,9 +86,6 @@ public class DataSchematica {
         if (!buffer.hasRemaining())
             throw new IllegalStateException("No payload found for type '" + datatype + "'");
         
-        byte[] payload = new byte[buffer.remaining()];
-        buffer.get(payload);
-        
-        return data.deserialize(payload);
+        return data.read(buffer);
     }
 }
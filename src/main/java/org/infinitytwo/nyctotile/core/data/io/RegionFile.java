@@ -0,0 +1,307 @@
+package org.infinitytwo.nyctotile.core.data.io;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A region of {@link #SIZE} by {@link #SIZE} chunks in one file, each chunk readable and writable on its own.
+ * <br><br>
+ * The file is cut into sectors of {@link #SECTOR_BYTES}. The first sector is the header: a magic number, the
+ * version and the region position, then for every chunk the sector it starts at (0 if there is none) and its
+ * length in bytes. A chunk takes as many whole sectors as it needs. Reading one reads just its sectors, writing
+ * puts it into the first free run that fits and only then points the header at it, so a save that dies halfway
+ * leaves the old copy. Sectors freed that way are reused by later writes, {@link #compact()} squeezes them out.
+ * The file is only read and written through its channel, never mapped: a mapping lives until it is garbage
+ * collected, and while it does Windows refuses to replace the file, which compacting does.
+ * Every chunk starts with a byte naming its format, see {@link ChunkCodec}. Files of version 1 had no such byte,
+ * they are rewritten with {@link ChunkCodec#RAW} in front of every chunk when they are opened.
+ * <br><br>
+ * The file is opened on first use and can be {@link #close() closed} any time to give back the handle, the next
+ * call opens it again. Thread safe.
+ */
+public class RegionFile implements Closeable {
+    public static final int SIZE = 16;
+    public static final int SECTOR_BYTES = 4096;
+    public static final String EXTENSION = ".ulm";
+    public static final int COMMIT_BYTES = 1 << 20;
+    private static final Logger logger = LoggerFactory.getLogger(RegionFile.class);
+    private static final int MAGIC = 0x554C524D; // ULRM
+    private static final int VERSION = 2;
+    private static final int TABLE = 4 * Integer.BYTES;
+    private static final int HEADER_SECTORS = 1;
+
+    private final Path path;
+    private final int regionX, regionZ;
+    private final int[] offsets = new int[SIZE * SIZE];
+    private final int[] lengths = new int[SIZE * SIZE];
+    private final BitSet used = new BitSet();
+    private FileChannel channel;
+    private ByteBuffer header; // A copy of the header sector, written back whenever it changes
+    private int sectorCount;
+
+    public RegionFile(Path path, int regionX, int regionZ) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+    }
+
+    /**
+     * @return The file of a region in {@code directory}
+     */
+    public static Path getPath(Path directory, int regionX, int regionZ) {
+        return directory.resolve("region-" + regionX + "-" + regionZ + EXTENSION);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Whether the file is there, if not nothing was ever written to it
+     */
+    public synchronized boolean exists() {
+        return channel != null || Files.exists(path);
+    }
+
+    public synchronized boolean has(int chunkX, int chunkZ) throws IOException {
+        return open(false) && offsets[index(chunkX, chunkZ)] != 0;
+    }
+
+    /**
+     * @return The bytes last written for the chunk, read into a buffer of their own, or {@code null} if there are none
+     */
+    public synchronized ByteBuffer read(int chunkX, int chunkZ) throws IOException {
+        if (!open(false)) return null;
+        int index = index(chunkX, chunkZ);
+        if (offsets[index] == 0) return null;
+        ByteBuffer data = ByteBuffer.allocate(lengths[index]);
+        readFully(channel, data, (long) offsets[index] * SECTOR_BYTES);
+        return data.flip();
+    }
+
+    /**
+     * Writes chunks of this region, replacing what was written for them before. The chunks reach the disk before
+     * the header points at them, a batch of up to {@link #COMMIT_BYTES} at a time, and the sectors of the replaced
+     * copies are free once it does. Batches keep the file from having to hold two copies of a whole region.
+     */
+    public synchronized void write(Map<ChunkPos, byte[]> chunks) throws IOException {
+        if (chunks.isEmpty()) return;
+        open(true);
+        List<int[]> placed = new ArrayList<>(); // index, first sector, length
+        long batch = 0;
+        for (Map.Entry<ChunkPos, byte[]> chunk : chunks.entrySet()) {
+            byte[] data = chunk.getValue();
+            int sectors = sectors(data.length);
+            if (sectors == 0) throw new IllegalArgumentException("Chunk " + chunk.getKey() + " is empty");
+            int start = allocate(sectors);
+            used.set(start, start + sectors);
+            sectorCount = Math.max(sectorCount, start + sectors);
+            writeFully(channel, ByteBuffer.wrap(data), (long) start * SECTOR_BYTES);
+            placed.add(new int[] {index(chunk.getKey().x(), chunk.getKey().z()), start, data.length});
+            batch += data.length;
+            if (batch >= COMMIT_BYTES) {
+                commit(placed);
+                batch = 0;
+            }
+        }
+        commit(placed);
+    }
+
+    // Points the header at the chunks, once they are on disk
+    private void commit(List<int[]> placed) throws IOException {
+        if (placed.isEmpty()) return;
+        channel.force(false);
+        for (int[] chunk : placed) {
+            int index = chunk[0];
+            if (offsets[index] != 0) used.clear(offsets[index], offsets[index] + sectors(lengths[index]));
+            setEntry(header, index, chunk[1], chunk[2]);
+            offsets[index] = chunk[1];
+            lengths[index] = chunk[2];
+        }
+        flushHeader();
+        placed.clear();
+    }
+
+    /**
+     * Forgets a chunk, its sectors are free afterwards.
+     */
+    public synchronized void remove(int chunkX, int chunkZ) throws IOException {
+        if (!open(false)) return;
+        int index = index(chunkX, chunkZ);
+        if (offsets[index] == 0) return;
+        used.clear(offsets[index], offsets[index] + sectors(lengths[index]));
+        setEntry(header, index, 0, 0);
+        offsets[index] = lengths[index] = 0;
+        flushHeader();
+    }
+
+    /**
+     * Rewrites the file with the chunks back to back, next to the old one, and moves it over the old one.
+     */
+    public synchronized void compact() throws IOException {
+        if (!open(false)) return;
+        rewrite(null);
+    }
+
+    // Copies the chunks back to back into a new file, each after prefix if there is one, and moves it over this one
+    private void rewrite(byte[] prefix) throws IOException {
+        int extra = prefix == null ? 0 : prefix.length;
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int next = HEADER_SECTORS;
+        try (FileChannel out = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            ByteBuffer compacted = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+            writeHeader(compacted);
+            for (int index = 0; index < offsets.length; index++) {
+                if (offsets[index] == 0) continue;
+                ByteBuffer data = ByteBuffer.allocate(lengths[index] + extra);
+                if (prefix != null) data.put(prefix);
+                readFully(channel, data, (long) offsets[index] * SECTOR_BYTES);
+                writeFully(out, data.flip(), (long) next * SECTOR_BYTES);
+                setEntry(compacted, index, next, lengths[index] + extra);
+                next += sectors(lengths[index] + extra);
+            }
+            writeFully(out, compacted, 0);
+            out.force(true);
+        }
+        close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Rewrote {} to {} sectors", path, next);
+    }
+
+    /**
+     * @return How many sectors of the file hold nothing, the header left out
+     */
+    public synchronized int getFreeSectors() throws IOException {
+        if (!open(false)) return 0;
+        return sectorCount - used.cardinality();
+    }
+
+    public synchronized int getSectorCount() throws IOException {
+        return open(false) ? sectorCount : 0;
+    }
+
+    /**
+     * Gives back the file handle, the next call opens the file again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        channel = null;
+        header = null;
+    }
+
+    /**
+     * @return The index of a chunk in the header, by its position in the world
+     */
+    public static int index(int chunkX, int chunkZ) {
+        return Math.floorMod(chunkZ, SIZE) * SIZE + Math.floorMod(chunkX, SIZE);
+    }
+
+    private static int sectors(int length) {
+        return (length + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    // The first run of free sectors long enough, past the end of the file if none is
+    private int allocate(int sectors) {
+        int start = used.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int end = used.nextSetBit(start);
+            if (end == -1 || end - start >= sectors) return start;
+            start = used.nextClearBit(end);
+        }
+    }
+
+    /**
+     * @param create whether to create the file if it is not there
+     * @return Whether the file is open
+     */
+    private boolean open(boolean create) throws IOException {
+        if (channel != null) return true;
+        if (!create && !Files.exists(path)) return false;
+        if (create) Files.createDirectories(path.getParent());
+
+        channel = FileChannel.open(path, CREATE, READ, WRITE);
+        boolean fresh = channel.size() == 0;
+        header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+        if (fresh) {
+            writeHeader(header);
+            flushHeader();
+        } else if (channel.size() >= header.capacity()) {
+            readFully(channel, header, 0);
+        }
+        int version = header.getInt(Integer.BYTES);
+        if (header.getInt(0) != MAGIC || version != VERSION && version != 1) {
+            close();
+            throw new IOException(path + " is not a region file of version " + VERSION);
+        }
+
+        sectorCount = (int) ((channel.size() + SECTOR_BYTES - 1) / SECTOR_BYTES);
+        used.clear();
+        used.set(0, HEADER_SECTORS);
+        for (int index = 0; index < offsets.length; index++) {
+            int offset = header.getInt(TABLE + index * 2 * Integer.BYTES);
+            int length = header.getInt(TABLE + index * 2 * Integer.BYTES + Integer.BYTES);
+            int end = offset + sectors(length), overlap = used.nextSetBit(offset);
+            if (offset != 0 && (offset < HEADER_SECTORS || length <= 0 || end > sectorCount || overlap != -1 && overlap < end)) {
+                logger.warn("Dropping chunk {} of {}, it points outside the file or into another chunk", index, path);
+                offset = length = 0;
+            }
+            offsets[index] = offset;
+            lengths[index] = length;
+            if (offset != 0) used.set(offset, end);
+        }
+
+        if (!fresh && version == 1) {
+            rewrite(new byte[] {ChunkCodec.RAW});
+            logger.info("Upgraded {} to version {}", path, VERSION);
+            return open(create);
+        }
+        return true;
+    }
+
+    private void flushHeader() throws IOException {
+        writeFully(channel, header.duplicate().clear(), 0);
+        channel.force(false);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("A chunk ends past the end of the file");
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    private void writeHeader(ByteBuffer header) {
+        header.putInt(0, MAGIC);
+        header.putInt(Integer.BYTES, VERSION);
+        header.putInt(2 * Integer.BYTES, regionX);
+        header.putInt(3 * Integer.BYTES, regionZ);
+    }
+
+    private static void setEntry(ByteBuffer header, int index, int offset, int length) {
+        header.putInt(TABLE + index * 2 * Integer.BYTES, offset);
+        header.putInt(TABLE + index * 2 * Integer.BYTES + Integer.BYTES, length);
+    }
+}
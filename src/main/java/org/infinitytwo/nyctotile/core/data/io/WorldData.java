@@ -2,6 +2,7 @@ package org.infinitytwo.nyctotile.core.data.io;
 
 import org.infinitytwo.nyctotile.core.VectorMath;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
 import org.infinitytwo.nyctotile.core.entity.Entity;
 import org.infinitytwo.nyctotile.core.manager.EntityManager;
 import org.infinitytwo.nyctotile.core.manager.World;
@@ -11,16 +12,22 @@ import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
 import org.joml.Vector2i;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.stream.Stream;
 
 public class WorldData {
     private static final ArrayList<String> dirsNeeded = new ArrayList<>();
     public static final int CHUNK_SIZE = 16;
+    private static final int MAX_OPEN_REGIONS = 64;
+    private static final int COMPACT_MIN_FREE_SECTORS = 64;
+    private static final Map<Path, RegionFile> regionFiles = new HashMap<>();
+    private static final Map<RegionFile, Boolean> openRegions = new LinkedHashMap<>(16, 0.75f, true);
 
     // World
     public String name;
@@ -80,39 +87,7 @@ public class WorldData {
         }
 
         // --- Saving Regions ---
-        Collection<Dimension> dimensions = World.getLoadedDimensions();
-        Map<Vector2i, Region> regions = new HashMap<>();
-
-        for (Dimension dimension : dimensions) {
-            int dimId = DimensionRegistry.getRegistry().getId(dimension.getId());
-            String dimName= "DIM-"+dimId;
-            Path regionDir = worldPath.resolve("regions").resolve(dimName);
-
-            Files.createDirectories(regionDir);
-
-            Path regionDetails = regionDir.resolve("info.dat");
-
-            // Write Dimension ID to info.dat
-            try (DataOutputStream outStream = new DataOutputStream(new FileOutputStream(regionDetails.toFile()))) {
-                outStream.writeInt(dimId);
-            }
-
-            ServerProcedureGridMap map = dimension.getWorld();
-            regions.clear();
-
-            Collection<ChunkData> chunks = map.getChunks();
-            for (ChunkData chunk : chunks) {
-                Vector2i position = convertToRegionPosition(chunk.getPosition());
-                regions.computeIfAbsent(position, Region::new).put(chunk);
-            }
-
-            for (Region region : regions.values()) {
-                // Using try-with-resources with FileOutputStream as it's the safest way to ensure stream closure
-                try (FileOutputStream stream = new FileOutputStream(regionDir.resolve("region-"+ VectorMath.toStringAsId(region.position)+".ulr").toFile())) {
-                    stream.write(region.serialize());
-                }
-            }
-        }
+        for (Dimension dimension : World.getLoadedDimensions()) saveLevel(dimension, name);
 
         // --- Saving Entities ---
         Collection<Entity> entities = EntityManager.getAllEntities();
@@ -124,15 +99,25 @@ public class WorldData {
         }
 
         // --- Saving the actual world info (info.ulw) ---
-        File main = worldPath.resolve("info.ulw").toFile();
-        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(main))) {
+        saveInfo(name, World.getSeed());
+    }
+
+    /**
+     * Writes the {@code info.ulw} of a world: its name, seed and version. The old file is replaced in one step.
+     */
+    public static void saveInfo(String name, long seed) throws IOException {
+        Path worldPath = Path.of("worlds", name);
+        Files.createDirectories(worldPath);
+        Path main = worldPath.resolve("info.ulw");
+        Path temporary = worldPath.resolve("info.ulw.tmp");
+        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(temporary.toFile()))) {
             // 1. World Name (Length-prefixed String)
             byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
             stream.writeInt(nameBytes.length);
             stream.write(nameBytes);
 
             // 2. World Seed (Assumed Long)
-            stream.writeLong(World.getSeed());
+            stream.writeLong(seed);
 
             // 3. Version (Length-prefixed String)
             String version = "1.0.0";
@@ -141,6 +126,22 @@ public class WorldData {
             stream.write(versionBytes);
             // TODO: MORE IMPORTANT INFO.
         }
+        Files.move(temporary, main, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The seed in the {@code info.ulw} of a world, the one its chunks were generated from, empty if the
+     * world has no such file yet
+     */
+    public static OptionalLong loadSeed(String name) throws IOException {
+        File main = Path.of("worlds", name, "info.ulw").toFile();
+        if (!main.exists()) return OptionalLong.empty();
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(main))) {
+            stream.skipNBytes(stream.readInt()); // The name
+            return OptionalLong.of(stream.readLong());
+        } catch (EOFException e) {
+            throw new IOException(main + " is truncated, the seed of the world is lost", e);
+        }
     }
 
     public static void load(Path path) throws IOException {
@@ -188,7 +189,7 @@ public class WorldData {
             gameData.dimensionRegistry = DimensionRegistry.getRegistry();
         }
 
-        // ---- 3. Loading Regions (FIXED logic to use ByteBuffer correctly) ----
+        // ---- 3. Loading Dimensions, not their chunks ----
         Path regionsPath = path.resolve("regions");
         if (Files.exists(regionsPath) && Files.isDirectory(regionsPath)) {
 
@@ -209,33 +210,7 @@ public class WorldData {
                     Dimension dim = gameData.dimensionRegistry.get(dimensionId);
                     if (dim == null) continue;
 
-                    // Find and Load all .ulr region files
-                    try (Stream<Path> regionStream = Files.list(dimensionDir)) {
-                        List<File> regionFiles = regionStream
-                                .filter(p -> p.getFileName().toString().endsWith(".ulr") && Files.isRegularFile(p))
-                                .map(Path::toFile)
-                                .toList();
-
-                        for (File file : regionFiles) {
-                            byte[] data = deserializer.deserialize(file);
-                            ByteBuffer rBuffer = ByteBuffer.wrap(data);
-
-                            // Read and ignore region coordinates (Consumed)
-                            rBuffer.getInt();
-                            rBuffer.getInt();
-
-                            if (!rBuffer.hasRemaining()) continue;
-
-                            int chunkCount = rBuffer.getInt(); // Read the count of chunks
-
-                            for (int i = 0; i < chunkCount; i++) {
-                                // ChunkData.unserialize must now accept and consume from the ByteBuffer
-                                ChunkData chunk = ChunkData.unserialize(rBuffer);
-                                // Added null check for robustness
-                                dim.getWorld().addChunk(chunk);
-                            }
-                        }
-                    }
+                    // The chunks stay on disk, they are read one by one when they are needed, see loadChunk
                     World.loadDimension(dim);
                 }
             }
@@ -335,8 +310,8 @@ public class WorldData {
     private static Vector2i convertToRegionPosition(Vector2i position) {
         // Converts global chunk position to the region grid position using floor division
         return new Vector2i(
-                Math.floorDiv(position.x, Region.SIZE),
-                Math.floorDiv(position.y, Region.SIZE)
+                Math.floorDiv(position.x, RegionFile.SIZE),
+                Math.floorDiv(position.y, RegionFile.SIZE)
         );
     }
 
@@ -346,88 +321,203 @@ public class WorldData {
         }
     }
 
-    public static void saveLevel(Dimension dimension, String name) {
-        // TODO: IMPLEMENT
+    /**
+     * Saves every loaded chunk of the dimension, the chunks already saved are kept.
+     */
+    public static void saveLevel(Dimension dimension, String name) throws IOException {
+        Set<Vector2i> regions = new HashSet<>();
+        for (ChunkData chunk : dimension.getWorld().getChunks()) regions.add(convertToRegionPosition(chunk.getPosition()));
+        saveRegions(dimension, name, regions);
     }
 
-    private static class Region {
-        protected ChunkData[] chunks;
-        // Use a SIZE constant for clarity
-        public static final int SIZE = 16; // 16x16 chunks per region
-        public static final int capacity = SIZE * SIZE;
-        protected Vector2i position;
+    /**
+     * Saves the loaded chunks of the regions that hold the given chunks, see {@link #saveChunks(Path, Collection)}.
+     */
+    public static void saveChunks(Dimension dimension, String name, Collection<ChunkPos> chunks) throws IOException {
+        Set<Vector2i> regions = new HashSet<>();
+        for (ChunkPos chunk : chunks) regions.add(convertToRegionPosition(new Vector2i(chunk.x(), chunk.z())));
+        saveRegions(dimension, name, regions);
+    }
+
+    /**
+     * @return The directory the regions of the dimension are saved in, {@code worlds/<name>/regions/DIM-<id>}
+     */
+    public static Path getLevelPath(Dimension dimension, String name) {
+        int dimId = DimensionRegistry.getRegistry().getId(dimension.getId());
+        return Path.of("worlds", name, "regions", "DIM-" + dimId);
+    }
 
-        public Region(Vector2i position) {
-            this.chunks = new ChunkData[capacity];
-            this.position = position;
+    private static void saveRegions(Dimension dimension, String name, Set<Vector2i> positions) throws IOException {
+        Path regionDir = getLevelPath(dimension, name);
+        Files.createDirectories(regionDir);
+
+        // Write Dimension ID to info.dat
+        try (DataOutputStream outStream = new DataOutputStream(new FileOutputStream(regionDir.resolve("info.dat").toFile()))) {
+            outStream.writeInt(DimensionRegistry.getRegistry().getId(dimension.getId()));
         }
 
-        protected byte[] serialize() {
-            List<ChunkData> actualChunks = Arrays.stream(chunks)
-                    .filter(Objects::nonNull)
-                    .toList();
-
-            // 1. Calculate the EXACT required size dynamically
-            int totalChunkBytes = 0;
-            // Pre-serialize all chunks to calculate total size and avoid re-serializing later
-            List<byte[]> serializedChunks = new ArrayList<>(actualChunks.size());
-            for (ChunkData chunk : actualChunks) {
-                // ChunkData.serialize() must now return a byte[] that includes its own
-                // local chunk position (e.g., 2 ints) so the deserializer knows where to place it.
-                byte[] c = chunk.serialize();
-                serializedChunks.add(c);
-                totalChunkBytes += c.length;
+        ServerProcedureGridMap map = dimension.getWorld();
+        List<ChunkData> chunks = new ArrayList<>();
+        for (Vector2i position : positions) {
+            for (int x = 0; x < RegionFile.SIZE; x++) {
+                for (int z = 0; z < RegionFile.SIZE; z++) {
+                    ChunkData chunk = map.getLoadedChunk(new ChunkPos(position.x * RegionFile.SIZE + x, position.y * RegionFile.SIZE + z));
+                    if (chunk != null) chunks.add(chunk);
+                }
             }
+        }
+        saveChunks(regionDir, chunks);
+    }
 
-            // Total size =
-            // 2 Integers for Region Position (X, Z) + 1 Integer for chunk count + total bytes from all serialized chunks
-            int totalSize = (3 * Integer.BYTES) + totalChunkBytes;
-
-            // Handle empty regions gracefully
-            if (actualChunks.isEmpty()) {
-                // If empty, return a buffer containing just the region coords and 0 chunk count
-                ByteBuffer emptyBuffer = ByteBuffer.allocate(3 * Integer.BYTES);
-                emptyBuffer.putInt(position.x);
-                emptyBuffer.putInt(position.y);
-                emptyBuffer.putInt(0); // chunk count is 0
-                return emptyBuffer.array();
-            }
+    /**
+     * Writes chunks into the region files in {@code regionDir}, compressed by {@link ChunkCodec}. Only their own sectors
+     * are touched, see {@link RegionFile}.
+     * A region file with more free sectors than used ones is compacted afterwards.
+     */
+    public static void saveChunks(Path regionDir, Collection<ChunkData> chunks) throws IOException {
+        Map<Vector2i, Map<ChunkPos, byte[]>> regions = new HashMap<>();
+        for (ChunkData chunk : chunks) {
+            regions.computeIfAbsent(convertToRegionPosition(chunk.getPosition()), p -> new HashMap<>())
+                    .put(new ChunkPos(chunk.getPosition().x, chunk.getPosition().y), ChunkCodec.encode(chunk));
+        }
 
-            ByteBuffer buffer = ByteBuffer.allocate(totalSize);
+        for (Map.Entry<Vector2i, Map<ChunkPos, byte[]>> entry : regions.entrySet()) {
+            Vector2i position = entry.getKey();
+            RegionFile file = getRegionFile(regionDir, position);
+            file.write(entry.getValue());
 
-            // 2. Put Region metadata
-            buffer.putInt(position.x);
-            buffer.putInt(position.y);
-            buffer.putInt(actualChunks.size());
+            int free = file.getFreeSectors();
+            if (free > COMPACT_MIN_FREE_SECTORS && free * 2 > file.getSectorCount()) file.compact();
+            used(file);
+        }
+    }
 
-            // 3. Put Chunk data
-            for (byte[] c : serializedChunks) {
-                buffer.put(c);
-            }
+    /**
+     * Reads one chunk back from the region files in {@code regionDir}, without its light. Only the sectors of the
+     * chunk are read.
+     * @return The chunk, {@code null} if it was never saved there
+     */
+    public static ChunkData loadChunk(Path regionDir, ChunkPos pos) throws IOException {
+        Vector2i position = convertToRegionPosition(new Vector2i(pos.x(), pos.z()));
+        RegionFile file = getRegionFile(regionDir, position);
+        ByteBuffer data = file.read(pos.x(), pos.z());
+        used(file);
+        if (data == null) return null;
+        try {
+            return ChunkCodec.decode(data);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Chunk " + pos + " in " + file.getPath() + " is corrupt", e);
+        }
+    }
+
+    /**
+     * @return Whether the chunk was saved into the region files in {@code regionDir}. Reads the header of its region
+     * at most.
+     */
+    public static boolean hasChunk(Path regionDir, ChunkPos pos) throws IOException {
+        Vector2i position = convertToRegionPosition(new Vector2i(pos.x(), pos.z()));
+        RegionFile file = getRegionFile(regionDir, position);
+        boolean saved = file.has(pos.x(), pos.z());
+        used(file);
+        return saved;
+    }
 
-            return buffer.array();
+    /**
+     * Compacts every region file in {@code regionDir}, see {@link RegionFile#compact()}.
+     */
+    public static void compactRegions(Path regionDir) throws IOException {
+        if (!Files.isDirectory(regionDir)) return;
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(regionDir)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(RegionFile.EXTENSION)).toList();
+        }
+        for (Path path : files) {
+            RegionFile file = findRegionFile(path);
+            if (file != null) file.compact();
         }
+    }
 
-        public void put(ChunkData chunk) {
-            chunks[getIndex(conventToRegion(chunk.getPosition()))] = chunk;
+    /**
+     * Closes every region file that is open, they open again when they are used.
+     */
+    public static void closeRegions() throws IOException {
+        List<RegionFile> files;
+        synchronized (openRegions) {
+            files = new ArrayList<>(openRegions.keySet());
+            openRegions.clear();
         }
+        for (RegionFile file : files) file.close();
+    }
 
-        private Vector2i conventToRegion(Vector2i position) {
-            // Converts global chunk position to local position (0-15) within the region.
-            // Using the assumed CHUNK_SIZE
-            int localX = Math.floorMod(position.x, CHUNK_SIZE);
-            int localZ = Math.floorMod(position.y, CHUNK_SIZE);
-            return new Vector2i(localX, localZ);
+    // One instance per file for as long as the game runs, so two threads never write one file through two of them
+    private static RegionFile getRegionFile(Path regionDir, Vector2i position) throws IOException {
+        Path path = RegionFile.getPath(regionDir, position.x, position.y).toAbsolutePath();
+        RegionFile file;
+        synchronized (regionFiles) {
+            file = regionFiles.computeIfAbsent(path, p -> new RegionFile(p, position.x, position.y));
         }
+        convertLegacyRegion(regionDir, position, file);
+        return file;
+    }
 
-        private int getIndex(Vector2i position) {
-            return getIndex(position.x, position.y);
+    // Moves the chunks of a region file of the old format into the new one, the first time the region is used
+    private static void convertLegacyRegion(Path regionDir, Vector2i position, RegionFile file) throws IOException {
+        Path legacy = regionDir.resolve("region-" + VectorMath.toStringAsId(position) + ".ulr");
+        synchronized (file) {
+            if (!Files.exists(legacy)) return;
+            Map<ChunkPos, byte[]> chunks = readLegacyRegion(legacy);
+            chunks.keySet().removeIf(pos -> {
+                try {
+                    return file.has(pos.x(), pos.z());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            file.write(chunks);
+            Files.delete(legacy);
         }
+    }
+
+    // For a file found on disk, by the position in its name
+    private static RegionFile findRegionFile(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        String[] parts = name.substring("region-".length(), name.length() - RegionFile.EXTENSION.length()).split("(?<=\\d)-");
+        if (parts.length != 2) return null;
+        return getRegionFile(path.getParent(), new Vector2i(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+    }
 
-        private int getIndex(int x, int y) {
-            // Assumes SIZE is the width (16) of the region grid
-            return (y * SIZE) + x;
+    // Keeps at most MAX_OPEN_REGIONS files open, the least recently used is closed. No file lock may be held.
+    private static void used(RegionFile file) throws IOException {
+        RegionFile eldest = null;
+        synchronized (openRegions) {
+            openRegions.put(file, Boolean.TRUE);
+            if (openRegions.size() > MAX_OPEN_REGIONS) {
+                Iterator<RegionFile> iterator = openRegions.keySet().iterator();
+                eldest = iterator.next();
+                iterator.remove();
+            }
+        }
+        if (eldest != null) eldest.close();
+    }
+
+    /**
+     * Reads a region file of the old format: the region position, the chunk count, then every chunk as
+     * {@link ChunkData#serialize()} writes it. The chunks come back compressed, ready for a {@link RegionFile}.
+     */
+    private static Map<ChunkPos, byte[]> readLegacyRegion(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        buffer.position(2 * Integer.BYTES);
+        int count = buffer.getInt();
+        Map<ChunkPos, byte[]> chunks = new HashMap<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                ChunkData chunk = ChunkData.unserialize(buffer);
+                chunks.put(new ChunkPos(chunk.getPosition().x, chunk.getPosition().y), ChunkCodec.encode(chunk));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
         }
+        return chunks;
     }
 
     private static class RegistryDeserializer {
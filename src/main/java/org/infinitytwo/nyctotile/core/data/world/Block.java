@@ -8,7 +8,7 @@ import org.joml.Vector3i;
 public class Block {
     protected Vector3i position = new Vector3i();
     private final BlockType type;
-    protected Light light;
+    protected Light light = new Light();
 
     public Block(BlockType type) {
         this.type = type;
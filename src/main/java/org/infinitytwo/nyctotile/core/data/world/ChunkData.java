@@ -1,8 +1,6 @@
 package org.infinitytwo.nyctotile.core.data.world;
 
 import org.infinitytwo.nyctotile.core.data.Light;
-import org.infinitytwo.nyctotile.core.data.buffer.IntPacker;
-import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.exception.IllegalChunkAccessException;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
@@ -11,9 +9,9 @@ import org.infinitytwo.nyctotile.core.world.GridMap;
 import org.joml.Vector2i;
 import org.joml.Vector3i;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,36 +23,42 @@ public class ChunkData {
     public static final int SIZE_Y = 128;
     public static final int SIZE_X = SIZE;
     public static final int SIZE_Z = SIZE;
+    public static final int VOLUME = SIZE * SIZE_Y * SIZE;
     
-    private static final String RED = "red";
-    private static final String GREEN = "green";
-    private static final String BLUE = "blue";
-    private static final String LIGHT_LEVEL = "level";
+    public static final int SECTION_SIZE = 16;
+    public static final int SECTION_COUNT = SIZE_Y / SECTION_SIZE;
+    public static final int SECTION_VOLUME = SIZE * SECTION_SIZE * SIZE;
+    public static final int ALL_SECTIONS = (1 << SECTION_COUNT) - 1;
     
     protected transient GridMap map;
     protected Vector2i position;
-    protected volatile int[] blocks = new int[SIZE * SIZE_Y * SIZE];
-    protected volatile int[] lights = new int[SIZE * SIZE_Y * SIZE];
-    protected final IntPacker packer = new IntPacker();
+    /**
+     * 16x16x16 sections from the bottom up. A {@code null} section is all air, so the empty sky above
+     * the terrain costs nothing to store, serialize or mesh.
+     */
+    protected final PalettedStorage[] sections = new PalettedStorage[SECTION_COUNT];
+    private final int[] sectionBlockCounts = new int[SECTION_COUNT];
+    /**
+     * {@link PackedLight} values, indexed like the blocks. Reads take no lock, a value is one int so it is
+     * never seen half written. Writers hold the chunk's monitor and make {@link #lightSequence} odd while
+     * they write, so bulk reads can tell they raced a write and try again (a seqlock).
+     */
+    private final int[] lights = new int[VOLUME];
+    private volatile int lightSequence;
+    // Per column, the y above the highest block (0 for an empty column), indexed x * SIZE + z. Guarded by sections.
+    protected final int[] heightmap = new int[SIZE * SIZE];
+    // Bumped by every block write that changes something, under the sections lock
+    private volatile int blockVersion;
     
     private final Map<Vector3i, byte[]> blockData = new HashMap<>();
     
     public ChunkData(ChunkPos chunkPos) {
         this.position = new Vector2i();
         position.set(chunkPos.x(), chunkPos.z());
-        init();
     }
     
     public ChunkData(Vector2i pos) {
         this.position = pos;
-        init();
-    }
-    
-    private void init() {
-        packer.register(RED, 8);
-        packer.register(GREEN, 8);
-        packer.register(BLUE, 8);
-        packer.register(LIGHT_LEVEL, 4);
     }
     
     public static ChunkData of(byte[] data) throws IOException {
@@ -63,7 +67,7 @@ public class ChunkData {
     
     public static ChunkData of(int chunkX, int chunkZ, int[] blocks) {
         ChunkData data = new ChunkData(new Vector2i(chunkX, chunkZ));
-        data.blocks = blocks;
+        data.modify(blocks);
         return data;
     }
     
@@ -89,112 +93,253 @@ public class ChunkData {
             throw new IllegalChunkAccessException("Position (" + pos.x + ", " + pos.y + ", " + pos.z + ") is out of bounds");
     }
     
-    public synchronized int getLightLevel(int x, int y, int z) {
-        return packer.getValue(lights[getIndex(x, y, z)], LIGHT_LEVEL);
+    public int getLightLevel(int x, int y, int z) {
+        return PackedLight.level(lights[getIndex(x, y, z)]);
+    }
+    
+    public int getRed(int x, int y, int z) {
+        return PackedLight.red(lights[getIndex(x, y, z)]);
+    }
+    
+    public int getGreen(int x, int y, int z) {
+        return PackedLight.green(lights[getIndex(x, y, z)]);
     }
     
-    public synchronized int getRed(int x, int y, int z) {
-        return packer.getValue(lights[getIndex(x, y, z)], RED);
+    public int getBlue(int x, int y, int z) {
+        return PackedLight.blue(lights[getIndex(x, y, z)]);
     }
     
-    public synchronized int getGreen(int x, int y, int z) {
-        return packer.getValue(lights[getIndex(x, y, z)], GREEN);
+    /**
+     * @return The whole light value at a position, see {@link PackedLight}.
+     */
+    public int getPackedLight(int x, int y, int z) {
+        return lights[getIndex(x, y, z)];
     }
     
-    public synchronized int getBlue(int x, int y, int z) {
-        return packer.getValue(lights[getIndex(x, y, z)], BLUE);
+    /**
+     * Writes a whole light value without marking anything dirty. For the {@link org.infinitytwo.nyctotile.core.manager.LightingEngine},
+     * which marks every chunk it touched once at the end of a batch.
+     */
+    public synchronized void putPackedLight(int x, int y, int z, int light) {
+        writeLight(getIndex(x, y, z), light);
     }
     
     public synchronized void setLightLevel(int x, int y, int z, int lightLevel) {
-        lights[getIndex(x, y, z)] = packer.setValue(lights[getIndex(x, y, z)], LIGHT_LEVEL, lightLevel);
+        int index = getIndex(x, y, z);
+        writeLight(index, PackedLight.withLevel(lights[index], lightLevel));
     }
     
     public synchronized void setRed(int x, int y, int z, int red) {
-        lights[getIndex(x, y, z)] = packer.setValue(lights[getIndex(x, y, z)], RED, red);
+        int index = getIndex(x, y, z);
+        writeLight(index, PackedLight.withRed(lights[index], red));
     }
     
     public synchronized void setGreen(int x, int y, int z, int green) {
-        lights[getIndex(x, y, z)] = packer.setValue(lights[getIndex(x, y, z)], GREEN, green);
+        int index = getIndex(x, y, z);
+        writeLight(index, PackedLight.withGreen(lights[index], green));
     }
     
     public synchronized void setBlue(int x, int y, int z, int blue) {
-        lights[getIndex(x, y, z)] = packer.setValue(lights[getIndex(x, y, z)], BLUE, blue);
+        int index = getIndex(x, y, z);
+        writeLight(index, PackedLight.withBlue(lights[index], blue));
+    }
+    
+    /**
+     * Copies the light of one section into {@code dest}, indexed {@code (x * SECTION_SIZE * SIZE) + ((y & 15) * SIZE) + z}.
+     * No write to the chunk lands halfway through the copy.
+     */
+    public void getLights(int section, int[] dest) {
+        int baseY = section * SECTION_SIZE;
+        readLights(() -> {
+            // For one x the rows of a section are next to each other
+            for (int x = 0; x < SIZE; x++) {
+                System.arraycopy(lights, getIndex(x, baseY, 0), dest, x * SECTION_SIZE * SIZE, SECTION_SIZE * SIZE);
+            }
+        });
+    }
+    
+    /**
+     * Copies the light of the whole chunk into {@code dest}, indexed like {@link #getBlockIds()}.
+     * No write to the chunk lands halfway through the copy.
+     */
+    public void getLights(int[] dest) {
+        readLights(() -> System.arraycopy(lights, 0, dest, 0, VOLUME));
+    }
+    
+    /**
+     * Replaces the light of the whole chunk, {@code source} is indexed like {@link #getBlockIds()}.
+     * Does not mark anything dirty.
+     */
+    public synchronized void setLights(int[] source) {
+        beginLightWrite();
+        System.arraycopy(source, 0, lights, 0, VOLUME);
+        lightSequence++;
+    }
+    
+    // Holding the monitor
+    private void writeLight(int index, int light) {
+        beginLightWrite();
+        lights[index] = light;
+        lightSequence++;
+    }
+    
+    private void beginLightWrite() {
+        lightSequence++;
+        VarHandle.releaseFence(); // The odd sequence is visible before any of the light
+    }
+    
+    private void readLights(Runnable copy) {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int sequence = lightSequence;
+            if ((sequence & 1) == 0) {
+                copy.run();
+                VarHandle.acquireFence(); // The copy is done before the sequence is checked again
+                if (sequence == lightSequence) return;
+            }
+            Thread.onSpinWait();
+        }
+        // A steady stream of writes, wait for them instead
+        synchronized (this) {
+            copy.run();
+        }
     }
     
     public static ChunkData unserialize(byte[] data) throws IOException {
-        ByteArrayInputStream arrayInputStream = new ByteArrayInputStream(data);
-        DataInputStream inStream = new DataInputStream(arrayInputStream);
-        
-        int x = inStream.readInt();
-        int y = inStream.readInt();
-        
-        ChunkData chunk = new ChunkData(new Vector2i(x, y));
-        NIntBuffer buffer = new NIntBuffer();
-        
-        for (int i = 0; i < buffer.capacity(); i++) {
-            buffer.put(inStream.readInt());
+        try {
+            return unserialize(ByteBuffer.wrap(data));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Chunk data is truncated (" + data.length + " bytes)", e);
         }
-        
-        chunk.blocks = buffer.array();
-        buffer.cleanup();
-        
-        return chunk;
     }
     
+    /**
+     * Reads a chunk written by {@link #serialize()} and leaves {@code data} positioned right after it.
+     */
     public static ChunkData unserialize(ByteBuffer data) {
         int x = data.getInt(), y = data.getInt();
+        int mask = data.getInt();
         
         ChunkData chunk = new ChunkData(new Vector2i(x, y));
-        NIntBuffer buffer = new NIntBuffer();
+        int[] section = new int[SECTION_VOLUME];
         
-        for (int i = 0; i < buffer.capacity(); i++) {
-            buffer.put(data.getInt());
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            if ((mask & (1 << i)) == 0) continue;
+            for (int j = 0; j < SECTION_VOLUME; j++) section[j] = data.getInt();
+            chunk.setSection(i, section);
         }
-        
-        chunk.blocks = buffer.array();
-        buffer.cleanup();
+        chunk.updateHeightmap();
         
         return chunk;
     }
     
     public Chunk createChunk(TextureAtlas atlas, BlockRegistry registry) {
         Chunk chunk = new Chunk(position, atlas, map, registry);
-        for (int x = 0; x < SIZE; x++) {
-            for (int y = 0; y < SIZE_Y; y++) {
-                for (int z = 0; z < SIZE; z++) {
-                    int id = blocks[getIndex(x, y, z)];
-                    if (id != 0) { // assuming 0 = air or empty
-                        try {
-                            chunk.setBlock(x, y, z, id, false);
-                        } catch (IllegalChunkAccessException ignored) {
-                        
-                        }
-                    }
-                }
-            }
-        }
+        chunk.copyBlocks(this);
+        chunk.copyLights(this);
         chunk.dirty();
         return chunk;
     }
     
     public void setBlock(int x, int y, int z, int blockId) throws IllegalChunkAccessException {
         if (isInBounds(x, y, z)) {
-            blocks[getIndex(x, y, z)] = blockId;
+            putBlock(x, y, z, blockId);
         } else {
             throw new IllegalChunkAccessException("Block position out of chunk bounds (" + x + ", " + y + ", " + z + ")");
         }
     }
     
+    /**
+     * Writes a block without the bounds check, creating or dropping the section as needed.
+     * @return {@code true} if the stored id actually changed.
+     */
+    protected boolean putBlock(int x, int y, int z, int blockId) {
+        int index = y >> 4;
+        int local = getSectionIndex(x, y, z);
+        
+        synchronized (sections) {
+            PalettedStorage section = sections[index];
+            if (section == null) {
+                if (blockId == 0) return false;
+                section = sections[index] = new PalettedStorage(SECTION_VOLUME);
+            }
+            
+            int old = section.get(local);
+            if (old == blockId) return false;
+            section.set(local, blockId);
+            
+            blockVersion++;
+            if (old == 0) sectionBlockCounts[index]++;
+            else if (blockId == 0 && --sectionBlockCounts[index] == 0) sections[index] = null;
+            
+            int column = x * SIZE + z;
+            if (blockId != 0) {
+                if (y >= heightmap[column]) heightmap[column] = y + 1;
+            } else if (y == heightmap[column] - 1) {
+                heightmap[column] = scanHeight(x, y, z);
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * @return The y above the highest block at or below {@code fromY} in a column. Holds the sections lock.
+     */
+    private int scanHeight(int x, int fromY, int z) {
+        for (int y = fromY; y >= 0; y--) {
+            if (getBlockId(x, y, z) != 0) return y + 1;
+        }
+        return 0;
+    }
+    
+    private void updateHeightmap() {
+        synchronized (sections) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int z = 0; z < SIZE; z++) heightmap[x * SIZE + z] = scanHeight(x, SIZE_Y - 1, z);
+            }
+        }
+    }
+    
+    /**
+     * @return The y right above the highest block in a column, 0 if the column is empty. Everything
+     * from there up is open to the sky.
+     */
+    public int getHeight(int x, int z) {
+        return heightmap[x * SIZE + z];
+    }
+    
     private int getIndex(int x, int y, int z) {
         return (x * SIZE_Y * SIZE) + (y * SIZE) + z;
     }
     
+    private static int getSectionIndex(int x, int y, int z) {
+        return (x * SECTION_SIZE * SIZE) + ((y & (SECTION_SIZE - 1)) * SIZE) + z;
+    }
+    
+    private void setSection(int index, int[] blocks) {
+        int count = 0;
+        for (int id : blocks) if (id != 0) count++;
+        
+        synchronized (sections) {
+            blockVersion++;
+            sectionBlockCounts[index] = count;
+            if (count == 0) {
+                sections[index] = null;
+            } else {
+                PalettedStorage section = new PalettedStorage(SECTION_VOLUME);
+                section.setAll(blocks);
+                sections[index] = section;
+            }
+        }
+    }
+    
     private boolean isInBounds(int x, int y, int z) {
         return x >= 0 && x < SIZE && y >= 0 && y < SIZE_Y && z >= 0 && z < SIZE;
     }
     
     public int getBlockId(int x, int y, int z) {
-        return isInBounds(x, y, z)? blocks[getIndex(x, y, z)] : 0;
+        if (!isInBounds(x, y, z)) return 0;
+        PalettedStorage section = sections[y >> 4];
+        return section == null ? 0 : section.get(getSectionIndex(x, y, z));
     }
     
     public void setBlock(Vector3i pos, int id) throws IllegalChunkAccessException {
@@ -205,31 +350,136 @@ public class ChunkData {
         return position;
     }
     
+    /**
+     * Unpacks the sections into a flat array of the whole column, indexed
+     * {@code (x * SIZE_Y * SIZE) + (y * SIZE) + z}. This is a fresh copy, writing into it does not
+     * touch the chunk. Use {@link #modify(int[])} to write a full array back.
+     */
     public int[] getBlockIds() {
+        int[] blocks = new int[VOLUME];
+        int[] section = new int[SECTION_VOLUME];
+        
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            PalettedStorage storage = sections[i];
+            if (storage == null) continue;
+            storage.toArray(section);
+            
+            int baseY = i * SECTION_SIZE;
+            for (int x = 0; x < SIZE; x++) {
+                System.arraycopy(section, x * SECTION_SIZE * SIZE, blocks, getIndex(x, baseY, 0), SECTION_SIZE * SIZE);
+            }
+        }
         return blocks;
     }
     
     public void modify(int[] blocks) {
-        System.arraycopy(blocks, 0, this.blocks, 0, blocks.length);
+        int[] section = new int[SECTION_VOLUME];
+        
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            int baseY = i * SECTION_SIZE;
+            for (int x = 0; x < SIZE; x++) {
+                System.arraycopy(blocks, getIndex(x, baseY, 0), section, x * SECTION_SIZE * SIZE, SECTION_SIZE * SIZE);
+            }
+            setSection(i, section);
+        }
+        updateHeightmap();
+    }
+    
+    /**
+     * Copies the blocks of {@code source} into this chunk without unpacking them.
+     */
+    public void copyBlocks(ChunkData source) {
+        PalettedStorage[] copies = new PalettedStorage[SECTION_COUNT];
+        int[] counts, heights;
+        synchronized (source.sections) {
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                PalettedStorage section = source.sections[i];
+                copies[i] = section == null ? null : section.copy();
+            }
+            counts = source.sectionBlockCounts.clone();
+            heights = source.heightmap.clone();
+        }
+        
+        synchronized (sections) {
+            blockVersion++;
+            System.arraycopy(copies, 0, sections, 0, SECTION_COUNT);
+            System.arraycopy(counts, 0, sectionBlockCounts, 0, SECTION_COUNT);
+            System.arraycopy(heights, 0, heightmap, 0, heights.length);
+        }
+    }
+    
+    /**
+     * Copies the light of {@code source} into this chunk, without marking anything dirty.
+     */
+    public void copyLights(ChunkData source) {
+        int[] copy = new int[VOLUME];
+        source.getLights(copy);
+        setLights(copy);
+    }
+    
+    /**
+     * @return The storage of a 16x16x16 section, or {@code null} if it is all air.
+     */
+    public PalettedStorage getSection(int index) {
+        return sections[index];
+    }
+    
+    public boolean isSectionEmpty(int index) {
+        return sections[index] == null;
+    }
+    
+    /**
+     * @return A number that changes whenever a block of the chunk does, to tell whether a saved copy is stale.
+     */
+    public int getBlockVersion() {
+        return blockVersion;
+    }
+    
+    /**
+     * A rough estimate of the heap bytes the chunk holds on to: the block sections, the light and the height map.
+     */
+    public long estimateMemory() {
+        long bytes = 16 + (long) VOLUME * Integer.BYTES + 16 + (long) heightmap.length * Integer.BYTES;
+        for (PalettedStorage section : sections) {
+            if (section != null) bytes += section.estimateMemory();
+        }
+        return bytes;
+    }
+    
+    /**
+     * @return A bit mask with bit {@code i} set when section {@code i} has any blocks.
+     */
+    public int getSectionMask() {
+        int mask = 0;
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            if (sections[i] != null) mask |= 1 << i;
+        }
+        return mask;
     }
     
+    /**
+     * Layout: chunk x, chunk z, section mask, then {@link #SECTION_VOLUME} ints for every section
+     * in the mask (bottom first). Empty sections are not written at all.
+     */
     public byte[] serialize() {
-        ByteBuffer buffer = ByteBuffer.allocate((Integer.BYTES * (2 + blocks.length)));
+        int mask = getSectionMask();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (3 + Integer.bitCount(mask) * SECTION_VOLUME));
         buffer.putInt(position.x);
         buffer.putInt(position.y);
+        buffer.putInt(mask);
         
-        for (int b : blocks) {
-            buffer.putInt(b);
+        int[] section = new int[SECTION_VOLUME];
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            if ((mask & (1 << i)) == 0) continue;
+            sections[i].toArray(section);
+            for (int b : section) buffer.putInt(b);
         }
         
         return buffer.array();
     }
     
     public synchronized void setLight(int x, int y, int z, int r, int g, int b, int level) {
-        setRed(x, y, z, r);
-        setGreen(x, y, z, g);
-        setBlue(x, y, z, b);
-        setLightLevel(x, y, z, level);
+        writeLight(getIndex(x, y, z), PackedLight.pack(r, g, b, level));
     }
     
     public void setLight(int x, int y, int z, Light light) {
@@ -261,7 +511,7 @@ public class ChunkData {
     }
     
     public void setLight(Vector3i position, int r, int g, int b, int level) {
-        setLight(position.x, getPosition().y, position.z, r, g, b, level);
+        setLight(position.x, position.y, position.z, r, g, b, level);
     }
     
     public void setRed(Vector3i pos, int red) {
@@ -0,0 +1,66 @@
+package org.infinitytwo.nyctotile.core.data.world;
+
+/**
+ * The light value of one block, packed into an int the way {@link ChunkData} stores it:
+ * <pre>
+ *  bits  0 -  7  red   (0 - 255)
+ *  bits  8 - 15  green (0 - 255)
+ *  bits 16 - 23  blue  (0 - 255)
+ *  bits 24 - 27  level (0 - 15)
+ * </pre>
+ * A whole value is one int, so it is always read and written in one piece.
+ */
+public final class PackedLight {
+    public static final int RED_SHIFT = 0;
+    public static final int GREEN_SHIFT = 8;
+    public static final int BLUE_SHIFT = 16;
+    public static final int LEVEL_SHIFT = 24;
+    public static final int CHANNEL_MASK = 0xFF;
+    public static final int LEVEL_MASK = 0xF;
+    public static final int COLOR_MASK = 0xFFFFFF;
+    public static final int MAX_LEVEL = 15;
+
+    private PackedLight() {}
+
+    public static int pack(int red, int green, int blue, int level) {
+        return (red & CHANNEL_MASK) << RED_SHIFT
+                | (green & CHANNEL_MASK) << GREEN_SHIFT
+                | (blue & CHANNEL_MASK) << BLUE_SHIFT
+                | (level & LEVEL_MASK) << LEVEL_SHIFT;
+    }
+
+    public static int red(int light) {
+        return light >>> RED_SHIFT & CHANNEL_MASK;
+    }
+
+    public static int green(int light) {
+        return light >>> GREEN_SHIFT & CHANNEL_MASK;
+    }
+
+    public static int blue(int light) {
+        return light >>> BLUE_SHIFT & CHANNEL_MASK;
+    }
+
+    public static int level(int light) {
+        return light >>> LEVEL_SHIFT & LEVEL_MASK;
+    }
+
+    /**
+     * @return {@code light} with the same colour and a different level
+     */
+    public static int withLevel(int light, int level) {
+        return light & COLOR_MASK | (level & LEVEL_MASK) << LEVEL_SHIFT;
+    }
+
+    public static int withRed(int light, int red) {
+        return light & ~(CHANNEL_MASK << RED_SHIFT) | (red & CHANNEL_MASK) << RED_SHIFT;
+    }
+
+    public static int withGreen(int light, int green) {
+        return light & ~(CHANNEL_MASK << GREEN_SHIFT) | (green & CHANNEL_MASK) << GREEN_SHIFT;
+    }
+
+    public static int withBlue(int light, int blue) {
+        return light & ~(CHANNEL_MASK << BLUE_SHIFT) | (blue & CHANNEL_MASK) << BLUE_SHIFT;
+    }
+}
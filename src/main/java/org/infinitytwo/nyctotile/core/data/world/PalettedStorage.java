@@ -0,0 +1,270 @@
+package org.infinitytwo.nyctotile.core.data.world;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size int storage that keeps a palette of the distinct values it holds and
+ * stores every entry as a bit-packed index into that palette.
+ * <br><br>
+ * A freshly created storage holds only {@code 0} (air) and uses no data array at all.
+ * The bits per entry grow (1, 2, 3 ... {@link #MAX_PALETTE_BITS}) as new values get
+ * written, and once the palette would need more than {@link #MAX_PALETTE_BITS} bits
+ * the storage falls back to a plain {@code int[]} (direct mode).
+ * <br><br>
+ * Entries never straddle two longs, which wastes a few bits for 3, 5, 6 and 7 bit
+ * palettes but keeps {@link #get(int)} a single shift and mask.
+ * <br><br>
+ * [ Threading ]<br>
+ * Reads do not lock. All the layout fields live in one immutable-shaped {@code State}
+ * that is swapped atomically on resize, so a reader always sees a matching
+ * palette/data pair. Writes are synchronized so concurrent writers can't lose
+ * a palette entry.
+ */
+public final class PalettedStorage {
+    /**
+     * The largest bits per entry the palette mode uses. Anything above this
+     * (more than 256 distinct ids) switches to direct mode.
+     */
+    public static final int MAX_PALETTE_BITS = 8;
+
+    private final int size;
+    private volatile State state;
+
+    private static final class State {
+        final int bits;
+        final int perLong;
+        final long mask;
+        final int[] palette;
+        final int paletteSize;
+        final long[] data;
+        final int[] direct;
+
+        State(int bits, int[] palette, int paletteSize, long[] data, int[] direct) {
+            this.bits = bits;
+            this.perLong = bits == 0 ? 0 : 64 / bits;
+            this.mask = (1L << bits) - 1;
+            this.palette = palette;
+            this.paletteSize = paletteSize;
+            this.data = data;
+            this.direct = direct;
+        }
+    }
+
+    public PalettedStorage(int size) {
+        this.size = size;
+        this.state = new State(0, new int[]{0}, 1, null, null);
+    }
+
+    private PalettedStorage(int size, State state) {
+        this.size = size;
+        this.state = state;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        State s = state;
+        if (s.direct != null) return s.direct[index];
+        if (s.bits == 0) return s.palette[0];
+
+        long word = s.data[index / s.perLong];
+        int shift = (index % s.perLong) * s.bits;
+        return s.palette[(int) ((word >>> shift) & s.mask)];
+    }
+
+    public synchronized void set(int index, int value) {
+        State s = state;
+        if (s.direct != null) {
+            s.direct[index] = value;
+            return;
+        }
+
+        int paletteIndex = indexOf(s, value);
+        if (paletteIndex < 0) {
+            s = grow(s, value);
+            if (s.direct != null) {
+                s.direct[index] = value;
+                return;
+            }
+            paletteIndex = s.paletteSize - 1;
+        }
+
+        if (s.bits == 0) return; // single value and it's the one we wanted
+        write(s, index, paletteIndex);
+    }
+
+    /**
+     * Replaces the whole content with {@code values}. The palette is rebuilt from
+     * scratch so stale ids from earlier contents don't keep the entries wide.
+     */
+    public synchronized void setAll(int[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " values but got " + values.length);
+        }
+
+        int[] palette = new int[4];
+        int paletteSize = 0;
+
+        for (int value : values) {
+            if (indexOf(palette, paletteSize, value) >= 0) continue;
+            if (paletteSize == 1 << MAX_PALETTE_BITS) {
+                state = new State(32, null, 0, null, values.clone());
+                return;
+            }
+            if (paletteSize == palette.length) palette = Arrays.copyOf(palette, palette.length * 2);
+            palette[paletteSize++] = value;
+        }
+
+        int bits = bitsFor(paletteSize);
+        if (bits == 0) {
+            state = new State(0, new int[]{palette[0]}, 1, null, null);
+            return;
+        }
+
+        State s = new State(bits, palette, paletteSize, new long[longsFor(bits)], null);
+        for (int i = 0; i < size; i++) {
+            write(s, i, indexOf(s, values[i]));
+        }
+        state = s;
+    }
+
+    public synchronized void copyFrom(PalettedStorage other) {
+        if (other.size != size) {
+            throw new IllegalArgumentException("Expected a storage of " + size + " entries but got " + other.size);
+        }
+        state = other.copy().state;
+    }
+
+    public int[] toArray() {
+        int[] out = new int[size];
+        toArray(out);
+        return out;
+    }
+
+    public void toArray(int[] out) {
+        State s = state;
+        if (s.direct != null) {
+            System.arraycopy(s.direct, 0, out, 0, size);
+            return;
+        }
+        if (s.bits == 0) {
+            Arrays.fill(out, 0, size, s.palette[0]);
+            return;
+        }
+
+        int i = 0;
+        for (long word : s.data) {
+            for (int j = 0; j < s.perLong && i < size; j++, i++) {
+                out[i] = s.palette[(int) ((word >>> (j * s.bits)) & s.mask)];
+            }
+        }
+    }
+
+    public synchronized PalettedStorage copy() {
+        State s = state;
+        return new PalettedStorage(size, new State(
+                s.bits,
+                s.palette == null ? null : s.palette.clone(),
+                s.paletteSize,
+                s.data == null ? null : s.data.clone(),
+                s.direct == null ? null : s.direct.clone()
+        ));
+    }
+
+    /**
+     * @return {@code true} if every entry holds the same value (for example a chunk that is all air).
+     */
+    public boolean isUniform() {
+        return state.bits == 0;
+    }
+
+    public boolean isDirect() {
+        return state.direct != null;
+    }
+
+    public int getBitsPerEntry() {
+        return state.bits;
+    }
+
+    public int getPaletteSize() {
+        State s = state;
+        return s.direct != null ? -1 : s.paletteSize;
+    }
+
+    /**
+     * A rough estimate of the heap bytes this storage holds on to (arrays and headers),
+     * used by the debug benchmarks. Assumes 16 byte array headers and compressed oops.
+     */
+    public long estimateMemory() {
+        State s = state;
+        long bytes = 16 + 16 + 48; // this, the State and its fields
+        if (s.direct != null) return bytes + 16 + (long) s.direct.length * Integer.BYTES;
+        bytes += 16 + (long) s.palette.length * Integer.BYTES;
+        if (s.data != null) bytes += 16 + (long) s.data.length * Long.BYTES;
+        return bytes;
+    }
+
+    private State grow(State s, int value) {
+        int paletteSize = s.paletteSize + 1;
+        int bits = bitsFor(paletteSize);
+
+        if (bits > MAX_PALETTE_BITS) {
+            int[] direct = new int[size];
+            toArray(direct);
+            State next = new State(32, null, 0, null, direct);
+            state = next;
+            return next;
+        }
+
+        int[] palette = s.palette.length >= paletteSize ? s.palette : Arrays.copyOf(s.palette, Math.max(4, s.palette.length * 2));
+        palette[paletteSize - 1] = value;
+
+        State next;
+        if (bits == s.bits) {
+            // Same width, the new entry just takes a free slot. The palette array may be shared
+            // with the old State but readers never look past paletteSize so that's fine.
+            next = new State(bits, palette, paletteSize, s.data, null);
+        } else {
+            next = new State(bits, palette, paletteSize, new long[longsFor(bits)], null);
+            if (s.bits != 0) {
+                for (int i = 0; i < size; i++) {
+                    long word = s.data[i / s.perLong];
+                    write(next, i, (int) ((word >>> ((i % s.perLong) * s.bits)) & s.mask));
+                }
+            }
+            // bits == 0 means everything was palette[0], which is index 0 in the zeroed array already
+        }
+
+        state = next;
+        return next;
+    }
+
+    private static void write(State s, int index, int paletteIndex) {
+        int longIndex = index / s.perLong;
+        int shift = (index % s.perLong) * s.bits;
+        s.data[longIndex] = (s.data[longIndex] & ~(s.mask << shift)) | ((long) paletteIndex << shift);
+    }
+
+    private int longsFor(int bits) {
+        int perLong = 64 / bits;
+        return (size + perLong - 1) / perLong;
+    }
+
+    private static int indexOf(State s, int value) {
+        return indexOf(s.palette, s.paletteSize, value);
+    }
+
+    private static int indexOf(int[] palette, int paletteSize, int value) {
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static int bitsFor(int paletteSize) {
+        if (paletteSize <= 1) return 0;
+        return 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+}
@@ -0,0 +1,141 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.CaveCarver;
+import org.infinitytwo.nyctotile.core.world.generation.GenerationPipeline;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+
+import java.util.Arrays;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless check for the {@link CaveCarver} running in the {@link GenerationPipeline}: generates a square of
+ * chunks and compares every one with its bare terrain, then
+ * <ul>
+ *     <li>fails if nothing was carved, or if bedrock was</li>
+ *     <li>fails if no cave crosses a chunk border, counted as a carved block on a chunk edge whose neighbour
+ *     across the border is carved too</li>
+ *     <li>prints how many chunks were left generated part way around the square</li>
+ *     <li>generates the square east of it in a world that has the first one loaded, as if from the region files
+ *     of an earlier run, and fails if a loaded chunk is generated part way again, the chunks generated part way
+ *     are more than {@link GenerationPipeline#setMaxProtoChunks} allows, or a chunk on either side of the seam
+ *     differs from one generated with its neighbours at once, as it does where a tunnel is cut off at the seam</li>
+ *     <li>generates a square but for the chunk in its middle, and fails if that chunk, with every neighbour
+ *     generated, is not finished without being requested</li>
+ * </ul>
+ * That the caves come out the same on any number of threads is checked by {@link ChunkGenerationScalingBenchmark}.
+ * Exits with status 1 on the first failure. Arguments: {@code [radius] [threads] [seed]}.
+ */
+public class CaveCarvingCheck {
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seed = args.length > 2 ? Integer.parseInt(args[2]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, seed,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        settings.interpolationError = Overworld.INTERPOLATION_ERROR;
+        ServerProcedureGridMap world = new ServerProcedureGridMap(settings, seed, registry, threads);
+        world.generateArea(-radius, -radius, radius, radius).join();
+        TerrainGenerator terrain = new TerrainGenerator(settings, seed + 45);
+
+        // Carved blocks of the whole square, indexed by world position
+        int side = radius * 2 * SIZE;
+        boolean[] carved = new boolean[side * SIZE_Y * side];
+        int[] blocks = new int[VOLUME];
+        long total = 0;
+        for (int cx = -radius; cx < radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                terrain.generate(cx, cz, blocks);
+                int[] generated = world.getChunk(cx, cz).getBlockIds();
+                for (int i = 0; i < VOLUME; i++) {
+                    if (generated[i] == blocks[i]) continue;
+                    int x = i / (SIZE_Y * SIZE), y = i / SIZE % SIZE_Y, z = i % SIZE;
+                    if (generated[i] != 0) fail("chunk " + cx + ", " + cz + " has block " + generated[i] + " at " + x + ", " + y + ", " + z + " where the terrain has " + blocks[i]);
+                    if (y == 0) fail("bedrock was carved in chunk " + cx + ", " + cz);
+                    carved[((cx + radius) * SIZE + x) * SIZE_Y * side + y * side + (cz + radius) * SIZE + z] = true;
+                    total++;
+                }
+            }
+        }
+        if (total == 0) fail("nothing was carved");
+
+        int crossings = 0;
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < SIZE_Y; y++) {
+                for (int z = 0; z < side; z++) {
+                    int index = x * SIZE_Y * side + y * side + z;
+                    if (!carved[index]) continue;
+                    if (x % SIZE == SIZE - 1 && x + 1 < side && carved[index + SIZE_Y * side]) crossings++;
+                    if (z % SIZE == SIZE - 1 && z + 1 < side && carved[index + 1]) crossings++;
+                }
+            }
+        }
+        System.out.printf("Carved %d blocks in %d chunks, %d block faces of cave across chunk borders%n",
+                total, radius * radius * 4, crossings);
+        System.out.println("Chunks generated part way around the square: " + world.getPipeline().getProtoChunkCount());
+        if (crossings == 0) fail("no cave crosses a chunk border");
+
+        System.out.println("Caves cross chunk borders");
+
+        ServerProcedureGridMap next = new ServerProcedureGridMap(settings, seed, registry, threads);
+        for (ChunkData chunk : world.getChunks()) next.addChunk(chunk);
+        int bound = 4 * radius;
+        next.getPipeline().setMaxProtoChunks(bound);
+        next.generateArea(radius, -radius, 3 * radius, radius).join();
+        for (int cx = -radius; cx < radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                if (next.getPipeline().isGenerating(new ChunkPos(cx, cz))) fail("chunk " + cx + ", " + cz + " was loaded but is generated again");
+            }
+        }
+        int left = next.getPipeline().getProtoChunkCount();
+        System.out.println("Chunks generated part way next to a loaded square: " + left + ", at most " + bound);
+        if (left > bound) fail(left + " chunks are generated part way, more than " + bound);
+        ServerProcedureGridMap reference = new ServerProcedureGridMap(settings, seed, registry, threads);
+        reference.generateArea(radius - 1, -radius, radius + 1, radius).join();
+        for (int cx = radius - 1; cx <= radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                if (!Arrays.equals(next.getChunk(cx, cz).getBlockIds(), reference.getChunk(cx, cz).getBlockIds())) {
+                    fail("chunk " + cx + ", " + cz + " differs from the one generated with its neighbours at once, a tunnel is cut off at the seam");
+                }
+            }
+        }
+        System.out.println("Tunnels run on across the seam");
+
+        ServerProcedureGridMap split = new ServerProcedureGridMap(settings, seed, registry, threads);
+        split.generateArea(-radius, -radius, 0, radius).join();
+        split.generateArea(1, -radius, radius, radius).join();
+        split.generateArea(0, -radius, 1, 0).join();
+        split.generateArea(0, 1, 1, radius).join();
+        // Finished without anyone waiting for it
+        ChunkPos hole = new ChunkPos(0, 0);
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (split.getPipeline().isGenerating(hole) && System.nanoTime() < deadline) Thread.onSpinWait();
+        if (split.getLoadedChunk(hole) == null) fail("chunk " + hole + " has every neighbour generated but was not finished");
+        System.out.println("A chunk with every neighbour generated is finished, the loaded ones are not generated again");
+        System.exit(0);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,122 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ChunkCache;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Headless check for the {@link ChunkCache}: generates a square of chunks, changes a block in some of them and
+ * trims the cache down to a budget of a quarter of the square, with one viewer in a corner, then
+ * <ul>
+ *     <li>fails if the chunks the viewer sees were unloaded, or if too few chunks were</li>
+ *     <li>fails if the cache keeps track of chunks that are unloaded and out of range of the viewer</li>
+ *     <li>fails if an unloaded chunk does not come back from the region files with the same blocks, changes included</li>
+ *     <li>trims again, unloading chunks that did not change since they were loaded must not save them again</li>
+ *     <li>prints the metrics of the cache</li>
+ * </ul>
+ * The region files go into a temporary directory. Exits with status 1 on the first failure. Arguments: {@code [radius]}.
+ */
+public class ChunkCacheCheck {
+    public static void main(String[] args) throws IOException {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int viewDistance = 1;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, 12345,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        settings.interpolationError = Overworld.INTERPOLATION_ERROR;
+        ServerProcedureGridMap world = new ServerProcedureGridMap(settings, 12345, registry, Runtime.getRuntime().availableProcessors());
+        world.generateArea(-radius, -radius, radius, radius).join();
+
+        // Changed chunks have to be saved, the others are already as the generator makes them
+        Map<ChunkPos, int[]> expected = new HashMap<>();
+        long bytes = 0;
+        for (ChunkData chunk : world.getChunks()) {
+            ChunkPos pos = new ChunkPos(chunk.getPosition().x, chunk.getPosition().y);
+            if ((pos.x() + pos.z()) % 3 == 0) chunk.setBlock(5, 100, 7, 2);
+            expected.put(pos, chunk.getBlockIds());
+            bytes += chunk.estimateMemory();
+        }
+
+        Path directory = Files.createTempDirectory("chunk-cache-check");
+        ChunkCache cache = new ChunkCache(world, directory, bytes / 4, viewDistance);
+        world.setChunkCache(cache);
+        ChunkPos viewer = new ChunkPos(-radius + 1, -radius + 1);
+        cache.updateViewers(Map.of("viewer", viewer));
+
+        long start = System.nanoTime();
+        int unloaded = cache.trim();
+        unloaded += cache.trim(); // The first turn of the clock only clears the marks the generation left
+        System.out.printf("Unloaded %d of %d chunks in %.1f ms, %d MiB of %d left loaded%n", unloaded, expected.size(),
+                (System.nanoTime() - start) / 1e6, cache.getResidentBytes() >> 20, bytes >> 20);
+        if (cache.getResidentBytes() > cache.getBudget()) fail("the loaded chunks do not fit in the budget");
+
+        for (int dx = -viewDistance; dx <= viewDistance; dx++) {
+            for (int dz = -viewDistance; dz <= viewDistance; dz++) {
+                if (world.getLoadedChunk(new ChunkPos(viewer.x() + dx, viewer.z() + dz)) == null) fail("a chunk the viewer sees was unloaded");
+            }
+        }
+
+        int seen = (viewDistance * 2 + 1) * (viewDistance * 2 + 1);
+        checkTracked(cache, seen);
+        long neverSaved = cache.getResidentChunks() - seen;
+        int reloaded = 0;
+        for (Map.Entry<ChunkPos, int[]> entry : expected.entrySet()) {
+            ChunkPos pos = entry.getKey();
+            if (!world.hasChunk(pos)) fail("chunk " + pos + " is gone");
+            if (world.getLoadedChunk(pos) == null) reloaded++;
+            ChunkData chunk = world.loadChunk(pos);
+            if (chunk == null) fail("chunk " + pos + " did not load");
+            if (!Arrays.equals(chunk.getBlockIds(), entry.getValue())) fail("chunk " + pos + " came back with other blocks");
+        }
+        System.out.println("Loaded " + reloaded + " chunks back from " + directory);
+
+        // Only the chunks that stayed loaded the first time were never saved
+        long saved = cache.getSavedChunks();
+        int again = cache.trim() + cache.trim();
+        if (again == 0) fail("nothing was unloaded the second time");
+        if (cache.getSavedChunks() - saved > neverSaved) fail("chunks that did not change were saved again");
+        checkTracked(cache, seen);
+        cache.updateViewers(Map.of());
+        cache.trim();
+        checkTracked(cache, 0);
+        System.out.println(cache.getStatus());
+
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        System.out.println("Unloaded chunks come back the same");
+        System.exit(0);
+    }
+
+    private static void checkTracked(ChunkCache cache, int seen) {
+        if (cache.getTrackedChunks() > cache.getResidentChunks() + seen) {
+            fail("the cache tracks " + cache.getTrackedChunks() + " chunks, " + cache.getResidentChunks() + " are loaded and " + seen + " seen");
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
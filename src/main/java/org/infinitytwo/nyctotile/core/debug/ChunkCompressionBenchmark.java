@@ -0,0 +1,123 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.io.ChunkCodec;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.network.data.Packets;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.VOLUME;
+
+/**
+ * Measures {@link ChunkCodec} on generated terrain:
+ * <ul>
+ *     <li>prints the bytes per chunk of the raw ints, of {@link ChunkData#serialize()} and {@link Packets.PChunk}, which
+ *     leave out empty sections, and compressed, with the 4 KiB network fragments each of them takes</li>
+ *     <li>prints how many chunks a second one thread compresses and decompresses, and the MiB of blocks that is</li>
+ *     <li>fails if a chunk does not decompress to the same blocks, or a record does not decode to the same chunk</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [radius] [rounds]}.
+ */
+public class ChunkCompressionBenchmark {
+    private static final int FRAGMENT = 4096;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, 12345,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        TerrainGenerator terrain = new TerrainGenerator(settings, 45);
+
+        List<ChunkData> chunks = new ArrayList<>();
+        List<int[]> blocks = new ArrayList<>();
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) {
+                int[] generated = new int[VOLUME];
+                terrain.generate(x, z, generated);
+                chunks.add(ChunkData.of(x, z, generated));
+                blocks.add(generated);
+            }
+        }
+        int count = chunks.size();
+
+        long sectioned = 0, packet = 0, compressed = 0, record = 0;
+        long sectionedFragments = 0, compressedFragments = 0;
+        int smallest = Integer.MAX_VALUE, largest = 0;
+        int[] decoded = new int[VOLUME];
+        for (int i = 0; i < count; i++) {
+            ChunkData chunk = chunks.get(i);
+            byte[] serialized = chunk.serialize();
+            byte[] pChunk = new Packets.PChunk(0, 0, blocks.get(i)).serialize();
+            byte[] data = ChunkCodec.compress(blocks.get(i));
+            byte[] encoded = ChunkCodec.encode(chunk);
+            sectioned += serialized.length;
+            packet += pChunk.length;
+            compressed += data.length;
+            record += encoded.length;
+            sectionedFragments += fragments(pChunk.length);
+            compressedFragments += fragments(data.length + 2 * Integer.BYTES);
+            smallest = Math.min(smallest, data.length);
+            largest = Math.max(largest, data.length);
+
+            Arrays.fill(decoded, -1);
+            ChunkCodec.decompress(ByteBuffer.wrap(data), decoded);
+            if (!Arrays.equals(decoded, blocks.get(i))) fail("chunk " + chunk.getPosition() + " decompressed to other blocks");
+            ChunkData back = ChunkCodec.decode(ByteBuffer.wrap(encoded));
+            if (!back.getPosition().equals(chunk.getPosition()) || !Arrays.equals(back.getBlockIds(), blocks.get(i))) {
+                fail("the record of chunk " + chunk.getPosition() + " decoded to another chunk");
+            }
+            ChunkData raw = ChunkCodec.decode(ByteBuffer.allocate(1 + serialized.length).put(ChunkCodec.RAW).put(serialized).flip());
+            if (!Arrays.equals(raw.getBlockIds(), blocks.get(i))) fail("the raw record of chunk " + chunk.getPosition() + " decoded to another chunk");
+        }
+
+        System.out.println("Chunks: " + count + " (radius " + radius + ")");
+        System.out.printf("Raw ints           %8d bytes/chunk%n", VOLUME * Integer.BYTES);
+        System.out.printf("Sectioned record   %8d bytes/chunk%n", sectioned / count);
+        System.out.printf("PChunk             %8d bytes/chunk, %.1f fragments%n", packet / count, (double) sectionedFragments / count);
+        System.out.printf("Compressed         %8d bytes/chunk, %.1f fragments, %d to %d bytes, %.0fx smaller than PChunk%n",
+                compressed / count, (double) compressedFragments / count, smallest, largest, (double) packet / compressed);
+        System.out.printf("Compressed record  %8d bytes/chunk%n", record / count);
+
+        // Warm up, then measure one thread
+        for (int[] chunk : blocks) ChunkCodec.compress(chunk);
+        List<byte[]> data = new ArrayList<>(count);
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            data.clear();
+            for (int[] chunk : blocks) data.add(ChunkCodec.compress(chunk));
+        }
+        report("Compress  ", count * rounds, System.nanoTime() - start);
+
+        for (byte[] chunk : data) ChunkCodec.decompress(ByteBuffer.wrap(chunk), decoded);
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] chunk : data) ChunkCodec.decompress(ByteBuffer.wrap(chunk), decoded);
+        }
+        report("Decompress", count * rounds, System.nanoTime() - start);
+
+        System.out.println("Every chunk came back the same");
+        System.exit(0);
+    }
+
+    private static int fragments(int bytes) {
+        return (bytes + FRAGMENT - 1) / FRAGMENT;
+    }
+
+    private static void report(String name, int chunks, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s %8.0f chunks/s, %6.1f MiB/s of blocks, %.1f us/chunk%n", name, chunks / seconds,
+                (double) chunks * VOLUME * Integer.BYTES / seconds / (1 << 20), nanos / 1e3 / chunks);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,102 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+
+import java.util.Arrays;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless {@link ServerProcedureGridMap#generateArea} scaling: generates the same square of chunks with 1 to N
+ * generation threads and prints chunks per second and the speedup over one thread. Each run gets a fresh
+ * world, the best of a few runs per thread count is printed, after a few warmup worlds that are thrown away.
+ * <br><br>
+ * Every run must produce the same blocks and light as the single threaded one, both straight out of generation
+ * and after the lighting engine has spread the sky light over the chunk borders. Exits with status 1 otherwise.
+ * Arguments: {@code [radius] [max threads] [seed]}, max threads defaults to the number of cores.
+ */
+public class ChunkGenerationScalingBenchmark {
+    private static final int WARMUP = 5;
+    private static final int REPEATS = 3;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seed = args.length > 2 ? Integer.parseInt(args[2]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+
+        for (int i = 0; i < WARMUP; i++) generate(registry, seed, radius, maxThreads);
+
+        int chunks = radius * radius * 4;
+        System.out.println("Chunks per run: " + chunks + " (radius " + radius + ", seed " + seed + "), "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        long[] reference = null;
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            double seconds = Double.MAX_VALUE;
+            for (int repeat = 0; repeat < REPEATS; repeat++) {
+                System.gc(); // The previous worlds are garbage, do not bill their collection to this run
+                long start = System.nanoTime();
+                ServerProcedureGridMap world = generate(registry, seed, radius, threads);
+                seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+
+                long[] generated = hash(world, radius);
+                world.getLightingEngine().update();
+                long[] lit = hash(world, radius);
+                long[] result = {generated[0], generated[1], lit[1]};
+                if (reference == null) {
+                    reference = result;
+                } else if (!Arrays.equals(reference, result)) {
+                    System.out.println("FAILED: " + threads + " threads generated different chunks than 1 thread");
+                    System.exit(1);
+                }
+            }
+            if (threads == 1) single = seconds;
+
+            System.out.printf("%2d threads %8.1f ms %8.1f chunks/s %6.2fx%n", threads, seconds * 1e3, chunks / seconds, single / seconds);
+        }
+        System.out.println("Every thread count generated the same chunks");
+        System.exit(0);
+    }
+
+    private static ServerProcedureGridMap generate(BlockRegistry registry, int seed, int radius, int threads) {
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, seed,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        settings.interpolationError = Overworld.INTERPOLATION_ERROR;
+        ServerProcedureGridMap world = new ServerProcedureGridMap(settings, seed, registry, threads);
+        world.generateArea(-radius, -radius, radius, radius).join();
+        return world;
+    }
+
+    /**
+     * @return A hash of the blocks and one of the light of every chunk in the square
+     */
+    private static long[] hash(ServerProcedureGridMap world, int radius) {
+        long blocks = 1, light = 1;
+        int[] lights = new int[VOLUME];
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) {
+                ChunkData chunk = world.getChunk(x, z);
+                chunk.getLights(lights);
+                blocks = blocks * 31 + Arrays.hashCode(chunk.getBlockIds());
+                light = light * 31 + Arrays.hashCode(lights);
+            }
+        }
+        return new long[] {blocks, light};
+    }
+}
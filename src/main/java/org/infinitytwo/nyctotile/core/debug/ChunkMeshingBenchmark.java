@@ -0,0 +1,134 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.data.BlockType;
+import org.infinitytwo.nyctotile.core.data.RGBA;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.model.TextureAtlas;
+import org.infinitytwo.nyctotile.core.model.builder.GreedyMeshBuilder;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
+import org.infinitytwo.nyctotile.core.world.ChunkSnapshot;
+import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless meshing throughput, in chunks per second, for:
+ * <ul>
+ *     <li>per-block meshing culled through the world ({@link org.infinitytwo.nyctotile.core.world.GMap#isTransparent}), the old path</li>
+ *     <li>per-block meshing culled through a {@link ChunkSnapshot} (snapshot fill included)</li>
+ *     <li>greedy meshing culled through a {@link ChunkSnapshot}, what {@code Chunk} does now</li>
+ * </ul>
+ * Every pass meshes all chunks once; the first {@code warmup} passes are not timed.
+ * Arguments: {@code [radius] [passes] [warmup] [seed]}.
+ */
+public class ChunkMeshingBenchmark {
+    private static long sink;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int seed = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+        TextureAtlas atlas = new TextureAtlas(2, 2) {
+            {
+                for (int i = 0; i < 4; i++) addTexture(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+                atlasWidth = imageWidth * columns;
+                atlasHeight = imageHeight * rows;
+            }
+        };
+
+        ServerProcedureGridMap world = new Overworld(seed, registry).getWorld();
+        for (int x = -radius - 1; x <= radius; x++) {
+            for (int z = -radius - 1; z <= radius; z++) world.getChunkOrGenerate(x, z);
+        }
+        List<ChunkData> chunks = new ArrayList<>();
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) chunks.add(world.getChunk(x, z));
+        }
+
+        ChunkSnapshot snapshot = new ChunkSnapshot();
+
+        System.out.println("Chunks per pass: " + chunks.size() + " (radius " + radius + ", seed " + seed + "), "
+                + passes + " passes after " + warmup + " warmup passes");
+
+        run("Per-block, world lookups   ", chunks.size(), passes, warmup, () -> {
+            for (ChunkData chunk : chunks) perBlock(chunk, world, atlas, registry);
+        });
+        run("Per-block, snapshot        ", chunks.size(), passes, warmup, () -> {
+            for (ChunkData chunk : chunks) {
+                snapshot.fill(chunk, world, registry);
+                perBlock(chunk, snapshot, atlas, registry);
+            }
+        });
+        run("Greedy, snapshot           ", chunks.size(), passes, warmup, () -> {
+            for (ChunkData chunk : chunks) {
+                snapshot.fill(chunk, world, registry);
+                for (int section = 0; section < SECTION_COUNT; section++) {
+                    try (NIntBuffer buffer = new NIntBuffer()) {
+                        GreedyMeshBuilder.buildSection(chunk, snapshot, section, registry, buffer);
+                        sink += buffer.getWritten();
+                    }
+                }
+            }
+        });
+
+        if (sink == 42) System.out.print("");
+        System.exit(0);
+    }
+
+    private static void perBlock(ChunkData chunk, BlockAccess access, TextureAtlas atlas, BlockRegistry registry) {
+        RGBA light = new RGBA();
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            if (chunk.isSectionEmpty(section)) continue;
+            try (NIntBuffer buffer = new NIntBuffer()) {
+                int baseY = section * SECTION_SIZE;
+                for (int x = 0; x < SIZE; x++) {
+                    for (int y = baseY; y < baseY + SECTION_SIZE; y++) {
+                        for (int z = 0; z < SIZE; z++) {
+                            int id = chunk.getBlockId(x, y, z);
+                            if (id == 0) continue;
+                            BlockType type = registry.get(id);
+
+                            light.set(
+                                    (float) chunk.getRed(x, y, z) / 255,
+                                    (float) chunk.getGreen(x, y, z) / 255,
+                                    (float) chunk.getBlue(x, y, z) / 255,
+                                    (float) chunk.getLightLevel(x, y, z) / 15
+                            );
+                            type.buildModel(access, GridMap.convertToWorldPosition(chunk.getPosition(), x, y, z), atlas, registry, buffer, light);
+                        }
+                    }
+                }
+                sink += buffer.getWritten();
+            }
+        }
+    }
+
+    private static void run(String name, int chunks, int passes, int warmup, Runnable pass) {
+        for (int i = 0; i < warmup; i++) pass.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) pass.run();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s %8.2f ms/pass %10.1f chunks/s%n", name, elapsed / 1e6 / passes, (double) chunks * passes / (elapsed / 1e9));
+    }
+}
@@ -0,0 +1,106 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.PalettedStorage;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+import org.infinitytwo.nyctotile.block.ServerBlockType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Compares the heap used by chunk block storage in the old flat {@code int[]} layout
+ * against the sectioned {@link PalettedStorage}, on real chunks from {@link ServerProcedureGridMap}.
+ * <br><br>
+ * Run it with a fixed heap so the measured numbers are stable, e.g.
+ * {@code -Xms1g -Xmx1g}. Arguments: {@code [radius] [seed]}.
+ */
+public class ChunkStorageBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seed = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new ServerBlockType("soil", false, "grass_block"));
+        registry.register(new ServerBlockType("soil", false, "dirt"));
+        registry.register(new ServerBlockType("stone", false, "stone"));
+        registry.register(new ServerBlockType("mantle", false, "mantle"));
+
+        Overworld overworld = new Overworld(seed, registry);
+        ServerProcedureGridMap world = overworld.getWorld();
+
+        List<ChunkData> chunks = new ArrayList<>();
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) {
+                chunks.add(world.getChunkOrGenerate(x, z));
+            }
+        }
+
+        int count = chunks.size();
+        TreeMap<Integer, Integer> paletteSizes = new TreeMap<>();
+        long estimated = 0;
+        int emptySections = 0;
+        for (ChunkData chunk : chunks) {
+            for (int i = 0; i < ChunkData.SECTION_COUNT; i++) {
+                PalettedStorage storage = chunk.getSection(i);
+                if (storage == null) {
+                    emptySections++;
+                    continue;
+                }
+                paletteSizes.merge(storage.getPaletteSize(), 1, Integer::sum);
+                estimated += storage.estimateMemory();
+            }
+        }
+        long flatEstimated = (long) count * (16 + ChunkData.VOLUME * Integer.BYTES);
+
+        // Measured: keep a second copy of every chunk in each layout alive and look at the heap delta
+        long flatMeasured = measure(() -> {
+            List<int[]> copies = new ArrayList<>(count);
+            for (ChunkData chunk : chunks) copies.add(chunk.getBlockIds());
+            return copies;
+        });
+        long palettedMeasured = measure(() -> {
+            List<PalettedStorage[]> copies = new ArrayList<>(count);
+            for (ChunkData chunk : chunks) {
+                PalettedStorage[] sections = new PalettedStorage[ChunkData.SECTION_COUNT];
+                for (int i = 0; i < sections.length; i++) {
+                    PalettedStorage section = chunk.getSection(i);
+                    if (section != null) sections[i] = section.copy();
+                }
+                copies.add(sections);
+            }
+            return copies;
+        });
+
+        System.out.println("Chunks: " + count + " (radius " + radius + ", seed " + seed + ")");
+        System.out.println("Empty (air) sections: " + emptySections + " of " + count * ChunkData.SECTION_COUNT);
+        System.out.println("Palette sizes of non-empty sections (size=sections, -1 = direct): " + paletteSizes);
+        System.out.printf("Flat int[]   estimated %10d bytes (%6.1f KiB/chunk), measured %10d bytes (%6.1f KiB/chunk)%n",
+                flatEstimated, flatEstimated / 1024.0 / count, flatMeasured, flatMeasured / 1024.0 / count);
+        System.out.printf("Paletted     estimated %10d bytes (%6.1f KiB/chunk), measured %10d bytes (%6.1f KiB/chunk)%n",
+                estimated, estimated / 1024.0 / count, palettedMeasured, palettedMeasured / 1024.0 / count);
+        System.out.printf("Ratio (flat / paletted, measured): %.2fx%n", (double) flatMeasured / Math.max(1, palettedMeasured));
+
+        System.exit(0);
+    }
+
+    private static long measure(java.util.function.Supplier<Object> allocation) throws InterruptedException {
+        long before = usedAfterGc();
+        Object keep = allocation.get();
+        long after = usedAfterGc();
+        if (keep.hashCode() == 42) System.out.print(""); // keep it reachable until here
+        return after - before;
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,149 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
+import org.infinitytwo.nyctotile.core.manager.World;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.renderer.Chunk;
+import org.infinitytwo.nyctotile.core.renderer.MeshBuffer;
+import org.infinitytwo.nyctotile.core.renderer.MeshBufferAllocator;
+import org.infinitytwo.nyctotile.core.renderer.MeshBufferPool;
+import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+
+import java.nio.IntBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.VOLUME;
+
+/**
+ * Headless check for the client side chunk unloading and the {@link MeshBufferPool}, with an allocator that only
+ * counts buffers instead of a GL context. Walks a camera across generated terrain, loading chunks within the view
+ * distance and unloading them beyond it plus {@link World#UNLOAD_MARGIN} like {@link World} does, then
+ * <ul>
+ *     <li>fails if more chunks stay loaded than fit in the unload radius</li>
+ *     <li>fails if walking back and forth over a chunk border loads or unloads anything</li>
+ *     <li>fails if buffers leak: every buffer the allocator made is in use or idle in the pool, and none is left
+ *     in use once the map is cleared</li>
+ *     <li>fails if walking on does not mostly reuse buffers, and prints the pool stats</li>
+ * </ul>
+ * Exits with status 1 on the first failure. Arguments: {@code [view] [steps]}.
+ */
+public class ChunkUnloadCheck {
+    public static void main(String[] args) {
+        int view = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int unloadRadius = view + World.UNLOAD_MARGIN;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, 12345,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        TerrainGenerator terrain = new TerrainGenerator(settings, 45);
+
+        CountingAllocator allocator = new CountingAllocator();
+        MeshBufferPool pool = new MeshBufferPool(allocator, MeshBufferPool.DEFAULT_MAX_IDLE);
+        MeshBufferPool.setMain(pool);
+        GridMap map = new GridMap(registry);
+        int[] blocks = new int[VOLUME];
+
+        // Walks east, then back and forth over one border
+        int loaded = 0, unloaded = 0, loadedByWalk = 0, unloadedByWalk = 0;
+        for (int step = 0; step <= steps + 16; step++) {
+            int x = step <= steps ? step : steps - (step - steps) % 2;
+            ChunkPos center = new ChunkPos(x, 0);
+            for (ChunkPos pos : map.getMissingSurroundingChunks(center, view)) {
+                terrain.generate(pos.x(), pos.z(), blocks);
+                ChunkData data = new ChunkData(pos);
+                data.modify(blocks);
+                LightingEngine.lightSky(data, registry);
+                Chunk chunk = Chunk.of(data, map, null, registry);
+                map.addChunk(chunk);
+                chunk.rebuildSynchronous();
+                loaded++;
+            }
+            List<ChunkPos> gone = map.unloadChunksOutside(center, unloadRadius);
+            unloaded += gone.size();
+            if (step == steps) {
+                loadedByWalk = loaded;
+                unloadedByWalk = unloaded;
+            }
+
+            int side = unloadRadius * 2 + 1;
+            if (map.getChunkCount() > side * side) fail(map.getChunkCount() + " chunks loaded, at most " + side * side + " fit in the unload radius");
+            MeshBufferPool.Stats stats = pool.getStats();
+            if (stats.inUse() + stats.idle() != allocator.live.size()) fail("the pool lost track of " + (allocator.live.size() - stats.inUse() - stats.idle()) + " buffers");
+        }
+        if (loaded != loadedByWalk || unloaded != unloadedByWalk) fail("walking over a border loaded or unloaded chunks");
+
+        MeshBufferPool.Stats stats = pool.getStats();
+        System.out.printf("Loaded %d chunks and unloaded %d walking %d chunks with a view distance of %d, %d loaded at the end%n",
+                loaded, unloaded, steps, view, map.getChunkCount());
+        System.out.println(stats);
+        System.out.printf("Allocator: %d buffers live, %d allocations, %d updates in place%n",
+                allocator.live.size(), allocator.allocations, allocator.updates);
+        if (stats.reused() <= stats.created()) fail("fewer buffers were reused than created");
+
+        map.clear();
+        stats = pool.getStats();
+        if (stats.inUse() != 0) fail(stats.inUse() + " buffers are still in use after the map was cleared");
+        pool.clear();
+        if (!allocator.live.isEmpty()) fail(allocator.live.size() + " buffers leaked");
+
+        System.out.println("Chunks are unloaded with hysteresis and their buffers recycled");
+        System.exit(0);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+
+    private static final class CountingAllocator implements MeshBufferAllocator {
+        final Set<Integer> live = new HashSet<>();
+        int next = 1;
+        long allocations, updates;
+
+        @Override
+        public MeshBuffer create() {
+            MeshBuffer buffer = new MeshBuffer(next, next);
+            live.add(next++);
+            return buffer;
+        }
+
+        @Override
+        public void allocate(MeshBuffer buffer, IntBuffer data) {
+            check(buffer);
+            allocations++;
+        }
+
+        @Override
+        public void update(MeshBuffer buffer, IntBuffer data) {
+            check(buffer);
+            if (data.remaining() > buffer.getCapacity()) fail("an update does not fit in its buffer");
+            updates++;
+        }
+
+        @Override
+        public void delete(MeshBuffer buffer) {
+            if (!live.remove(buffer.getVao())) fail("buffer " + buffer.getVao() + " was deleted twice");
+        }
+
+        private void check(MeshBuffer buffer) {
+            if (!live.contains(buffer.getVao())) fail("buffer " + buffer.getVao() + " is used after it was deleted");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.network.SessionCipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link SessionCipher} against the way messages were encrypted before it: a {@link Cipher} looked up for
+ * every message, a nonce from {@link SecureRandom}, and the nonce and ciphertext copied into arrays of their own.
+ * For a position update, a compressed chunk, a 1 KiB packet and an uncompressed chunk:
+ * <ul>
+ *     <li>prints how many messages a second one thread encrypts and decrypts, the MB/s of plaintext that is and the
+ *     bytes it allocates per message, both ways</li>
+ *     <li>fails if a message does not decrypt to its plaintext, a tampered one or one of another session decrypts,
+ *     or two messages share a nonce</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [milliseconds per measurement]}.
+ */
+public class CipherBenchmark {
+    private static final int[] SIZES = {24, 190, 1024, 77_000};
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        SecretKey key = newKey();
+        SessionCipher client = new SessionCipher(key, true);
+        SessionCipher server = new SessionCipher(key, false);
+        check(client, server, new SessionCipher(newKey(), false));
+
+        for (int size : SIZES) {
+            byte[] plaintext = new byte[size];
+            new Random(size).nextBytes(plaintext);
+            System.out.printf("%6d bytes%n", size);
+            report("  old    ", size, measure(millis, () -> {
+                byte[] message = legacyEncrypt(ByteBuffer.wrap(plaintext), key);
+                return legacyDecrypt(message, key)[0];
+            }));
+            report("  session", size, measure(millis, () -> {
+                ByteBuffer message = client.encrypt(ByteBuffer.wrap(plaintext));
+                // The receiving side gets a message in an array of its own
+                byte[] received = Arrays.copyOfRange(message.array(), message.position(), message.limit());
+                return server.decrypt(received).get();
+            }));
+        }
+
+        System.out.println("Every message came back the same");
+        System.exit(0);
+    }
+
+    private static void check(SessionCipher client, SessionCipher server, SessionCipher other) throws GeneralSecurityException {
+        for (int size : new int[] {0, 1, 24, 4095, 4096 + 1, 77_000}) {
+            byte[] plaintext = new byte[size];
+            new Random(size).nextBytes(plaintext);
+            byte[] first = encrypt(client, plaintext), second = encrypt(client, plaintext), answer = encrypt(server, plaintext);
+            if (first.length != size + SessionCipher.OVERHEAD) fail(size + " bytes encrypted to " + first.length);
+            if (Arrays.equals(first, 0, SessionCipher.NONCE_BYTES, second, 0, SessionCipher.NONCE_BYTES)) fail("two messages share a nonce");
+            if ((first[0] & 0x80) == 0 || (answer[0] & 0x80) != 0) fail("the nonce does not say which side encrypted it");
+            if (!Arrays.equals(toArray(server.decrypt(first.clone())), plaintext)) fail(size + " bytes did not decrypt to themselves");
+            if (!Arrays.equals(toArray(client.decrypt(answer.clone())), plaintext)) fail(size + " bytes did not decrypt to themselves on the client");
+
+            byte[] tampered = first.clone();
+            tampered[tampered.length / 2] ^= 1;
+            if (decrypts(server, tampered)) fail("a tampered message of " + size + " bytes decrypted");
+            if (decrypts(other, first.clone())) fail("a message of another session decrypted");
+        }
+        if (decrypts(server, new byte[SessionCipher.OVERHEAD - 1])) fail("a message shorter than a nonce and a tag decrypted");
+    }
+
+    private static byte[] encrypt(SessionCipher cipher, byte[] plaintext) throws GeneralSecurityException {
+        return toArray(cipher.encrypt(ByteBuffer.wrap(plaintext)));
+    }
+
+    private static boolean decrypts(SessionCipher cipher, byte[] message) {
+        try {
+            cipher.decrypt(message);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    // How ClientNetwork and ServerNetwork encrypted a message before the SessionCipher
+    private static byte[] legacyEncrypt(ByteBuffer packet, SecretKey key) throws GeneralSecurityException {
+        byte[] iv = new byte[12];
+        secureRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        byte[] encrypted = new byte[iv.length + cipher.getOutputSize(packet.remaining())];
+        System.arraycopy(iv, 0, encrypted, 0, iv.length);
+        cipher.doFinal(packet, ByteBuffer.wrap(encrypted, iv.length, encrypted.length - iv.length));
+        return encrypted;
+    }
+
+    // And decrypted it
+    private static byte[] legacyDecrypt(byte[] data, SecretKey key) throws GeneralSecurityException {
+        byte[] iv = new byte[12];
+        System.arraycopy(data, 0, iv, 0, 12);
+        byte[] cipherText = new byte[data.length - 12];
+        System.arraycopy(data, 12, cipherText, 0, data.length - 12);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(cipherText);
+    }
+
+    private interface Task {
+        byte run() throws GeneralSecurityException;
+    }
+
+    // Messages, nanoseconds and bytes allocated, after as long again to warm up
+    private static long[] measure(long millis, Task task) throws GeneralSecurityException {
+        long sink = 0;
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end) sink += task.run();
+
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        end = start + millis * 1_000_000;
+        long messages = 0;
+        while (System.nanoTime() < end) {
+            sink += task.run();
+            messages++;
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        if (sink == 42) System.out.print("");
+        return new long[] {messages, nanos, allocated};
+    }
+
+    private static void report(String name, int size, long[] result) {
+        double seconds = result[1] / 1e9;
+        System.out.printf("%s %9.0f messages/s, %7.1f MB/s, %7d bytes allocated per message%n", name,
+                result[0] / seconds, result[0] * (double) size / seconds / 1e6, result[2] / result[0]);
+    }
+
+    private static SecretKey newKey() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        return generator.generateKey();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
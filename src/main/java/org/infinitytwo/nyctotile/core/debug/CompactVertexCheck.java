@@ -0,0 +1,115 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.constants.Face;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.model.builder.CompactVertex;
+import org.infinitytwo.nyctotile.core.model.builder.CubeModelBuilder;
+
+import java.nio.IntBuffer;
+
+/**
+ * Headless check for {@link CompactVertex}: encodes and decodes every position, face, tile and
+ * light value, and verifies that the UVs the shader derives from a {@link CubeModelBuilder} face
+ * have the same orientation as the old per-vertex UVs (corner A at (0, 0), B at (w, 0), D at (0, h)).
+ * <br><br>
+ * Exits with status 1 on the first failure.
+ */
+public class CompactVertexCheck {
+    private static int checks;
+
+    public static void main(String[] args) {
+        positions();
+        attributes();
+        orientation();
+
+        System.out.println("Compact vertex: " + checks + " checks passed ("
+                + CompactVertex.BYTES_PER_VERTEX + " bytes per vertex, was " + 12 * Float.BYTES + ")");
+        System.exit(0);
+    }
+
+    private static void positions() {
+        int steps = 16 * CompactVertex.POSITION_SCALE;
+        for (Face face : Face.values()) {
+            for (int x = 0; x <= steps; x++) {
+                for (int y = 0; y <= steps; y++) {
+                    for (int z = 0; z <= steps; z++) {
+                        float fx = (float) x / CompactVertex.POSITION_SCALE;
+                        float fy = (float) y / CompactVertex.POSITION_SCALE;
+                        float fz = (float) z / CompactVertex.POSITION_SCALE;
+                        int packed = CompactVertex.packPosition(fx, fy, fz, face);
+
+                        if (CompactVertex.getX(packed) != fx || CompactVertex.getY(packed) != fy
+                                || CompactVertex.getZ(packed) != fz || CompactVertex.getFace(packed) != face) {
+                            fail("position (" + fx + ", " + fy + ", " + fz + ") " + face + " decoded as ("
+                                    + CompactVertex.getX(packed) + ", " + CompactVertex.getY(packed) + ", "
+                                    + CompactVertex.getZ(packed) + ") " + CompactVertex.getFace(packed));
+                        }
+                        checks++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void attributes() {
+        for (int tile = 0; tile < CompactVertex.MAX_TILES; tile++) {
+            for (int level = 0; level < 16; level++) {
+                int channel = (tile * 7 + level * 31) & 0xFF;
+                int packed = CompactVertex.packAttributes(tile, channel, 255 - channel, level * 17, level);
+
+                expect(CompactVertex.getTile(packed), tile, "tile");
+                expect(CompactVertex.getRed(packed), (channel >> 4) * 17, "red");
+                expect(CompactVertex.getGreen(packed), ((255 - channel) >> 4) * 17, "green");
+                expect(CompactVertex.getBlue(packed), level * 17, "blue");
+                expect(CompactVertex.getLightLevel(packed), level, "level");
+            }
+        }
+
+        try {
+            CompactVertex.packAttributes(CompactVertex.MAX_TILES, 0, 0, 0, 0);
+            fail("tile " + CompactVertex.MAX_TILES + " was accepted");
+        } catch (IndexOutOfBoundsException expected) {
+            checks++;
+        }
+    }
+
+    private static void orientation() {
+        int attributes = CompactVertex.packAttributes(3, 255, 255, 255, 15);
+        try (NIntBuffer buffer = new NIntBuffer()) {
+            for (Face face : Face.values()) {
+                buffer.reset();
+                // A 3x2 box (and 2 deep) so swapped width and height would show up
+                CubeModelBuilder.addBoxFace(face, 1, 2, 3, 4, 4, 5, attributes, buffer);
+                IntBuffer ints = buffer.getBuffer();
+
+                int[] corners = {0, 1, 2, 5}; // A, B, C, D vertex indices
+                float[][] uv = new float[4][];
+                for (int i = 0; i < 4; i++) {
+                    int position = ints.get(corners[i] * CompactVertex.INTS_PER_VERTEX);
+                    expect(ints.get(corners[i] * CompactVertex.INTS_PER_VERTEX + 1), attributes, face + " attributes");
+                    expect(CompactVertex.getFace(position).ordinal(), face.ordinal(), face + " face id");
+
+                    float x = CompactVertex.getX(position), y = CompactVertex.getY(position), z = CompactVertex.getZ(position);
+                    uv[i] = new float[] {CompactVertex.textureU(face, x, y, z), CompactVertex.textureV(face, x, y, z)};
+                }
+
+                float w = uv[1][0] - uv[0][0], h = uv[3][1] - uv[0][1];
+                if (uv[0][0] != Math.floor(uv[0][0]) || uv[0][1] != Math.floor(uv[0][1])) fail(face + ": corner A is not on a tile corner");
+                if (w <= 0 || h <= 0) fail(face + ": texture is mirrored (w " + w + ", h " + h + ")");
+                if (uv[1][1] != uv[0][1] || uv[3][0] != uv[0][0]) fail(face + ": texture is rotated");
+                if (uv[2][0] != uv[0][0] + w || uv[2][1] != uv[0][1] + h) fail(face + ": corner C is off");
+                checks++;
+            }
+        }
+    }
+
+    private static void expect(int actual, int expected, String what) {
+        if (actual != expected) fail(what + ": expected " + expected + ", got " + actual);
+        checks++;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
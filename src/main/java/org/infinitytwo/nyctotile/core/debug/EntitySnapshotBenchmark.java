@@ -0,0 +1,280 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import com.esotericsoftware.kryonet.Connection;
+import org.infinitytwo.nyctotile.core.data.PlayerData;
+import org.infinitytwo.nyctotile.core.entity.Entity;
+import org.infinitytwo.nyctotile.core.entity.Player;
+import org.infinitytwo.nyctotile.core.network.EntitySnapshots;
+import org.infinitytwo.nyctotile.core.network.Network;
+import org.infinitytwo.nyctotile.core.network.PacketCodec;
+import org.infinitytwo.nyctotile.core.network.SessionCipher;
+import org.infinitytwo.nyctotile.core.network.data.Packets;
+import org.joml.Vector3f;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
+import static org.infinitytwo.nyctotile.core.data.io.WorldData.CHUNK_SIZE;
+import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.EncryptedPacket;
+import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.MPacket;
+
+/**
+ * Moves players and mobs around a square of chunks and sends their positions the way the server did before
+ * {@link EntitySnapshots}, a {@link Packets.PPosition} per moved entity to every connection, and with snapshots, all
+ * through {@link Network#send} with the real cipher but without sockets:
+ * <ul>
+ *     <li>prints the time a tick takes the server, and the messages and bytes it sends, both ways</li>
+ *     <li>fails if a client does not end up with every entity in its view where the server has it, within the
+ *     quantization, or still knows an entity that left its view</li>
+ *     <li>does the same losing a tenth of the snapshots, and fails if a client is not repaired within
+ *     {@link EntitySnapshots#EXPIRE_TICKS} of the entities standing still</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [players] [mobs] [ticks]}.
+ */
+public class EntitySnapshotBenchmark {
+    private static final int VIEW_DISTANCE = 9;
+    private static final int AREA_CHUNKS = 40;
+
+    public static void main(String[] args) throws Exception {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int mobCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        Packets.register();
+
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        SecretKey key = generator.generateKey();
+
+        Result old = run(playerCount, mobCount, ticks, key, false, 0);
+        Result snapshots = run(playerCount, mobCount, ticks, key, true, 0);
+        System.out.printf("Players %d, mobs %d, %d ticks, view distance %d of a square of %d chunks%n", playerCount, mobCount,
+                ticks, VIEW_DISTANCE, AREA_CHUNKS);
+        old.print("PPosition each");
+        snapshots.print("Snapshots     ");
+        System.out.printf("%.1fx less time, %.1fx fewer messages, %.1fx fewer bytes%n", (double) old.nanos / snapshots.nanos,
+                (double) old.messages / snapshots.messages, (double) old.bytes / snapshots.bytes);
+
+        run(playerCount, mobCount, ticks, key, true, 0.1);
+        System.out.println("Every client saw what the server has, also with a tenth of the snapshots lost");
+        System.exit(0);
+    }
+
+    private static Result run(int playerCount, int mobCount, int ticks, SecretKey key, boolean snapshots, double loss) throws Exception {
+        Random random = new Random(42);
+        Capture network = new Capture(key, random, loss);
+        List<Player> players = new ArrayList<>();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < playerCount + mobCount; i++) {
+            Client client = i < playerCount ? new Client() : null;
+            // Mobs are stand-ins without a connection
+            Player entity = new Player(new PlayerData("p" + i, "", "", false, client), null, null);
+            entity.setPosition(random.nextFloat() * AREA_CHUNKS * CHUNK_SIZE, 64, random.nextFloat() * AREA_CHUNKS * CHUNK_SIZE);
+            entities.add(entity);
+            if (client != null) {
+                players.add(entity);
+                network.connect(client, snapshots);
+            }
+        }
+
+        EntitySnapshots sender = new EntitySnapshots(VIEW_DISTANCE);
+        long nanos = 0;
+        for (int tick = 0; tick < ticks; tick++) {
+            for (Entity entity : entities) {
+                Vector3f position = entity.getPosition();
+                entity.setPosition(wrap(position.x + random.nextFloat() - 0.5f), position.y + (random.nextFloat() - 0.5f) * 0.1f,
+                        wrap(position.z + random.nextFloat() - 0.5f));
+            }
+            long start = System.nanoTime();
+            if (snapshots) {
+                sender.broadcast(network, players, entities);
+            } else {
+                // As ServerThread.applyPhysics and the "setposition" handler broadcast before, everything moves every tick
+                for (Entity entity : entities) {
+                    for (Player player : players) {
+                        if (player != entity) network.send(new Packets.PPosition(entity), player.getData().connection(), false);
+                    }
+                }
+            }
+            nanos += System.nanoTime() - start;
+            network.deliver();
+        }
+
+        Result result = new Result(nanos / ticks, network.messages / ticks, network.bytes / ticks);
+        if (snapshots) {
+            // Standing still, losing nothing, until every entity had a keyframe and a lost removal expired
+            network.loss = 0;
+            for (int tick = 0; tick <= EntitySnapshots.EXPIRE_TICKS; tick++) {
+                sender.broadcast(network, players, entities);
+                network.deliver();
+            }
+            network.verify(players, entities);
+        }
+        return result;
+    }
+
+    private static float wrap(float position) {
+        float size = AREA_CHUNKS * CHUNK_SIZE;
+        return ((position % size) + size) % size;
+    }
+
+    private record Result(long nanos, long messages, long bytes) {
+        void print(String name) {
+            System.out.printf("%s %8.3f ms/tick, %6d messages/tick, %8d bytes/tick%n", name, nanos / 1e6, messages, bytes);
+        }
+    }
+
+    private static final class Client extends Connection {
+        final EntitySnapshots.Receiver receiver = new EntitySnapshots.Receiver();
+        final Map<UUID, Vector3f> positions = new HashMap<>();
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+
+    // Encrypts what the server sends and keeps it, deliver() hands it to the clients outside the measured time
+    private static final class Capture extends Network {
+        private final SessionCipher server, client;
+        private final Random random;
+        private final PacketCodec codec = PacketCodec.local();
+        private final List<Connection> to = new ArrayList<>();
+        private final List<byte[]> sent = new ArrayList<>();
+        double loss;
+        long messages, bytes;
+
+        Capture(SecretKey key, Random random, double loss) {
+            super(0, 0);
+            this.server = new SessionCipher(key, false);
+            this.client = new SessionCipher(key, true);
+            this.random = random;
+            this.loss = loss;
+        }
+
+        void connect(Connection connection, boolean snapshots) {
+            features.put(connection, FEATURE_OPCODES | (snapshots ? FEATURE_ENTITY_SNAPSHOTS : 0));
+        }
+
+        void deliver() throws Exception {
+            for (int i = 0; i < sent.size(); i++) {
+                if (random.nextDouble() < loss) continue;
+                Client connection = (Client) to.get(i);
+                Data data = codec.decode(client.decrypt(sent.get(i)));
+                if (data instanceof Packets.PSnapshot snapshot) {
+                    connection.receiver.receive(snapshot, (uuid, x, y, z) -> connection.positions.put(uuid, new Vector3f(x, y, z)));
+                }
+            }
+            to.clear();
+            sent.clear();
+        }
+
+        void verify(List<Player> players, List<Entity> entities) {
+            for (Player player : players) {
+                Client connection = (Client) player.getData().connection();
+                Vector3f viewer = player.getPosition();
+                int inView = 0;
+                for (Entity entity : entities) {
+                    Vector3f position = entity.getPosition();
+                    if (entity == player || Math.abs(chunk(position.x) - chunk(viewer.x)) > VIEW_DISTANCE
+                            || Math.abs(chunk(position.z) - chunk(viewer.z)) > VIEW_DISTANCE) continue;
+                    inView++;
+                    Vector3f seen = connection.positions.get(entity.getUUID());
+                    float tolerance = 0.5f / Packets.PSnapshot.SCALE + 1e-4f;
+                    if (seen == null) fail(player.getData().name() + " never saw " + ((Player) entity).getData().name());
+                    if (Math.abs(seen.x - position.x) > tolerance || Math.abs(seen.y - position.y) > tolerance || Math.abs(seen.z - position.z) > tolerance) {
+                        fail(player.getData().name() + " sees " + ((Player) entity).getData().name() + " at " + seen + " instead of " + position);
+                    }
+                }
+                if (connection.receiver.size() != inView) {
+                    fail(player.getData().name() + " knows " + connection.receiver.size() + " entities, " + inView + " are in view");
+                }
+            }
+        }
+
+        private static int chunk(float position) {
+            return Math.floorDiv((int) Math.floor(position), CHUNK_SIZE);
+        }
+
+        @Override
+        protected PacketCodec getCodec(Connection connection) {
+            return codec;
+        }
+
+        @Override
+        protected ByteBuffer encrypt(ByteBuffer packet, Connection connection) throws Exception {
+            return server.encrypt(packet);
+        }
+
+        @Override
+        protected ByteBuffer decrypt(byte[] packet, Connection connection) throws Exception {
+            return client.decrypt(packet);
+        }
+
+        @Override
+        public void sendUDP(MPacket packet, Connection connection) {
+            EncryptedPacket message = (EncryptedPacket) packet;
+            to.add(connection);
+            sent.add(Arrays.copyOfRange(message.encrypted, message.offset, message.offset + message.count));
+            messages++;
+            bytes += message.count;
+        }
+
+        @Override
+        public void sendTCP(MPacket packet, Connection connection) {
+            sendUDP(packet, connection);
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void shutdown() {}
+
+        @Override
+        public void ping(Connection connection) {}
+
+        @Override
+        public void onConnect(Connection connection) {}
+
+        @Override
+        public void onDisconnect(Connection connection) {}
+
+        @Override
+        public void onReceive(Connection connection, Data object) {}
+
+        @Override
+        public void sendFailure(Connection connection, String s) {}
+
+        @Override
+        public void onControlPacket(Connection connection, Object object) {}
+
+        @Override
+        public int getPortTCP() {
+            return 0;
+        }
+
+        @Override
+        public int getPortUDP() {
+            return 0;
+        }
+
+        @Override
+        protected Thread getUpdateThread() {
+            return null;
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,179 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.constants.Face;
+import org.infinitytwo.nyctotile.core.data.BlockType;
+import org.infinitytwo.nyctotile.core.data.RGBA;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.model.builder.CompactVertex;
+import org.infinitytwo.nyctotile.core.model.builder.CubeModelBuilder;
+import org.infinitytwo.nyctotile.core.model.builder.GreedyMeshBuilder;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ChunkSnapshot;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless check for {@link GreedyMeshBuilder}: meshes generated terrain with both the per-block
+ * path ({@link CubeModelBuilder#standardVerticesList}) and the greedy path, then compares the
+ * vertex counts and verifies that both cover exactly the same block faces with the same tile,
+ * light, face and winding. The {@link CompactVertex} vertices are decoded on the CPU the same
+ * way the chunk shader does it, so no GL context is needed.
+ * <br><br>
+ * Arguments: {@code [radius] [seed]}. Exits with status 1 if the surfaces differ.
+ */
+public class GreedyMeshComparison {
+    private static final int INTS = CompactVertex.INTS_PER_VERTEX;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int seed = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+
+        ServerProcedureGridMap world = new Overworld(seed, registry).getWorld();
+        Random random = new Random(seed);
+
+        // One extra ring so every meshed chunk has all its neighbours
+        for (int x = -radius - 1; x <= radius; x++) {
+            for (int z = -radius - 1; z <= radius; z++) {
+                ChunkData chunk = world.getChunkOrGenerate(x, z);
+                addLight(chunk, random);
+            }
+        }
+
+        long perBlockVertices = 0, greedyVertices = 0;
+        int chunks = 0;
+        boolean identical = true;
+        RGBA light = new RGBA();
+
+        for (int cx = -radius; cx < radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                ChunkData chunk = world.getChunk(cx, cz);
+                ChunkSnapshot snapshot = ChunkSnapshot.capture(chunk, world, registry);
+                chunks++;
+
+                for (int section = 0; section < SECTION_COUNT; section++) {
+                    try (NIntBuffer perBlock = new NIntBuffer(); NIntBuffer greedy = new NIntBuffer()) {
+                        int baseY = section * SECTION_SIZE;
+                        for (int x = 0; x < SIZE; x++) {
+                            for (int y = baseY; y < baseY + SECTION_SIZE; y++) {
+                                for (int z = 0; z < SIZE; z++) {
+                                    int id = chunk.getBlockId(x, y, z);
+                                    if (id == 0) continue;
+                                    BlockType type = registry.get(id);
+
+                                    light.set(
+                                            (float) chunk.getRed(x, y, z) / 255,
+                                            (float) chunk.getGreen(x, y, z) / 255,
+                                            (float) chunk.getBlue(x, y, z) / 255,
+                                            (float) chunk.getLightLevel(x, y, z) / 15
+                                    );
+                                    CubeModelBuilder.standardVerticesList(world, cx * SIZE + x, y, cz * SIZE + z,
+                                            type.getTextureIndex(), light, perBlock);
+                                }
+                            }
+                        }
+
+                        GreedyMeshBuilder.buildSection(chunk, snapshot, section, registry, greedy);
+
+                        perBlockVertices += perBlock.getWritten() / INTS;
+                        greedyVertices += greedy.getWritten() / INTS;
+
+                        Map<String, Integer> expected = surface(perBlock.getBuffer());
+                        Map<String, Integer> actual = surface(greedy.getBuffer());
+                        if (!expected.equals(actual) || actual.values().stream().anyMatch(c -> c != 1)) {
+                            identical = false;
+                            System.out.println("Surface mismatch in chunk (" + cx + ", " + cz + ") section " + section
+                                    + ": " + expected.size() + " faces per-block, " + actual.size() + " greedy");
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println("Chunks meshed: " + chunks + " (seed " + seed + ")");
+        System.out.println("Per-block vertices: " + perBlockVertices + " (" + perBlockVertices * CompactVertex.BYTES_PER_VERTEX / 1024 + " KiB)");
+        System.out.println("Greedy vertices:    " + greedyVertices + " (" + greedyVertices * CompactVertex.BYTES_PER_VERTEX / 1024 + " KiB)");
+        System.out.printf("Reduction: %.2fx%n", (double) perBlockVertices / Math.max(1, greedyVertices));
+        System.out.println("Covered surface identical: " + identical);
+
+        System.exit(identical ? 0 : 1);
+    }
+
+    /**
+     * Splits every quad into unit block faces and keys them by position, facing (the face id and the
+     * winding must agree), tile and light.
+     */
+    private static Map<String, Integer> surface(IntBuffer buffer) {
+        Map<String, Integer> faces = new HashMap<>();
+        int[] q = new int[INTS * 6];
+
+        while (buffer.remaining() >= q.length) {
+            buffer.get(q);
+            // Corners A, B, C and D of the (A, B, C) (A, C, D) triangles
+            float[][] corner = new float[4][];
+            int[] at = {0, INTS, INTS * 2, INTS * 5};
+            for (int i = 0; i < 4; i++) {
+                int p = q[at[i]];
+                corner[i] = new float[] {CompactVertex.getX(p), CompactVertex.getY(p), CompactVertex.getZ(p)};
+            }
+            Face face = CompactVertex.getFace(q[0]);
+            int attributes = q[1];
+
+            int axis = -1;
+            for (int i = 0; i < 3; i++) {
+                if (corner[0][i] == corner[1][i] && corner[0][i] == corner[2][i] && corner[0][i] == corner[3][i]) axis = i;
+            }
+            int u = (axis + 1) % 3, v = (axis + 2) % 3;
+
+            // Facing from the winding: the sign of (B - A) x (C - A) on the plane axis
+            float abU = corner[1][u] - corner[0][u], abV = corner[1][v] - corner[0][v];
+            float acU = corner[2][u] - corner[0][u], acV = corner[2][v] - corner[0][v];
+            float normal = abU * acV - abV * acU;
+
+            int min1 = (int) Math.min(corner[0][u], corner[2][u]), max1 = (int) Math.max(corner[0][u], corner[2][u]);
+            int min2 = (int) Math.min(corner[0][v], corner[2][v]), max2 = (int) Math.max(corner[0][v], corner[2][v]);
+
+            for (int i = min1; i < max1; i++) {
+                for (int j = min2; j < max2; j++) {
+                    String key = face + " " + axis + (normal > 0 ? "+" : "-") + " " + corner[0][axis] + " " + i + " " + j
+                            + " tile=" + CompactVertex.getTile(attributes)
+                            + " light=" + CompactVertex.getRed(attributes) + "," + CompactVertex.getGreen(attributes)
+                            + "," + CompactVertex.getBlue(attributes) + "," + CompactVertex.getLightLevel(attributes);
+                    faces.merge(key, 1, Integer::sum);
+                }
+            }
+        }
+        return faces;
+    }
+
+    private static void addLight(ChunkData chunk, Random random) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int y = SIZE_Y - 1; y >= 0; y--) {
+                    if (chunk.getBlockId(x, y, z) == 0) continue;
+                    chunk.setLight(x, y, z, 255, 255, 255, 15);
+                    // A few coloured spots so faces with different light must not merge
+                    if (random.nextInt(40) == 0) chunk.setLight(x, y, z, 255, 120, 40, 12);
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.data.buffer.IntPacker;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.PackedLight;
+import org.joml.Vector2i;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless {@link ChunkData} light storage benchmark and check.
+ * <ul>
+ *     <li>Reads every light channel of a chunk the way the mesher did: four synchronized
+ *     {@link IntPacker} lookups per block (the old storage), four {@link ChunkData} getters, one
+ *     {@link ChunkData#getPackedLight} per block and one {@link ChunkData#getLights(int, int[])} per section.</li>
+ *     <li>Checks that {@link PackedLight} encodes the same values the old {@link IntPacker} layout did.</li>
+ *     <li>Checks that bulk reads never see half of a bulk write: a writer thread keeps filling the chunk
+ *     with one value at a time while readers copy sections, every copy must hold a single value.</li>
+ * </ul>
+ * Exits with status 1 on the first failure. Arguments: {@code [passes] [warmup] [seconds for the race check]}.
+ */
+public class LightStorageBenchmark {
+    private static long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        ChunkData chunk = new ChunkData(new Vector2i());
+        Random random = new Random(1);
+        int[] values = new int[VOLUME];
+        for (int i = 0; i < VOLUME; i++) {
+            values[i] = PackedLight.pack(random.nextInt(256), random.nextInt(256), random.nextInt(256), random.nextInt(16));
+        }
+        chunk.setLights(values);
+
+        codec();
+        System.out.println("Codec matches the old IntPacker layout");
+
+        // The old storage: the same array behind the packer and a monitor
+        IntPacker packer = new IntPacker();
+        packer.register("red", 8);
+        packer.register("green", 8);
+        packer.register("blue", 8);
+        packer.register("level", 4);
+        Object monitor = new Object();
+
+        System.out.println("Reading all channels of " + VOLUME + " blocks, " + passes + " passes after " + warmup + " warmup passes");
+        run("IntPacker, synchronized   ", passes, warmup, () -> {
+            long sum = 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE_Y; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        int index = x * SIZE_Y * SIZE + y * SIZE + z;
+                        synchronized (monitor) { sum += packer.getValue(values[index], "red"); }
+                        synchronized (monitor) { sum += packer.getValue(values[index], "green"); }
+                        synchronized (monitor) { sum += packer.getValue(values[index], "blue"); }
+                        synchronized (monitor) { sum += packer.getValue(values[index], "level"); }
+                    }
+                }
+            }
+            sink += sum;
+        });
+        run("Channel getters           ", passes, warmup, () -> {
+            long sum = 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE_Y; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        sum += chunk.getRed(x, y, z) + chunk.getGreen(x, y, z) + chunk.getBlue(x, y, z) + chunk.getLightLevel(x, y, z);
+                    }
+                }
+            }
+            sink += sum;
+        });
+        run("getPackedLight per block  ", passes, warmup, () -> {
+            long sum = 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE_Y; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        int light = chunk.getPackedLight(x, y, z);
+                        sum += PackedLight.red(light) + PackedLight.green(light) + PackedLight.blue(light) + PackedLight.level(light);
+                    }
+                }
+            }
+            sink += sum;
+        });
+        int[] section = new int[SECTION_VOLUME];
+        run("getLights per section     ", passes, warmup, () -> {
+            long sum = 0;
+            for (int s = 0; s < SECTION_COUNT; s++) {
+                chunk.getLights(s, section);
+                for (int light : section) {
+                    sum += PackedLight.red(light) + PackedLight.green(light) + PackedLight.blue(light) + PackedLight.level(light);
+                }
+            }
+            sink += sum;
+        });
+
+        race(seconds);
+
+        if (sink == 42) System.out.print("");
+        System.exit(0);
+    }
+
+    private static void codec() {
+        IntPacker packer = new IntPacker();
+        packer.register("red", 8);
+        packer.register("green", 8);
+        packer.register("blue", 8);
+        packer.register("level", 4);
+
+        Random random = new Random(2);
+        for (int i = 0; i < 100_000; i++) {
+            int r = random.nextInt(256), g = random.nextInt(256), b = random.nextInt(256), level = random.nextInt(16);
+            int old = packer.setValue(packer.setValue(packer.setValue(packer.setValue(0, "red", r), "green", g), "blue", b), "level", level);
+            int light = PackedLight.pack(r, g, b, level);
+            if (old != light) fail("pack(" + r + ", " + g + ", " + b + ", " + level + ") is " + light + ", IntPacker made " + old);
+            if (PackedLight.red(light) != r || PackedLight.green(light) != g || PackedLight.blue(light) != b || PackedLight.level(light) != level) {
+                fail("decoding " + light);
+            }
+            if (PackedLight.withLevel(light, 15 - level) != PackedLight.pack(r, g, b, 15 - level)) fail("withLevel " + light);
+        }
+    }
+
+    private static void race(int seconds) throws InterruptedException {
+        ChunkData chunk = new ChunkData(new Vector2i());
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int[] fill = new int[VOLUME];
+            int value = 0;
+            while (running.get()) {
+                value = value % 15 + 1;
+                java.util.Arrays.fill(fill, PackedLight.pack(value, value, value, value));
+                chunk.setLights(fill);
+                chunk.putPackedLight(0, 0, 0, fill[0]); // Single writes go through the same sequence
+            }
+        }, "Light writer");
+        writer.start();
+
+        long reads = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        int[] copy = new int[SECTION_VOLUME];
+        while (System.nanoTime() < end) {
+            int s = (int) (reads % SECTION_COUNT);
+            chunk.getLights(s, copy);
+            for (int light : copy) {
+                if (light != copy[0]) {
+                    running.set(false);
+                    fail("section " + s + " was copied in the middle of a write (" + light + " next to " + copy[0] + ")");
+                }
+            }
+            reads++;
+        }
+        running.set(false);
+        writer.join();
+        System.out.println("Race check: " + reads + " section copies during writes, none torn");
+    }
+
+    private static void run(String name, int passes, int warmup, Runnable pass) {
+        for (int i = 0; i < warmup; i++) pass.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) pass.run();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s %8.3f ms/chunk %8.2f ns/block%n", name, elapsed / 1e6 / passes, (double) elapsed / passes / VOLUME);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,225 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.block.BedrockBlockType;
+import org.infinitytwo.nyctotile.block.DirtBlockType;
+import org.infinitytwo.nyctotile.block.GrassBlockType;
+import org.infinitytwo.nyctotile.block.StoneBlockType;
+import org.infinitytwo.nyctotile.core.data.BlockType;
+import org.infinitytwo.nyctotile.core.data.Light;
+import org.infinitytwo.nyctotile.core.data.RGBA;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
+import org.infinitytwo.nyctotile.core.model.TextureAtlas;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
+import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless {@link LightingEngine} benchmark: places and removes a torch (level 14) or a block in generated,
+ * sky lit terrain, one batch ({@link LightingEngine#update()}) per placement and per removal, and prints the
+ * batches per second and light values written per batch for:
+ * <ul>
+ *     <li>torches on the surface, where the sky light is brighter than the torch</li>
+ *     <li>torches in small pockets dug into the ground, where the light is stopped by stone after a block or two</li>
+ *     <li>stone placed on top of a column or floating a few blocks above it, which cuts the column off
+ *     the sky, and removed again</li>
+ * </ul>
+ * Other torches are lit around the area first so removals have to refill overlapping light.
+ * After the timed passes, the incrementally updated light is compared to the same world lit from scratch
+ * ({@link LightingEngine#lightSky} and the torches) and the program exits with status 1 if any value differs.
+ * Arguments: {@code [radius] [passes] [warmup] [seed]}.
+ */
+public class LightingBenchmark {
+    private static final int TORCH_LEVEL = 14;
+    private static final int BACKGROUND_TORCHES = 24;
+    private static final int SAMPLES = 64;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int seed = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+
+        BlockRegistry registry = new BlockRegistry();
+        registry.register(new GrassBlockType(0));
+        registry.register(new DirtBlockType(1));
+        int stone = registry.register(new StoneBlockType(2));
+        registry.register(new BedrockBlockType(3));
+        int torch = registry.register(new BlockType("light", true, "torch", 0) {
+            {
+                lightSource = new Light(255, 255, 255, TORCH_LEVEL);
+            }
+
+            @Override
+            public void buildModel(BlockAccess gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
+            }
+        });
+
+        ServerProcedureGridMap world = new Overworld(seed, registry).getWorld();
+        for (int x = -radius - 1; x <= radius; x++) {
+            for (int z = -radius - 1; z <= radius; z++) world.getChunkOrGenerate(x, z);
+        }
+        LightingEngine engine = world.getLightingEngine();
+
+        // Torch spots well inside the generated area, so the light never reaches a missing chunk
+        Random random = new Random(seed);
+        int span = (radius * 2 - 2) * SIZE;
+        List<int[]> surface = new ArrayList<>();
+        List<int[]> tops = new ArrayList<>();
+        List<int[]> pockets = new ArrayList<>();
+        List<int[]> background = new ArrayList<>();
+        Set<Long> used = new HashSet<>(); // One spot per column, pockets next to each other would merge
+        while (surface.size() < SAMPLES || pockets.size() < SAMPLES || tops.size() < SAMPLES || background.size() < BACKGROUND_TORCHES) {
+            int x = random.nextInt(span) - span / 2, z = random.nextInt(span) - span / 2;
+            int top = top(world, x, z);
+            if (top < 8 || top >= SIZE_Y - 2) continue;
+            if (!used.add((long) (x >> 2) << 32 | (z >> 2) & 0xFFFFFFFFL)) continue;
+
+            if (background.size() < BACKGROUND_TORCHES) background.add(new int[] {x, top + 1, z});
+            else if (surface.size() < SAMPLES) surface.add(new int[] {x, top + 1, z});
+            else if (tops.size() < SAMPLES) tops.add(new int[] {x, top + 1 + random.nextInt(4), z}); // Some float, casting a shadow
+            else {
+                // A 3x2x3 pocket a few blocks under the surface, the torch in its middle
+                int y = top - 5;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        for (int dy = 0; dy < 2; dy++) {
+                            world.removeBlock(x + dx, y + dy, z + dz);
+                        }
+                    }
+                }
+                pockets.add(new int[] {x, y, z});
+            }
+        }
+        engine.update(); // Sky light over the chunk borders
+        for (int[] position : background) place(world, engine, torch, position);
+        engine.update();
+
+        System.out.println("Torch level " + TORCH_LEVEL + ", " + BACKGROUND_TORCHES + " background torches, "
+                + SAMPLES + " spots per case (radius " + radius + ", seed " + seed + "), "
+                + passes + " passes after " + warmup + " warmup passes");
+
+        run("Surface torch", world, engine, torch, surface, passes, warmup);
+        run("Pocket torch ", world, engine, torch, pockets, passes, warmup);
+        run("Surface stone", world, engine, stone, tops, passes, warmup);
+
+        // Leave a few torches placed and compare everything with a relight from scratch
+        List<int[]> lit = new ArrayList<>(background);
+        for (int i = 0; i < SAMPLES; i += 4) {
+            place(world, engine, torch, surface.get(i));
+            place(world, engine, torch, pockets.get(i));
+            place(world, engine, stone, tops.get(i));
+            lit.add(surface.get(i));
+            lit.add(pockets.get(i));
+        }
+        for (int i = 0; i < BACKGROUND_TORCHES; i += 3) {
+            remove(world, background.get(i));
+            lit.remove(background.get(i));
+        }
+        engine.update();
+
+        int[][] incremental = lights(world, radius);
+        for (int x = -radius - 1; x <= radius; x++) {
+            for (int z = -radius - 1; z <= radius; z++) {
+                ChunkData chunk = world.getChunk(x, z);
+                for (int bx = 0; bx < SIZE_X; bx++) {
+                    for (int y = 0; y < SIZE_Y; y++) {
+                        for (int bz = 0; bz < SIZE_Z; bz++) chunk.putPackedLight(bx, y, bz, 0);
+                    }
+                }
+                LightingEngine.lightSky(chunk, registry);
+                engine.chunkAdded(x, z);
+            }
+        }
+        for (int[] position : lit) engine.addLight(position[0], position[1], position[2], 255, 255, 255, TORCH_LEVEL);
+        engine.update();
+        int[][] scratch = lights(world, radius);
+
+        int differences = 0;
+        for (int c = 0; c < scratch.length; c++) {
+            for (int i = 0; i < VOLUME; i++) {
+                if (scratch[c][i] != incremental[c][i]) differences++;
+            }
+        }
+        if (differences > 0) {
+            System.out.println("FAILED: " + differences + " light values differ from a relight from scratch");
+            System.exit(1);
+        }
+        System.out.println("Incremental light matches a relight from scratch (" + lit.size() + " torches)");
+        System.exit(0);
+    }
+
+    private static void run(String name, ServerProcedureGridMap world, LightingEngine engine, int id, List<int[]> spots, int passes, int warmup) {
+        for (int i = 0; i < warmup; i++) pass(world, engine, id, spots);
+
+        long cells = engine.getCellsChanged();
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) pass(world, engine, id, spots);
+        long elapsed = System.nanoTime() - start;
+        cells = engine.getCellsChanged() - cells;
+
+        long batches = (long) passes * spots.size() * 2;
+        System.out.printf("%s %8.1f us/place+remove %10.0f batches/s %8.0f values written/batch%n", name,
+                elapsed / 1e3 / (passes * spots.size()), batches / (elapsed / 1e9), (double) cells / batches);
+    }
+
+    private static void pass(ServerProcedureGridMap world, LightingEngine engine, int id, List<int[]> spots) {
+        for (int[] position : spots) {
+            place(world, engine, id, position);
+            engine.update();
+            remove(world, position);
+            engine.update();
+        }
+    }
+
+    /**
+     * What {@link org.infinitytwo.nyctotile.core.world.GMap#setBlock} does, without building a Block.
+     */
+    private static void place(ServerProcedureGridMap world, LightingEngine engine, int id, int[] position) {
+        ChunkData chunk = world.getChunk(Math.floorDiv(position[0], SIZE_X), Math.floorDiv(position[2], SIZE_Z));
+        chunk.setBlock(Math.floorMod(position[0], SIZE_X), position[1], Math.floorMod(position[2], SIZE_Z), id);
+        engine.blockChanged(position[0], position[1], position[2]);
+        int level = world.getBlockRegistry().get(id).getLightSource().level();
+        if (level > 0) engine.addLight(position[0], position[1], position[2], 255, 255, 255, level);
+    }
+
+    private static void remove(ServerProcedureGridMap world, int[] position) {
+        world.removeBlock(position[0], position[1], position[2]);
+    }
+
+    private static int top(ServerProcedureGridMap world, int x, int z) {
+        ChunkData chunk = world.getChunk(Math.floorDiv(x, SIZE_X), Math.floorDiv(z, SIZE_Z));
+        for (int y = SIZE_Y - 1; y >= 0; y--) {
+            if (chunk.getBlockId(Math.floorMod(x, SIZE_X), y, Math.floorMod(z, SIZE_Z)) != 0) return y;
+        }
+        return -1;
+    }
+
+    private static int[][] lights(ServerProcedureGridMap world, int radius) {
+        int side = radius * 2 + 2;
+        int[][] lights = new int[side * side][VOLUME];
+        for (int x = -radius - 1; x <= radius; x++) {
+            for (int z = -radius - 1; z <= radius; z++) {
+                ChunkData chunk = world.getChunk(x, z);
+                int[] copy = lights[(x + radius + 1) * side + z + radius + 1];
+                int i = 0;
+                for (int bx = 0; bx < SIZE_X; bx++) {
+                    for (int y = 0; y < SIZE_Y; y++) {
+                        for (int bz = 0; bz < SIZE_Z; bz++) copy[i++] = chunk.getPackedLight(bx, y, bz);
+                    }
+                }
+            }
+        }
+        return lights;
+    }
+}
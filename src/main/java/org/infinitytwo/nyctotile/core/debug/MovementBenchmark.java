@@ -0,0 +1,158 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import com.esotericsoftware.kryonet.Connection;
+import org.infinitytwo.nyctotile.core.network.PacketCodec;
+import org.infinitytwo.nyctotile.core.network.data.PacketDispatcher;
+import org.infinitytwo.nyctotile.core.network.data.Packets;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.infinitytwo.nyctotile.core.network.data.Packets.PMovement;
+
+/**
+ * Compares sending a position as a "setposition" {@link Packets.PCommand}, formatted by the client and split and
+ * parsed by the server, with a {@link PMovement} of the latest inputs, both encoded and decoded with the opcode header
+ * and handed to a {@link PacketDispatcher}:
+ * <ul>
+ *     <li>prints the nanoseconds per position and the bytes per message, both ways</li>
+ *     <li>fails if a movement does not decode to the inputs that went in, or one of more than
+ *     {@link PMovement#MAX_INPUTS} inputs does</li>
+ *     <li>loses a quarter of the movements and fails if the server applies an input twice or out of order, or misses
+ *     one that was in a movement it got</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [positions]}.
+ */
+public class MovementBenchmark {
+    private static final Connection connection = new Connection() {};
+    private static long sink;
+
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Packets.register();
+        PacketCodec codec = PacketCodec.local();
+        check(codec);
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            commands(codec, positions / 10);
+            movements(codec, positions / 10);
+        }
+        long start = System.nanoTime();
+        int commandBytes = commands(codec, positions);
+        long commandNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int movementBytes = movements(codec, positions);
+        long movementNanos = System.nanoTime() - start;
+
+        System.out.printf("%d positions%n", positions);
+        System.out.printf("setposition %7.1f ns/position, %3d bytes/message%n", (double) commandNanos / positions, commandBytes);
+        System.out.printf("PMovement   %7.1f ns/position, %3d bytes/message with %d inputs%n", (double) movementNanos / positions,
+                movementBytes, PMovement.MAX_INPUTS);
+        System.out.printf("%.1fx less time%n", (double) commandNanos / movementNanos);
+        lossy(codec, positions / 10);
+        System.out.println("Every movement decoded and every input that arrived was applied once, in order");
+        System.exit(0);
+    }
+
+    // As Main sent and ServerThread parsed positions before PMovement
+    private static int commands(PacketCodec codec, int positions) {
+        PacketDispatcher dispatcher = new PacketDispatcher().command("setposition", (args, connection) -> {
+            float x = Float.parseFloat(args[1]);
+            float y = Float.parseFloat(args[2]);
+            float z = Float.parseFloat(args[3]);
+            sink += Float.floatToIntBits(x + y + z);
+        });
+        int bytes = 0;
+        for (int i = 0; i < positions; i++) {
+            Packets.PCommand command = new Packets.PCommand(String.format("setposition %.3f %.3f %.3f", 100 + i * 0.01f, 64f, 200 - i * 0.01f));
+            ByteBuffer encoded = codec.encode(command, true);
+            bytes = encoded.remaining();
+            dispatcher.process(codec.decode(encoded), connection);
+        }
+        return bytes;
+    }
+
+    private static int movements(PacketCodec codec, int positions) {
+        PacketDispatcher dispatcher = new PacketDispatcher().on(PMovement.class, (movement, connection) -> {
+            for (PMovement.Input input : movement.inputs()) sink += Float.floatToIntBits(input.x() + input.y() + input.z());
+        });
+        Sender sender = new Sender();
+        int bytes = 0;
+        for (int i = 0; i < positions; i++) {
+            ByteBuffer encoded = codec.encode(sender.next(i, 100 + i * 0.01f, 64f, 200 - i * 0.01f), true);
+            bytes = encoded.remaining();
+            dispatcher.process(codec.decode(encoded), connection);
+        }
+        return bytes;
+    }
+
+    private static void check(PacketCodec codec) {
+        Sender sender = new Sender();
+        for (int i = 0; i < 10; i++) {
+            PMovement sent = sender.next(i, i * 1.5f, -i, Float.MAX_VALUE);
+            PMovement received = (PMovement) codec.decode(codec.encode(sent, true));
+            if (received.sequence() != sent.sequence() || !Arrays.equals(received.inputs(), sent.inputs())) {
+                fail("Movement " + i + " decoded differently");
+            }
+        }
+        ByteBuffer tooMany = ByteBuffer.allocate(64).putInt(0).put((byte) (PMovement.MAX_INPUTS + 1)).flip();
+        try {
+            new PMovement(0, new PMovement.Input[0]).read(tooMany);
+            fail("A movement of " + (PMovement.MAX_INPUTS + 1) + " inputs was read");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void lossy(PacketCodec codec, int positions) {
+        Random random = new Random(42);
+        List<Integer> applied = new ArrayList<>();
+        boolean[] arrived = new boolean[positions];
+        // The same filter as ServerThread.move
+        int[] last = {-1};
+        PacketDispatcher dispatcher = new PacketDispatcher().on(PMovement.class, (movement, connection) -> {
+            for (int i = 0; i < movement.inputs().length; i++) {
+                int sequence = movement.sequence() + i;
+                if (sequence - last[0] <= 0) continue;
+                last[0] = sequence;
+                applied.add(movement.inputs()[i].tick());
+            }
+        });
+
+        Sender sender = new Sender();
+        for (int i = 0; i < positions; i++) {
+            PMovement movement = sender.next(i, i, 0, 0);
+            if (random.nextDouble() < 0.25) continue;
+            for (PMovement.Input input : movement.inputs()) arrived[input.tick()] = true;
+            dispatcher.process(codec.decode(codec.encode(movement, true)), connection);
+        }
+
+        int expected = 0;
+        for (boolean received : arrived) if (received) expected++;
+        for (int i = 1; i < applied.size(); i++) {
+            if (applied.get(i) <= applied.get(i - 1)) fail("Input " + applied.get(i) + " applied after " + applied.get(i - 1));
+        }
+        if (applied.size() != expected) fail(applied.size() + " inputs applied, " + expected + " arrived");
+        System.out.printf("Lost a quarter of %d movements, %d inputs arrived (%.2f%%)%n", positions, expected, 100.0 * expected / positions);
+    }
+
+    // What Main keeps to send: the latest inputs, the newest last
+    private static final class Sender {
+        private final PMovement.Input[] recent = new PMovement.Input[PMovement.MAX_INPUTS];
+        private int sequence;
+
+        PMovement next(int tick, float x, float y, float z) {
+            System.arraycopy(recent, 1, recent, 0, recent.length - 1);
+            recent[recent.length - 1] = new PMovement.Input(tick, x, y, z);
+            int count = Math.min(++sequence, recent.length);
+            return new PMovement(sequence - count, Arrays.copyOfRange(recent, recent.length - count, recent.length));
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
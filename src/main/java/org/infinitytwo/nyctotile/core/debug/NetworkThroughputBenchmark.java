@@ -0,0 +1,206 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.EndPoint;
+import com.esotericsoftware.kryonet.Server;
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.network.Network;
+import org.infinitytwo.nyctotile.core.network.data.Packets;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.VOLUME;
+import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.EncryptedPacket;
+import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.MPacket;
+
+/**
+ * Sends generated chunks from a server to a client over loopback through {@link Network#send}, with the cipher
+ * left out so only the transfer is measured:
+ * <ul>
+ *     <li>prints the MB/s and chunks a second for compressed chunks, one fragment each, and for uncompressed
+ *     ones streamed in fragments from two threads at once</li>
+ *     <li>fails if a chunk is lost or comes with other blocks, or a partial message is left over</li>
+ *     <li>fails if a fragment of a message larger than {@link Network#MAX_MESSAGE_BYTES} does not get the connection
+ *     closed</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [chunks] [port]}, the port and the one after it must be free.
+ */
+public class NetworkThroughputBenchmark {
+    private static final AtomicReference<String> failure = new AtomicReference<>();
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 54555;
+        Packets.register();
+
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, 12345,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        TerrainGenerator terrain = new TerrainGenerator(settings, 45);
+        List<int[]> chunks = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int[] blocks = new int[VOLUME];
+            terrain.generate(i % 8, i / 8, blocks);
+            chunks.add(blocks);
+        }
+
+        AtomicLong received = new AtomicLong();
+        AtomicReference<CountDownLatch> done = new AtomicReference<>();
+        Server server = new Server(Network.BUFFER_BYTES, Network.BUFFER_BYTES);
+        Client client = new Client(Network.BUFFER_BYTES, Network.BUFFER_BYTES);
+        Loopback serverSide = new Loopback(server, port, (connection, data) -> {});
+        Loopback clientSide = new Loopback(client, port, (connection, data) -> {
+            int x = data instanceof Packets.PChunk chunk ? chunk.x() : ((Packets.PCompressedChunk) data).x();
+            int[] blocks = data instanceof Packets.PChunk chunk ? chunk.blocks() : ((Packets.PCompressedChunk) data).blocks();
+            if (!Arrays.equals(blocks, chunks.get(x % chunks.size()))) failure.compareAndSet(null, "chunk " + x + " came with other blocks");
+            received.incrementAndGet();
+            done.get().countDown();
+        });
+        try {
+            server.start();
+            server.bind(port, port + 1);
+            client.start();
+            client.connect(5000, "127.0.0.1", port, port + 1);
+            while (serverSide.connection == null) Thread.sleep(10);
+            Connection connection = serverSide.connection;
+
+            run("Compressed chunks", count, 1, chunks, i -> new Packets.PCompressedChunk(i, 0, chunks.get(i % chunks.size())), serverSide, connection, done);
+            run("Streamed chunks  ", count / 4, 2, chunks, i -> new Packets.PChunk(i, 0, chunks.get(i % chunks.size())), serverSide, connection, done);
+            if (failure.get() != null) fail(failure.get());
+            if (received.get() != count + count / 4) fail((count + count / 4 - received.get()) + " chunks were lost");
+            if (clientSide.getPendingTransfers(client) != 0) fail(clientSide.getPendingTransfers(client) + " partial messages are left over");
+
+            // A message the client could never buffer
+            client.sendTCP(new EncryptedPacket(new byte[16], 0, 16, (short) 0, (short) 1024, 1, Network.MAX_MESSAGE_BYTES + 1));
+            for (int i = 0; i < 200 && client.isConnected(); i++) Thread.sleep(10);
+            if (client.isConnected()) fail("a fragment of a message larger than the limit did not close the connection");
+        } finally {
+            client.stop();
+            server.stop();
+        }
+        System.out.println("Every chunk came through intact");
+        System.exit(0);
+    }
+
+    private static void run(String name, int count, int threads, List<int[]> chunks, Function<Integer, Data> packet,
+                            Loopback network, Connection connection, AtomicReference<CountDownLatch> done) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) bytes += packet.apply(i).serialize().length;
+        done.set(new CountDownLatch(count));
+
+        long start = System.nanoTime();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            Thread sender = new Thread(() -> {
+                for (int i = first; i < count; i += threads) network.send(packet.apply(i), connection, true);
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) sender.join();
+        if (!done.get().await(60, TimeUnit.SECONDS)) fail(name.trim() + " did not all arrive within a minute");
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s %6d in %6.2f s, %7.1f MB/s, %8.0f chunks/s, %6d bytes each%n", name, count, seconds,
+                bytes / seconds / 1e6, count / seconds, bytes / count);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+
+    private interface Receiver {
+        void receive(Connection connection, Data data);
+    }
+
+    // One side of the connection, without a handshake or a cipher
+    private static final class Loopback extends Network {
+        private final EndPoint endPoint;
+        private final Receiver receiver;
+        volatile Connection connection;
+
+        Loopback(EndPoint endPoint, int port, Receiver receiver) {
+            super(port + 1, port);
+            this.endPoint = endPoint;
+            this.receiver = receiver;
+            register(endPoint.getKryo());
+            endPoint.addListener(getListener());
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void shutdown() {}
+
+        @Override
+        public void ping(Connection connection) {}
+
+        @Override
+        public void sendTCP(MPacket packet, Connection connection) {
+            connection.sendTCP(packet);
+        }
+
+        @Override
+        public void sendUDP(MPacket packet, Connection connection) {
+            connection.sendUDP(packet);
+        }
+
+        @Override
+        protected ByteBuffer encrypt(ByteBuffer packet, Connection connection) {
+            return packet;
+        }
+
+        @Override
+        protected ByteBuffer decrypt(byte[] packet, Connection connection) {
+            return ByteBuffer.wrap(packet);
+        }
+
+        @Override
+        public void onConnect(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onDisconnect(Connection connection) {}
+
+        @Override
+        public void onReceive(Connection connection, Data object) {
+            receiver.receive(connection, object);
+        }
+
+        @Override
+        public void sendFailure(Connection connection, String s) {}
+
+        @Override
+        public void onControlPacket(Connection connection, Object object) {}
+
+        @Override
+        public int getPortTCP() {
+            return tcp;
+        }
+
+        @Override
+        public int getPortUDP() {
+            return udp;
+        }
+
+        @Override
+        protected Thread getUpdateThread() {
+            return endPoint.getUpdateThread();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.data.io.DataSchematica;
+import org.infinitytwo.nyctotile.core.network.PacketCodec;
+import org.infinitytwo.nyctotile.core.network.SessionCipher;
+import org.infinitytwo.nyctotile.core.network.data.Packets;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
+
+/**
+ * Compares the {@link PacketCodec} with the name header against the way packets were framed before it: an array
+ * from {@link Data#serialize()}, copied behind the name into a second one, and on the way in the name decoded,
+ * looked up and the payload copied out again. For a few packets the client and server send all the time:
+ * <ul>
+ *     <li>prints the bytes on the wire and the packets a second one thread encodes and decodes, both ways</li>
+ *     <li>fails if a packet does not decode to itself, with either header, or with a table in another order as the
+ *     server keeps for a client, or once encrypted and decrypted by a {@link SessionCipher} as it goes over the
+ *     network</li>
+ * </ul>
+ * Exits with status 1 on failure. Arguments: {@code [iterations]}.
+ */
+public class PacketCodecBenchmark {
+    public static void main(String[] args) throws GeneralSecurityException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Packets.register();
+        PacketCodec codec = PacketCodec.local();
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        SecretKey key = generator.generateKey();
+        SessionCipher client = new SessionCipher(key, true), server = new SessionCipher(key, false);
+
+        List<String> names = new ArrayList<>(List.of(codec.getNames()));
+        Collections.reverse(names);
+        names.add(0, "packetfromanewerclient");
+        PacketCodec remote = PacketCodec.of(names.toArray(String[]::new));
+
+        List<Data> packets = List.of(
+                new Packets.PPosition(42, 7, 1.5f, 64f, -3.25f),
+                new Packets.PCommand("getchunk 12 -7 overworld"),
+                new Packets.Failure("Server failed to load requested chunk."));
+        for (Data packet : packets) {
+            String name = packet.getClass().getSimpleName();
+            for (PacketCodec table : List.of(codec, remote)) {
+                for (boolean compact : new boolean[] {false, true}) {
+                    ByteBuffer encoded = table.encode(packet, compact);
+                    if (compact && (encoded.get(1) & 0x80) == 0) fail(name + " got no opcode");
+                    Data decoded = table.decode(copy(encoded));
+                    if (!same(packet, decoded)) fail(name + " decoded to " + decoded);
+                    // Decrypted in place, the header starts after the nonce
+                    Data received = table.decode(server.decrypt(toArray(client.encrypt(encoded))));
+                    if (!same(packet, received)) fail(name + " decoded to " + received + " once encrypted");
+                }
+            }
+            Data decoded = codec.decode(ByteBuffer.wrap(legacyEncode(packet)));
+            if (!same(packet, decoded)) fail(name + " in the old framing decoded to " + decoded);
+
+            int legacyBytes = legacyEncode(packet).length;
+            int compactBytes = codec.encode(packet, true).remaining();
+            System.out.printf("%-10s %3d bytes named, %3d with an opcode%n", name, legacyBytes, compactBytes);
+
+            long legacyEncode = time(iterations, () -> legacyEncode(packet));
+            long namedEncode = time(iterations, () -> codec.encode(packet, false));
+            long compactEncode = time(iterations, () -> codec.encode(packet, true));
+            byte[] legacy = legacyEncode(packet);
+            byte[] compact = toArray(codec.encode(packet, true));
+            long legacyDecode = time(iterations, () -> legacyDecode(ByteBuffer.wrap(legacy)));
+            long compactDecode = time(iterations, () -> codec.decode(ByteBuffer.wrap(compact)));
+            System.out.printf("  encode  old %s, named %s, opcode %s%n", rate(iterations, legacyEncode), rate(iterations, namedEncode), rate(iterations, compactEncode));
+            System.out.printf("  decode  old %s, opcode %s%n", rate(iterations, legacyDecode), rate(iterations, compactDecode));
+        }
+
+        System.out.println("Every packet came back the same");
+        System.exit(0);
+    }
+
+    // How Network.send framed a packet before the PacketCodec
+    private static byte[] legacyEncode(Data packet) {
+        byte[] payload = packet.serialize();
+        byte[] type = packet.getClass().getSimpleName().toLowerCase().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + type.length + payload.length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(type.length);
+        buffer.put(type);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    // How DataSchematica read it back
+    private static Data legacyDecode(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        Data data = DataSchematica.get(new String(name, StandardCharsets.UTF_8).toLowerCase());
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return data.deserialize(payload);
+    }
+
+    private static long time(int iterations, Runnable task) {
+        for (int i = 0; i < iterations / 10; i++) task.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) task.run();
+        return System.nanoTime() - start;
+    }
+
+    private static String rate(int iterations, long nanos) {
+        return String.format("%5.2f M/s", iterations / (nanos / 1e9) / 1e6);
+    }
+
+    private static boolean same(Data packet, Data decoded) {
+        if (packet instanceof Packets.Failure failure) return decoded instanceof Packets.Failure other && failure.msg.equals(other.msg);
+        return packet.equals(decoded);
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.wrap(toArray(buffer));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
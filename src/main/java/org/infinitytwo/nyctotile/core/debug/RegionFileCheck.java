@@ -0,0 +1,134 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.io.RegionFile;
+import org.infinitytwo.nyctotile.core.data.io.WorldData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.VOLUME;
+
+/**
+ * Headless check for the {@link RegionFile} format, in a temporary directory:
+ * <ul>
+ *     <li>saves a square of generated chunks, one region of it first written in the old format, and fails if any
+ *     chunk does not load back the same</li>
+ *     <li>saves every chunk again a few times, changed but as large as before, and fails if the files grow instead
+ *     of reusing the sectors the old copies leave</li>
+ *     <li>compacts, and fails if free sectors are left or a chunk changed</li>
+ *     <li>prints how long loading one chunk takes on a cold start, which should not depend on the size of the world</li>
+ * </ul>
+ * Exits with status 1 on the first failure. Arguments: {@code [radius]}.
+ */
+public class RegionFileCheck {
+    public static void main(String[] args) throws IOException {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, 12345,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        TerrainGenerator terrain = new TerrainGenerator(settings, 45);
+        Path directory = Files.createTempDirectory("region-file-check");
+
+        Map<ChunkPos, ChunkData> chunks = new HashMap<>();
+        int[] blocks = new int[VOLUME];
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) {
+                terrain.generate(x, z, blocks);
+                ChunkData chunk = new ChunkData(new ChunkPos(x, z));
+                chunk.modify(blocks);
+                chunks.put(new ChunkPos(x, z), chunk);
+            }
+        }
+
+        // Region 0, 0 in the old format: position, count, then the chunks back to back
+        List<byte[]> legacy = new ArrayList<>();
+        int legacyBytes = 0;
+        for (int x = 0; x < RegionFile.SIZE && x < radius; x++) {
+            for (int z = 0; z < RegionFile.SIZE && z < radius; z++) {
+                byte[] record = chunks.get(new ChunkPos(x, z)).serialize();
+                legacy.add(record);
+                legacyBytes += record.length;
+            }
+        }
+        ByteBuffer old = ByteBuffer.allocate(3 * Integer.BYTES + legacyBytes).putInt(0).putInt(0).putInt(legacy.size());
+        for (byte[] record : legacy) old.put(record);
+        Files.write(directory.resolve("region-0-0.ulr"), old.array());
+
+        List<ChunkData> others = new ArrayList<>();
+        for (ChunkData chunk : chunks.values()) {
+            if (chunk.getPosition().x < 0 || chunk.getPosition().y < 0 || chunk.getPosition().x >= RegionFile.SIZE || chunk.getPosition().y >= RegionFile.SIZE) others.add(chunk);
+        }
+        long start = System.nanoTime();
+        WorldData.saveChunks(directory, others);
+        System.out.printf("Saved %d chunks in %.1f ms%n", others.size(), (System.nanoTime() - start) / 1e6);
+        compare(directory, chunks);
+        if (Files.exists(directory.resolve("region-0-0.ulr"))) fail("the old region file was not converted");
+        long size = directorySize(directory);
+
+        // Every save moves a chunk into free sectors and frees the old ones
+        Random random = new Random(1);
+        for (int round = 0; round < 4; round++) {
+            // Low enough to stay in sections that are there already, the chunks keep their size
+            for (ChunkData chunk : chunks.values()) chunk.setBlock(random.nextInt(16), 1 + random.nextInt(30), random.nextInt(16), 2);
+            start = System.nanoTime();
+            WorldData.saveChunks(directory, chunks.values());
+            System.out.printf("Saved %d changed chunks in %.1f ms, %d KiB of region files%n", chunks.size(),
+                    (System.nanoTime() - start) / 1e6, directorySize(directory) >> 10);
+        }
+        compare(directory, chunks);
+        if (directorySize(directory) > size * 5 / 4 + (long) RegionFile.COMMIT_BYTES * 4) fail("the region files grew from " + size + " to " + directorySize(directory) + " bytes");
+
+        WorldData.compactRegions(directory);
+        WorldData.closeRegions();
+        long compacted = directorySize(directory);
+        System.out.printf("Compacted to %d KiB%n", compacted >> 10);
+        for (int x = -radius; x < radius; x += RegionFile.SIZE) {
+            for (int z = -radius; z < radius; z += RegionFile.SIZE) {
+                RegionFile file = new RegionFile(RegionFile.getPath(directory, Math.floorDiv(x, RegionFile.SIZE), Math.floorDiv(z, RegionFile.SIZE)),
+                        Math.floorDiv(x, RegionFile.SIZE), Math.floorDiv(z, RegionFile.SIZE));
+                if (file.getFreeSectors() != 0) fail(file.getPath() + " has " + file.getFreeSectors() + " free sectors after compacting");
+                file.close();
+            }
+        }
+        compare(directory, chunks);
+
+        WorldData.closeRegions();
+        start = System.nanoTime();
+        WorldData.loadChunk(directory, new ChunkPos(radius - 1, radius - 1));
+        System.out.printf("Loaded one chunk of %d on a cold start in %.2f ms%n", chunks.size(), (System.nanoTime() - start) / 1e6);
+
+        WorldData.closeRegions();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        System.out.println("Region files load every chunk back the same");
+        System.exit(0);
+    }
+
+    private static void compare(Path directory, Map<ChunkPos, ChunkData> chunks) throws IOException {
+        for (Map.Entry<ChunkPos, ChunkData> entry : chunks.entrySet()) {
+            if (!WorldData.hasChunk(directory, entry.getKey())) fail("chunk " + entry.getKey() + " was not saved");
+            ChunkData loaded = WorldData.loadChunk(directory, entry.getKey());
+            if (loaded == null || !Arrays.equals(loaded.getBlockIds(), entry.getValue().getBlockIds())) fail("chunk " + entry.getKey() + " came back with other blocks");
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,170 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+import org.joml.Vector2i;
+import personthecat.fastnoise.FastNoise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless terrain generation throughput on one thread, in chunks per second per core, for:
+ * <ul>
+ *     <li>the old per-column path: four noise lookups, a sorted biome list and a new detail noise per picked
+ *     biome for every column, and every block written with {@link ChunkData#setBlock}</li>
+ *     <li>{@link TerrainGenerator} writing into a flat array, the noise only</li>
+ *     <li>{@link TerrainGenerator} plus {@link ChunkData#modify}, what {@code ServerProcedureGridMap} does
+ *     (without the sky light)</li>
+ *     <li>both again with the noise interpolated as in {@link Overworld}</li>
+ * </ul>
+ * Every pass generates the same square of chunks; the first {@code warmup} passes are not timed.
+ * The exact paths must produce the same blocks, the program exits with status 1 otherwise.
+ * Arguments: {@code [radius] [passes] [warmup] [seed]}.
+ */
+public class TerrainGenerationBenchmark {
+    private static long sink;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int seed = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+
+        // What Overworld generates with, every noise sampled per column
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, seed,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        TerrainGenerator generator = new TerrainGenerator(settings, 45);
+        NoiseGenerationSettings interpolatedSettings = new NoiseGenerationSettings(62, 64, seed, settings.biomes);
+        interpolatedSettings.interpolationError = Overworld.INTERPOLATION_ERROR;
+        TerrainGenerator interpolated = new TerrainGenerator(interpolatedSettings, 45);
+
+        List<Vector2i> positions = new ArrayList<>();
+        for (int x = -radius; x < radius; x++) {
+            for (int z = -radius; z < radius; z++) positions.add(new Vector2i(x, z));
+        }
+
+        int[] blocks = new int[VOLUME];
+        for (Vector2i position : positions) {
+            generator.generate(position.x, position.y, blocks);
+            int[] old = legacy(settings, position).getBlockIds();
+            if (!Arrays.equals(old, blocks)) {
+                System.out.println("FAILED: chunk " + position.x + ", " + position.y + " differs from the old generator");
+                System.exit(1);
+            }
+        }
+
+        System.out.println("Chunks per pass: " + positions.size() + " (radius " + radius + ", seed " + seed + "), "
+                + passes + " passes after " + warmup + " warmup passes, 1 thread");
+        run("Per column, setBlock     ", positions, passes, warmup, position -> sink += legacy(settings, position).getHeight(0, 0));
+        run("Grids, flat array        ", positions, passes, warmup, position -> {
+            generator.generate(position.x, position.y, blocks);
+            sink += blocks[0];
+        });
+        run("Grids, into ChunkData    ", positions, passes, warmup, position -> {
+            generator.generate(position.x, position.y, blocks);
+            ChunkData data = new ChunkData(position);
+            data.modify(blocks);
+            sink += data.getHeight(0, 0);
+        });
+        run("Interpolated, flat array ", positions, passes, warmup, position -> {
+            interpolated.generate(position.x, position.y, blocks);
+            sink += blocks[0];
+        });
+        run("Interpolated, ChunkData  ", positions, passes, warmup, position -> {
+            interpolated.generate(position.x, position.y, blocks);
+            ChunkData data = new ChunkData(position);
+            data.modify(blocks);
+            sink += data.getHeight(0, 0);
+        });
+        System.out.println("Generated terrain matches the old generator");
+
+        if (sink == 42) System.out.print("");
+        System.exit(0);
+    }
+
+    private static void run(String name, List<Vector2i> positions, int passes, int warmup, Consumer<Vector2i> generate) {
+        for (int i = 0; i < warmup; i++) positions.forEach(generate);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) positions.forEach(generate);
+        long elapsed = System.nanoTime() - start;
+
+        double seconds = elapsed / 1e9;
+        System.out.printf("%s %8.2f ms/pass %10.1f chunks/s%n", name, elapsed / 1e6 / passes, positions.size() * passes / seconds);
+    }
+
+    /**
+     * The generator as it was, one column at a time.
+     */
+    private static ChunkData legacy(NoiseGenerationSettings settings, Vector2i position) {
+        ChunkData data = new ChunkData(new Vector2i(position));
+        for (int x = position.x * SIZE; x < position.x * SIZE + SIZE; x++) {
+            for (int z = position.y * SIZE; z < position.y * SIZE + SIZE; z++) {
+                float temperature = settings.temperature.getNoise(x, z);
+                float humidity = settings.humidity.getNoise(x, z);
+                float elevationNoise = settings.elevation.getNoise(x, z);
+                float riverNoise = settings.river.getNoise(x, z);
+
+                List<float[]> weighted = new ArrayList<>(); // {biome index, weight}
+                for (int i = 0; i < settings.biomes.length; i++) {
+                    Biome biome = settings.biomes[i];
+                    float dt = temperature - biome.getTemperature(), dh = humidity - biome.getHumidity();
+                    weighted.add(new float[] {i, 1.0f / (dt * dt + dh * dh + 0.001f)});
+                }
+                weighted.sort((a, b) -> Float.compare(b[1], a[1]));
+                List<float[]> top = weighted.subList(0, Math.min(3, weighted.size()));
+
+                float totalWeight = 0f;
+                for (float[] bw : top) totalWeight += bw[1];
+                for (float[] bw : top) bw[1] /= totalWeight;
+
+                float blendedElevation = 0f, hilliness = 0f;
+                float blendedTop = 0, blendedSoil = 0, blendedRocky = 0;
+                for (float[] bw : top) {
+                    Biome b = settings.biomes[(int) bw[0]];
+                    float weight = bw[1];
+                    FastNoise detailNoise = b.getDetailNoise(45);
+                    blendedElevation += (elevationNoise + detailNoise.getNoise(x, z)) * weight;
+                    switch (b.getType()) {
+                        case PLAINS -> hilliness += 3f * weight;
+                        case HILL -> hilliness += 10f * weight;
+                        case MOUNTAIN -> hilliness += 35f * weight;
+                        case CANYON -> hilliness -= 25f * weight;
+                        case RIVER, CORE -> hilliness += 0f;
+                        default -> hilliness += 5f * weight;
+                    }
+                    blendedTop += b.getTop() * weight;
+                    blendedSoil += b.getSoil() * weight;
+                    blendedRocky += b.getRocky() * weight;
+                }
+
+                float riverBlend = Math.max(0, (0.10f - Math.abs(riverNoise)) / 0.10f);
+                int biomeHeight = settings.baseHeight + (int) (blendedElevation * hilliness);
+                int height = (int) (biomeHeight * (1 - riverBlend) + (settings.seaLevel - 2) * riverBlend);
+
+                int localX = Math.floorMod(x, SIZE), localZ = Math.floorMod(z, SIZE);
+                for (int y = 0; y < SIZE_Y; y++) {
+                    try {
+                        if (y > height) continue;
+                        else if (y == height) data.setBlock(localX, y, localZ, Math.round(blendedTop));
+                        else if (y >= height - 3) data.setBlock(localX, y, localZ, Math.round(blendedSoil));
+                        else if (y == 0) data.setBlock(localX, y, localZ, 4);
+                        else data.setBlock(localX, y, localZ, Math.round(blendedRocky));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,117 @@
+package org.infinitytwo.nyctotile.core.debug;
+
+import org.infinitytwo.nyctotile.core.constants.Biomes;
+import org.infinitytwo.nyctotile.core.world.generation.Biome;
+import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
+import personthecat.fastnoise.FastNoise;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Headless check for the interpolated {@link TerrainGenerator}: generates the same chunks with every noise
+ * sampled per column and with {@link NoiseGenerationSettings#interpolationError} set, then
+ * <ul>
+ *     <li>checks that every noise drifts no further than the error bound between its lattice points</li>
+ *     <li>compares the height maps and fails if a column moved by more than the allowed number of blocks</li>
+ *     <li>prints the noise lookups per chunk of both</li>
+ * </ul>
+ * Exits with status 1 on the first failure. Arguments: {@code [error bound] [max blocks] [radius] [seed]}.
+ */
+public class TerrainInterpolationCheck {
+    public static void main(String[] args) {
+        float bound = args.length > 0 ? Float.parseFloat(args[0]) : 0.1f;
+        int maxBlocks = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int radius = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seed = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+
+        NoiseGenerationSettings exact = settings(seed, 0);
+        NoiseGenerationSettings interpolated = settings(seed, bound);
+        TerrainGenerator exactGenerator = new TerrainGenerator(exact, 45);
+        TerrainGenerator generator = new TerrainGenerator(interpolated, 45);
+
+        // The bound holds for every noise on its own
+        String[] names = {"temperature", "humidity", "elevation", "river", "detail"};
+        FastNoise[] noises = {interpolated.temperature, interpolated.humidity, interpolated.elevation, interpolated.river,
+                interpolated.biomes[0].getDetailNoise(45)};
+        for (int i = 0; i < noises.length; i++) {
+            int step = TerrainGenerator.latticeStep(noises[i], bound);
+            float error = interpolationError(noises[i], step, radius);
+            System.out.printf("%-12s every %2d blocks, largest error %.4f%n", names[i], step, error);
+            if (error > bound) fail(names[i] + " drifts " + error + " from the exact noise, more than " + bound);
+        }
+
+        int[] exactBlocks = new int[VOLUME], blocks = new int[VOLUME];
+        int columns = 0, moved = 0, largest = 0;
+        long total = 0;
+        for (int cx = -radius; cx < radius; cx++) {
+            for (int cz = -radius; cz < radius; cz++) {
+                exactGenerator.generate(cx, cz, exactBlocks);
+                generator.generate(cx, cz, blocks);
+
+                for (int x = 0; x < SIZE; x++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        int difference = Math.abs(height(exactBlocks, x, z) - height(blocks, x, z));
+                        columns++;
+                        total += difference;
+                        if (difference > 0) moved++;
+                        largest = Math.max(largest, difference);
+                    }
+                }
+            }
+        }
+
+        System.out.printf("Noise lookups per chunk: %d exact, %d interpolated (bound %.3f)%n",
+                exactGenerator.getSamplesPerChunk(), generator.getSamplesPerChunk(), bound);
+        System.out.printf("Height map: %d of %d columns moved, by %.3f blocks on average and %d at most%n",
+                moved, columns, (double) total / columns, largest);
+        if (largest > maxBlocks) fail("a column moved by " + largest + " blocks, more than " + maxBlocks);
+
+        System.out.println("Interpolated terrain is within bounds");
+        System.exit(0);
+    }
+
+    private static NoiseGenerationSettings settings(int seed, float interpolationError) {
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(62, 64, seed,
+                new Biome[] {Biomes.PLAINS.biome, Biomes.DESERT.biome, Biomes.MOUNTAINS.biome});
+        settings.interpolationError = interpolationError;
+        return settings;
+    }
+
+    /**
+     * The largest difference between the noise and its bilinear interpolation on a lattice of {@code step}.
+     */
+    private static float interpolationError(FastNoise noise, int step, int radius) {
+        if (step == 1) return 0;
+        float largest = 0;
+        int extent = radius * SIZE;
+        for (int x = -extent; x < extent; x++) {
+            int x0 = Math.floorDiv(x, step) * step;
+            float tx = (float) (x - x0) / step;
+            for (int z = -extent; z < extent; z++) {
+                int z0 = Math.floorDiv(z, step) * step;
+                float tz = (float) (z - z0) / step;
+                float near = lerp(noise.getNoise(x0, z0), noise.getNoise(x0, z0 + step), tz);
+                float far = lerp(noise.getNoise(x0 + step, z0), noise.getNoise(x0 + step, z0 + step), tz);
+                largest = Math.max(largest, Math.abs(noise.getNoise(x, z) - lerp(near, far, tx)));
+            }
+        }
+        return largest;
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    private static int height(int[] blocks, int x, int z) {
+        for (int y = SIZE_Y - 1; y >= 0; y--) {
+            if (blocks[x * SIZE_Y * SIZE + y * SIZE + z] != 0) return y;
+        }
+        return -1;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -5,7 +5,7 @@ import org.infinitytwo.nyctotile.core.*;
 import org.infinitytwo.nyctotile.core.constants.Constants;
 import org.infinitytwo.nyctotile.core.constants.Material;
 import org.infinitytwo.nyctotile.core.data.*;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.data.io.BlockDataReader;
 import org.infinitytwo.nyctotile.core.data.world.AABB;
 import org.infinitytwo.nyctotile.core.data.world.Block;
@@ -22,8 +22,8 @@ import org.infinitytwo.nyctotile.core.data.Item;
 import org.infinitytwo.nyctotile.core.exception.IllegalDataTypeException;
 import org.infinitytwo.nyctotile.core.manager.CrashHandler;
 import org.infinitytwo.nyctotile.core.manager.Display;
+import org.infinitytwo.nyctotile.core.manager.MainThreadExecutor;
 import org.infinitytwo.nyctotile.core.manager.Mouse;
-import org.infinitytwo.nyctotile.core.manager.WorkerThreads;
 import org.infinitytwo.nyctotile.core.model.Model;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.model.builder.CubeModelBuilder;
@@ -38,6 +38,7 @@ import org.infinitytwo.nyctotile.core.ui.builtin.Hotbar;
 import org.infinitytwo.nyctotile.core.ui.position.Anchor;
 import org.infinitytwo.nyctotile.core.ui.position.Pivot;
 import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
 import org.infinitytwo.nyctotile.core.world.dimension.Overworld;
 import org.joml.*;
 import org.lwjgl.opengl.GL20;
@@ -378,8 +379,8 @@ public class Test {
             public int data = 5;
             
             @Override
-            public void buildModel(GridMap gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NFloatBuffer buffer, RGBA light) {
-                CubeModelBuilder.standardVerticesList(map, x, y, z, atlas.getUVCoords(2), light, buffer);
+            public void buildModel(BlockAccess gridMap, int x, int y, int z, TextureAtlas atlas, BlockRegistry registry, NIntBuffer buffer, RGBA light) {
+                CubeModelBuilder.standardVerticesList(map, x, y, z, 2, light, buffer);
             }
         };
         
@@ -532,11 +533,11 @@ public class Test {
     }
     
     public static void dispatchTask(Runnable task) {
-        WorkerThreads.dispatch(task);
+        MainThreadExecutor.execute(task);
     }
     
     private static void runTasks() {
-        WorkerThreads.run();
+        MainThreadExecutor.runFrame();
     }
     
     public static GridMap getGridMap() {
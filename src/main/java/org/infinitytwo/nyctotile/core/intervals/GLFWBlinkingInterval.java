@@ -3,7 +3,7 @@ package org.infinitytwo.nyctotile.core.intervals; // Or wherever you want to put
 import org.infinitytwo.nyctotile.core.event.Event;
 import org.infinitytwo.nyctotile.core.event.bus.EventBus;
 import org.infinitytwo.nyctotile.core.event.SubscribeEvent;
-import org.infinitytwo.nyctotile.core.manager.WorkerThreads;
+import org.infinitytwo.nyctotile.core.manager.MainThreadExecutor;
 
 @Deprecated
 public class GLFWBlinkingInterval {
@@ -169,7 +169,7 @@ public class GLFWBlinkingInterval {
     @SubscribeEvent
     private void eventHandler(IntervalRun e) {
         // Dispatch the user-provided action to the main application thread for safe execution.
-        WorkerThreads.dispatch(action);
+        MainThreadExecutor.execute(MainThreadExecutor.Priority.UI, action);
     }
 
     // Event class for internal use
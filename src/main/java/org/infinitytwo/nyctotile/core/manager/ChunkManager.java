@@ -11,12 +11,14 @@ public class ChunkManager {
         return WorkerThreads.getRunningThreads();
     }
     
+    @Deprecated
     public static void dispatch(Runnable task) {
-        WorkerThreads.dispatch(task);
+        MainThreadExecutor.execute(task);
     }
     
+    @Deprecated
     public static void run() {
-        WorkerThreads.run();
+        MainThreadExecutor.runFrame();
     }
     
     public static Future<?> run(Runnable f) {
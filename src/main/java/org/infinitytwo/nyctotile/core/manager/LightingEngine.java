@@ -1,87 +1,526 @@
 package org.infinitytwo.nyctotile.core.manager;
 
+import org.infinitytwo.nyctotile.core.data.BlockType;
 import org.infinitytwo.nyctotile.core.data.Light;
+import org.infinitytwo.nyctotile.core.data.buffer.LongQueue;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.data.world.PackedLight;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.renderer.Chunk;
 import org.infinitytwo.nyctotile.core.world.GMap;
-import org.infinitytwo.nyctotile.core.world.GridMap;
 import org.joml.Vector3i;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
-// TODO: RESUME IMPLEMENTATION
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Incremental block light (flood fill), for one {@link GMap}.
+ * <br><br>
+ * Changes are only queued by {@link #addLight}, {@link #removeLight} and {@link #blockChanged}, from any thread.
+ * {@link #update()} applies everything queued since the last call as one batch: first the removals, which
+ * clear the light they spread and collect the brighter light at the edge of the cleared area, then the
+ * additions, which spread that light and the new light back in. Every chunk the batch changed is marked
+ * dirty once, at the end, with only the sections that changed.
+ * <br><br>
+ * Light spreads through transparent blocks and loses one level per block. Opaque blocks are lit by their
+ * brightest neighbour (so their faces can be shaded) but do not pass it on, unless they emit light themselves.
+ * Light does not spread into chunks that are not loaded.
+ * <br><br>
+ * Sky light shares the same values: everything from a column's {@link ChunkData#getHeight height} up is
+ * {@link #SKY_LIGHT}, and spreads like any other light. New chunks get it from {@link #lightSky}, one pass
+ * per chunk on the thread that made the chunk, and spread over its borders by {@link #chunkAdded} once it
+ * is in the map. After that, {@link #blockChanged} cuts a column off the sky when a block is placed on top
+ * of it and opens it again when the top block is removed.
+ * <br><br>
+ * Queue entries are packed longs: x and z (26 bits each, signed), y (7 bits), a source flag and the level (4 bits).
+ */
 public class LightingEngine {
+    private static final int MAX_LEVEL = PackedLight.MAX_LEVEL;
+    public static final int SKY_LIGHT = PackedLight.pack(255, 255, 255, MAX_LEVEL);
+    private static final long SOURCE = 1L << 4;
+    private static final int[] DX = {1, -1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, 1, -1};
+
     private final GMap map;
-    private final Queue<Light> lightAdditionQueue = new LinkedList<>();
-    private final Queue<Light> lightRemovalQueue = new LinkedList<>();
-    
-    // The 6 directions for checking neighbors
-    private static final Vector3i[] NEIGHBOR_DIRS = {
-            new Vector3i(1, 0, 0), new Vector3i(-1, 0, 0),
-            new Vector3i(0, 1, 0), new Vector3i(0, -1, 0),
-            new Vector3i(0, 0, 1), new Vector3i(0, 0, -1)
-    };
-    
+
+    // Queued by any thread, swapped out by update()
+    private final Object pendingLock = new Object();
+    private LongQueue pendingAdditions = new LongQueue(); // pairs of (position and level, packed light)
+    private LongQueue pendingRemovals = new LongQueue();
+    private LongQueue pendingChanges = new LongQueue();
+    private LongQueue pendingChunks = new LongQueue();
+    private LongQueue additions = new LongQueue();
+    private LongQueue removals = new LongQueue();
+    private LongQueue changes = new LongQueue();
+    private LongQueue chunks = new LongQueue();
+
+    // update() only
+    private final LongQueue addQueue = new LongQueue(4096);
+    private final LongQueue removeQueue = new LongQueue(4096);
+    private final LongQueue relight = new LongQueue();
+    private final Map<ChunkData, int[]> touched = new IdentityHashMap<>();
+    private boolean[] opaque = new boolean[0];
+    private int[] emission = new int[0];
+    private BlockRegistry registry;
+
+    // The last chunk looked up, most neighbours are in the same chunk
+    private ChunkData chunk;
+    private int[] chunkMask;
+    private int chunkX, chunkZ;
+    private boolean chunkValid;
+
+    private long cellsChanged;
+
     public LightingEngine(GMap map) {
         this.map = map;
     }
-    
-    public void addLightSource(Vector3i worldPos, int lightLevel) {
-        if (lightLevel > 0) {
-            // 1. Set the initial light level at the source (assuming it's white light for simplicity)
-            map.setLight(worldPos.x, worldPos.y, worldPos.z, 255, 255, 255, lightLevel);
-            
-            // 2. Seed the addition queue to start the BFS
-            lightAdditionQueue.add(new Light(worldPos, lightLevel));
+
+    /**
+     * Queues a light source. It only brightens, a dimmer source than the light already there does nothing.
+     */
+    public void addLight(int x, int y, int z, int r, int g, int b, int level) {
+        if (level <= 0 || y < 0 || y >= SIZE_Y) return;
+        synchronized (pendingLock) {
+            pendingAdditions.add(pack(x, y, z, Math.min(level, MAX_LEVEL)) | SOURCE);
+            pendingAdditions.add(PackedLight.pack(r, g, b, Math.min(level, MAX_LEVEL)));
+        }
+    }
+
+    /**
+     * Queues the removal of the light at a position and everything it spread. Light from other
+     * sources that reached the same area is spread back in.
+     */
+    public void removeLight(int x, int y, int z) {
+        if (y < 0 || y >= SIZE_Y) return;
+        synchronized (pendingLock) {
+            pendingRemovals.add(pack(x, y, z, 0));
+        }
+    }
+
+    /**
+     * Queues a relight after the block at a position changed: light is cleared where an opaque block was
+     * placed, and spreads into the space a removed block left.
+     */
+    public void blockChanged(int x, int y, int z) {
+        if (y < 0 || y >= SIZE_Y) return;
+        synchronized (pendingLock) {
+            pendingChanges.add(pack(x, y, z, 0));
         }
     }
-    
+
+    /**
+     * Queues spreading light over the borders of a chunk that was just added to the map, both into
+     * its loaded neighbours and from them into it.
+     */
+    public void chunkAdded(int chunkX, int chunkZ) {
+        synchronized (pendingLock) {
+            pendingChunks.add(pack(chunkX, 0, chunkZ, 0));
+        }
+    }
+
+    public void addLightSource(Vector3i worldPos, int lightLevel) {
+        addLight(worldPos.x, worldPos.y, worldPos.z, 255, 255, 255, lightLevel);
+    }
+
     public void addLightSource(Vector3i worldPos, Light light) {
-        if (light.getLevel() > 0) {
-            map.setLight(worldPos.x, worldPos.y, worldPos.z, light.r(), light.g(), light.b(), light.getLevel());
-            
-            // Seed the addition queue to start the BFS
-            lightAdditionQueue.add(new Light(worldPos, light.getLevel()));
-        }
-    }
-    
-    public void update() {
-        processLightAddition();
-        // processLightRemoval(); // Implement this later
-    }
-    
-    // The BFS for light spreading (Step 1 in the plan)
-    private void processLightAddition() {
-        while (!lightAdditionQueue.isEmpty()) {
-            Light current = lightAdditionQueue.poll();
-            Vector3i pos = current.getPosition();
-            int currentLevel = current.getLevel();
-            
-            if (currentLevel <= 1) continue; // Light extinguished
-            
-            int nextLevel = currentLevel - 1;
+        addLight(worldPos.x, worldPos.y, worldPos.z, light.r(), light.g(), light.b(), light.getLevel());
+    }
+
+    /**
+     * @return {@code true} if changes are waiting for {@link #update()}
+     */
+    public boolean hasPending() {
+        synchronized (pendingLock) {
+            return !pendingAdditions.isEmpty() || !pendingRemovals.isEmpty() || !pendingChanges.isEmpty() || !pendingChunks.isEmpty();
+        }
+    }
+
+    /**
+     * @return The number of light values written by all batches so far
+     */
+    public long getCellsChanged() {
+        return cellsChanged;
+    }
+
+    /**
+     * Applies every change queued since the last call. Call once per tick or frame, from one thread.
+     *
+     * @return The number of chunks that changed
+     */
+    public synchronized int update() {
+        synchronized (pendingLock) {
+            if (pendingAdditions.isEmpty() && pendingRemovals.isEmpty() && pendingChanges.isEmpty() && pendingChunks.isEmpty()) return 0;
+            LongQueue swap = additions; additions = pendingAdditions; pendingAdditions = swap;
+            swap = removals; removals = pendingRemovals; pendingRemovals = swap;
+            swap = changes; changes = pendingChanges; pendingChanges = swap;
+            swap = chunks; chunks = pendingChunks; pendingChunks = swap;
+        }
+
+        refreshBlockCache();
+        chunkValid = false;
+        try {
+            seedRemovals();
+            seedChanges();
+            propagateRemovals();
+            seedAdditions();
+            seedChunkBorders();
+            propagateAdditions();
+            relightOpaque();
+            return markTouched();
+        } finally {
+            additions.clear();
+            removals.clear();
+            changes.clear();
+            chunks.clear();
+            addQueue.clear();
+            removeQueue.clear();
+            relight.clear();
+            touched.clear();
+            chunk = null;
+            chunkMask = null;
+            chunkValid = false;
+        }
+    }
+
+    private void seedRemovals() {
+        while (!removals.isEmpty()) {
+            long entry = removals.poll();
+            int x = x(entry), y = y(entry), z = z(entry);
+            if (!select(x, z)) continue;
+
+            int level = PackedLight.level(get(x, y, z));
+            if (level == 0) continue;
+            set(x, y, z, 0);
+            removeQueue.add(pack(x, y, z, level));
+        }
+    }
+
+    private void seedChanges() {
+        while (!changes.isEmpty()) {
+            long entry = changes.poll();
+            int x = x(entry), y = y(entry), z = z(entry);
+            if (!select(x, z)) continue;
+
+            int id = blockId(x, y, z);
+            int height = chunk.getHeight(x & 15, z & 15);
+            if (id != 0 && y == height - 1) {
+                // The new top of its column, what was open sky under it is not anymore
+                for (int below = isOpaque(id) ? y - 1 : y; below >= 0; below--) {
+                    if (PackedLight.level(get(x, below, z)) != MAX_LEVEL || isOpaque(blockId(x, below, z))) break;
+                    set(x, below, z, 0);
+                    removeQueue.add(pack(x, below, z, MAX_LEVEL));
+                }
+            } else if (id == 0 && y >= height) {
+                // The top of its column was removed, the sky reaches down to the next block
+                for (int below = y; below >= height; below--) {
+                    if (get(x, below, z) == SKY_LIGHT) continue;
+                    set(x, below, z, SKY_LIGHT);
+                    addQueue.add(pack(x, below, z, MAX_LEVEL));
+                }
+            }
             
-            for (Vector3i dir : NEIGHBOR_DIRS) {
-                Vector3i neighborPos = pos.add(dir, new Vector3i()); // Use a new Vector3i to avoid modification
-                
-                // 1. Check if the block is loaded and accessible (GMap handles this)
-                if (!map.isBlockLoaded(neighborPos.x, neighborPos.y, neighborPos.z)) continue;
-                
-                // 2. Check OPAQUENESS (Light stops at opaque blocks)
-                if (!map.getBlockType(neighborPos).isTransparent()) continue; // Requires a GMap method to check block properties
-                
-                // 3. Intensity Check
-                int existingLevel = map.getLightLevel(neighborPos.x, neighborPos.y, neighborPos.z);
-                
-                if (nextLevel > existingLevel) {
-                    // Update and Re-enqueue
-                    map.setLightLevel(neighborPos.x, neighborPos.y, neighborPos.z, nextLevel);
-                    lightAdditionQueue.add(new Light(neighborPos, nextLevel));
-                    
-                    // You must ensure the chunk containing neighborPos gets rebuilt.
-                    // This is often handled by GMap/GridMap calling Chunk.dirty()
-                    if (map instanceof GridMap m) m.rebuildChunk(neighborPos.x,neighborPos.z); // Assuming GMap/GridMap has this abstract method
+            if (isOpaque(id)) {
+                // Whatever passed through here is blocked now
+                int level = PackedLight.level(get(x, y, z));
+                if (level > 0) {
+                    set(x, y, z, 0);
+                    removeQueue.add(pack(x, y, z, level));
                 }
+                relight.add(pack(x, y, z, 0));
+            } else {
+                // Let the neighbours shine into the gap
+                for (int d = 0; d < 6; d++) {
+                    int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                    if (ny < 0 || ny >= SIZE_Y || !select(nx, nz)) continue;
+                    int level = PackedLight.level(get(nx, ny, nz));
+                    if (level > 1 && spreads(blockId(nx, ny, nz))) addQueue.add(pack(nx, ny, nz, level) | SOURCE);
+                }
+            }
+        }
+    }
+
+    private void propagateRemovals() {
+        while (!removeQueue.isEmpty()) {
+            long entry = removeQueue.poll();
+            int x = x(entry), y = y(entry), z = z(entry), level = level(entry);
+
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= SIZE_Y || !select(nx, nz)) continue;
+
+                int light = get(nx, ny, nz);
+                int neighbourLevel = PackedLight.level(light);
+                if (neighbourLevel == 0) continue;
+
+                int id = blockId(nx, ny, nz);
+                if (neighbourLevel < level) {
+                    // Lit by the removed light, clear it and keep going
+                    int emitted = emission[id];
+                    if (emitted > 0) {
+                        // A light block that was outshone, back to its own light
+                        set(nx, ny, nz, PackedLight.withLevel(light, emitted));
+                        addQueue.add(pack(nx, ny, nz, emitted) | SOURCE);
+                        if (emitted >= neighbourLevel) continue;
+                    } else {
+                        set(nx, ny, nz, 0);
+                    }
+                    if (opaque[id]) relight.add(pack(nx, ny, nz, 0));
+                    else removeQueue.add(pack(nx, ny, nz, neighbourLevel));
+                } else if (spreads(id)) {
+                    // Lit by something else at least as bright, it refills the cleared area
+                    addQueue.add(pack(nx, ny, nz, neighbourLevel) | SOURCE);
+                }
+            }
+        }
+    }
+
+    private void seedAdditions() {
+        while (!additions.isEmpty()) {
+            long entry = additions.poll();
+            int light = (int) additions.poll();
+            int x = x(entry), y = y(entry), z = z(entry), level = level(entry);
+            if (!select(x, z)) continue;
+
+            if (PackedLight.level(get(x, y, z)) >= level) continue;
+            set(x, y, z, light);
+            addQueue.add(entry);
+        }
+    }
+
+    private void seedChunkBorders() {
+        while (!chunks.isEmpty()) {
+            long entry = chunks.poll();
+            int minX = x(entry) * SIZE, minZ = z(entry) * SIZE;
+            for (int i = 0; i < SIZE; i++) {
+                // Each border cell and the cell across from it
+                seedBorder(minX + i, minZ);
+                seedBorder(minX + i, minZ - 1);
+                seedBorder(minX + i, minZ + SIZE - 1);
+                seedBorder(minX + i, minZ + SIZE);
+                seedBorder(minX, minZ + i);
+                seedBorder(minX - 1, minZ + i);
+                seedBorder(minX + SIZE - 1, minZ + i);
+                seedBorder(minX + SIZE, minZ + i);
             }
         }
     }
+
+    private void seedBorder(int x, int z) {
+        if (!select(x, z)) return;
+        for (int y = 0; y < SIZE_Y; y++) {
+            int level = PackedLight.level(get(x, y, z));
+            if (level > 1 && spreads(blockId(x, y, z))) addQueue.add(pack(x, y, z, level) | SOURCE);
+        }
+    }
+
+    private void propagateAdditions() {
+        while (!addQueue.isEmpty()) {
+            long entry = addQueue.poll();
+            int x = x(entry), y = y(entry), z = z(entry), level = level(entry);
+            if (!select(x, z)) continue;
+
+            int light = get(x, y, z);
+            // Stale, the cell was brightened again after this was queued and that entry spreads it
+            if (PackedLight.level(light) != level || level <= 1) continue;
+            // Only sources spread out of opaque blocks
+            if ((entry & SOURCE) == 0 && isOpaque(blockId(x, y, z))) continue;
+
+            int next = level - 1;
+            int nextLight = PackedLight.withLevel(light, next);
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= SIZE_Y || !select(nx, nz)) continue;
+                if (PackedLight.level(get(nx, ny, nz)) >= next) continue;
+
+                set(nx, ny, nz, nextLight);
+                if (!isOpaque(blockId(nx, ny, nz))) addQueue.add(pack(nx, ny, nz, next));
+            }
+        }
+    }
+
+    /**
+     * Opaque blocks that were cleared, lit again from their brightest neighbour. The additions may have
+     * reached them from a dimmer side first.
+     */
+    private void relightOpaque() {
+        while (!relight.isEmpty()) {
+            long entry = relight.poll();
+            int x = x(entry), y = y(entry), z = z(entry);
+
+            int best = 0;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= SIZE_Y || !select(nx, nz) || !spreads(blockId(nx, ny, nz))) continue;
+                int light = get(nx, ny, nz);
+                if (PackedLight.level(light) > PackedLight.level(best)) best = light;
+            }
+
+            int level = PackedLight.level(best) - 1;
+            if (level > 0 && select(x, z) && PackedLight.level(get(x, y, z)) < level) {
+                set(x, y, z, PackedLight.withLevel(best, level));
+            }
+        }
+    }
+
+    /**
+     * Fills a chunk that is not in a map yet with sky light: every column from its height up, spread
+     * sideways and down into the overhangs and onto the blocks under it. Light only spreads within the chunk.
+     * Safe to call from any thread as long as nothing else writes to {@code chunk}.
+     */
+    public static void lightSky(ChunkData chunk, BlockRegistry registry) {
+        int[] ids = chunk.getBlockIds();
+        int[] light = new int[VOLUME];
+        chunk.getLights(light);
+        boolean[] opaque = new boolean[1];
+        for (Map.Entry<Integer, BlockType> entry : registry.getEntries()) {
+            if (entry.getKey() >= opaque.length) opaque = Arrays.copyOf(opaque, entry.getKey() + 1);
+            opaque[entry.getKey()] = !entry.getValue().isTransparent();
+        }
+
+        // Same layout as getBlockIds(), x * SIZE_Y * SIZE + y * SIZE + z
+        final int strideX = SIZE_Y * SIZE, strideY = SIZE;
+        LongQueue queue = new LongQueue(4096);
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int height = chunk.getHeight(x, z);
+                for (int y = height; y < SIZE_Y; y++) light[x * strideX + y * strideY + z] = SKY_LIGHT;
+
+                // Only the sky next to something darker has to spread: the bottom of the column, and
+                // the sides where a neighbouring column is taller
+                int highest = height + 1;
+                if (x > 0) highest = Math.max(highest, chunk.getHeight(x - 1, z));
+                if (x < SIZE - 1) highest = Math.max(highest, chunk.getHeight(x + 1, z));
+                if (z > 0) highest = Math.max(highest, chunk.getHeight(x, z - 1));
+                if (z < SIZE - 1) highest = Math.max(highest, chunk.getHeight(x, z + 1));
+                for (int y = height; y < Math.min(highest, SIZE_Y); y++) queue.add(x * strideX + y * strideY + z);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int index = (int) queue.poll();
+            int next = PackedLight.level(light[index]) - 1;
+            if (next <= 0) continue;
+            int nextLight = PackedLight.withLevel(light[index], next);
+
+            int x = index / strideX, y = index / strideY % SIZE_Y, z = index % SIZE;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (nx < 0 || nx >= SIZE || ny < 0 || ny >= SIZE_Y || nz < 0 || nz >= SIZE) continue;
+                int neighbour = nx * strideX + ny * strideY + nz;
+                if (PackedLight.level(light[neighbour]) >= next) continue;
+
+                light[neighbour] = nextLight;
+                int id = ids[neighbour];
+                if (id >= opaque.length || !opaque[id]) queue.add(neighbour);
+            }
+        }
+
+        chunk.setLights(light);
+    }
+
+    private int markTouched() {
+        for (Map.Entry<ChunkData, int[]> entry : touched.entrySet()) {
+            if (entry.getKey() instanceof Chunk rendered) rendered.dirtySections(entry.getValue()[0]);
+        }
+        return touched.size();
+    }
+
+    /**
+     * Drops the cached block properties, blocks can be registered between batches.
+     */
+    private void refreshBlockCache() {
+        registry = map.getBlockRegistry();
+        opaque = new boolean[0];
+        emission = new int[0];
+    }
+
+    private void cacheBlock(int id) {
+        boolean[] grownOpaque = new boolean[id + 1];
+        int[] grownEmission = new int[id + 1];
+        if (registry != null) {
+            for (Map.Entry<Integer, BlockType> entry : registry.getEntries()) {
+                int key = entry.getKey();
+                BlockType type = entry.getValue();
+                if (key <= 0 || key > id) continue;
+                grownOpaque[key] = !type.isTransparent();
+                grownEmission[key] = type.getLightSource() == null ? 0 : Math.min(type.getLightSource().level(), MAX_LEVEL);
+            }
+        }
+        opaque = grownOpaque;
+        emission = grownEmission;
+    }
+
+    private boolean isOpaque(int id) {
+        return opaque[id];
+    }
+
+    /**
+     * @return {@code true} if light in a block of this id spreads to its neighbours
+     */
+    private boolean spreads(int id) {
+        return !opaque[id] || emission[id] > 0;
+    }
+
+    /**
+     * Points the chunk cache at the chunk holding world column {@code (x, z)}.
+     *
+     * @return {@code false} if that chunk is not loaded
+     */
+    private boolean select(int x, int z) {
+        int cx = x >> 4, cz = z >> 4; // Chunks are 16 wide
+        if (chunkValid && cx == chunkX && cz == chunkZ) return chunk != null;
+        chunkX = cx;
+        chunkZ = cz;
+        chunkValid = true;
+        chunk = map.getChunk(new ChunkPos(cx, cz));
+        chunkMask = chunk == null ? null : touched.get(chunk);
+        return chunk != null;
+    }
+
+    // The accessors below work on the selected chunk
+
+    private int get(int x, int y, int z) {
+        return chunk.getPackedLight(x & 15, y, z & 15);
+    }
+
+    private void set(int x, int y, int z, int light) {
+        chunk.putPackedLight(x & 15, y, z & 15, light);
+        if (chunkMask == null) touched.put(chunk, chunkMask = new int[1]);
+        chunkMask[0] |= 1 << (y >> 4);
+        cellsChanged++;
+    }
+
+    /**
+     * The block id, with its opacity and emission cached.
+     */
+    private int blockId(int x, int y, int z) {
+        int id = chunk.getBlockId(x & 15, y, z & 15);
+        if (id >= opaque.length) cacheBlock(id);
+        return id;
+    }
+
+    static long pack(int x, int y, int z, int level) {
+        return (long) (x & 0x3FFFFFF) << 38 | (long) (z & 0x3FFFFFF) << 12 | (long) (y & 0x7F) << 5 | level & 0xF;
+    }
+
+    static int x(long entry) {
+        return (int) (entry >> 38);
+    }
+
+    static int z(long entry) {
+        return (int) (entry << 26 >> 38);
+    }
+
+    static int y(long entry) {
+        return (int) (entry >>> 5) & 0x7F;
+    }
+
+    static int level(long entry) {
+        return (int) entry & 0xF;
+    }
 }
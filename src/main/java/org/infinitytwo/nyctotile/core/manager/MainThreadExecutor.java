@@ -0,0 +1,139 @@
+package org.infinitytwo.nyctotile.core.manager;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs work that has to happen on the main (GL) thread, a time budget at a time.
+ * <br><br>
+ * Any thread can {@link #execute(Priority, Runnable)} a task. {@link #runFrame()} is called once per
+ * frame by the render loop and runs tasks until {@link #getBudgetMillis()} is used up, highest
+ * priority first. So a burst of chunks is spread over several frames instead of freezing one,
+ * and a quiet queue is drained completely instead of one task per frame.
+ * <br><br>
+ * Every frame runs at least one task of each priority that has work waiting, even over the
+ * budget, so low priority work can not starve behind a steady stream of high priority work.
+ */
+public final class MainThreadExecutor {
+    /**
+     * Drain order, first to last.
+     */
+    public enum Priority {
+        /** Input and UI updates, anything the player sees react to them */
+        UI,
+        /** The default */
+        NORMAL,
+        /** GPU uploads and chunk construction, many small tasks that can wait a frame */
+        UPLOAD
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ConcurrentLinkedQueue<Runnable>[] queues = new ConcurrentLinkedQueue[PRIORITIES.length];
+    private static final AtomicInteger[] backlog = new AtomicInteger[PRIORITIES.length];
+
+    private static volatile double budgetMillis = 4;
+
+    private static final LongAdder submitted = new LongAdder();
+    private static final LongAdder executed = new LongAdder();
+    private static final LongAdder overBudgetFrames = new LongAdder();
+    private static volatile int lastFrameTasks;
+    private static volatile double lastFrameMillis;
+
+    static {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+            backlog[i] = new AtomicInteger();
+        }
+    }
+
+    private MainThreadExecutor() {}
+
+    public static void execute(Runnable task) {
+        execute(Priority.NORMAL, task);
+    }
+
+    public static void execute(Priority priority, Runnable task) {
+        queues[priority.ordinal()].add(task);
+        backlog[priority.ordinal()].incrementAndGet();
+        submitted.increment();
+    }
+
+    /**
+     * Runs queued tasks until the frame budget is used up. Main thread only.
+     *
+     * @return The number of tasks that ran
+     */
+    public static int runFrame() {
+        long start = System.nanoTime();
+        long deadline = start + (long) (budgetMillis * 1_000_000);
+        int ran = 0;
+
+        // One task per priority first, so nothing starves
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (runOne(i)) ran++;
+        }
+
+        // Then by priority until the budget is gone
+        drain:
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            while (System.nanoTime() < deadline) {
+                if (!runOne(i)) continue drain;
+                ran++;
+            }
+            break;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        // The budget is checked between tasks so the last one always runs over a little, only count real overruns
+        if (elapsed > (deadline - start) * 3 / 2) overBudgetFrames.increment();
+        lastFrameTasks = ran;
+        lastFrameMillis = elapsed / 1e6;
+        return ran;
+    }
+
+    private static boolean runOne(int priority) {
+        Runnable task = queues[priority].poll();
+        if (task == null) return false;
+        backlog[priority].decrementAndGet();
+        executed.increment();
+        task.run();
+        return true;
+    }
+
+    public static double getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * @param budgetMillis Main thread time per frame for queued tasks. A 60 FPS frame is about 16.6 ms.
+     */
+    public static void setBudgetMillis(double budgetMillis) {
+        if (budgetMillis <= 0) throw new IllegalArgumentException("Budget must be positive");
+        MainThreadExecutor.budgetMillis = budgetMillis;
+    }
+
+    public static int getBacklog(Priority priority) {
+        return backlog[priority.ordinal()].get();
+    }
+
+    public static int getBacklog() {
+        int total = 0;
+        for (AtomicInteger count : backlog) total += count.get();
+        return total;
+    }
+
+    public static Stats getStats() {
+        return new Stats(getBacklog(Priority.UI), getBacklog(Priority.NORMAL), getBacklog(Priority.UPLOAD),
+                submitted.sum(), executed.sum(), overBudgetFrames.sum(), lastFrameTasks, lastFrameMillis);
+    }
+
+    /**
+     * @param overBudgetFrames Frames where the tasks took over 1.5x the budget (a single slow task, or the
+     *                         one-per-priority guarantee)
+     */
+    public record Stats(int uiBacklog, int normalBacklog, int uploadBacklog,
+                        long submitted, long executed, long overBudgetFrames,
+                        int lastFrameTasks, double lastFrameMillis) {}
+}
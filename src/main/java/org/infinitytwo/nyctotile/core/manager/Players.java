@@ -5,6 +5,8 @@ import org.infinitytwo.nyctotile.core.data.PlayerData;
 import org.infinitytwo.nyctotile.core.entity.Player;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -19,6 +21,9 @@ public class Players {
     // 4. NEW: Storage for PlayerData, keyed by KryoNet Connection object
     private static final Map<Connection, PlayerData> PLAYER_DATA_BY_CONNECTION = new ConcurrentHashMap<>();
     
+    // 5. The Player entity by connection, one lookup for the packets a player sends all the time
+    private static final Map<Connection, Player> PLAYER_BY_CONNECTION = new ConcurrentHashMap<>();
+    
     public static PlayerData getPlayerByConnection(Connection connection) {
         return PLAYER_DATA_BY_CONNECTION.get(connection);
     }
@@ -35,11 +40,21 @@ public class Players {
         return PLAYER_DATA_BY_ID.get(id);
     }
     
+    /** Retrieves the Player entity that joined over the connection. */
+    public static Player getPlayer(Connection connection) {
+        return PLAYER_BY_CONNECTION.get(connection);
+    }
+    
     /** Retrieves the Player entity associated with the PlayerData. */
     public static Player getPlayer(PlayerData data) {
         return PLAYER_ENTITY.get(data);
     }
     
+    /** The entities of every player that joined and did not leave yet. */
+    public static Collection<Player> getPlayers() {
+        return Collections.unmodifiableCollection(PLAYER_ENTITY.values());
+    }
+    
     // --- Join/Leave ---
     
     /** Handles player joining, creating a new Player entity. */
@@ -55,6 +70,7 @@ public class Players {
         EntityManager.put(newPlayer);
         
         PLAYER_ENTITY.put(playerData, newPlayer);
+        PLAYER_BY_CONNECTION.put(playerData.connection(), newPlayer);
         newPlayer.setPosition(World.getSpawnLocation().position());
     }
     
@@ -68,6 +84,7 @@ public class Players {
     
     public static PlayerData leave(Connection connection) {
         PlayerData data = PLAYER_DATA_BY_CONNECTION.remove(connection);
+        PLAYER_BY_CONNECTION.remove(connection);
         
         if (data != null) {
             PLAYER_DATA_BY_ID.remove(data.id());
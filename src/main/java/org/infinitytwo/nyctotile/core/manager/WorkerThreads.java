@@ -9,19 +9,25 @@ public class WorkerThreads {
     protected static final ThreadGroup group = new ThreadGroup("Worker Threads");
     private final ExecutorService service;
     protected static final AtomicInteger count = new AtomicInteger(-1);
-    private static final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
 
     public static int getRunningThreads() {
         return count.get();
     }
 
+    /**
+     * @deprecated Use {@link MainThreadExecutor#execute(MainThreadExecutor.Priority, Runnable)}
+     */
+    @Deprecated
     public static void dispatch(Runnable task) {
-        tasks.add(task);
+        MainThreadExecutor.execute(task);
     }
 
+    /**
+     * @deprecated Use {@link MainThreadExecutor#runFrame()}
+     */
+    @Deprecated
     public static void run() {
-        Runnable task = tasks.poll();
-        if (task != null) task.run();
+        MainThreadExecutor.runFrame();
     }
 
     public WorkerThreads(int max) {
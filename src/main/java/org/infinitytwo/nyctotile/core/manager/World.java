@@ -13,6 +13,7 @@ import org.infinitytwo.nyctotile.core.network.thread.ClientNetwork;
 import org.infinitytwo.nyctotile.core.network.data.Packets;
 import org.infinitytwo.nyctotile.core.registry.DimensionRegistry;
 import org.infinitytwo.nyctotile.core.renderer.Camera;
+import org.infinitytwo.nyctotile.core.renderer.ChunkMeshScheduler;
 import org.infinitytwo.nyctotile.core.world.GMap;
 import org.infinitytwo.nyctotile.core.world.GridMap;
 import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
@@ -20,6 +21,9 @@ import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
 import java.util.*;
 
 public class World {
+    /** Chunks are unloaded this many chunks beyond the view distance, so they are not dropped and requested again at every border. */
+    public static final int UNLOAD_MARGIN = 2;
+    
     private boolean connectionReq;
     private boolean dimensionRequest;
     private Dimension current;
@@ -33,6 +37,8 @@ public class World {
     
     private final Set<ChunkPos> requested = Collections.synchronizedSet(new HashSet<>());
     private final Interval clear = new Interval(5000, requested::clear);
+    private ChunkPos unloadCenter;
+    private int unloadView;
     
     private static final Map<String, Dimension> loadedDimension = new HashMap<>();
     private static final World world = new World();
@@ -123,8 +129,11 @@ public class World {
         
         clear.update();
         if (map != null) {
+            map.getLightingEngine().update();
+            ChunkMeshScheduler.update(camera, window);
             map.draw(camera, window, view);
             player.updateCamera((float) Game.getDelta());
+            unloadDistantChunks(view);
         }
         if (thread == null) return;
         
@@ -179,6 +188,15 @@ public class World {
         }
     }
     
+    // Nothing new can be out of range before the camera enters another chunk
+    private void unloadDistantChunks(int view) {
+        ChunkPos center = GMap.worldToChunkPos((int) camera.getPosition().x, (int) camera.getPosition().z);
+        if (center.equals(unloadCenter) && view == unloadView) return;
+        unloadCenter = center;
+        unloadView = view;
+        for (ChunkPos pos : map.unloadChunksOutside(center, view + UNLOAD_MARGIN)) requested.remove(pos);
+    }
+    
     public Set<ChunkPos> getRequested() {
         return requested;
     }
@@ -0,0 +1,144 @@
+package org.infinitytwo.nyctotile.core.model.builder;
+
+import org.infinitytwo.nyctotile.core.constants.Face;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.PackedLight;
+
+/**
+ * The chunk mesh vertex: two ints (8 bytes) instead of 12 floats (48 bytes).
+ * <pre>
+ * int 0: x (8) | y (8) | z (8) | face (3) | unused (5)
+ * int 1: tile (12) | red (4) | green (4) | blue (4) | level (4) | unused (4)
+ * </pre>
+ * Positions are in eighths of a block, relative to the section origin (0 - 16 on every axis),
+ * so slabs and other partial models still fit. The shader adds the section origin back.
+ * <br><br>
+ * The rest is derived in the shader:
+ * <ul>
+ *     <li>the tile-local UV from the position and the face, see {@link #textureU}/{@link #textureV}.
+ *     That is what lets a greedy quad repeat its tile instead of stretching it, without a
+ *     per-corner UV</li>
+ *     <li>the tile origin from the tile index and the atlas columns</li>
+ *     <li>the face brightness from the face, see {@link #brightness}</li>
+ * </ul>
+ * Light channels are stored with 4 bits each; the 0-255 colour channels keep their top 4 bits.
+ * <br><br>
+ * The decode methods mirror the shader so meshes can be checked on the CPU.
+ */
+public final class CompactVertex {
+    public static final int INTS_PER_VERTEX = 2;
+    public static final int INTS_PER_FACE = INTS_PER_VERTEX * 6;
+    public static final int BYTES_PER_VERTEX = INTS_PER_VERTEX * Integer.BYTES;
+
+    /** Position steps per block */
+    public static final int POSITION_SCALE = 8;
+    public static final int MAX_TILES = 1 << 12;
+
+    private static final Face[] FACES = Face.values();
+
+    private CompactVertex() {}
+
+    /**
+     * @param x Section-local x, 0 - 16. Rounded to the nearest eighth.
+     */
+    public static int packPosition(float x, float y, float z, Face face) {
+        return position(x) | (position(y) << 8) | (position(z) << 16) | (face.ordinal() << 24);
+    }
+
+    /**
+     * @param red   0 - 255
+     * @param green 0 - 255
+     * @param blue  0 - 255
+     * @param level 0 - 15
+     */
+    public static int packAttributes(int tile, int red, int green, int blue, int level) {
+        if (tile < 0 || tile >= MAX_TILES) throw new IndexOutOfBoundsException("Tile " + tile + " does not fit in a compact vertex");
+        return tile
+                | (((red >> 4) & 0xF) << 12)
+                | (((green >> 4) & 0xF) << 16)
+                | (((blue >> 4) & 0xF) << 20)
+                | ((level & 0xF) << 24);
+    }
+
+    /**
+     * {@link #packAttributes(int, int, int, int, int)} with the channels of a {@link PackedLight} value.
+     */
+    public static int packAttributes(int tile, int light) {
+        return packAttributes(tile, PackedLight.red(light), PackedLight.green(light), PackedLight.blue(light), PackedLight.level(light));
+    }
+
+    public static void put(NIntBuffer buffer, int position, int attributes) {
+        buffer.put(position);
+        buffer.put(attributes);
+    }
+
+    private static int position(float value) {
+        return Math.round(value * POSITION_SCALE) & 0xFF;
+    }
+
+    public static float getX(int position) {
+        return (float) (position & 0xFF) / POSITION_SCALE;
+    }
+
+    public static float getY(int position) {
+        return (float) ((position >>> 8) & 0xFF) / POSITION_SCALE;
+    }
+
+    public static float getZ(int position) {
+        return (float) ((position >>> 16) & 0xFF) / POSITION_SCALE;
+    }
+
+    public static Face getFace(int position) {
+        return FACES[(position >>> 24) & 0x7];
+    }
+
+    public static int getTile(int attributes) {
+        return attributes & 0xFFF;
+    }
+
+    /** @return The red channel expanded back to 0 - 255 */
+    public static int getRed(int attributes) {
+        return ((attributes >>> 12) & 0xF) * 17;
+    }
+
+    public static int getGreen(int attributes) {
+        return ((attributes >>> 16) & 0xF) * 17;
+    }
+
+    public static int getBlue(int attributes) {
+        return ((attributes >>> 20) & 0xF) * 17;
+    }
+
+    public static int getLightLevel(int attributes) {
+        return (attributes >>> 24) & 0xF;
+    }
+
+    /**
+     * The tile-local U of a vertex, before {@code fract()}. Same orientation as the old per-block UVs:
+     * the first corner of every face (see {@link CubeModelBuilder}) lands on a whole number.
+     */
+    public static float textureU(Face face, float x, float y, float z) {
+        return switch (face) {
+            case NORTH, UP, DOWN -> x;
+            case SOUTH -> -x;
+            case WEST -> -z;
+            case EAST -> z;
+        };
+    }
+
+    public static float textureV(Face face, float x, float y, float z) {
+        return switch (face) {
+            case NORTH, SOUTH, WEST, EAST -> y;
+            case UP -> z;
+            case DOWN -> -z;
+        };
+    }
+
+    public static float brightness(Face face) {
+        return switch (face) {
+            case NORTH, SOUTH, WEST -> 0.7f;
+            case EAST, UP -> 0.8f;
+            case DOWN -> 0.5f;
+        };
+    }
+}
@@ -1,104 +1,98 @@
 package org.infinitytwo.nyctotile.core.model.builder;
 
 import org.infinitytwo.nyctotile.core.constants.Face;
+import org.infinitytwo.nyctotile.core.data.BlockType;
 import org.infinitytwo.nyctotile.core.data.RGBA;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
-import org.infinitytwo.nyctotile.core.world.GridMap;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.world.BlockAccess;
 
+/**
+ * Builds chunk geometry in the {@link CompactVertex} format, two ints per vertex.
+ * Positions are section-local: x and z inside the chunk, y inside the 16 block section.
+ * <br><br>
+ * The UV is not stored, the shader derives it from the position (tile-local, wrapped with
+ * {@code fract()}) so a face can span several blocks and repeat the texture once per block
+ * instead of stretching it. This is what lets {@link GreedyMeshBuilder} merge faces.
+ */
 public class CubeModelBuilder {
-    private static void addFace(Face face, int x, int y, int z, float[] uv, NFloatBuffer buffer, RGBA light) {
-        // Extract UV coordinates (assuming uv is [u0, v0, u1, v1])
-        float u0 = uv[0]; // uMin
-        float v0 = uv[1]; // vMin
-        float u1 = uv[2]; // uMax
-        float v1 = uv[3]; // vMax
-        float b; // Brightness variable
+    public static final int INTS_PER_VERTEX = CompactVertex.INTS_PER_VERTEX;
+    public static final int INTS_PER_FACE = CompactVertex.INTS_PER_FACE;
 
-        // CRITICAL: Ensure capacity for a full face (6 vertices * 6 floats/vertex = 36 floats)
-        buffer.require(36 + (4 * 6));
-
-        switch (face) {
-            case NORTH -> { // -Z (Correct - North Face uses 0.7f brightness)
-                b = 0.7f;
-                // tri 1 (000, 100, 110)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+    private static void addFace(Face face, int x, int y, int z, int attributes, NIntBuffer buffer) {
+        addBoxFace(face, x, y, z, x + 1, y + 1, z + 1, attributes, buffer);
+    }
 
-                // tri 2 (000, 110, 010)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-            case SOUTH -> { // +Z (South Face - uses 0.7f brightness)
-                b = 0.7f;
-                // tri 1 (101, 001, 011)
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+    /**
+     * Adds one face of the section-local box {@code (x0, y0, z0) - (x1, y1, z1)} as two triangles.
+     * The box may cover more than one block (greedy meshing) or less (slabs).
+     *
+     * @param attributes Tile and light, from {@link CompactVertex#packAttributes}.
+     */
+    public static void addBoxFace(Face face, float x0, float y0, float z0, float x1, float y1, float z1, int attributes, NIntBuffer buffer) {
+        // CRITICAL: Ensure capacity for a full face (6 vertices)
+        buffer.require(INTS_PER_FACE);
 
-                // tri 2 (101, 011, 111)
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-            case WEST -> { // -X (West Face - uses 0.7f brightness)
-                b = 0.7f;
-                // tri 1 (001, 000, 010)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+        // Every face is written as the corners A B C D with the triangles (A, B, C) and (A, C, D),
+        // which keeps the clockwise winding. A is where the tile-local UV is (0, 0).
+        switch (face) {
+            case NORTH -> quad(buffer, face, attributes, // -Z
+                    x0, y0, z0, x1, y0, z0, x1, y1, z0, x0, y1, z0);
+            case SOUTH -> quad(buffer, face, attributes, // +Z
+                    x1, y0, z1, x0, y0, z1, x0, y1, z1, x1, y1, z1);
+            case WEST -> quad(buffer, face, attributes, // -X
+                    x0, y0, z1, x0, y0, z0, x0, y1, z0, x0, y1, z1);
+            case EAST -> quad(buffer, face, attributes, // +X
+                    x1, y0, z0, x1, y0, z1, x1, y1, z1, x1, y1, z0);
+            case UP -> quad(buffer, face, attributes, // +Y
+                    x0, y1, z0, x1, y1, z0, x1, y1, z1, x0, y1, z1);
+            case DOWN -> quad(buffer, face, attributes, // -Y
+                    x0, y0, z1, x1, y0, z1, x1, y0, z0, x0, y0, z0);
+        }
+    }
 
-                // tri 2 (001, 010, 011)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-            case EAST -> { // +X (East Face - uses 0.8f brightness)
-                b = 0.8f;
-                // tri 1 (100, 101, 111)
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+    private static void quad(NIntBuffer buffer, Face face, int attributes,
+                             float ax, float ay, float az, float bx, float by, float bz,
+                             float cx, float cy, float cz, float dx, float dy, float dz) {
+        int a = CompactVertex.packPosition(ax, ay, az, face);
+        int b = CompactVertex.packPosition(bx, by, bz, face);
+        int c = CompactVertex.packPosition(cx, cy, cz, face);
+        int d = CompactVertex.packPosition(dx, dy, dz, face);
 
-                // tri 2 (100, 111, 110)
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-            case UP -> { // +Y (Up Face - uses 0.8f brightness)
-                b = 0.8f;
-                // tri 1 (010, 110, 111)
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+        // tri 1 (A, B, C)
+        CompactVertex.put(buffer, a, attributes);
+        CompactVertex.put(buffer, b, attributes);
+        CompactVertex.put(buffer, c, attributes);
 
-                // tri 2 (010, 111, 011)
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(1f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-            case DOWN -> { // -Y (Down Face - uses 0.5f brightness)
-                b = 0.5f;
-                // tri 1 (001, 101, 100)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u1); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
+        // tri 2 (A, C, D)
+        CompactVertex.put(buffer, a, attributes);
+        CompactVertex.put(buffer, c, attributes);
+        CompactVertex.put(buffer, d, attributes);
+    }
 
-                // tri 2 (001, 100, 000)
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(1f+z); buffer.put(u0); buffer.put(v0); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(1f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u1); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-                buffer.put(0f+x); buffer.put(0f+y); buffer.put(0f+z); buffer.put(u0); buffer.put(v1); buffer.put(b); buffer.put(light.getRed()); buffer.put(light.getGreen()); buffer.put(light.getBlue()); buffer.put(light.getAlpha());
-            }
-        }
+    /**
+     * @param light The block light with every channel 0 - 1, as {@link BlockType#buildModel} gets it.
+     */
+    public static int attributes(int tile, RGBA light) {
+        return CompactVertex.packAttributes(tile,
+                Math.round(light.getRed() * 255),
+                Math.round(light.getGreen() * 255),
+                Math.round(light.getBlue() * 255),
+                Math.round(light.getAlpha() * 15));
     }
 
-    public static void standardVerticesList(GridMap map, int x, int y, int z, float[] uvs, RGBA light, NFloatBuffer buffer) {
-        if (map.isTransparent(x, y+1, z)) addFace(Face.UP, x, y, z, uvs, buffer, light);
-        if (map.isTransparent(x, y-1, z)) addFace(Face.DOWN, x, y, z, uvs, buffer, light);
-        if (map.isTransparent(x+1, y, z)) addFace(Face.EAST, x, y, z, uvs, buffer, light);
-        if (map.isTransparent(x-1, y, z)) addFace(Face.WEST, x, y, z, uvs, buffer, light);
-        if (map.isTransparent(x, y, z+1)) addFace(Face.SOUTH, x, y, z, uvs, buffer, light);
-        if (map.isTransparent(x, y, z-1)) addFace(Face.NORTH, x, y, z, uvs, buffer, light);
+    /**
+     * @param x World x, used for culling. The vertices are written section-local.
+     */
+    public static void standardVerticesList(BlockAccess map, int x, int y, int z, int tile, RGBA light, NIntBuffer buffer) {
+        int attributes = attributes(tile, light);
+        int lx = Math.floorMod(x, ChunkData.SIZE), ly = y & (ChunkData.SECTION_SIZE - 1), lz = Math.floorMod(z, ChunkData.SIZE);
+
+        if (map.isTransparent(x, y+1, z)) addFace(Face.UP, lx, ly, lz, attributes, buffer);
+        if (map.isTransparent(x, y-1, z)) addFace(Face.DOWN, lx, ly, lz, attributes, buffer);
+        if (map.isTransparent(x+1, y, z)) addFace(Face.EAST, lx, ly, lz, attributes, buffer);
+        if (map.isTransparent(x-1, y, z)) addFace(Face.WEST, lx, ly, lz, attributes, buffer);
+        if (map.isTransparent(x, y, z+1)) addFace(Face.SOUTH, lx, ly, lz, attributes, buffer);
+        if (map.isTransparent(x, y, z-1)) addFace(Face.NORTH, lx, ly, lz, attributes, buffer);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package org.infinitytwo.nyctotile.core.model.builder;
+
+import org.infinitytwo.nyctotile.core.constants.Face;
+import org.infinitytwo.nyctotile.core.data.BlockType;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ChunkSnapshot;
+
+import java.util.Arrays;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Greedy mesher for the cube blocks ({@link BlockType#isCube()}) of one chunk section.
+ * <br><br>
+ * For every face direction and every slice of the section it builds a 16x16 mask of the visible
+ * faces, keyed by texture and light, then merges runs of equal keys into the largest rectangles
+ * it can (first along one axis, then the other). Flat grassland goes from one quad per block to
+ * a handful of quads per section.
+ * <br><br>
+ * Faces are only merged when texture and light match (their {@link CompactVertex} attributes are
+ * equal), and the UVs are tile-local (see {@link CubeModelBuilder}), so the result looks the same
+ * as the per-block path.
+ * Blocks that are not cubes are skipped here; the caller still builds them with
+ * {@link BlockType#buildModel}.
+ */
+public final class GreedyMeshBuilder {
+    private GreedyMeshBuilder() {}
+
+    /**
+     * Meshes the cube blocks of {@code section} into {@code buffer}, in section-local coordinates.
+     *
+     * @param snapshot The padded ids of {@code chunk} used for face culling, see {@link ChunkSnapshot}.
+     */
+    public static void buildSection(ChunkData chunk, ChunkSnapshot snapshot, int section, BlockRegistry registry, NIntBuffer buffer) {
+        if (chunk.isSectionEmpty(section)) return;
+
+        int baseY = section * SECTION_SIZE;
+
+        // Face key per block: 1 << 32 | vertex attributes, 0 for "nothing to merge"
+        long[] keys = new long[SECTION_VOLUME];
+        int[] lights = new int[SECTION_VOLUME];
+        chunk.getLights(section, lights);
+        int[] textures = new int[16]; // per id: texture index + 1, -1 for non-cubes, 0 not looked up yet
+        boolean any = false;
+
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SECTION_SIZE; y++) {
+                for (int z = 0; z < SIZE; z++) {
+                    int id = snapshot.getBlockId(x, baseY + y, z);
+                    if (id == 0) continue;
+
+                    if (id >= textures.length) textures = Arrays.copyOf(textures, Math.max(id + 1, textures.length * 2));
+                    if (textures[id] == 0) {
+                        BlockType type = registry.get(id);
+                        textures[id] = type != null && type.isCube() ? type.getTextureIndex() + 1 : -1;
+                    }
+                    if (textures[id] < 0) continue;
+
+                    int attributes = CompactVertex.packAttributes(textures[id] - 1, lights[index(x, y, z)]);
+                    keys[index(x, y, z)] = (1L << 32) | (attributes & 0xFFFFFFFFL);
+                    any = true;
+                }
+            }
+        }
+        if (!any) return;
+
+        long[] mask = new long[SIZE * SIZE];
+        int[] pos = new int[3];
+
+        for (Face face : Face.values()) {
+            int axis = axis(face);
+            int step = positive(face) ? 1 : -1;
+            int uAxis = (axis + 1) % 3, vAxis = (axis + 2) % 3;
+            int uSize = extent(uAxis), vSize = extent(vAxis);
+
+            for (int slice = 0; slice < extent(axis); slice++) {
+                // 1. Build the mask of visible faces in this slice
+                boolean hasFace = false;
+                for (int u = 0; u < uSize; u++) {
+                    for (int v = 0; v < vSize; v++) {
+                        pos[axis] = slice;
+                        pos[uAxis] = u;
+                        pos[vAxis] = v;
+                        long key = keys[index(pos[0], pos[1], pos[2])];
+
+                        if (key != 0) {
+                            pos[axis] += step;
+                            if (!snapshot.isTransparentLocal(pos[0], baseY + pos[1], pos[2])) key = 0;
+                        }
+                        mask[u * vSize + v] = key;
+                        hasFace |= key != 0;
+                    }
+                }
+                if (!hasFace) continue;
+
+                // 2. Merge the mask into rectangles
+                for (int u = 0; u < uSize; u++) {
+                    for (int v = 0; v < vSize; ) {
+                        long key = mask[u * vSize + v];
+                        if (key == 0) {
+                            v++;
+                            continue;
+                        }
+
+                        int height = 1;
+                        while (v + height < vSize && mask[u * vSize + v + height] == key) height++;
+
+                        int width = 1;
+                        grow:
+                        while (u + width < uSize) {
+                            for (int k = 0; k < height; k++) {
+                                if (mask[(u + width) * vSize + v + k] != key) break grow;
+                            }
+                            width++;
+                        }
+
+                        for (int du = 0; du < width; du++) {
+                            for (int dv = 0; dv < height; dv++) mask[(u + du) * vSize + v + dv] = 0;
+                        }
+
+                        emit(face, axis, uAxis, vAxis, slice, u, v, width, height, (int) key, buffer);
+                        v += height;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void emit(Face face, int axis, int uAxis, int vAxis, int slice, int u, int v, int width, int height,
+                             int attributes, NIntBuffer buffer) {
+        float[] min = new float[3], max = new float[3];
+        min[axis] = slice;
+        max[axis] = slice + 1;
+        min[uAxis] = u;
+        max[uAxis] = u + width;
+        min[vAxis] = v;
+        max[vAxis] = v + height;
+
+        CubeModelBuilder.addBoxFace(face, min[0], min[1], min[2], max[0], max[1], max[2], attributes, buffer);
+    }
+
+    private static int index(int x, int y, int z) {
+        return (x * SECTION_SIZE * SIZE) + (y * SIZE) + z;
+    }
+
+    private static int axis(Face face) {
+        return switch (face) {
+            case EAST, WEST -> 0;
+            case UP, DOWN -> 1;
+            case NORTH, SOUTH -> 2;
+        };
+    }
+
+    private static boolean positive(Face face) {
+        return face == Face.EAST || face == Face.UP || face == Face.SOUTH;
+    }
+
+    private static int extent(int axis) {
+        return axis == 1 ? SECTION_SIZE : SIZE;
+    }
+}
@@ -3,6 +3,7 @@ package org.infinitytwo.nyctotile.core.model.builder;
 import org.infinitytwo.nyctotile.core.constants.Face;
 import org.infinitytwo.nyctotile.core.data.world.AABB;
 import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 
 import java.nio.FloatBuffer;
 
@@ -199,6 +200,20 @@ public final class ModelBuilder {
         }
     }
 
+    /**
+     * Adds a face of this box to a chunk mesh, in the {@link CompactVertex} format.
+     *
+     * @param x Section-local block x the box is placed at
+     * @param attributes Tile and light, from {@link CompactVertex#packAttributes}
+     */
+    public void addFace(Face face, int x, int y, int z, int attributes, NIntBuffer buffer) {
+        CubeModelBuilder.addBoxFace(face, x + minX, y + minY, z + minZ, x + maxX, y + maxY, z + maxZ, attributes, buffer);
+    }
+
+    public void cube(NIntBuffer buffer, int x, int y, int z, int attributes) {
+        for (Face face : Face.values()) addFace(face, x, y, z, attributes, buffer);
+    }
+
     public void cube(NFloatBuffer buffer, float[] uvs) {
         addFace(Face.UP,uvs,buffer);
         addFace(Face.DOWN,uvs,buffer);
@@ -0,0 +1,241 @@
+package org.infinitytwo.nyctotile.core.network;
+
+import com.esotericsoftware.kryonet.Connection;
+import org.infinitytwo.nyctotile.core.entity.Entity;
+import org.infinitytwo.nyctotile.core.entity.Player;
+import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.infinitytwo.nyctotile.core.data.io.WorldData.CHUNK_SIZE;
+import static org.infinitytwo.nyctotile.core.network.data.Packets.PPosition;
+import static org.infinitytwo.nyctotile.core.network.data.Packets.PSnapshot;
+import static org.infinitytwo.nyctotile.core.network.data.Packets.PSnapshot.*;
+
+/**
+ * Sends every player the entities around it once a tick, in one {@link PSnapshot} per connection instead of a packet
+ * per entity and player, so a tick costs one encryption per connection.
+ * <br><br>
+ * A player sees the entities of its dimension within the view distance in chunks, like the chunks it may request.
+ * Per connection the server keeps what it sent of each of them: an entry only has the axes whose quantized position
+ * changed, an entity without any is left out. Snapshots go over UDP, so each entity gets every axis and its UUID
+ * again every {@link #KEYFRAME_TICKS}, staggered by slot, which repairs whatever a lost snapshot left stale.
+ * <br><br>
+ * Not thread safe, {@link #broadcast} is called from the server thread after every physics step.
+ */
+public final class EntitySnapshots {
+    /**
+     * Every entity in view is sent in full at least this often.
+     */
+    public static final int KEYFRAME_TICKS = 60;
+    /**
+     * A client forgets an entity it got nothing of for this long, two keyframes in a row, which is how it gets rid
+     * of one whose {@link PSnapshot#REMOVED} entry got lost.
+     */
+    public static final int EXPIRE_TICKS = 2 * KEYFRAME_TICKS;
+    /**
+     * Entries per packet, so a snapshot stays within about one datagram of 1200 bytes even with every entry in full.
+     */
+    public static final int MAX_ENTRIES = 32;
+
+    private final int viewDistance;
+    private final Map<Connection, View> views = new HashMap<>();
+    private int tick;
+
+    /**
+     * @param viewDistance in chunks
+     */
+    public EntitySnapshots(int viewDistance) {
+        this.viewDistance = viewDistance;
+    }
+
+    /**
+     * Sends every player of {@code players} with a connection the changes of {@code entities} it sees since the last
+     * tick. Views of connections that are no longer among the players are dropped.
+     */
+    public void broadcast(Network network, Collection<Player> players, Collection<Entity> entities) {
+        tick++;
+        List<Tracked> tracked = new ArrayList<>(entities.size());
+        // Copied in one go, players join from the network thread meanwhile
+        for (Entity entity : new ArrayList<>(entities)) tracked.add(new Tracked(entity));
+
+        Set<Connection> connections = new HashSet<>();
+        for (Player player : players) {
+            Connection connection = player.getData() == null ? null : player.getData().connection();
+            if (connection == null || !connection.isConnected()) continue;
+            connections.add(connection);
+            List<Entry> entries = views.computeIfAbsent(connection, c -> new View()).update(player, tracked);
+            if (!network.hasFeature(connection, Network.FEATURE_ENTITY_SNAPSHOTS)) {
+                // A client from before snapshots gets a packet per entity, every entry has the whole position
+                for (Entry entry : entries) {
+                    if ((entry.flags() & REMOVED) != 0) continue;
+                    network.send(new PPosition(entry.leastSignificant(), entry.mostSignificant(),
+                            position(entry.x()), position(entry.y()), position(entry.z())), connection, false);
+                }
+                continue;
+            }
+            for (int from = 0; from < entries.size(); from += MAX_ENTRIES) {
+                List<Entry> part = entries.subList(from, Math.min(entries.size(), from + MAX_ENTRIES));
+                network.send(new PSnapshot(tick, part.toArray(Entry[]::new)), connection, false);
+            }
+        }
+        views.keySet().retainAll(connections);
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    // An entity as it is this tick
+    private static final class Tracked {
+        final Entity entity;
+        final UUID uuid;
+        final Dimension dimension;
+        final int x, y, z, chunkX, chunkZ;
+
+        Tracked(Entity entity) {
+            Vector3f position = entity.getPosition();
+            this.entity = entity;
+            this.uuid = entity.getUUID();
+            this.dimension = entity.getDimension();
+            this.x = quantize(position.x);
+            this.y = quantize(position.y);
+            this.z = quantize(position.z);
+            this.chunkX = Math.floorDiv((int) Math.floor(position.x), CHUNK_SIZE);
+            this.chunkZ = Math.floorDiv((int) Math.floor(position.z), CHUNK_SIZE);
+        }
+    }
+
+    // What a connection was sent of an entity
+    private static final class Sent {
+        final int slot;
+        int x, y, z;
+        int seen;
+
+        Sent(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final class View {
+        private final Map<UUID, Sent> sent = new HashMap<>();
+        private int nextSlot;
+
+        List<Entry> update(Player viewer, List<Tracked> tracked) {
+            List<Entry> entries = new ArrayList<>();
+            Vector3f position = viewer.getPosition();
+            int chunkX = Math.floorDiv((int) Math.floor(position.x), CHUNK_SIZE);
+            int chunkZ = Math.floorDiv((int) Math.floor(position.z), CHUNK_SIZE);
+
+            for (Tracked entity : tracked) {
+                if (entity.entity == viewer || entity.dimension != viewer.getDimension()) continue;
+                if (Math.abs(entity.chunkX - chunkX) > viewDistance || Math.abs(entity.chunkZ - chunkZ) > viewDistance) continue;
+
+                Sent last = sent.get(entity.uuid);
+                int flags;
+                if (last == null) {
+                    last = new Sent(nextSlot++);
+                    sent.put(entity.uuid, last);
+                    flags = IDENTITY | X | Y | Z;
+                } else if ((tick + last.slot) % KEYFRAME_TICKS == 0) {
+                    flags = IDENTITY | X | Y | Z;
+                } else {
+                    flags = (entity.x != last.x ? X : 0) | (entity.y != last.y ? Y : 0) | (entity.z != last.z ? Z : 0);
+                }
+                last.seen = tick;
+                if (flags == 0) continue;
+
+                last.x = entity.x;
+                last.y = entity.y;
+                last.z = entity.z;
+                // The whole position and UUID always go in, the flags say what is written
+                entries.add(new Entry(flags, last.slot, entity.uuid.getMostSignificantBits(), entity.uuid.getLeastSignificantBits(),
+                        entity.x, entity.y, entity.z));
+            }
+
+            for (Iterator<Sent> iterator = sent.values().iterator(); iterator.hasNext(); ) {
+                Sent last = iterator.next();
+                if (last.seen == tick) continue;
+                entries.add(new Entry(REMOVED, last.slot, 0, 0, 0, 0, 0));
+                iterator.remove();
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * The client half: remembers which entity has which slot and where the server last put it, and turns snapshots
+     * back into positions. Entries older than the last one applied to their slot are skipped, datagrams may come out
+     * of order, and slots are forgotten after {@link #EXPIRE_TICKS} without an entry. Not thread safe, meant for the
+     * thread of the client listener.
+     */
+    public static final class Receiver {
+        private final Map<Integer, Received> slots = new HashMap<>();
+        private int latest;
+        private boolean started;
+
+        public interface Target {
+            void move(UUID uuid, float x, float y, float z);
+        }
+
+        /**
+         * Calls {@code target} with the position of every entity in the snapshot whose slot is known.
+         */
+        public void receive(PSnapshot snapshot, Target target) {
+            if (!started || snapshot.tick() - latest > 0) {
+                started = true;
+                latest = snapshot.tick();
+                slots.values().removeIf(received -> latest - received.tick > EXPIRE_TICKS);
+            }
+            for (Entry entry : snapshot.entries()) {
+                if ((entry.flags() & REMOVED) != 0) {
+                    slots.remove(entry.slot());
+                    continue;
+                }
+                Received received = slots.get(entry.slot());
+                if ((entry.flags() & IDENTITY) != 0) {
+                    if (received == null || snapshot.tick() - received.tick >= 0) {
+                        received = new Received(new UUID(entry.mostSignificant(), entry.leastSignificant()), snapshot.tick());
+                        slots.put(entry.slot(), received);
+                    }
+                } else if (received == null) {
+                    continue; // Came in before the entry that says who it is, the next keyframe will
+                }
+                if (snapshot.tick() - received.tick < 0) continue;
+
+                received.tick = snapshot.tick();
+                if ((entry.flags() & X) != 0) received.x = entry.x();
+                if ((entry.flags() & Y) != 0) received.y = entry.y();
+                if ((entry.flags() & Z) != 0) received.z = entry.z();
+                target.move(received.uuid, position(received.x), position(received.y), position(received.z));
+            }
+        }
+
+        /**
+         * @return How many entities the client knows the slot of
+         */
+        public int size() {
+            return slots.size();
+        }
+    }
+
+    private static final class Received {
+        final UUID uuid;
+        int tick;
+        int x, y, z;
+
+        Received(UUID uuid, int tick) {
+            this.uuid = uuid;
+            this.tick = tick;
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package org.infinitytwo.nyctotile.core.network;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryonet.Connection;
-import org.infinitytwo.nyctotile.core.data.buffer.NByteBuffer;
-import org.infinitytwo.nyctotile.core.data.io.DataSchematica;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -18,13 +19,67 @@ import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
 import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.*;
 
 public abstract class Network {
+    /**
+     * Chunks are sent as {@code PCompressedChunk} instead of {@code PChunk}.
+     */
+    public static final int FEATURE_CHUNK_COMPRESSION = 1;
+    /**
+     * Packets start with an opcode from the {@link PacketCodec} of the connection instead of their name.
+     */
+    public static final int FEATURE_OPCODES = 2;
+    /**
+     * Entity positions come in one {@code PSnapshot} a tick instead of a {@code PPosition} per entity, see
+     * {@link EntitySnapshots}.
+     */
+    public static final int FEATURE_ENTITY_SNAPSHOTS = 4;
+    /**
+     * The client sends where its player moved in a {@code PMovement} instead of a {@code "setposition"} command.
+     */
+    public static final int FEATURE_MOVEMENT = 8;
+    /**
+     * The features this build supports. The client offers them in {@link PUserData}, the server answers with the
+     * ones both sides support in {@link PConnection}.
+     */
+    public static final int FEATURES = FEATURE_CHUNK_COMPRESSION | FEATURE_OPCODES | FEATURE_ENTITY_SNAPSHOTS | FEATURE_MOVEMENT;
+    /**
+     * The TCP read and write buffers of both sides.
+     */
+    public static final int BUFFER_BYTES = 131072;
+    /**
+     * Bytes of a message per {@link EncryptedPacket} over TCP, larger messages are streamed as several fragments.
+     */
+    public static final int FRAGMENT_BYTES = 16384;
+    /**
+     * The largest message accepted over TCP.
+     */
+    public static final int MAX_MESSAGE_BYTES = 8 << 20;
+    /**
+     * The most bytes of partial messages a connection may have waiting for their other fragments.
+     */
+    public static final int MAX_PENDING_BYTES = 16 << 20;
+    /**
+     * A partial message that got no fragment for this long is dropped.
+     */
+    public static final long TRANSFER_TIMEOUT_MS = 10_000;
+    // How long a sender waits for the write buffer to drain before giving up on a message
+    private static final long WRITE_TIMEOUT_MS = 10_000;
+    // Room for the Kryo framing of a fragment on top of its bytes
+    private static final int FRAGMENT_OVERHEAD = 64;
+    // Below this share of the write buffer KryoNet calls idle(), which wakes the senders waiting for room
+    private static final float IDLE_THRESHOLD = 0.5f;
+    
     protected final int udp, tcp;
-    protected final Map<Integer, List<EncryptedPacket>> packets = new ConcurrentHashMap<>();
+    protected final Map<Connection, Integer> features = new ConcurrentHashMap<>();
+    // Partial messages by connection and id. Only touched by the thread of the listener.
+    private final Map<Connection, Map<Integer, Transfer>> transfers = new ConcurrentHashMap<>();
+    private final Map<Connection, Object> writeLocks = new ConcurrentHashMap<>();
+    private static final PacketCodec NAMES = PacketCodec.of(new String[0]);
     private final Logger logger = LoggerFactory.getLogger(Network.class);
     
     private final NetworkListener listener = new NetworkListener() {
         @Override
         public void connected(Connection connection) {
+            connection.setIdleThreshold(IDLE_THRESHOLD);
             onConnect(connection);
         }
         
@@ -32,48 +87,11 @@ public abstract class Network {
         public void received(Connection connection, Object object) {
             try {
                 if (object instanceof EncryptedPacket e) {
-                    
                     if (e.total > 1) {
-                        // --- Fragmented Packet (TCP Reassembly) ---
-                        
-                        packets.computeIfAbsent(e.id, (integer -> new ArrayList<>()));
-                        List<EncryptedPacket> packetList = packets.get(e.id);
-                        packetList.add(e);
-                        
-                        if (packetList.size() == e.total) {
-                            
-                            // 1. CRITICAL FIX: Sort fragments by index before reassembly
-                            packetList.sort(Comparator.comparing(p -> p.index));
-                            
-                            // 2. Calculate the total size of the final, encrypted data
-                            int totalEncryptedSize = packetList.stream().mapToInt(p -> p.encrypted.length).sum();
-                            
-                            try (NByteBuffer buffer = new NByteBuffer()) {
-                                // Ensure NByteBuffer has capacity to avoid unnecessary resizes during puts
-                                buffer.ensureCapacity(totalEncryptedSize);
-                                
-                                // 3. Reassemble the ENCRYPTED payload (chunks)
-                                for (EncryptedPacket packet : packetList) {
-                                    buffer.put(packet.encrypted);
-                                }
-                                
-                                buffer.flip();
-                                
-                                byte[] fullEncryptedData = new byte[buffer.remaining()];
-                                buffer.get(fullEncryptedData);
-                                
-                                byte[] dataRaw = decrypt(fullEncryptedData, connection);
-                                Data data = DataSchematica.deserialize(ByteBuffer.wrap(dataRaw));
-                                
-                                onReceive(connection, data);
-                                
-                                packets.remove(e.id);
-                            }
-                        }
+                        receiveFragment(connection, e);
                     } else {
-                        // --- Unfragmented Packet (UDP or small TCP) ---
-                        byte[] dataRaw = decrypt(e.encrypted, connection);
-                        Data data = DataSchematica.deserialize(ByteBuffer.wrap(dataRaw));
+                        // --- Whole message (UDP or small TCP) ---
+                        Data data = getCodec(connection).decode(decrypt(e.encrypted, connection));
                         onReceive(connection, data);
                     }
                     
@@ -86,8 +104,26 @@ public abstract class Network {
             }
         }
         
+        @Override
+        public void idle(Connection connection) {
+            Object lock = writeLocks.get(connection);
+            if (lock != null) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+            expireTransfers(connection);
+        }
+        
         @Override
         public void disconnected(Connection connection) {
+            Object lock = writeLocks.remove(connection);
+            if (lock != null) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+            transfers.remove(connection);
             onDisconnect(connection);
         }
     };
@@ -101,10 +137,25 @@ public abstract class Network {
         return listener;
     }
     
+    /**
+     * @return The opcodes packets of the connection are written and read with. Until the handshake set them up
+     * packets go by name.
+     */
+    protected PacketCodec getCodec(Connection connection) {
+        return NAMES;
+    }
+    
+    /**
+     * @return Whether both sides of the connection agreed on a feature during the handshake
+     */
+    public boolean hasFeature(Connection connection, int feature) {
+        return (features.getOrDefault(connection, 0) & feature) != 0;
+    }
+    
     public void register(Kryo kryo) {
         kryo.register(MPacket.class);
         kryo.register(PKey.class);
-        kryo.register(EncryptedPacket.class);
+        kryo.register(EncryptedPacket.class, new EncryptedPacketSerializer());
         kryo.register(PUnencrypted.class);
         kryo.register(Failure.class);
         kryo.register(PHandshakeComplete.class);
@@ -112,67 +163,120 @@ public abstract class Network {
         kryo.register(PUserData.class);
         
         kryo.register(byte[].class);
+        kryo.register(String[].class);
         kryo.register(String.class);
         kryo.register(short.class);
         kryo.register(short[].class);
     }
     
-    // HERE IS THE CONFUSING PART!
-    // THIS FRAGMENTS DATA SO BUFFER OVERFLOW SHOULDN'T HAPPEN
+    /**
+     * Encrypts a packet and sends it, over UDP unless it is {@code critical}. Over TCP a message larger than
+     * {@link #FRAGMENT_BYTES} is streamed in fragments, each sent once the write buffer of the connection has room
+     * for it, so a burst of chunks waits for the socket instead of overflowing the buffer, which would close the
+     * connection. Blocks the calling thread while it waits.
+     */
     public void send(Data packet, Connection connection, boolean critical) {
-        byte[] payload = packet.serialize();
-        
-        // 2. CREATE THE DATASCHEMATICA HEADER
-        String type = packet.getClass().getSimpleName().toLowerCase();
-        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
-        
-        // 3. Combine Header (length + name) + Payload
-        ByteBuffer finalBuffer = ByteBuffer.allocate(Integer.BYTES + typeBytes.length + payload.length);
-        finalBuffer.order(ByteOrder.LITTLE_ENDIAN); // Ensure consistent byte order
-        
-        // Write Header
-        finalBuffer.putInt(typeBytes.length); // Write length of the class name
-        finalBuffer.put(typeBytes);           // Write the class name bytes
-        
-        // Write Payload
-        finalBuffer.put(payload);
-        
-        // The byte array ready for encryption now contains the required DataSchematica header
-        byte[] finalPayload = finalBuffer.array();
+        // Header and payload, written into a buffer of this thread, see PacketCodec
+        ByteBuffer payload = getCodec(connection).encode(packet, hasFeature(connection, FEATURE_OPCODES));
         
         try {
-            byte[] encrypted = encrypt(finalPayload, connection);
-            List<byte[]> bytes = splitBytes(encrypted, 4096);
+            // Also a buffer of this thread, KryoNet writes the fragments out of it before the sends return
+            ByteBuffer message = encrypt(payload, connection);
+            byte[] encrypted = message.array();
+            int start = message.arrayOffset() + message.position(), length = message.remaining();
             int id = ThreadLocalRandom.current().nextInt();
             
             if (!critical) {
-                sendUDP(new EncryptedPacket(encrypted,ThreadLocalRandom.current().nextInt(), (short) 0, (short) 1,id), connection);
+                sendUDP(new EncryptedPacket(encrypted, start, length, (short) 0, (short) 1, id, length), connection);
                 return;
             }
+            if (length > MAX_MESSAGE_BYTES) {
+                throw new IllegalArgumentException(packet.getClass().getSimpleName() + " is " + length + " bytes, more than a message may have");
+            }
             
-            for (short i =0; i < bytes.size(); i++) {
-                sendTCP(new EncryptedPacket(bytes.get(i),ThreadLocalRandom.current().nextInt(),i, (short) bytes.size(),id), connection);
-                
-                // Start with 1ms.
-                Thread.sleep(0,32);
+            short total = (short) fragments(length);
+            for (short i = 0; i < total; i++) {
+                int offset = i * FRAGMENT_BYTES;
+                sendFragment(new EncryptedPacket(encrypted, start + offset, Math.min(FRAGMENT_BYTES, length - offset), i, total, id, length), connection);
             }
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted sending {}", packet.getClass().getSimpleName());
         } catch (Exception e) {
             logger.error("Failed to encrypt/send data", e);
         }
     }
     
-    public static List<byte[]> splitBytes(byte[] data, int maxChunkSize) {
-        List<byte[]> chunks = new ArrayList<>();
-        int length = data.length;
+    // Waits for room in the write buffer, idle() wakes the wait as KryoNet drains it. The lock makes the check and
+    // the send one step for every thread sending on the connection.
+    private void sendFragment(EncryptedPacket fragment, Connection connection) throws IOException, InterruptedException {
+        Object lock = writeLocks.computeIfAbsent(connection, c -> new Object());
+        // Only the update thread drains the buffer, it cannot wait for itself
+        boolean wait = Thread.currentThread() != getUpdateThread();
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MS;
+            while (wait && connection.getTcpWriteBufferSize() + fragment.count + FRAGMENT_OVERHEAD > BUFFER_BYTES) {
+                if (!connection.isConnected()) throw new IOException("Connection " + connection.getID() + " closed while sending");
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) throw new IOException("The write buffer of connection " + connection.getID() + " did not drain in " + WRITE_TIMEOUT_MS + " ms");
+                lock.wait(Math.min(left, 10));
+            }
+            sendTCP(fragment, connection);
+        }
+    }
+    
+    // Copies a fragment into its message where it belongs, TCP keeps them in order but fragments of messages
+    // sent from several threads interleave
+    private void receiveFragment(Connection connection, EncryptedPacket fragment) throws Exception {
+        Map<Integer, Transfer> pending = transfers.computeIfAbsent(connection, c -> new HashMap<>());
+        Transfer transfer = pending.get(fragment.id);
+        if (transfer == null) {
+            if (fragment.length <= 0 || fragment.length > MAX_MESSAGE_BYTES || fragments(fragment.length) != fragment.total) {
+                throw new IOException("Fragment of a message of " + fragment.length + " bytes in " + fragment.total + " fragments");
+            }
+            expireTransfers(connection);
+            long bytes = fragment.length;
+            for (Transfer other : pending.values()) bytes += other.data.length;
+            if (bytes > MAX_PENDING_BYTES) throw new IOException("More than " + MAX_PENDING_BYTES + " bytes of partial messages");
+            transfer = new Transfer(new byte[fragment.length]);
+            pending.put(fragment.id, transfer);
+        }
         
-        for (int i = 0; i < length; i += maxChunkSize) {
-            int end = Math.min(length, i + maxChunkSize);
-            byte[] chunk = Arrays.copyOfRange(data, i, end);
-            chunks.add(chunk);
+        int offset = fragment.index * FRAGMENT_BYTES;
+        if (fragment.index < 0 || offset >= transfer.data.length || fragment.count != Math.min(FRAGMENT_BYTES, transfer.data.length - offset)) {
+            throw new IOException("Fragment " + fragment.index + " of " + fragment.count + " bytes does not fit its message");
         }
+        System.arraycopy(fragment.encrypted, 0, transfer.data, offset, fragment.count);
+        transfer.received += fragment.count;
+        transfer.lastFragment = System.nanoTime();
+        if (transfer.received < transfer.data.length) return;
         
-        return chunks;
+        pending.remove(fragment.id);
+        onReceive(connection, getCodec(connection).decode(decrypt(transfer.data, connection)));
+    }
+    
+    private void expireTransfers(Connection connection) {
+        Map<Integer, Transfer> pending = transfers.get(connection);
+        if (pending == null || pending.isEmpty()) return;
+        long now = System.nanoTime();
+        pending.values().removeIf(transfer -> {
+            if (now - transfer.lastFragment < TRANSFER_TIMEOUT_MS * 1_000_000) return false;
+            logger.warn("Dropping a message of {} bytes from connection {}, {} bytes of it came", transfer.data.length, connection.getID(), transfer.received);
+            return true;
+        });
+    }
+    
+    /**
+     * @return How many messages from the connection wait for more fragments
+     */
+    public int getPendingTransfers(Connection connection) {
+        Map<Integer, Transfer> pending = transfers.get(connection);
+        return pending == null ? 0 : pending.size();
+    }
+    
+    private static int fragments(int bytes) {
+        return (bytes + FRAGMENT_BYTES - 1) / FRAGMENT_BYTES;
     }
     
     protected void handleDecryptionFailure(Connection connection, Exception ex) {
@@ -188,8 +292,16 @@ public abstract class Network {
     public abstract void sendUDP(MPacket packet, Connection connection);
     
     // Encryption/decryption
-    protected abstract byte[] encrypt(byte[] packet, Connection connection) throws Exception;
-    protected abstract byte[] decrypt(byte[] packet, Connection connection) throws Exception;
+    /**
+     * @param packet read from its position to its limit
+     * @return The message between the position and the limit of a heap buffer, which may be one of this thread
+     * that is reused by the next call on it, see {@link SessionCipher#encrypt}
+     */
+    protected abstract ByteBuffer encrypt(ByteBuffer packet, Connection connection) throws Exception;
+    /**
+     * @return The plaintext between the position and the limit, it may be decrypted in place in {@code packet}
+     */
+    protected abstract ByteBuffer decrypt(byte[] packet, Connection connection) throws Exception;
     
     // Event callbacks
     public abstract void onConnect(Connection connection);
@@ -199,4 +311,40 @@ public abstract class Network {
     public abstract void onControlPacket(Connection connection, Object object);
     public abstract int getPortTCP();
     public abstract int getPortUDP();
+    
+    /**
+     * @return The thread KryoNet reads and writes the sockets on, which calls the listener
+     */
+    protected abstract Thread getUpdateThread();
+    
+    private static final class Transfer {
+        final byte[] data;
+        int received;
+        long lastFragment = System.nanoTime();
+        
+        Transfer(byte[] data) {
+            this.data = data;
+        }
+    }
+    
+    // Writes just the bytes of its fragment, so a message is never copied into an array per fragment
+    private static final class EncryptedPacketSerializer extends Serializer<EncryptedPacket> {
+        @Override
+        public void write(Kryo kryo, Output output, EncryptedPacket packet) {
+            output.writeInt(packet.id);
+            output.writeShort(packet.index);
+            output.writeShort(packet.total);
+            output.writeVarInt(packet.length, true);
+            output.writeVarInt(packet.count, true);
+            output.writeBytes(packet.encrypted, packet.offset, packet.count);
+        }
+        
+        @Override
+        public EncryptedPacket read(Kryo kryo, Input input, Class<? extends EncryptedPacket> type) {
+            int id = input.readInt();
+            short index = input.readShort(), total = input.readShort();
+            int length = input.readVarInt(true), count = input.readVarInt(true);
+            return new EncryptedPacket(input.readBytes(count), 0, count, index, total, id, length);
+        }
+    }
 }
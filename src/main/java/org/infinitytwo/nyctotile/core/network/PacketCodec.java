@@ -0,0 +1,122 @@
+package org.infinitytwo.nyctotile.core.network;
+
+import org.infinitytwo.nyctotile.core.data.io.DataSchematica;
+import org.infinitytwo.nyctotile.core.exception.UnknownRegistryException;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
+
+/**
+ * Puts the header in front of a {@link Data} payload that says what it is, and reads it back.
+ * <br><br>
+ * There are two headers. The name header is the name the data is registered under: its length as a little endian
+ * int, then its UTF-8 bytes. The opcode header is the index of that name in a table of names the client sends in
+ * the handshake, as a little endian short with the top bit set. Names are at most 256 bytes, so the second byte
+ * of a name header is 0 or 1 and the two headers never look alike: either can be read without knowing which one
+ * the connection agreed on.
+ * <br><br>
+ * Payloads are written straight into a buffer every thread keeps, instead of into a new array per packet.
+ * Thread safe.
+ */
+public final class PacketCodec {
+    public static final int MAX_OPCODES = 0x8000;
+    private static final int OPCODE_FLAG = 0x8000;
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> allocate(INITIAL_CAPACITY));
+    @SuppressWarnings("unchecked")
+    private static final ClassValue<byte[]> headerNames = new ClassValue<>() {
+        @Override
+        protected byte[] computeValue(Class<?> type) {
+            return DataSchematica.getName((Class<? extends Data>) type).getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private final String[] names;
+    private final Data[] packets;
+    private final Map<Class<?>, Integer> opcodes = new HashMap<>();
+
+    private PacketCodec(String[] names) {
+        if (names.length > MAX_OPCODES) throw new IllegalArgumentException(names.length + " packets do not fit in the opcodes");
+        this.names = names;
+        this.packets = new Data[names.length];
+        for (int opcode = 0; opcode < names.length; opcode++) {
+            Data packet = DataSchematica.get(names[opcode]);
+            if (packet == null) continue; // The other side knows a packet this one does not
+            packets[opcode] = packet;
+            opcodes.put(packet.getClass(), opcode);
+        }
+    }
+
+    /**
+     * @return A table of every packet registered so far, the one this side offers
+     */
+    public static PacketCodec local() {
+        return new PacketCodec(DataSchematica.getNames());
+    }
+
+    /**
+     * @return The table the other side offered, opcodes of names this side does not know have no packet
+     */
+    public static PacketCodec of(String[] names) {
+        return new PacketCodec(names.clone());
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @return The opcode of a packet, -1 if it has none in this table
+     */
+    public int getOpcode(Data packet) {
+        return opcodes.getOrDefault(packet.getClass(), -1);
+    }
+
+    /**
+     * @param compact whether to write the opcode header instead of the name header, if the packet has an opcode
+     * @return The header and the payload, between the position and the limit of a buffer of this thread that is
+     * reused by the next call on it
+     */
+    public ByteBuffer encode(Data packet, boolean compact) {
+        int opcode = compact ? getOpcode(packet) : -1;
+        byte[] name = opcode == -1 ? headerNames.get(packet.getClass()) : null;
+        ByteBuffer buffer = buffers.get();
+        while (true) {
+            try {
+                buffer.clear();
+                if (opcode != -1) buffer.putShort((short) (OPCODE_FLAG | opcode));
+                else buffer.putInt(name.length).put(name);
+                packet.write(buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                buffer = allocate(buffer.capacity() * 2);
+                buffers.set(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a packet with either header from the position of {@code buffer} on.
+     * @throws UnknownRegistryException if no packet has its opcode or name
+     */
+    public Data decode(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < Short.BYTES || (buffer.get(buffer.position() + 1) & 0x80) == 0) {
+            return DataSchematica.deserialize(buffer);
+        }
+        int opcode = buffer.getShort() & (OPCODE_FLAG - 1);
+        Data packet = opcode < packets.length ? packets[opcode] : null;
+        if (packet == null) throw new UnknownRegistryException("No packet has the opcode " + opcode);
+        return packet.read(buffer);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,95 @@
+package org.infinitytwo.nyctotile.core.network;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AES-GCM for the messages one side of a connection sends and receives with the key of its session.
+ * <br><br>
+ * A message is the 12 byte nonce, then the ciphertext and the 16 byte tag. The nonce is a 4 byte prefix, then a
+ * counter of the messages this side encrypted. The top bit of the prefix says whether the client or the server
+ * encrypted it, the other bits are random, so both sides use the one key without ever sharing a nonce.
+ * <br><br>
+ * Every thread keeps a {@link Cipher} of its own per session, which skips the provider lookup and, as long as the
+ * thread sticks to the session, the key expansion, and encrypts into a buffer every thread keeps. Thread safe.
+ */
+public final class SessionCipher {
+    public static final int NONCE_BYTES = 12;
+    public static final int TAG_BYTES = 16;
+    /**
+     * Bytes an encrypted message has on top of its plaintext.
+     */
+    public static final int OVERHEAD = NONCE_BYTES + TAG_BYTES;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int CLIENT = 0x80000000;
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final SecureRandom random = new SecureRandom();
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_CAPACITY));
+
+    private final SecretKey key;
+    private final int prefix;
+    private final AtomicLong counter = new AtomicLong();
+    private final ThreadLocal<Cipher> encryptors = ThreadLocal.withInitial(SessionCipher::newCipher);
+    private final ThreadLocal<Cipher> decryptors = ThreadLocal.withInitial(SessionCipher::newCipher);
+
+    /**
+     * @param client whether this is the client side of the session
+     */
+    public SessionCipher(SecretKey key, boolean client) {
+        this.key = key;
+        this.prefix = (client ? CLIENT : 0) | (random.nextInt() & ~CLIENT);
+    }
+
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Encrypts {@code packet} from its position to its limit.
+     * @return The message, between the position and the limit of a buffer of this thread that is reused by the
+     * next call on it
+     */
+    public ByteBuffer encrypt(ByteBuffer packet) throws GeneralSecurityException {
+        int length = packet.remaining() + OVERHEAD;
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            buffers.set(buffer);
+        }
+        buffer.clear().putInt(prefix).putLong(counter.getAndIncrement());
+
+        Cipher cipher = encryptors.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, buffer.array(), 0, NONCE_BYTES));
+        cipher.doFinal(packet, buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Decrypts a message in place: the plaintext overwrites the ciphertext in {@code message}.
+     * @return The plaintext, between the position and the limit of a buffer over {@code message}
+     * @throws javax.crypto.AEADBadTagException if the message was tampered with or is not of this session
+     */
+    public ByteBuffer decrypt(byte[] message) throws GeneralSecurityException {
+        if (message.length < OVERHEAD) {
+            throw new GeneralSecurityException("Encrypted data is too short. Expected minimum: " + OVERHEAD + " bytes.");
+        }
+        Cipher cipher = decryptors.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, message, 0, NONCE_BYTES));
+        ByteBuffer plaintext = ByteBuffer.wrap(message, NONCE_BYTES, message.length - OVERHEAD);
+        cipher.doFinal(ByteBuffer.wrap(message, NONCE_BYTES, message.length - NONCE_BYTES), plaintext.duplicate());
+        return plaintext;
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+        }
+    }
+}
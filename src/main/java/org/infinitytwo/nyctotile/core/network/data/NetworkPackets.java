@@ -24,10 +24,14 @@ public abstract class NetworkPackets {
     public static class PUserData extends MPacket {
         public String token;
         public String name;
+        public int features;
+        public String[] packets;
         
-        public PUserData(String token, String name) {
+        public PUserData(String token, String name, int features, String[] packets) {
             this.token = token;
             this.name = name;
+            this.features = features;
+            this.packets = packets;
         }
         
         public PUserData() {}
@@ -36,31 +40,40 @@ public abstract class NetworkPackets {
     public static class PConnection extends MPacket {
         public String name;
         public String uid;
+        public int features;
         
         public PConnection() {
         }
         
-        public PConnection(String name, String uid) {
+        public PConnection(String name, String uid, int features) {
             this.name = name;
             this.uid = uid;
+            this.features = features;
         }
     }
     
     public static class PHandshakeComplete extends MPacket {}
     
+    /**
+     * A whole encrypted message, or one fragment of it over TCP. Only {@code count} bytes of {@code encrypted} from
+     * {@code offset} on are sent, a received packet has just those.
+     */
     public static class EncryptedPacket extends MPacket {
         public byte[] encrypted;
-        public int nonce;
+        public int offset, count;
         public short index;
         public short total;
         public int id;
+        public int length; // Of the whole message
         
-        public EncryptedPacket(byte[] encrypted, int nonce, short index, short total, int id) {
+        public EncryptedPacket(byte[] encrypted, int offset, int count, short index, short total, int id, int length) {
             this.encrypted = encrypted;
-            this.nonce = nonce;
+            this.offset = offset;
+            this.count = count;
             this.index = index;
             this.total = total;
             this.id = id;
+            this.length = length;
         }
         
         public EncryptedPacket() {}
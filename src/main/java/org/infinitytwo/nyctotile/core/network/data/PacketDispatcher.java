@@ -0,0 +1,73 @@
+package org.infinitytwo.nyctotile.core.network.data;
+
+import com.esotericsoftware.kryonet.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
+
+/**
+ * A {@link NetworkCommandProcessor} that looks the handler of a packet up by its type, and the handler of a
+ * {@link Packets.PCommand} by its first word, instead of testing for each in turn.
+ * <br><br>
+ * By the time a packet gets here {@link org.infinitytwo.nyctotile.core.network.PacketCodec} turned the opcode of
+ * the connection into the packet, so the table goes by the class the opcode stands for. Register every handler
+ * before the network starts, the tables are not changed after that.
+ */
+public class PacketDispatcher implements NetworkCommandProcessor {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private final Map<Class<? extends Data>, Handler<? extends Data>> handlers = new HashMap<>();
+    private final Map<String, CommandHandler> commands = new HashMap<>();
+    private final Logger logger = LoggerFactory.getLogger(PacketDispatcher.class);
+
+    @FunctionalInterface
+    public interface Handler<T extends Data> {
+        void handle(T packet, Connection connection);
+    }
+
+    @FunctionalInterface
+    public interface CommandHandler {
+        /**
+         * @param args the command split at whitespace and lowercased, the name of the command first
+         */
+        void handle(String[] args, Connection connection);
+    }
+
+    public <T extends Data> PacketDispatcher on(Class<T> type, Handler<T> handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    public PacketDispatcher command(String name, CommandHandler handler) {
+        commands.put(name.toLowerCase(Locale.ROOT), handler);
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(Data packet, Connection connection) {
+        if (packet instanceof Packets.PCommand command) {
+            processCommand(command.command(), connection);
+            return;
+        }
+        Handler<Data> handler = (Handler<Data>) handlers.get(packet.getClass());
+        if (handler == null) {
+            logger.debug("No handler for {} from {}", packet.getClass().getSimpleName(), connection.getID());
+            return;
+        }
+        handler.handle(packet, connection);
+    }
+
+    private void processCommand(String line, Connection connection) {
+        String[] args = WHITESPACE.split(line.toLowerCase(Locale.ROOT).trim());
+        if (args[0].isEmpty()) return;
+        logger.info("Got command: {}", line);
+        CommandHandler handler = commands.get(args[0]);
+        if (handler != null) handler.handle(args, connection);
+    }
+}
@@ -1,14 +1,17 @@
 package org.infinitytwo.nyctotile.core.network.data;
 
+import org.infinitytwo.nyctotile.core.data.io.ChunkCodec;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
 import org.infinitytwo.nyctotile.core.data.io.DataSchematica;
 import org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
 import org.infinitytwo.nyctotile.core.entity.Entity;
 import org.infinitytwo.nyctotile.core.entity.Player;
+import org.infinitytwo.nyctotile.core.network.Network;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Packets {
     
@@ -19,33 +22,128 @@ public class Packets {
     public static void register() {
         DataSchematica.register(new PCommandData("", new byte[0]));
         DataSchematica.register(new PChunk(0, 0, new int[0]));
+        DataSchematica.register(new PCompressedChunk(0, 0, new int[0]));
         DataSchematica.register(new PCommand(""));
         DataSchematica.register(new PPosition(0,0,0,0,0));
         DataSchematica.register(new Failure(""));
+        DataSchematica.register(new PSnapshot(0, new PSnapshot.Entry[0]));
+        DataSchematica.register(new PMovement(0, new PMovement.Input[0]));
     }
     
+    /**
+     * A full chunk column. On the wire only the non-empty 16x16x16 sections are written,
+     * after a section mask: {@code x, y, mask, sections...}.
+     */
     public record PChunk(int x, int y, int[] blocks) implements Data {
+        private static final int COLUMN = ChunkData.SECTION_SIZE * ChunkData.SIZE; // one x slice of a section
+        
         @Override
         public byte[] serialize() {
-            ByteBuffer buffer = ByteBuffer.allocate((2 + blocks.length) * Integer.BYTES);
+            ByteBuffer buffer = ByteBuffer.allocate((3 + Integer.bitCount(getMask()) * ChunkData.SECTION_VOLUME) * Integer.BYTES);
             buffer.order(ByteOrder.LITTLE_ENDIAN);
+            write(buffer);
+            return buffer.array();
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
+            int mask = getMask();
             buffer.putInt(x);
             buffer.putInt(y);
-            for (int b : blocks) buffer.putInt(b);
-            return buffer.array();
+            buffer.putInt(mask);
+            
+            for (int section = 0; section < ChunkData.SECTION_COUNT; section++) {
+                if ((mask & (1 << section)) == 0) continue;
+                for (int bx = 0; bx < ChunkData.SIZE; bx++) {
+                    int start = offset(bx, section);
+                    for (int i = start; i < start + COLUMN; i++) buffer.putInt(blocks[i]);
+                }
+            }
         }
         
         @Override
         public PChunk deserialize(byte[] data) {
-            ByteBuffer buffer = ByteBuffer.wrap(data);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        
+        @Override
+        public PChunk read(ByteBuffer buffer) {
             int x, y;
             x = buffer.getInt();
             y = buffer.getInt();
-            int[] blocks = new int[ChunkData.SIZE * ChunkData.SIZE * ChunkData.SIZE_Y];
-            for (int i = 0; i < blocks.length; i++) blocks[i] = buffer.getInt();
+            int mask = buffer.getInt();
+            
+            int[] blocks = new int[ChunkData.VOLUME];
+            for (int section = 0; section < ChunkData.SECTION_COUNT; section++) {
+                if ((mask & (1 << section)) == 0) continue;
+                for (int bx = 0; bx < ChunkData.SIZE; bx++) {
+                    int start = offset(bx, section);
+                    for (int i = start; i < start + COLUMN; i++) blocks[i] = buffer.getInt();
+                }
+            }
             return new PChunk(x, y, blocks);
         }
+        
+        private int getMask() {
+            int mask = 0;
+            for (int section = 0; section < ChunkData.SECTION_COUNT; section++) {
+                if (!isEmpty(section)) mask |= 1 << section;
+            }
+            return mask;
+        }
+        
+        private boolean isEmpty(int section) {
+            if (blocks.length == 0) return true;
+            for (int bx = 0; bx < ChunkData.SIZE; bx++) {
+                int start = offset(bx, section);
+                for (int i = start; i < start + COLUMN; i++) {
+                    if (blocks[i] != 0) return false;
+                }
+            }
+            return true;
+        }
+        
+        // Start of the x = bx slice of a section in the flat column array
+        private static int offset(int bx, int section) {
+            return (bx * ChunkData.SIZE_Y * ChunkData.SIZE) + (section * ChunkData.SECTION_SIZE * ChunkData.SIZE);
+        }
+    }
+    
+    /**
+     * A full chunk column compressed by {@link ChunkCodec}: {@code x, y, compressed blocks...}. Sent instead of
+     * {@link PChunk} once both sides agreed on {@link Network#FEATURE_CHUNK_COMPRESSION}.
+     */
+    public record PCompressedChunk(int x, int y, int[] blocks) implements Data {
+        @Override
+        public byte[] serialize() {
+            byte[] compressed = ChunkCodec.compress(blocks);
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + compressed.length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(x);
+            buffer.putInt(y);
+            buffer.put(compressed);
+            return buffer.array();
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.putInt(x);
+            buffer.putInt(y);
+            buffer.put(ChunkCodec.compress(blocks));
+        }
+        
+        @Override
+        public PCompressedChunk deserialize(byte[] data) {
+            return read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        
+        @Override
+        public PCompressedChunk read(ByteBuffer buffer) {
+            int x = buffer.getInt(), y = buffer.getInt();
+            int[] blocks = new int[ChunkData.VOLUME];
+            ChunkCodec.decompress(buffer, blocks);
+            return new PCompressedChunk(x, y, blocks);
+        }
     }
     
     public record PCommand(String command) implements Data {
@@ -59,6 +157,11 @@ public class Packets {
         public Data deserialize(byte[] data) {
             return new PCommand(new String(data, StandardCharsets.UTF_8));
         }
+        
+        @Override
+        public PCommand read(ByteBuffer buffer) {
+            return new PCommand(StandardCharsets.UTF_8.decode(buffer).toString());
+        }
     }
     
     public record PCommandData(String command, byte[] data) implements Data {
@@ -106,7 +209,12 @@ public class Packets {
         public byte[] serialize() {
             ByteBuffer buffer = ByteBuffer.allocate(PACKET_SIZE);
             buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
+            write(buffer);
+            return buffer.array();
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
             // 1. Write UUID: IMPORTANT: Write MOST Significant first for consistency
             buffer.putLong(mostSignificant);
             buffer.putLong(leastSignificant);
@@ -115,15 +223,15 @@ public class Packets {
             buffer.putFloat(x);
             buffer.putFloat(y);
             buffer.putFloat(z);
-            
-            return buffer.array();
         }
         
         @Override
         public PPosition deserialize(byte[] data) {
-            ByteBuffer buffer = ByteBuffer.wrap(data);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
+            return read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        
+        @Override
+        public PPosition read(ByteBuffer buffer) {
             // 1. Read UUID in the same order as it was written
             long mostSigBits = buffer.getLong();
             long leastSigBits = buffer.getLong();
@@ -139,6 +247,168 @@ public class Packets {
         }
     }
     
+    /**
+     * Where the client moved its player, in place of a {@code "setposition x y z"} command. Carries the last few
+     * inputs, oldest first, so an input in a lost datagram comes again in the next one; the server skips the ones
+     * it already has by their sequence number: {@code sequence, count, inputs...}, the first input has
+     * {@code sequence} and every one after it the next number. Each input is {@value #INPUT_BYTES} bytes:
+     * {@code tick, x, y, z}, the tick being the physics step of the client it was taken in.
+     */
+    public record PMovement(int sequence, Input[] inputs) implements Data {
+        public static final int MAX_INPUTS = 4;
+        public static final int INPUT_BYTES = Integer.BYTES + 3 * Float.BYTES;
+        
+        public record Input(int tick, float x, float y, float z) {
+        }
+        
+        @Override
+        public byte[] serialize() {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 1 + inputs.length * INPUT_BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            write(buffer);
+            return buffer.array();
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.putInt(sequence);
+            buffer.put((byte) inputs.length);
+            for (Input input : inputs) {
+                buffer.putInt(input.tick);
+                buffer.putFloat(input.x);
+                buffer.putFloat(input.y);
+                buffer.putFloat(input.z);
+            }
+        }
+        
+        @Override
+        public PMovement deserialize(byte[] data) {
+            return read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        
+        @Override
+        public PMovement read(ByteBuffer buffer) {
+            int sequence = buffer.getInt();
+            int count = buffer.get() & 0xFF;
+            if (count > MAX_INPUTS) throw new IllegalArgumentException("Movement of " + count + " inputs");
+            Input[] inputs = new Input[count];
+            for (int i = 0; i < count; i++) {
+                inputs[i] = new Input(buffer.getInt(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+            }
+            return new PMovement(sequence, inputs);
+        }
+    }
+    
+    /**
+     * The entities one player sees that changed since the snapshot before, sent once a tick, see
+     * {@link org.infinitytwo.nyctotile.core.network.EntitySnapshots}. Entities go by a slot the server gave them for
+     * this connection, positions are in 1/{@value #SCALE} of a block and only the axes that changed are written:
+     * {@code tick, count, entries...}, each entry {@code flags, slot, [uuid], [x], [y], [z]} in varints.
+     */
+    public record PSnapshot(int tick, Entry[] entries) implements Data {
+        public static final int X = 1, Y = 2, Z = 4;
+        /**
+         * The entry has the UUID of its slot and every axis, sent when the entity comes into view and now and then
+         * after that, in case a snapshot got lost.
+         */
+        public static final int IDENTITY = 8;
+        /**
+         * The entity went out of view, the slot is not used again.
+         */
+        public static final int REMOVED = 16;
+        public static final int SCALE = 32;
+        
+        public record Entry(int flags, int slot, long mostSignificant, long leastSignificant, int x, int y, int z) {
+        }
+        
+        public static int quantize(float position) {
+            return Math.round(position * SCALE);
+        }
+        
+        public static float position(int quantized) {
+            return (float) quantized / SCALE;
+        }
+        
+        @Override
+        public byte[] serialize() {
+            ByteBuffer buffer = ByteBuffer.allocate(2 * 5 + entries.length * (1 + 5 + 2 * Long.BYTES + 3 * 5));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            write(buffer);
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
+            putVarInt(buffer, tick);
+            putVarInt(buffer, entries.length);
+            for (Entry entry : entries) {
+                buffer.put((byte) entry.flags);
+                putVarInt(buffer, entry.slot);
+                if ((entry.flags & IDENTITY) != 0) {
+                    buffer.putLong(entry.mostSignificant);
+                    buffer.putLong(entry.leastSignificant);
+                }
+                if ((entry.flags & X) != 0) putVarInt(buffer, zigZag(entry.x));
+                if ((entry.flags & Y) != 0) putVarInt(buffer, zigZag(entry.y));
+                if ((entry.flags & Z) != 0) putVarInt(buffer, zigZag(entry.z));
+            }
+        }
+        
+        @Override
+        public PSnapshot deserialize(byte[] data) {
+            return read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        
+        @Override
+        public PSnapshot read(ByteBuffer buffer) {
+            int tick = getVarInt(buffer);
+            int count = getVarInt(buffer);
+            // Every entry takes at least two bytes, more than that cannot be in the packet
+            if (count < 0 || count > buffer.remaining() / 2) throw new IllegalArgumentException("Snapshot of " + count + " entries");
+            Entry[] entries = new Entry[count];
+            for (int i = 0; i < count; i++) {
+                int flags = buffer.get() & 0xFF;
+                int slot = getVarInt(buffer);
+                long most = 0, least = 0;
+                if ((flags & IDENTITY) != 0) {
+                    most = buffer.getLong();
+                    least = buffer.getLong();
+                }
+                int x = (flags & X) != 0 ? unZigZag(getVarInt(buffer)) : 0;
+                int y = (flags & Y) != 0 ? unZigZag(getVarInt(buffer)) : 0;
+                int z = (flags & Z) != 0 ? unZigZag(getVarInt(buffer)) : 0;
+                entries[i] = new Entry(flags, slot, most, least, x, y, z);
+            }
+            return new PSnapshot(tick, entries);
+        }
+    }
+    
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    private static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint is longer than 5 bytes");
+    }
+    
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
     public static class Failure implements Data {
         public final String msg;
         
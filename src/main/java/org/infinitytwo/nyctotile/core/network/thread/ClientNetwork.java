@@ -3,6 +3,8 @@ package org.infinitytwo.nyctotile.core.network.thread;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
 import org.infinitytwo.nyctotile.core.network.Network;
+import org.infinitytwo.nyctotile.core.network.PacketCodec;
+import org.infinitytwo.nyctotile.core.network.SessionCipher;
 import org.infinitytwo.nyctotile.core.network.data.NetworkCommandProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,13 +12,11 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.spec.X509EncodedKeySpec;
 
 import static org.infinitytwo.nyctotile.core.data.io.DataSchematica.Data;
@@ -25,13 +25,14 @@ import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.*;
 public class ClientNetwork extends Network {
     private final Client client;
     private final Logger logger = LoggerFactory.getLogger(ClientNetwork.class);
-    private final SecureRandom secureRandom = new SecureRandom();
     private final String host;
     private final NetworkCommandProcessor processor;
     private volatile boolean isHandshakeComplete = false;
+    private volatile PacketCodec codec;
     
-    // The client generates and stores its own Secret AES Key
-    private SecretKey clientAesKey;
+    // The client generates and stores its own Secret AES Key, a new one for every connection
+    private volatile SecretKey clientAesKey;
+    private volatile SessionCipher cipher;
     private final String name;
     private final String token;
     
@@ -43,7 +44,7 @@ public class ClientNetwork extends Network {
         this.token = token;
         
         // Initialize the KryoNet Client
-        this.client = new Client(131072,131072);
+        this.client = new Client(BUFFER_BYTES, BUFFER_BYTES);
         
         // Register packets (must be the same order as the server)
         register(client.getKryo());
@@ -73,6 +74,7 @@ public class ClientNetwork extends Network {
             KeyGenerator keyGen = KeyGenerator.getInstance("AES");
             keyGen.init(128); // 128-bit key size
             this.clientAesKey = keyGen.generateKey();
+            this.cipher = new SessionCipher(clientAesKey, true);
         } catch (GeneralSecurityException e) {
             throw new RuntimeException("Failed to generate client AES key.", e);
         }
@@ -129,52 +131,26 @@ public class ClientNetwork extends Network {
     
     // AES Encryption (Used for application data)
     @Override
-    protected byte[] encrypt(byte[] packet, Connection connection) throws Exception {
-        if (clientAesKey == null) {
+    protected ByteBuffer encrypt(ByteBuffer packet, Connection connection) throws Exception {
+        SessionCipher cipher = this.cipher;
+        if (cipher == null) {
             throw new IllegalStateException("Attempted to encrypt application data before AES key was set.");
         }
         
-        // Use AES/GCM/NoPadding for authenticated encryption
-        byte[] iv = new byte[12];
-        secureRandom.nextBytes(iv); // Generate unique IV per packet
-        
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(128, iv); // 128-bit authentication tag
-        cipher.init(Cipher.ENCRYPT_MODE, clientAesKey, spec);
-        byte[] cipherText = cipher.doFinal(packet);
-        
-        // Prepend IV to the ciphertext
-        ByteBuffer buffer = ByteBuffer.allocate(iv.length + cipherText.length);
-        buffer.put(iv);
-        buffer.put(cipherText);
-        
-        return buffer.array();
+        // AES/GCM with a counter nonce (Nonce + Ciphertext + Tag)
+        return cipher.encrypt(packet);
     }
     
     // AES Decryption (Used by the inherited listener)
     @Override
-    protected byte[] decrypt(byte[] data, Connection connection) throws Exception {
-        if (clientAesKey == null) {
+    protected ByteBuffer decrypt(byte[] data, Connection connection) throws Exception {
+        SessionCipher cipher = this.cipher;
+        if (cipher == null) {
             throw new IllegalStateException("No AES key for decryption.");
         }
         
-        // Data layout: IV (12 bytes) + Ciphertext + GCM Tag (16 bytes)
-        if (data.length < 12 + 16) {
-            throw new GeneralSecurityException("Encrypted data is too short.");
-        }
-        
-        byte[] iv = new byte[12];
-        System.arraycopy(data, 0, iv, 0, 12);
-        
-        byte[] cipherText = new byte[data.length - 12];
-        System.arraycopy(data, 12, cipherText, 0, data.length - 12);
-        
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(128, iv);
-        cipher.init(Cipher.DECRYPT_MODE, clientAesKey, spec);
-        
         // This throws AEADBadTagException if the packet is corrupted/tampered with
-        return cipher.doFinal(cipherText);
+        return cipher.decrypt(data);
     }
     
     // --- Event Callback Implementations ---
@@ -182,6 +158,8 @@ public class ClientNetwork extends Network {
     @Override
     public void onConnect(Connection connection) {
         logger.info("Successfully established connection to server.");
+        // A fresh key, so the server never starts a second session on a key it already used nonces of
+        generateClientAesKey();
         sendTCP(new PUnencrypted("requestAesKey"),null);
     }
     
@@ -241,10 +219,13 @@ public class ClientNetwork extends Network {
                 connection.close();
             }
         } else if (object instanceof PHandshakeComplete) {
-            client.sendTCP(new PUserData(token,name));
+            // Every packet registered by now gets an opcode, the server uses this table for the connection
+            codec = PacketCodec.local();
+            client.sendTCP(new PUserData(token,name,FEATURES,codec.getNames()));
             logger.info("Handshake complete! Sending player's data");
         } else if (object instanceof PConnection data) {
             logger.info("Connected to server! Ready to send encrypted data!");
+            features.put(connection, data.features);
             synchronized (this) { // Lock on the same object that awaitHandshakeCompletion() is waiting on.
                 isHandshakeComplete = true;
                 this.notifyAll(); // Wake up the waiting thread.
@@ -252,6 +233,17 @@ public class ClientNetwork extends Network {
         }
     }
     
+    @Override
+    protected PacketCodec getCodec(Connection connection) {
+        PacketCodec codec = this.codec;
+        return codec != null ? codec : super.getCodec(connection);
+    }
+    
+    @Override
+    protected Thread getUpdateThread() {
+        return client.getUpdateThread();
+    }
+    
     @Override
     public int getPortTCP() {
         return client.getRemoteAddressTCP().getPort();
@@ -267,10 +259,17 @@ public class ClientNetwork extends Network {
             logger.warn("Attempted to send encrypted application data before handshake completion. Dropping.");
             return;
         }
-        send(data, null, critical);
+        send(data, client, critical);
     }
     
     public boolean isConnected() {
         return client.isConnected();
     }
+    
+    /**
+     * @return Whether the server agreed on the feature, see {@link Network#FEATURES}
+     */
+    public boolean hasFeature(int feature) {
+        return hasFeature(client, feature);
+    }
 }
\ No newline at end of file
@@ -5,6 +5,8 @@ import com.esotericsoftware.kryonet.Server;
 import org.infinitytwo.nyctotile.core.data.PlayerData;
 import org.infinitytwo.nyctotile.core.manager.Players;
 import org.infinitytwo.nyctotile.core.network.Network;
+import org.infinitytwo.nyctotile.core.network.PacketCodec;
+import org.infinitytwo.nyctotile.core.network.SessionCipher;
 import org.infinitytwo.nyctotile.core.network.data.NetworkCommandProcessor;
 import org.infinitytwo.nyctotile.core.security.Authentication;
 import org.slf4j.Logger;
@@ -12,7 +14,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -27,13 +28,13 @@ import static org.infinitytwo.nyctotile.core.network.data.NetworkPackets.*;
 public class ServerNetwork extends Network {
     private final Server server;
     private final Logger logger = LoggerFactory.getLogger(ServerNetwork.class);
-    private final SecureRandom secureRandom = new SecureRandom();
     private final NetworkCommandProcessor processor;
     
     // --- Key Management ---
     private PrivateKey serverPrivateKey;
     private PublicKey serverPublicKey;
-    private final Map<Connection, SecretKey> clientAesKeys = new ConcurrentHashMap<>();
+    private final Map<Connection, SessionCipher> ciphers = new ConcurrentHashMap<>();
+    private final Map<Connection, PacketCodec> codecs = new ConcurrentHashMap<>();
     private volatile boolean started;
     private boolean online;
     
@@ -42,10 +43,7 @@ public class ServerNetwork extends Network {
         this.processor = processor;
         
         // Initialize the KryoNet Server
-        int readBufferSize = 131072;  // Keep this the same or slightly larger
-        int writeBufferSize = 131072; // Increased from 16,384 to 32,768 (32 KB)
-        
-        this.server = new Server(readBufferSize, writeBufferSize);
+        this.server = new Server(BUFFER_BYTES, BUFFER_BYTES);
         
         // 1. Generate keys first
         generateRSAKeyPair();
@@ -116,59 +114,28 @@ public class ServerNetwork extends Network {
     
     // AES Encryption (Used for application data)
     @Override
-    protected byte[] encrypt(byte[] packet, Connection connection) throws Exception {
-        SecretKey aesKey = clientAesKeys.get(connection);
-        if (aesKey == null) {
+    protected ByteBuffer encrypt(ByteBuffer packet, Connection connection) throws Exception {
+        SessionCipher cipher = ciphers.get(connection);
+        if (cipher == null) {
             throw new IllegalStateException("Attempted to encrypt application data before AES key exchange complete.");
         }
         
-        // Use AES/GCM/NoPadding for authenticated encryption (IV + Ciphertext + Tag)
-        byte[] iv = new byte[12];
-        secureRandom.nextBytes(iv); // Generate unique IV per packet
-        
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(128, iv); // 128-bit authentication tag
-        cipher.init(Cipher.ENCRYPT_MODE, aesKey, spec);
-        byte[] cipherText = cipher.doFinal(packet);
-        
-        // Prepend IV to the ciphertext
-        ByteBuffer buffer = ByteBuffer.allocate(iv.length + cipherText.length);
-        buffer.put(iv);
-        buffer.put(cipherText);
-        
-        return buffer.array();
+        // AES/GCM with a counter nonce (Nonce + Ciphertext + Tag)
+        return cipher.encrypt(packet);
     }
     
     // AES Decryption (Used by the inherited listener)
     @Override
-    protected byte[] decrypt(byte[] data, Connection connection) throws Exception {
-        SecretKey aesKey = clientAesKeys.get(connection);
-        if (aesKey == null) {
+    protected ByteBuffer decrypt(byte[] data, Connection connection) throws Exception {
+        SessionCipher cipher = ciphers.get(connection);
+        if (cipher == null) {
             // This case should not happen if the packet is PEncrypted, but is a fail-safe
             throw new IllegalStateException("No AES key for connection " + connection.getID() + " during decryption.");
         }
         
-        // Data layout: IV (12 bytes) + Ciphertext + GCM Tag (16 bytes)
-        final int MIN_ENCRYPTED_LENGTH = 12 + 16;
-        
-        if (data.length < MIN_ENCRYPTED_LENGTH) {
-            throw new GeneralSecurityException("Encrypted data is too short. Expected minimum: " + MIN_ENCRYPTED_LENGTH + " bytes.");
-        }
-        
-        byte[] iv = new byte[12];
-        System.arraycopy(data, 0, iv, 0, 12);
-        
-        // The ciphertext includes the GCM Tag.
-        // No need to subtract the tag size from the ciphertext length calculation.
-        byte[] cipherText = new byte[data.length - 12];
-        System.arraycopy(data, 12, cipherText, 0, data.length - 12);
-        
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(128, iv);
-        cipher.init(Cipher.DECRYPT_MODE, aesKey, spec);
-        
+        // Data layout: Nonce (12 bytes) + Ciphertext + GCM Tag (16 bytes), decrypted in place.
         // This line throws AEADBadTagException if the packet is corrupted/tampered with
-        return cipher.doFinal(cipherText);
+        return cipher.decrypt(data);
     }
     
     // --- Event Callback Implementations ---
@@ -191,7 +158,9 @@ public class ServerNetwork extends Network {
     @Override
     public void onDisconnect(Connection connection) {
         logger.info("Client disconnected: {}", connection.getID());
-        clientAesKeys.remove(connection);
+        ciphers.remove(connection);
+        features.remove(connection);
+        codecs.remove(connection);
         
         // FIX 3: Clean up Player manager state
         Players.leave(connection);
@@ -227,7 +196,7 @@ public class ServerNetwork extends Network {
                 byte[] aesKeyBytes = rsa.doFinal(receivedKeyPacket.rsaKey);
                 
                 SecretKey aesKey = new SecretKeySpec(aesKeyBytes, "AES");
-                clientAesKeys.put(connection, aesKey);
+                ciphers.put(connection, new SessionCipher(aesKey, false));
                 
                 // FIX 2: Removed the temporary PlayerData join here.
                 // A player should only be "joined" after receiving PUserData (login) to avoid ghost players/UUID conflicts.
@@ -240,6 +209,11 @@ public class ServerNetwork extends Network {
                 connection.close();
             }
         } else if (object instanceof PUserData data) {
+            int agreed = data.features & FEATURES;
+            if (data.packets == null) agreed &= ~FEATURE_OPCODES;
+            else codecs.put(connection, PacketCodec.of(data.packets));
+            features.put(connection, agreed);
+            
             // Player login/authentication logic (Correctly handles joining the Player manager)
             if (online) {
                 try {
@@ -247,7 +221,7 @@ public class ServerNetwork extends Network {
                     String name = payload.name() + "#" + payload.uid().substring(0, 3);
                     
                     Players.join(new PlayerData(name, payload.uid(),data.token,true, connection));
-                    connection.sendTCP(new PConnection(name, payload.uid()));
+                    connection.sendTCP(new PConnection(name, payload.uid(), agreed));
                     
                 } catch (Exception e) {
                     logger.error("Failed to login",e);
@@ -257,11 +231,22 @@ public class ServerNetwork extends Network {
                 UUID uid = UUID.randomUUID();
                 
                 Players.join(new PlayerData(data.name, uid.toString(), "",false,connection));
-                connection.sendTCP(new PConnection(data.name, uid.toString()));
+                connection.sendTCP(new PConnection(data.name, uid.toString(), agreed));
             }
         }
     }
     
+    @Override
+    protected PacketCodec getCodec(Connection connection) {
+        PacketCodec codec = codecs.get(connection);
+        return codec != null ? codec : super.getCodec(connection);
+    }
+    
+    @Override
+    protected Thread getUpdateThread() {
+        return server.getUpdateThread();
+    }
+    
     @Override
     public int getPortTCP() {
         return tcp;
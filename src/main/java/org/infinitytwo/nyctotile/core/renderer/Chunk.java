@@ -1,26 +1,29 @@
 package org.infinitytwo.nyctotile.core.renderer;
 
 import org.infinitytwo.nyctotile.core.data.RGBA;
-import org.infinitytwo.nyctotile.core.manager.ChunkManager;
 import org.infinitytwo.nyctotile.core.Window;
-import org.infinitytwo.nyctotile.core.manager.WorkerThreads;
+import org.infinitytwo.nyctotile.core.constants.ShaderFiles;
 import org.infinitytwo.nyctotile.core.data.BlockType;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
-import org.infinitytwo.nyctotile.core.data.buffer.NFloatBuffer;
+import org.infinitytwo.nyctotile.core.data.world.PackedLight;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
 import org.infinitytwo.nyctotile.core.exception.IllegalChunkAccessException;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
+import org.infinitytwo.nyctotile.core.model.builder.CompactVertex;
+import org.infinitytwo.nyctotile.core.model.builder.GreedyMeshBuilder;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.infinitytwo.nyctotile.core.world.ChunkSnapshot;
 import org.infinitytwo.nyctotile.core.world.GridMap;
 import org.joml.Matrix4f;
 import org.joml.Vector2i;
+import org.joml.Vector3f;
 import org.joml.Vector3i;
 import org.lwjgl.opengl.*;
 
-import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL15.*;
-import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
 
 /**
@@ -31,19 +34,31 @@ import static org.lwjgl.opengl.GL30.*;
  * This class only exists client-side only. Use ChunkData class for server-side operations.
  * <br><br>
  * For nerds or expert mod makers:<br>
- * Here is the vertices list:
- * [ x (float), y (float), z (float), u (float), v (float), brightness (float 0-1) ]
+ * Every 16x16x16 section has its own VAO/VBO, so editing a block only remeshes the section
+ * it is in (plus the neighbouring section when it sits on a section border). Sections that are
+ * all air never get a mesh. The VAO/VBO pairs come from {@link MeshBufferPool#getMain()} and go back
+ * to it when a section loses its mesh or the chunk is cleaned up, and every chunk draws with the one
+ * shared program of {@link #getShaderProgram()}. Dirty sections are meshed on the worker pool by {@link ChunkMeshScheduler},
+ * which picks the chunks closest to the camera first and uploads the results on the main thread.
+ * <br><br>
+ * Cube blocks are greedy meshed by default (see {@link GreedyMeshBuilder}), everything else goes
+ * through {@link BlockType#buildModel}. Turn it off with {@link #setGreedyMeshing(boolean)}.
+ * <br><br>
+ * Vertices are two packed ints, see {@link CompactVertex}: the section-local position and face,
+ * then the atlas tile and 4-bit light. UVs, tile origin and brightness are derived in the shader.
  * The winding is: Clockwise (CW)
  */
 public class Chunk extends ChunkData {
-    private static final int FLOATS_PER_VERTEX = 10;
-    private int vaoId;
-    private int vboId;
-    private int vertexCount;
-    private int vboCapacityFloats = 0;
-    
-    private final ShaderProgram shaderProgram;
-    private volatile boolean isDirty = false;
+    private static final int INTS_PER_VERTEX = CompactVertex.INTS_PER_VERTEX;
+    private static volatile boolean greedyMeshing = true;
+    private static final ThreadLocal<ChunkSnapshot> snapshots = ThreadLocal.withInitial(ChunkSnapshot::new);
+    private static ShaderProgram sharedProgram;
+    private final MeshBuffer[] meshes = new MeshBuffer[SECTION_COUNT];
+    private final int[] vertexCounts = new int[SECTION_COUNT];
+    
+    private final ShaderProgram shaderProgram; // null for the shared one
+    private final AtomicInteger dirtySections = new AtomicInteger();
+    private volatile boolean disposed;
     private final TextureAtlas atlas;
     private final BlockRegistry registry;
     
@@ -54,72 +69,27 @@ public class Chunk extends ChunkData {
         this.atlas = atlas;
         this.map = map;
         this.registry = registry;
-        this.blocks = new int[SIZE_X * SIZE_Y * SIZE_Z];
-        setupMeshBuffers();
     }
     
     public Chunk(Vector2i position, TextureAtlas atlas, GridMap map, BlockRegistry registry) {
         super(position);
         this.position = new Vector2i(position);
-        this.shaderProgram = new ShaderProgram(
-                """
-                        #version 330 core
-                        layout (location = 0) in vec3 aPos;
-                        layout (location = 1) in vec2 aTexCoord;
-                        layout (location = 2) in float aBrightness;
-                        layout (location = 3) in vec4 light;
-                        
-                        out vec2 TexCoord;
-                        out float Brightness;
-                        out vec4 Light;
-                        
-                        uniform mat4 model;
-                        uniform mat4 view;
-                        uniform mat4 projection;
-                        
-                        void main() {
-                            TexCoord = aTexCoord;
-                            Brightness = aBrightness;
-                            Light = light;
-                            gl_Position = projection * view * model * vec4(aPos, 1.0);
-                        }
-                        """,
-                """
-                        #version 330 core
-                        in vec2 TexCoord;
-                        in float Brightness;
-                        in vec4 Light;
-                        
-                        uniform sampler2D ourTexture;
-                        
-                        out vec4 FragColor;
-                        
-                        void main() {
-                            vec4 texColor = texture(ourTexture, TexCoord);
-                        
-                            // Step 1: Apply initial shading (e.g., ambient occlusion from Brightness)
-                            vec3 brightenedColor = texColor.rgb * Brightness;
-                        
-                            // Step 2: Apply the light color (R, G, B) as a tint/filter
-                            vec3 tintedColor = brightenedColor * (Light.rgb + 0.4);
-                        
-                            // Step 3: Apply the Light Level Intensity (Light.a)
-                            // This scales the entire color from 0.0 (pitch black) to 1.0 (full brightness).
-                            vec3 finalColor = tintedColor * Light.a;
-                        
-                            // Final Output
-                            FragColor = vec4(finalColor, texColor.a);
-                        }
-                        """);
+        this.shaderProgram = null;
         this.atlas = atlas;
         this.map = map;
         this.registry = registry;
-        this.blocks = new int[SIZE_X * SIZE_Y * SIZE_Z];
-        setupMeshBuffers();
     }
     
-    private static int getIndex(int x, int y, int z) {
-        return (x * SIZE_Y * SIZE_Z) + (y * SIZE_Z) + z;
+    /**
+     * @return The section mask of {@code y}'s section, plus the one above or below when {@code y}
+     * is on the section border (their faces against this block may have changed too).
+     */
+    private static int sectionsTouching(int y) {
+        int section = y >> 4;
+        int mask = 1 << section;
+        if ((y & (SECTION_SIZE - 1)) == 0 && section > 0) mask |= 1 << (section - 1);
+        if ((y & (SECTION_SIZE - 1)) == SECTION_SIZE - 1 && section < SECTION_COUNT - 1) mask |= 1 << (section + 1);
+        return mask;
     }
     
     private boolean inBounds(int x, int y, int z) {
@@ -128,8 +98,8 @@ public class Chunk extends ChunkData {
     
     public void setBlock(int x, int y, int z, int blockId, boolean generator) throws IllegalChunkAccessException {
         if (inBounds(x, y, z)) {
-            blocks[getIndex(x, y, z)] = blockId;
-            isDirty = true;
+            if (!putBlock(x, y, z, blockId)) return;
+            dirtySections.getAndUpdate(mask -> mask | sectionsTouching(y));
             if (x == 0 || x == SIZE_X - 1 ||
                     z == 0 || z == SIZE_Z - 1) {
                 if (!generator) notifyNeighboringChunks(x, y, z);
@@ -142,105 +112,109 @@ public class Chunk extends ChunkData {
     private void notifyNeighboringChunks(int x, int y, int z) {
         Vector2i currentChunkPos = this.getPosition();
         
-        if (x == 0) map.rebuildChunk(currentChunkPos.x - 1, currentChunkPos.y);
-        if (x == SIZE_X - 1) map.rebuildChunk(currentChunkPos.x + 1, currentChunkPos.y);
-        if (z == 0) map.rebuildChunk(currentChunkPos.x, currentChunkPos.y - 1);
-        if (z == SIZE_Z - 1) map.rebuildChunk(currentChunkPos.x, currentChunkPos.y + 1);
+        int section = y >> 4;
+        if (x == 0) map.rebuildChunk(currentChunkPos.x - 1, currentChunkPos.y, section);
+        if (x == SIZE_X - 1) map.rebuildChunk(currentChunkPos.x + 1, currentChunkPos.y, section);
+        if (z == 0) map.rebuildChunk(currentChunkPos.x, currentChunkPos.y - 1, section);
+        if (z == SIZE_Z - 1) map.rebuildChunk(currentChunkPos.x, currentChunkPos.y + 1, section);
     }
     
-    private synchronized void setupMeshBuffers() {
-        vaoId = glGenVertexArrays();
-        vboId = glGenBuffers();
+    /**
+     * Takes the dirty sections for a mesh job, see {@link ChunkMeshScheduler}.
+     */
+    int takeDirtySections() {
+        return dirtySections.getAndSet(0);
+    }
+    
+    boolean isSectionDirty(int section) {
+        return (dirtySections.get() & (1 << section)) != 0;
+    }
+    
+    /**
+     * Fills this thread's snapshot with this chunk and its border, for {@link #buildSectionMesh}.
+     */
+    ChunkSnapshot snapshot() {
+        ChunkSnapshot snapshot = snapshots.get();
+        snapshot.fill(this, map, registry);
+        return snapshot;
     }
     
-    public synchronized void buildMeshData() {
-        isDirty = false;
-        NFloatBuffer buffer = new NFloatBuffer();
+    /**
+     * Meshes one section off the main thread.
+     *
+     * @return The vertices, or {@code null} if the section is empty. The caller releases the buffer
+     * to {@link ChunkMeshScheduler#staging}.
+     */
+    NIntBuffer buildSectionMesh(int section, ChunkSnapshot snapshot, RGBA light) {
+        if (isSectionEmpty(section)) return null;
         
-        ChunkManager.run(() -> {
-            RGBA light = new RGBA();
-            
-            for (int x = 0; x < SIZE_X; x++) {
-                for (int y = 0; y < SIZE_Y; y++) {
-                    for (int z = 0; z < SIZE_Z; z++) {
-                        int id = getBlockId(x, y, z);
-                        if (id == 0) continue;
-                        
-                        BlockType type = registry.get(id);
-                        if (type == null) continue;
-                        
-                        light.set(
-                                (float) getRed(x, y, z) / 255,
-                                (float) getGreen(x, y, z) / 255,
-                                (float) getBlue(x, y, z) / 255,
-                                (float) getLightLevel(x, y, z) / 15
-                        );
-                        
-                        type.buildModel(map, GridMap.convertToWorldPosition(position, x, y, z), atlas, registry, buffer, light);
-                    }
+        NIntBuffer buffer = ChunkMeshScheduler.staging.acquire();
+        buildSection(section, snapshot, buffer, light);
+        return buffer;
+    }
+    
+    /**
+     * @param snapshot This chunk and its border, filled once per rebuild. Culling reads it instead of the map.
+     */
+    private void buildSection(int section, ChunkSnapshot snapshot, NIntBuffer buffer, RGBA light) {
+        int baseY = section * SECTION_SIZE;
+        boolean greedy = greedyMeshing;
+        if (greedy) GreedyMeshBuilder.buildSection(this, snapshot, section, registry, buffer);
+        
+        for (int x = 0; x < SIZE_X; x++) {
+            for (int y = baseY; y < baseY + SECTION_SIZE; y++) {
+                for (int z = 0; z < SIZE_Z; z++) {
+                    int id = snapshot.getBlockId(x, y, z);
+                    if (id == 0) continue;
+                    
+                    BlockType type = registry.get(id);
+                    if (type == null) continue;
+                    if (greedy && type.isCube()) continue; // already merged above
+                    
+                    int packed = getPackedLight(x, y, z);
+                    light.set(
+                            (float) PackedLight.red(packed) / 255,
+                            (float) PackedLight.green(packed) / 255,
+                            (float) PackedLight.blue(packed) / 255,
+                            (float) PackedLight.level(packed) / 15
+                    );
+                    
+                    type.buildModel(snapshot, GridMap.convertToWorldPosition(position, x, y, z), atlas, registry, buffer, light);
                 }
             }
-            
-            WorkerThreads.dispatch(() -> {
-                uploadMesh(buffer);
-                buffer.close();
-            });
-        });
+        }
     }
     
-    private synchronized void uploadMesh(NFloatBuffer nBuffer) {
-        int totalFloats = nBuffer.getWritten();
-        FloatBuffer buffer = nBuffer.getBuffer();
-        
-        vertexCount = totalFloats / FLOATS_PER_VERTEX;
-        
-        if (totalFloats == 0) return; // Skip if empty
-        
-        glBindVertexArray(vaoId);
-        glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        
-        // --- OPTIMIZATION: Use glBufferSubData when possible ---
-        if (totalFloats > vboCapacityFloats) {
-            // Case 1: The new mesh is LARGER than the GPU capacity.
-            // We must re-allocate on the GPU (glBufferData).
-            GL15.glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
-            vboCapacityFloats = totalFloats; // Update GPU capacity
-        } else {
-            // Case 2: The new mesh FITS within the existing GPU capacity.
-            // Fast update: Only copy the data, no reallocation.
-            GL15.glBufferSubData(GL_ARRAY_BUFFER, 0, buffer);
+    synchronized void clearMesh(int section) {
+        vertexCounts[section] = 0;
+        if (meshes[section] == null) return;
+        MeshBufferPool.getMain().release(meshes[section]);
+        meshes[section] = null;
+    }
+    
+    synchronized void uploadMesh(int section, NIntBuffer nBuffer) {
+        int totalInts = nBuffer.getWritten();
+        if (totalInts == 0) {
+            clearMesh(section);
+            return;
         }
         
-        // The Attribute Pointers only need to be set once, but it's often safer
-        // to keep them here or in setupMeshBuffers if your VAO is simple.
-        // Since you are calling glBufferData/glBufferSubData, the data itself is updated,
-        // and the VAO bindings are valid.
-        
-        int stride = FLOATS_PER_VERTEX * Float.BYTES;
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
-        glVertexAttribPointer(1, 2, GL_FLOAT, false, stride, 3 * Float.BYTES);
-        glVertexAttribPointer(2, 1, GL_FLOAT, false, stride, 5 * Float.BYTES);
-        glVertexAttribPointer(3, 4, GL_FLOAT, false, stride, 6 * Float.BYTES);
-        
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
-        glEnableVertexAttribArray(3);
-        
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
-        
-        isDirty = false;
+        // Buffers are taken lazily so sky sections that never get a block never cost a VAO
+        MeshBufferPool pool = MeshBufferPool.getMain();
+        if (meshes[section] == null) meshes[section] = pool.acquire(totalInts);
+        pool.upload(meshes[section], nBuffer.getBuffer()); // Reallocates only if it does not fit
+        vertexCounts[section] = totalInts / INTS_PER_VERTEX;
     }
     
     public synchronized void draw(Camera camera, Window window) {
-        if (isDirty) rebuild();
-        if (vertexCount == 0) return;
+        if (isDirty()) ChunkMeshScheduler.schedule(this);
+        if (!hasMesh()) return;
         
         glEnable(GL_DEPTH_TEST);
         glEnable(GL_CULL_FACE);
         glFrontFace(GL_CW);
         
+        ShaderProgram shaderProgram = this.shaderProgram != null ? this.shaderProgram : getShaderProgram();
         shaderProgram.bind();
         
         Matrix4f model = new Matrix4f().identity();
@@ -255,30 +229,60 @@ public class Chunk extends ChunkData {
         GL13.glActiveTexture(GL13.GL_TEXTURE0);
         atlas.getTexture().bind();
         shaderProgram.setUniform1i("ourTexture", 0);
+        float[] tile = atlas.getUVCoords(0);
+        shaderProgram.setUniform2f("tileSize", tile[2] - tile[0], tile[3] - tile[1]);
+        shaderProgram.setUniform1i("atlasColumns", atlas.getColumns());
         
-        glBindVertexArray(vaoId);
-        glDrawArrays(GL_TRIANGLES, 0, vertexCount);
+        Vector3f origin = new Vector3f();
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            if (vertexCounts[section] == 0) continue;
+            shaderProgram.setUniform3f("sectionOrigin", origin.set(position.x * SIZE_X, section * SECTION_SIZE, position.y * SIZE_Z));
+            glBindVertexArray(meshes[section].getVao());
+            glDrawArrays(GL_TRIANGLES, 0, vertexCounts[section]);
+        }
         glBindVertexArray(0);
         shaderProgram.unbind();
     }
     
+    private boolean hasMesh() {
+        for (int count : vertexCounts) {
+            if (count != 0) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Gives the buffers back to the pool. The shader program is shared and stays.
+     */
     public synchronized void cleanup() {
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glDeleteBuffers(vboId);
-        glBindVertexArray(0);
-        glDeleteVertexArrays(vaoId);
-        shaderProgram.cleanup();
+        disposed = true; // Pending mesh jobs and uploads for this chunk are dropped
+        for (int section = 0; section < SECTION_COUNT; section++) clearMesh(section);
+    }
+    
+    /**
+     * @return The program every chunk draws with, compiled the first time it is asked for
+     */
+    public static ShaderProgram getShaderProgram() {
+        if (sharedProgram == null) sharedProgram = new ShaderProgram(ShaderFiles.chunkVertex, ShaderFiles.chunkFragment);
+        return sharedProgram;
+    }
+    
+    /**
+     * Deletes the shared program, on shutdown.
+     */
+    public static void cleanupShaderProgram() {
+        if (sharedProgram == null) return;
+        sharedProgram.cleanup();
+        sharedProgram = null;
     }
     
     public int[] getBlockData() {
-        return blocks;
+        return getBlockIds();
     }
     
     public void rebuild() {
-        buildMeshData();
+        dirty();
+        ChunkMeshScheduler.schedule(this);
     }
     
     /**
@@ -286,47 +290,67 @@ public class Chunk extends ChunkData {
      * Use with caution as this runs on the main (render) thread.
      */
     public void rebuildSynchronous() {
-        isDirty = false; // Reset the flag immediately
-        NFloatBuffer buffer = new NFloatBuffer();
+        dirtySections.set(0); // Reset the flags immediately
         
         // Perform the mesh generation (usually fast enough for one chunk)
         RGBA light = new RGBA();
-        for (int x = 0; x < SIZE_X; x++) {
-            for (int y = 0; y < SIZE_Y; y++) {
-                for (int z = 0; z < SIZE_Z; z++) {
-                    int id = getBlockId(x, y, z);
-                    if (id == 0) continue;
-                    
-                    BlockType type = registry.get(id);
-                    if (type == null) continue;
-                    
-                    // Get light data from ChunkData fields
-                    light.set(
-                            (float) getRed(x, y, z) / 255,
-                            (float) getGreen(x, y, z) / 255,
-                            (float) getBlue(x, y, z) / 255,
-                            (float) getLightLevel(x, y, z) / 15
-                    );
-                    
-                    type.buildModel(map, GridMap.convertToWorldPosition(position, x, y, z), atlas, registry, buffer, light);
-                }
+        ChunkSnapshot snapshot = snapshots.get();
+        snapshot.fill(this, map, registry);
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            if (isSectionEmpty(section)) {
+                clearMesh(section);
+                continue;
             }
+            
+            NIntBuffer buffer = ChunkMeshScheduler.staging.acquire();
+            buildSection(section, snapshot, buffer, light);
+            
+            // Upload the mesh to the GPU immediately (must be on the main thread)
+            uploadMesh(section, buffer);
+            ChunkMeshScheduler.staging.release(buffer);
         }
-        
-        // Upload the mesh to the GPU immediately (must be on the main thread)
-        uploadMesh(buffer);
-        buffer.close();
     }
     
     @Override
     public void setLight(int x, int y, int z, int r, int g, int b, int level) {
         super.setLight(x, y, z, r, g, b, level);
+        dirty(y >> 4);
+    }
+    
+    public static boolean isGreedyMeshing() {
+        return greedyMeshing;
+    }
+    
+    /**
+     * Switches between greedy meshing and the per-block path for cube blocks. Only affects
+     * sections meshed after the call.
+     */
+    public static void setGreedyMeshing(boolean greedyMeshing) {
+        Chunk.greedyMeshing = greedyMeshing;
     }
     
     public void dirty() {
-        isDirty = true;
+        dirtySections.set(ALL_SECTIONS);
+    }
+    
+    /**
+     * Marks only one section for remeshing.
+     */
+    public void dirty(int section) {
+        if (section < 0 || section >= SECTION_COUNT) return;
+        dirtySections.getAndUpdate(mask -> mask | (1 << section));
     }
     
+    /**
+     * Marks several sections for remeshing at once, bit {@code n} of {@code sections} is section {@code n}.
+     */
+    public void dirtySections(int sections) {
+        sections &= ALL_SECTIONS;
+        if (sections == 0) return;
+        int mask = sections;
+        dirtySections.getAndUpdate(current -> current | mask);
+    }
+
     public void setBlock(Vector3i pos, int id, boolean generator) throws IllegalChunkAccessException {
         setBlock(pos.x, pos.y, pos.z, id, generator);
     }
@@ -336,13 +360,20 @@ public class Chunk extends ChunkData {
     }
     
     public boolean isDirty() {
-        return isDirty;
+        return dirtySections.get() != 0;
+    }
+    
+    /**
+     * @return {@code true} once {@link #cleanup()} was called. The chunk must not be meshed or drawn anymore.
+     */
+    public boolean isDisposed() {
+        return disposed;
     }
     
     public static Chunk of(ChunkData data, GridMap map, ShaderProgram program, TextureAtlas atlas, BlockRegistry registry) throws IllegalChunkAccessException {
         Chunk chunk = new Chunk(data.getPosition(), program, atlas, map, registry);
-        int[] sourceBlocks = data.getBlockIds();
-        System.arraycopy(sourceBlocks, 0, chunk.blocks, 0, chunk.blocks.length);
+        chunk.copyBlocks(data);
+        chunk.copyLights(data);
         
         chunk.dirty();
         return chunk;
@@ -350,8 +381,8 @@ public class Chunk extends ChunkData {
     
     public static Chunk of(ChunkData data, GridMap map, TextureAtlas atlas, BlockRegistry registry) throws IllegalChunkAccessException {
         Chunk chunk = new Chunk(data.getPosition(), atlas, map, registry);
-        int[] sourceBlocks = data.getBlockIds();
-        System.arraycopy(sourceBlocks, 0, chunk.blocks, 0, chunk.blocks.length);
+        chunk.copyBlocks(data);
+        chunk.copyLights(data);
         
         chunk.dirty();
         return chunk;
@@ -365,24 +396,24 @@ public class Chunk extends ChunkData {
     @Override
     public void setLightLevel(int x, int y, int z, int lightLevel) {
         super.setLightLevel(x, y, z, lightLevel);
-        dirty();
+        dirty(y >> 4);
     }
     
     @Override
     public void setRed(int x, int y, int z, int red) {
         super.setRed(x, y, z, red);
-        dirty();
+        dirty(y >> 4);
     }
     
     @Override
     public void setGreen(int x, int y, int z, int green) {
         super.setGreen(x, y, z, green);
-        dirty();
+        dirty(y >> 4);
     }
     
     @Override
     public void setBlue(int x, int y, int z, int blue) {
         super.setBlue(x, y, z, blue);
-        dirty();
+        dirty(y >> 4);
     }
 }
@@ -0,0 +1,228 @@
+package org.infinitytwo.nyctotile.core.renderer;
+
+import org.infinitytwo.nyctotile.core.Window;
+import org.infinitytwo.nyctotile.core.data.RGBA;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBuffer;
+import org.infinitytwo.nyctotile.core.data.buffer.NIntBufferPool;
+import org.infinitytwo.nyctotile.core.manager.ChunkManager;
+import org.infinitytwo.nyctotile.core.world.ChunkSnapshot;
+import org.joml.Matrix4f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Decides which dirty chunks get meshed and when their meshes reach the GPU.
+ * <br><br>
+ * Chunks are queued with {@link #schedule(Chunk)}, once per chunk no matter how often it was made
+ * dirty. Once per frame {@link #update(Camera, Window)} (main thread):
+ * <ol>
+ *     <li>uploads at most {@link #getMaxUploadsPerFrame()} finished sections,</li>
+ *     <li>hands the waiting chunks to the {@link ChunkManager} pool, visible chunks first, then
+ *     by distance to the camera. Only a few jobs are in flight at a time so the order is
+ *     decided with the newest camera position instead of being locked in the pool's queue.</li>
+ * </ol>
+ * Chunks that were disposed are dropped before they are meshed and before they are uploaded.
+ * A section that was made dirty again while it was being meshed is not uploaded, its newer mesh is on the way.
+ * A chunk is never meshed by two jobs at once, so its uploads stay in order.
+ */
+public final class ChunkMeshScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkMeshScheduler.class);
+    private static final int MAX_IN_FLIGHT = 6;
+
+    // Chunk -> System.nanoTime() of when it was queued
+    private static final Map<Chunk, Long> pending = new ConcurrentHashMap<>();
+    private static final Set<Chunk> inFlight = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentLinkedQueue<Upload> uploads = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger uploadsWaiting = new AtomicInteger();
+    private static volatile int maxUploadsPerFrame = 8;
+    // Meshes are built into these and go back once uploaded. Few sections need more than 64K ints.
+    static final NIntBufferPool staging = new NIntBufferPool(64, 1 << 16);
+
+    private static final FrustumCuller culler = new FrustumCuller(); // main thread only
+    private static final Matrix4f viewProjection = new Matrix4f();
+
+    private static final LongAdder scheduled = new LongAdder();
+    private static final LongAdder coalesced = new LongAdder();
+    private static final LongAdder built = new LongAdder();
+    private static final LongAdder uploaded = new LongAdder();
+    private static final LongAdder droppedDisposed = new LongAdder();
+    private static final LongAdder droppedStale = new LongAdder();
+    private static final LongAdder latencyTotal = new LongAdder();
+    private static final LongAdder latencyCount = new LongAdder();
+    private static final AtomicLong latencyMax = new AtomicLong();
+
+    private ChunkMeshScheduler() {}
+
+    /**
+     * Queues {@code chunk} for meshing. Does nothing if it is already queued.
+     */
+    public static void schedule(Chunk chunk) {
+        if (chunk.isDisposed()) return;
+        if (pending.putIfAbsent(chunk, System.nanoTime()) == null) scheduled.increment();
+        else coalesced.increment();
+    }
+
+    /**
+     * Uploads finished meshes and starts new mesh jobs. Call once per frame from the main thread.
+     */
+    public static void update(Camera camera, Window window) {
+        drainUploads();
+        if (pending.isEmpty() || inFlight.size() >= MAX_IN_FLIGHT) return;
+
+        Vector2i windowSize = window.getSize();
+        viewProjection.setPerspective((float) Math.toRadians(camera.getFov()), (float) windowSize.x / windowSize.y, 0.1f, 1024f)
+                .mul(camera.getViewMatrix());
+        culler.update(viewProjection);
+
+        Vector3f eye = camera.getPosition();
+        int eyeX = Math.floorDiv((int) Math.floor(eye.x), SIZE_X);
+        int eyeZ = Math.floorDiv((int) Math.floor(eye.z), SIZE_Z);
+
+        List<Candidate> candidates = new ArrayList<>(pending.size());
+        for (Map.Entry<Chunk, Long> entry : pending.entrySet()) {
+            Chunk chunk = entry.getKey();
+            if (chunk.isDisposed()) {
+                pending.remove(chunk);
+                droppedDisposed.increment();
+                continue;
+            }
+            if (inFlight.contains(chunk)) continue; // picked up again once its current job is done
+
+            Vector2i pos = chunk.getPosition();
+            int dx = pos.x - eyeX, dz = pos.y - eyeZ;
+            float minX = pos.x * SIZE_X, minZ = pos.y * SIZE_Z;
+            boolean visible = culler.isVisible(minX, 0, minZ, minX + SIZE_X, SIZE_Y, minZ + SIZE_Z);
+
+            // Everything visible goes before everything that is not, then the closest first
+            long priority = (visible ? 0 : 1L << 32) + (long) dx * dx + (long) dz * dz;
+            candidates.add(new Candidate(chunk, entry.getValue(), priority));
+        }
+        candidates.sort(Comparator.comparingLong(Candidate::priority));
+
+        for (Candidate candidate : candidates) {
+            if (inFlight.size() >= MAX_IN_FLIGHT) break;
+            if (pending.remove(candidate.chunk()) == null) continue;
+            submit(candidate.chunk(), candidate.queuedAt());
+        }
+    }
+
+    private static void submit(Chunk chunk, long queuedAt) {
+        inFlight.add(chunk);
+        ChunkManager.run(() -> {
+            try {
+                if (chunk.isDisposed()) {
+                    droppedDisposed.increment();
+                    return;
+                }
+                int dirty = chunk.takeDirtySections();
+                if (dirty == 0) return;
+
+                ChunkSnapshot snapshot = chunk.snapshot();
+                RGBA light = new RGBA();
+                for (int section = 0; section < SECTION_COUNT; section++) {
+                    if ((dirty & (1 << section)) == 0) continue;
+                    uploads.add(new Upload(chunk, section, chunk.buildSectionMesh(section, snapshot, light), queuedAt));
+                    uploadsWaiting.incrementAndGet();
+                }
+                built.increment();
+            } catch (RuntimeException e) {
+                logger.error("Failed to mesh chunk {}", chunk.getPosition(), e);
+            } finally {
+                inFlight.remove(chunk);
+            }
+        });
+    }
+
+    private static void drainUploads() {
+        for (int i = 0; i < maxUploadsPerFrame; i++) {
+            Upload upload = uploads.poll();
+            if (upload == null) return;
+            uploadsWaiting.decrementAndGet();
+
+            Chunk chunk = upload.chunk();
+            try {
+                if (chunk.isDisposed()) {
+                    droppedDisposed.increment();
+                } else if (chunk.isSectionDirty(upload.section())) {
+                    droppedStale.increment();
+                } else {
+                    if (upload.buffer() == null) chunk.clearMesh(upload.section());
+                    else chunk.uploadMesh(upload.section(), upload.buffer());
+
+                    long latency = System.nanoTime() - upload.queuedAt();
+                    uploaded.increment();
+                    latencyTotal.add(latency);
+                    latencyCount.increment();
+                    latencyMax.accumulateAndGet(latency, Math::max);
+                }
+            } finally {
+                if (upload.buffer() != null) staging.release(upload.buffer());
+            }
+        }
+    }
+
+    public static int getMaxUploadsPerFrame() {
+        return maxUploadsPerFrame;
+    }
+
+    /**
+     * How many sections may be uploaded per frame. Lower values smooth out frame times when many
+     * chunks arrive at once, higher values fill the world in faster.
+     */
+    public static void setMaxUploadsPerFrame(int maxUploadsPerFrame) {
+        if (maxUploadsPerFrame < 1) throw new IllegalArgumentException("At least one upload per frame is needed");
+        ChunkMeshScheduler.maxUploadsPerFrame = maxUploadsPerFrame;
+    }
+
+    public static Stats getStats() {
+        long count = latencyCount.sum();
+        return new Stats(
+                pending.size(), inFlight.size(), uploadsWaiting.get(),
+                scheduled.sum(), coalesced.sum(), built.sum(), uploaded.sum(),
+                droppedDisposed.sum(), droppedStale.sum(),
+                count == 0 ? 0 : latencyTotal.sum() / count / 1e6,
+                latencyMax.get() / 1e6
+        );
+    }
+
+    /**
+     * Resets the counters and latencies of {@link #getStats()}, the queues are left alone.
+     */
+    public static void resetStats() {
+        for (LongAdder adder : new LongAdder[] {scheduled, coalesced, built, uploaded, droppedDisposed, droppedStale, latencyTotal, latencyCount}) {
+            adder.reset();
+        }
+        latencyMax.set(0);
+    }
+
+    /**
+     * @param pending        Chunks waiting for a mesh job
+     * @param inFlight       Chunks being meshed right now
+     * @param uploadsWaiting Meshed sections waiting for the main thread
+     * @param coalesced      {@link #schedule} calls for chunks that were already queued
+     * @param latencyAverageMillis Time from {@link #schedule} to the upload, per uploaded section
+     */
+    public record Stats(int pending, int inFlight, int uploadsWaiting,
+                        long scheduled, long coalesced, long built, long uploaded,
+                        long droppedDisposed, long droppedStale,
+                        double latencyAverageMillis, double latencyMaxMillis) {}
+
+    private record Candidate(Chunk chunk, long queuedAt, long priority) {}
+
+    private record Upload(Chunk chunk, int section, NIntBuffer buffer, long queuedAt) {}
+}
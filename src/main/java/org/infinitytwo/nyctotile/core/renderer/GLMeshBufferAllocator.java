@@ -0,0 +1,48 @@
+package org.infinitytwo.nyctotile.core.renderer;
+
+import org.infinitytwo.nyctotile.core.model.builder.CompactVertex;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Mesh buffers on the GPU. Main thread only, like every GL call.
+ */
+public class GLMeshBufferAllocator implements MeshBufferAllocator {
+    @Override
+    public MeshBuffer create() {
+        MeshBuffer buffer = new MeshBuffer(glGenVertexArrays(), glGenBuffers());
+        glBindVertexArray(buffer.getVao());
+        glBindBuffer(GL_ARRAY_BUFFER, buffer.getVbo());
+        // The VAO remembers the VBO, so the layout is set once however often the data changes.
+        // The I variant keeps the ints as ints, glVertexAttribPointer would convert them to floats
+        glVertexAttribIPointer(0, 2, GL_UNSIGNED_INT, CompactVertex.BYTES_PER_VERTEX, 0);
+        glEnableVertexAttribArray(0);
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        return buffer;
+    }
+
+    @Override
+    public void allocate(MeshBuffer buffer, IntBuffer data) {
+        glBindBuffer(GL_ARRAY_BUFFER, buffer.getVbo());
+        glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void update(MeshBuffer buffer, IntBuffer data) {
+        glBindBuffer(GL_ARRAY_BUFFER, buffer.getVbo());
+        glBufferSubData(GL_ARRAY_BUFFER, 0, data);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void delete(MeshBuffer buffer) {
+        glDeleteBuffers(buffer.getVbo());
+        glDeleteVertexArrays(buffer.getVao());
+    }
+}
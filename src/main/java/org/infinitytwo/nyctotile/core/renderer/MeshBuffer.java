@@ -0,0 +1,31 @@
+package org.infinitytwo.nyctotile.core.renderer;
+
+/**
+ * A VAO and the VBO bound to it, handed out by a {@link MeshBufferPool}. The capacity is how many ints the
+ * VBO holds on the GPU, a mesh that fits is uploaded without reallocating.
+ */
+public final class MeshBuffer {
+    private final int vao;
+    private final int vbo;
+    int capacity; // Kept by the pool
+
+    public MeshBuffer(int vao, int vbo) {
+        this.vao = vao;
+        this.vbo = vbo;
+    }
+
+    public int getVao() {
+        return vao;
+    }
+
+    public int getVbo() {
+        return vbo;
+    }
+
+    /**
+     * @return How many ints the VBO holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
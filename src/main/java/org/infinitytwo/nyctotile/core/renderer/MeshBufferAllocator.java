@@ -0,0 +1,26 @@
+package org.infinitytwo.nyctotile.core.renderer;
+
+import java.nio.IntBuffer;
+
+/**
+ * Where a {@link MeshBufferPool} gets its buffers from. {@link GLMeshBufferAllocator} is the OpenGL one,
+ * another one lets the pool and the chunks run without a GL context.
+ */
+public interface MeshBufferAllocator {
+    /**
+     * @return A new empty VAO and VBO, with the vertex layout of the chunk meshes
+     */
+    MeshBuffer create();
+
+    /**
+     * Replaces the storage of the VBO with {@code data}, from its position to its limit.
+     */
+    void allocate(MeshBuffer buffer, IntBuffer data);
+
+    /**
+     * Writes {@code data} at the start of the VBO, which is large enough for it.
+     */
+    void update(MeshBuffer buffer, IntBuffer data);
+
+    void delete(MeshBuffer buffer);
+}
@@ -0,0 +1,128 @@
+package org.infinitytwo.nyctotile.core.renderer;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recycles the VAO/VBO pairs of chunk sections. A section that loses its mesh, or a chunk that is unloaded,
+ * gives its buffers back instead of deleting them, and the next section that needs a mesh takes the smallest
+ * one its mesh fits in, so a chunk coming into view mostly reuses the GPU memory of one that left.
+ * Up to {@code maxIdle} buffers are kept, the ones beyond are deleted.
+ * <br><br>
+ * Main thread only. The buffers come from a {@link MeshBufferAllocator}, the main pool from {@link GLMeshBufferAllocator}.
+ */
+public class MeshBufferPool {
+    public static final int DEFAULT_MAX_IDLE = 512;
+    private static MeshBufferPool main;
+
+    private final MeshBufferAllocator allocator;
+    private final List<MeshBuffer> idle = new ArrayList<>();
+    private int maxIdle;
+    private int inUse;
+    private long created, reused, reallocated, deleted;
+
+    public MeshBufferPool(MeshBufferAllocator allocator, int maxIdle) {
+        this.allocator = allocator;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return The pool the chunks use, on the GPU unless {@link #setMain} was called before
+     */
+    public static MeshBufferPool getMain() {
+        if (main == null) main = new MeshBufferPool(new GLMeshBufferAllocator(), DEFAULT_MAX_IDLE);
+        return main;
+    }
+
+    public static void setMain(MeshBufferPool pool) {
+        main = pool;
+    }
+
+    /**
+     * @param ints the size of the mesh that goes into it
+     * @return An idle buffer, the smallest that fits if any does, or a new one
+     */
+    public MeshBuffer acquire(int ints) {
+        inUse++;
+        int best = -1;
+        for (int i = 0; i < idle.size(); i++) {
+            int capacity = idle.get(i).capacity;
+            if (best == -1) {
+                best = i;
+                continue;
+            }
+            int current = idle.get(best).capacity;
+            // The smallest that fits, or the largest if none does
+            if (capacity >= ints ? current < ints || capacity < current : current < ints && capacity > current) best = i;
+        }
+        if (best == -1) {
+            created++;
+            return allocator.create();
+        }
+        reused++;
+        // Order does not matter, the last one fills the gap
+        MeshBuffer last = idle.remove(idle.size() - 1);
+        if (best == idle.size()) return last;
+        return idle.set(best, last);
+    }
+
+    /**
+     * Uploads a mesh, reallocating only if it does not fit.
+     */
+    public void upload(MeshBuffer buffer, IntBuffer data) {
+        int ints = data.remaining();
+        if (ints > buffer.capacity) {
+            allocator.allocate(buffer, data);
+            buffer.capacity = ints;
+            reallocated++;
+        } else {
+            allocator.update(buffer, data);
+        }
+    }
+
+    public void release(MeshBuffer buffer) {
+        inUse--;
+        if (idle.size() < maxIdle) {
+            idle.add(buffer);
+        } else {
+            allocator.delete(buffer);
+            deleted++;
+        }
+    }
+
+    /**
+     * Deletes the idle buffers, when leaving a world.
+     */
+    public void clear() {
+        for (MeshBuffer buffer : idle) allocator.delete(buffer);
+        deleted += idle.size();
+        idle.clear();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+        while (idle.size() > maxIdle) {
+            allocator.delete(idle.remove(idle.size() - 1));
+            deleted++;
+        }
+    }
+
+    public Stats getStats() {
+        long idleInts = 0;
+        for (MeshBuffer buffer : idle) idleInts += buffer.capacity;
+        return new Stats(inUse, idle.size(), idleInts, created, reused, reallocated, deleted);
+    }
+
+    /**
+     * @param inUse       Buffers holding a mesh
+     * @param idleInts    GPU memory of the idle buffers, in ints
+     * @param reused      Buffers handed out again instead of created
+     * @param reallocated Uploads that did not fit and replaced the storage of the VBO
+     */
+    public record Stats(int inUse, int idle, long idleInts, long created, long reused, long reallocated, long deleted) {}
+}
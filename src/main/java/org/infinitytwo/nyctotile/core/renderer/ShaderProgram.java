@@ -58,6 +58,10 @@ public class ShaderProgram {
         glUniform1i(glGetUniformLocation(programId, name), value);
     }
 
+    public void setUniform2f(String name, float x, float y) {
+        glUniform2f(glGetUniformLocation(programId, name), x, y);
+    }
+
     public void setUniform4f(String name, float r, float g, float b, float a) {
         glUniform4f(glGetUniformLocation(programId, name), r, g, b, a);
     }
@@ -0,0 +1,13 @@
+package org.infinitytwo.nyctotile.core.world;
+
+/**
+ * The minimal read-only view of the world that the model builders need for face culling.
+ * {@link GMap} implements it, so a map can be passed wherever a builder expects one.
+ */
+public interface BlockAccess {
+    /**
+     * @return {@code true} if the block at the world position does not hide the faces next to it
+     * (air, invisible blocks, or positions outside the world).
+     */
+    boolean isTransparent(int x, int y, int z);
+}
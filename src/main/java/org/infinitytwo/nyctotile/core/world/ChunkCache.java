@@ -0,0 +1,354 @@
+package org.infinitytwo.nyctotile.core.world;
+
+import org.infinitytwo.nyctotile.core.data.io.WorldData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the chunks of a {@link ServerGridMap} within a memory budget.
+ * <br><br>
+ * Chunks within the view distance of a viewer are referenced and stay loaded. The others are unloaded by a clock
+ * sweep once the loaded chunks take more than the budget: a lookup through {@link ServerGridMap#getChunk} marks
+ * a chunk as used, the sweep clears the mark and unloads the chunks it finds unmarked, so a chunk goes once it
+ * was not looked up for a whole turn of the clock (close to least recently used, without a list to keep in order).
+ * <br><br>
+ * Unloaded chunks are saved into the region files through {@link WorldData}, unless no block changed since they
+ * were loaded or last saved, and are loaded again by {@link ServerGridMap#loadChunk}, like the chunks an earlier
+ * run saved there, which are only read once they are asked for. The light is not saved,
+ * a chunk gets its sky light back when it is loaded, like {@link WorldData#load} does. Once a chunk is unloaded
+ * and out of range of every viewer the cache forgets it, the region files know it is there, so the cache grows
+ * with the loaded chunks and not with the explored area.
+ */
+public class ChunkCache {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
+
+    private final ServerGridMap map;
+    private final Path directory;
+    private final int viewDistance;
+    private volatile long budget;
+
+    private final ConcurrentHashMap<ChunkPos, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Object, ChunkPos> viewers = new HashMap<>(); // Guarded by itself
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong residentChunks = new AtomicLong();
+    private Iterator<Entry> hand = Collections.emptyIterator(); // Guarded by this
+    private ScheduledExecutorService sweeper;
+
+    private final long created = System.nanoTime();
+    private final LongAdder hits = new LongAdder(), loads = new LongAdder(), misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder(), saves = new LongAdder();
+
+    /**
+     * @param directory the region directory unloaded chunks are saved into, see {@link WorldData#getLevelPath}
+     * @param budget how many bytes the loaded chunks may take, by {@link ChunkData#estimateMemory()}
+     * @param viewDistance how many chunks around a viewer stay loaded
+     */
+    public ChunkCache(ServerGridMap map, Path directory, long budget, int viewDistance) {
+        this.map = map;
+        this.directory = directory;
+        this.budget = budget;
+        this.viewDistance = viewDistance;
+        for (ChunkData chunk : map.getChunks()) loaded(chunk, false);
+    }
+
+    /**
+     * Sweeps every {@code periodMillis} on a thread of its own.
+     */
+    public synchronized ChunkCache start(long periodMillis) {
+        if (sweeper != null) return this;
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "chunk-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                trim();
+            } catch (Throwable e) {
+                logger.error("Failed to unload chunks", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (sweeper != null) sweeper.shutdown();
+        sweeper = null;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Sets where the viewers are, a viewer missing from {@code positions} is gone. Only the differences from the
+     * last call change the references.
+     */
+    public void updateViewers(Map<?, ChunkPos> positions) {
+        synchronized (viewers) {
+            Iterator<Map.Entry<Object, ChunkPos>> iterator = viewers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Object, ChunkPos> viewer = iterator.next();
+                ChunkPos now = positions.get(viewer.getKey());
+                if (viewer.getValue().equals(now)) continue;
+                reference(viewer.getValue(), -1);
+                iterator.remove();
+            }
+            for (Map.Entry<?, ChunkPos> viewer : positions.entrySet()) {
+                if (viewers.containsKey(viewer.getKey())) continue;
+                reference(viewer.getValue(), 1);
+                viewers.put(viewer.getKey(), viewer.getValue());
+            }
+        }
+    }
+
+    private void reference(ChunkPos center, int delta) {
+        for (int dx = -viewDistance; dx <= viewDistance; dx++) {
+            for (int dz = -viewDistance; dz <= viewDistance; dz++) {
+                Entry entry = entry(new ChunkPos(center.x() + dx, center.z() + dz));
+                entry.references += delta;
+                if (entry.references == 0 && entry.chunk == null) forget(entry);
+            }
+        }
+    }
+
+    private Entry entry(ChunkPos pos) {
+        return entries.computeIfAbsent(pos, Entry::new);
+    }
+
+    // --- Called by the map ---
+
+    /**
+     * A chunk was put into the map.
+     * @param saved whether the chunk is the same as its copy in the region files
+     */
+    void loaded(ChunkData chunk, boolean saved) {
+        ChunkPos pos = new ChunkPos(chunk.getPosition().x, chunk.getPosition().y);
+        while (true) {
+            Entry entry = entry(pos);
+            synchronized (entry) {
+                if (entry.forgotten) continue; // Forgotten while this waited, the map has a new one
+                if (entry.chunk == chunk) return;
+                long bytes = chunk.estimateMemory();
+                residentBytes.addAndGet(bytes - entry.bytes);
+                if (entry.chunk == null) residentChunks.incrementAndGet();
+                entry.chunk = chunk;
+                entry.bytes = bytes;
+                entry.used = true;
+                entry.savedVersion = saved ? chunk.getBlockVersion() : chunk.getBlockVersion() - 1;
+                entry.onDisk = false;
+                return;
+            }
+        }
+    }
+
+    void touch(ChunkPos pos) {
+        Entry entry = entries.get(pos);
+        if (entry != null && !entry.used) entry.used = true;
+    }
+
+    /**
+     * @return Whether the chunk is not loaded but can be loaded from the region files, because it was unloaded or
+     * saved by an earlier run
+     */
+    boolean isUnloaded(ChunkPos pos) throws IOException {
+        Entry entry = entries.get(pos);
+        if (entry != null && (entry.onDisk || entry.chunk != null)) return entry.onDisk;
+        return WorldData.hasChunk(directory, pos);
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    /**
+     * Loads a chunk from the region files into the map. Concurrent loads of one chunk read it once.
+     * @return The chunk in the map, {@code null} if it is in neither
+     */
+    ChunkData load(ChunkPos pos) throws IOException {
+        while (true) {
+            Entry entry = entry(pos);
+            synchronized (entry) {
+                if (entry.forgotten) continue;
+                if (entry.chunk != null) return entry.chunk;
+
+                ChunkData chunk = WorldData.loadChunk(directory, pos);
+                if (chunk != null) {
+                    LightingEngine.lightSky(chunk, map.getBlockRegistry());
+                    map.chunks.put(pos, chunk);
+                    loaded(chunk, true);
+                    loads.increment();
+                    map.lightingEngine.chunkAdded(pos.x(), pos.z());
+                    return chunk;
+                }
+                if (entry.onDisk) logger.warn("Chunk {} was unloaded but is missing from {}", pos, directory);
+                entry.onDisk = false;
+            }
+            forget(entry);
+            return null;
+        }
+    }
+
+    // Drops the entry of a chunk that is neither loaded nor in range of a viewer. Under the viewers lock, so a
+    // reference never goes to an entry that is gone.
+    private void forget(Entry entry) {
+        synchronized (viewers) {
+            synchronized (entry) {
+                if (entry.chunk != null || entry.references > 0) return;
+                entry.forgotten = true;
+                entries.remove(entry.pos, entry);
+            }
+        }
+    }
+
+    // --- Unloading ---
+
+    /**
+     * Unloads unreferenced chunks, least recently used first, until the loaded ones fit in the budget.
+     * The changed ones among them are saved in one go first.
+     * @return How many chunks were unloaded
+     */
+    public synchronized int trim() throws IOException {
+        long excess = residentBytes.get() - budget;
+        if (excess <= 0) return 0;
+
+        List<Entry> victims = new ArrayList<>();
+        List<ChunkData> changed = new ArrayList<>();
+        int[] versions = new int[16];
+        long freed = 0;
+        // Two turns at most, the first one may only clear the marks
+        for (long steps = 2L * entries.size(); steps > 0 && freed < excess; steps--) {
+            if (!hand.hasNext()) {
+                hand = entries.values().iterator();
+                if (!hand.hasNext()) break;
+            }
+            Entry entry = hand.next();
+            ChunkData chunk = entry.chunk;
+            if (chunk == null || entry.references > 0) continue;
+            if (entry.used) {
+                entry.used = false;
+                continue;
+            }
+
+            if (victims.size() == versions.length) versions = Arrays.copyOf(versions, versions.length * 2);
+            versions[victims.size()] = chunk.getBlockVersion();
+            if (versions[victims.size()] != entry.savedVersion) changed.add(chunk);
+            victims.add(entry);
+            freed += entry.bytes;
+        }
+        if (victims.isEmpty()) return 0;
+
+        if (!changed.isEmpty()) {
+            WorldData.saveChunks(directory, changed);
+            saves.add(changed.size());
+        }
+
+        int unloaded = 0;
+        for (int i = 0; i < victims.size(); i++) {
+            Entry entry = victims.get(i);
+            synchronized (entry) {
+                ChunkData chunk = entry.chunk;
+                // Looked up, referenced or changed since it was picked: it stays, what was saved is still newer
+                if (chunk == null || entry.used || entry.references > 0 || chunk.getBlockVersion() != versions[i]) {
+                    if (chunk != null && chunk.getBlockVersion() == versions[i]) entry.savedVersion = versions[i];
+                    continue;
+                }
+                entry.onDisk = true; // Before the chunk leaves the map, so it is always in one of them
+                map.chunks.remove(entry.pos, chunk);
+                entry.chunk = null;
+                residentBytes.addAndGet(-entry.bytes);
+                residentChunks.decrementAndGet();
+                entry.bytes = 0;
+                unloaded++;
+            }
+            forget(entry);
+        }
+        evictions.add(unloaded);
+        return unloaded;
+    }
+
+    // --- Metrics ---
+
+    public long getResidentChunks() {
+        return residentChunks.get();
+    }
+
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * @return How many chunks the cache keeps track of: the loaded ones and the ones in range of a viewer
+     */
+    public int getTrackedChunks() {
+        return entries.size();
+    }
+
+    /**
+     * @return How many chunks were saved because they changed before they were unloaded
+     */
+    public long getSavedChunks() {
+        return saves.sum();
+    }
+
+    /**
+     * @return The share of chunk requests that found the chunk loaded, of those that found it at all
+     */
+    public double getHitRate() {
+        long hits = this.hits.sum(), total = hits + loads.sum();
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    /**
+     * @return Chunks unloaded per second since the cache was made
+     */
+    public double getEvictionRate() {
+        return evictions.sum() / ((System.nanoTime() - created) / 1e9);
+    }
+
+    public String getStatus() {
+        return String.format("Chunk cache: %d chunks loaded, %d/%d MiB, hit rate %.1f%% (%d hits, %d loaded from disk, %d generated), "
+                        + "%d unloaded (%.2f/s), %d saved",
+                getResidentChunks(), getResidentBytes() >> 20, budget >> 20, getHitRate() * 100, hits.sum(), loads.sum(), misses.sum(),
+                evictions.sum(), getEvictionRate(), getSavedChunks());
+    }
+
+    private static final class Entry {
+        final ChunkPos pos;
+        // The loaded chunk, null while it is not. Guarded by the entry.
+        volatile ChunkData chunk;
+        volatile boolean onDisk;
+        volatile boolean used;
+        // Viewers in range, guarded by the viewers map
+        volatile int references;
+        // Out of the map, a new entry stands for the chunk. Guarded by the entry.
+        boolean forgotten;
+        int savedVersion;
+        long bytes;
+
+        Entry(ChunkPos pos) {
+            this.pos = pos;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.infinitytwo.nyctotile.core.world;
+
+import org.infinitytwo.nyctotile.core.data.BlockType;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.data.world.PalettedStorage;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+
+import java.util.Arrays;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * A padded copy of a chunk's block ids for meshing: the 16x128x16 chunk plus a one block border
+ * taken from the neighbouring chunks (and air below and above the world), 18x130x18 in total.
+ * <br><br>
+ * It is filled once per rebuild, after which every face culling test is a plain array read
+ * instead of a {@link GMap#getBlock} (chunk lookup, a few allocations and the synchronized light
+ * getters) per neighbour. Local coordinates go from {@code -1} to {@code 16} (x/z) and
+ * {@code -1} to {@code 128} (y).
+ * <br><br>
+ * Instances are not thread safe but can be refilled, so keep one per meshing thread.
+ */
+public final class ChunkSnapshot implements BlockAccess {
+    public static final int PADDED_SIZE = SIZE + 2;
+    public static final int PADDED_SIZE_Y = SIZE_Y + 2;
+    public static final int PADDED_VOLUME = PADDED_SIZE * PADDED_SIZE_Y * PADDED_SIZE;
+
+    private static final byte UNKNOWN = 0, TRANSPARENT = 1, OPAQUE = 2;
+
+    private final int[] ids = new int[PADDED_VOLUME];
+    private final boolean[] transparent = new boolean[PADDED_VOLUME];
+    private final int[] section = new int[SECTION_VOLUME];
+    private byte[] typeCache = new byte[16];
+    private int originX, originZ;
+
+    public static ChunkSnapshot capture(ChunkData chunk, GMap world, BlockRegistry registry) {
+        ChunkSnapshot snapshot = new ChunkSnapshot();
+        snapshot.fill(chunk, world, registry);
+        return snapshot;
+    }
+
+    /**
+     * Copies {@code chunk} and the border of its loaded neighbours. Missing neighbours are treated as air,
+     * the same way the mesher did before (they rebuild this chunk when they arrive).
+     */
+    public void fill(ChunkData chunk, GMap world, BlockRegistry registry) {
+        Arrays.fill(ids, 0);
+        Arrays.fill(typeCache, UNKNOWN);
+
+        int chunkX = chunk.getPosition().x, chunkZ = chunk.getPosition().y;
+        originX = chunkX * SIZE;
+        originZ = chunkZ * SIZE;
+
+        // The chunk itself, a section at a time
+        for (int s = 0; s < SECTION_COUNT; s++) {
+            PalettedStorage storage = chunk.getSection(s);
+            if (storage == null) continue;
+            storage.toArray(section);
+
+            int baseY = s * SECTION_SIZE;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SECTION_SIZE; y++) {
+                    System.arraycopy(section, (x * SECTION_SIZE + y) * SIZE, ids, index(x, baseY + y, 0), SIZE);
+                }
+            }
+        }
+
+        // The one block border from the 8 neighbours
+        if (world != null) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx == 0 && dz == 0) continue;
+                    ChunkData neighbour = world.getChunk(new ChunkPos(chunkX + dx, chunkZ + dz));
+                    if (neighbour != null) copyBorder(neighbour, dx, dz);
+                }
+            }
+        }
+
+        for (int i = 0; i < PADDED_VOLUME; i++) {
+            transparent[i] = isTransparentId(ids[i], registry);
+        }
+    }
+
+    private void copyBorder(ChunkData neighbour, int dx, int dz) {
+        // Local range inside this snapshot, and where it starts in the neighbour
+        int fromX = dx < 0 ? -1 : dx > 0 ? SIZE : 0, toX = dx == 0 ? SIZE - 1 : fromX;
+        int fromZ = dz < 0 ? -1 : dz > 0 ? SIZE : 0, toZ = dz == 0 ? SIZE - 1 : fromZ;
+
+        for (int x = fromX; x <= toX; x++) {
+            int nx = Math.floorMod(x, SIZE);
+            for (int z = fromZ; z <= toZ; z++) {
+                int nz = Math.floorMod(z, SIZE);
+                for (int s = 0; s < SECTION_COUNT; s++) {
+                    if (neighbour.isSectionEmpty(s)) continue;
+                    int baseY = s * SECTION_SIZE;
+                    for (int y = baseY; y < baseY + SECTION_SIZE; y++) {
+                        ids[index(x, y, z)] = neighbour.getBlockId(nx, y, nz);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isTransparentId(int id, BlockRegistry registry) {
+        if (id == 0) return true;
+        if (id >= typeCache.length) typeCache = Arrays.copyOf(typeCache, Math.max(id + 1, typeCache.length * 2));
+
+        byte cached = typeCache[id];
+        if (cached == UNKNOWN) {
+            BlockType type = registry.get(id);
+            cached = type == null || type.isTransparent() ? TRANSPARENT : OPAQUE;
+            typeCache[id] = cached;
+        }
+        return cached == TRANSPARENT;
+    }
+
+    /**
+     * @param x Local x, {@code -1} to {@code 16}
+     * @param y Chunk y, {@code -1} to {@code 128}
+     * @param z Local z, {@code -1} to {@code 16}
+     */
+    public int getBlockId(int x, int y, int z) {
+        return ids[index(x, y, z)];
+    }
+
+    public boolean isTransparentLocal(int x, int y, int z) {
+        return transparent[index(x, y, z)];
+    }
+
+    /**
+     * World coordinate lookup, so the snapshot can be handed to {@link BlockType#buildModel}.
+     * Anything outside the padded area counts as transparent.
+     */
+    @Override
+    public boolean isTransparent(int x, int y, int z) {
+        int lx = x - originX, lz = z - originZ;
+        if (lx < -1 || lx > SIZE || lz < -1 || lz > SIZE || y < -1 || y > SIZE_Y) return true;
+        return transparent[index(lx, y, lz)];
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((x + 1) * PADDED_SIZE_Y + (y + 1)) * PADDED_SIZE + (z + 1);
+    }
+}
@@ -19,7 +19,7 @@ import java.util.List;
 
 import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
 
-public abstract class GMap {
+public abstract class GMap implements BlockAccess {
     protected LightingEngine lightingEngine = new LightingEngine(this);
     
     public static Vector2i convertToChunkPosition(Vector3i block) {
@@ -63,7 +63,7 @@ public abstract class GMap {
     }
     
     public static Vector3i convertToWorldPosition(Vector2i position, int x, int y, int z) {
-        return convertToWorldPosition(x,y,z,position.x,y,position.y);
+        return convertToWorldPosition(x,y,z,position.x,0,position.y);
     }
     
     public static Vector3i convertToLocalChunk(Vector3i blockPos) {
@@ -82,14 +82,8 @@ public abstract class GMap {
     public int getTopBlockPosition(int x, int z) {
         ChunkData chunk = getChunk(worldToChunkPos(x,z));
         
-        if (chunk != null) {
-            for (int y = 0; y < ChunkData.SIZE_Y; y++) {
-                if (chunk.getBlockId(x, y, z) > 0) {
-                    return y;
-                }
-            }
-        }
-        return 0;
+        if (chunk == null) return 0;
+        return Math.max(0, chunk.getHeight(Math.floorMod(x, SIZE_X), Math.floorMod(z, SIZE_Z)) - 1);
     }
     
     public Block getBlock(int x, int y, int z) throws IllegalChunkAccessException {
@@ -112,7 +106,11 @@ public abstract class GMap {
         
         if (chunk == null) throw new IllegalChunkAccessException("Cannot access a non-existing chunk.");
         Vector3i pos = convertToLocalChunk(x, y, z);
+        int old = chunk.getBlockId(pos);
         chunk.setBlock(pos,0);
+        
+        if (old > 0 && getBlockRegistry().get(old).getLightSource().level() > 0) lightingEngine.removeLight(x, y, z);
+        lightingEngine.blockChanged(x, y, z);
     }
     
     public void setBlock(Block block) throws IllegalChunkAccessException {
@@ -123,8 +121,15 @@ public abstract class GMap {
         Vector3i localChunk = convertToLocalChunk(pos);
         chunk.setBlock(localChunk,getBlockRegistry().getId(block.getId()));
         
+        lightingEngine.blockChanged(pos.x, pos.y, pos.z);
         if (block.getType().getLightSource().level() > 0) lightingEngine.addLightSource(block.getPosition(),block.getLight());
-        lightingEngine.update();
+    }
+    
+    /**
+     * Block changes made through this map queue their relighting here. It is applied by {@link LightingEngine#update()}.
+     */
+    public LightingEngine getLightingEngine() {
+        return lightingEngine;
     }
     
     public Object getData(Vector3i pos, BlockDataReader reader, String name) throws IllegalChunkAccessException, IllegalDataTypeException, NullPointerException {
@@ -301,6 +306,7 @@ public abstract class GMap {
         return getChunk(worldToChunkPos(x,z)) != null;
     }
     
+    @Override
     public boolean isTransparent(int x, int y, int z) {
         Block block = getBlock(x, y, z);
         if (block == null) return true;
@@ -312,7 +318,7 @@ public abstract class GMap {
         for (int dx = -radius; dx <= radius; dx++) {
             for (int dz = -radius; dz <= radius; dz++) {
                 ChunkPos p = new ChunkPos(x + dx, z + dz);
-                if (getChunk(p) != null) result.add(p);
+                if (getChunk(p) == null) result.add(p);
             }
         }
         return result;
@@ -3,7 +3,6 @@ package org.infinitytwo.nyctotile.core.world;
 import org.infinitytwo.nyctotile.core.Window;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
 import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
-import org.infinitytwo.nyctotile.core.manager.World;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
 import org.infinitytwo.nyctotile.core.renderer.Camera;
 import org.infinitytwo.nyctotile.core.renderer.Chunk;
@@ -39,17 +38,11 @@ public class GridMap extends GMap {
     public void addChunk(Chunk chunk) {
         ChunkPos pos = new ChunkPos(chunk.getPosition().x, chunk.getPosition().y);
         chunks.put(pos, chunk);
+        lightingEngine.chunkAdded(pos.x(), pos.z());
         
         for (ChunkPos neighbour : getSurroundingChunks(pos, 1)) {
             if (chunks.containsKey(neighbour)) chunks.get(neighbour).rebuild();
         }
-        
-        for (int x = 0; x < SIZE_X; x++) {
-            for (int z = 0; z < SIZE_Z; z++) {
-                int y = getTopBlockPosition(x, z);
-                chunk.setLight(x, y, z, World.getAmbience());
-            }
-        }
     }
     
     public void rebuildChunk(int x, int z) {
@@ -60,6 +53,11 @@ public class GridMap extends GMap {
         }
     }
     
+    public void rebuildChunk(int x, int z, int section) {
+        Chunk chunk = chunks.get(new ChunkPos(x, z));
+        if (chunk != null) chunk.dirty(section);
+    }
+    
     public void draw(Camera camera, Window window, int view) {
         Vector2i chunkP = convertToChunkPosition((int) camera.getPosition().x, (int) camera.getPosition().z);
         ChunkPos pos = new ChunkPos(chunkP.x, chunkP.y);
@@ -73,6 +71,37 @@ public class GridMap extends GMap {
         }
     }
     
+    /**
+     * Unloads the chunks more than {@code radius} chunks away from {@code center} on either axis, their GPU buffers
+     * go back to the {@link org.infinitytwo.nyctotile.core.renderer.MeshBufferPool}. Chunks should be loaded in a
+     * smaller radius than this, so walking back and forth over a chunk border does not unload and request the same
+     * chunks over and over. Main thread only.
+     * @return The positions of the unloaded chunks
+     */
+    public List<ChunkPos> unloadChunksOutside(ChunkPos center, int radius) {
+        List<ChunkPos> unloaded = new ArrayList<>();
+        for (Map.Entry<ChunkPos, Chunk> entry : chunks.entrySet()) {
+            ChunkPos pos = entry.getKey();
+            if (Math.abs(pos.x() - center.x()) <= radius && Math.abs(pos.z() - center.z()) <= radius) continue;
+            if (!chunks.remove(pos, entry.getValue())) continue;
+            entry.getValue().cleanup();
+            unloaded.add(pos);
+        }
+        return unloaded;
+    }
+    
+    /**
+     * Unloads every chunk. Main thread only.
+     */
+    public void clear() {
+        for (Chunk chunk : chunks.values()) chunk.cleanup();
+        chunks.clear();
+    }
+    
+    public int getChunkCount() {
+        return chunks.size();
+    }
+    
     public List<ChunkPos> getMissingSurroundingChunks(ChunkPos center, int radius) {
         return getMissingSurroundingChunks(center.x(), center.z(), radius);
     }
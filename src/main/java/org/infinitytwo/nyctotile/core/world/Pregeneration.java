@@ -0,0 +1,244 @@
+package org.infinitytwo.nyctotile.core.world;
+
+import org.infinitytwo.nyctotile.core.data.io.WorldData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.world.dimension.Dimension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a rectangle of chunks ahead of time, in a spiral from its center outwards, so the chunks players
+ * reach first are done first. The job runs on its own thread and only queues chunks, the generation pool of
+ * the world generates them on all its threads; the queue of the {@link org.infinitytwo.nyctotile.core.world.generation.GenerationPipeline}
+ * holds the job back while it is full.
+ * <br><br>
+ * With a world name the chunks are saved through {@link WorldData} every {@link #SAVE_INTERVAL} nanoseconds,
+ * followed by how far along the spiral everything is done. A new job over the same rectangle of the same world
+ * starts from there after a restart. Chunks that are already generated are skipped either way.
+ * <br><br>
+ * Logs the progress, chunks per second, time left and memory every {@link #REPORT_INTERVAL} nanoseconds.
+ */
+public class Pregeneration {
+    public static final long REPORT_INTERVAL = 5_000_000_000L;
+    public static final long SAVE_INTERVAL = 30_000_000_000L;
+    private static final String PROGRESS_FILE = "pregeneration.dat";
+    private static final Logger logger = LoggerFactory.getLogger(Pregeneration.class);
+
+    private final Dimension dimension;
+    private final String worldName;
+    private final int minX, minZ, maxX, maxZ;
+    private final int centerX, centerZ;
+    private final int total;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Thread thread;
+
+    private volatile boolean stopped;
+    private volatile int done; // Chunks at the start of the spiral that are all finished
+    private final AtomicInteger generated = new AtomicInteger();
+    private volatile long startTime;
+    private int resumed;
+
+    /**
+     * @param worldName the world to save into, {@code null} to keep the chunks in memory only
+     * @param maxX exclusive, like {@code maxZ}
+     */
+    public Pregeneration(Dimension dimension, String worldName, int minX, int minZ, int maxX, int maxZ) {
+        if (maxX <= minX || maxZ <= minZ) throw new IllegalArgumentException("Empty area " + minX + ", " + minZ + " to " + maxX + ", " + maxZ);
+        this.dimension = dimension;
+        this.worldName = worldName;
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+        this.centerX = Math.floorDiv(minX + maxX - 1, 2);
+        this.centerZ = Math.floorDiv(minZ + maxZ - 1, 2);
+        this.total = (maxX - minX) * (maxZ - minZ);
+        this.thread = new Thread(this::run, "pregeneration-" + dimension.getId());
+        thread.setDaemon(true);
+    }
+
+    public Pregeneration start() {
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stops queueing chunks. The ones already queued are finished and saved before the job completes.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return Completes once every chunk is done and saved, or once the job stopped
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    public boolean isRunning() {
+        return !completion.isDone();
+    }
+
+    public int getDone() {
+        return done;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Chunks generated per second since the job started, loaded and resumed chunks left out
+     */
+    public double getChunksPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return startTime == 0 || elapsed <= 0 ? 0 : generated.get() / (elapsed / 1e9);
+    }
+
+    public String getStatus() {
+        int done = this.done;
+        double rate = getChunksPerSecond();
+        long left = rate > 0 ? (long) ((total - done) / rate) : -1;
+        Runtime runtime = Runtime.getRuntime();
+        long used = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        return String.format("Pregeneration of %s: %d/%d chunks (%.1f%%), %.1f chunks/s, %s left, %d/%d MiB, %d chunks part way",
+                dimension.getId(), done, total, done * 100.0 / total, rate,
+                left < 0 ? "unknown" : String.format("%d:%02d", left / 60, left % 60),
+                used, runtime.maxMemory() >> 20, dimension.getWorld().getPipeline().getProtoChunkCount());
+    }
+
+    private void run() {
+        try {
+            ServerProcedureGridMap world = dimension.getWorld();
+            resumed = loadProgress();
+            if (resumed > 0) logger.info("Resuming the pregeneration of {} after {} chunks", dimension.getId(), resumed);
+            done = resumed;
+            startTime = System.nanoTime();
+            long nextReport = startTime + REPORT_INTERVAL, nextSave = startTime + SAVE_INTERVAL;
+
+            ArrayDeque<CompletableFuture<ChunkData>> queued = new ArrayDeque<>();
+            ArrayDeque<ChunkPos> queuedPositions = new ArrayDeque<>();
+            List<ChunkPos> unsaved = new ArrayList<>();
+            int index = 0;
+
+            int rings = Math.max(Math.max(centerX - minX, maxX - 1 - centerX), Math.max(centerZ - minZ, maxZ - 1 - centerZ));
+            for (int ring = 0; ring <= rings && !stopped; ring++) {
+                int length = ring == 0 ? 1 : ring * 8;
+                for (int i = 0; i < length && !stopped; i++) {
+                    ChunkPos pos = spiral(ring, i);
+                    if (pos.x() < minX || pos.x() >= maxX || pos.z() < minZ || pos.z() >= maxZ) continue;
+                    if (index++ < resumed) continue;
+
+                    if (world.hasChunk(pos)) {
+                        queued.add(CompletableFuture.completedFuture(null));
+                    } else {
+                        queued.add(world.getPipeline().submit(pos).whenComplete((chunk, e) -> generated.incrementAndGet()));
+                    }
+                    queuedPositions.add(pos);
+                    advance(queued, queuedPositions, unsaved);
+
+                    long now = System.nanoTime();
+                    if (now >= nextSave) {
+                        save(unsaved);
+                        nextSave = now + SAVE_INTERVAL;
+                    }
+                    if (now >= nextReport) {
+                        logger.info(getStatus());
+                        nextReport = now + REPORT_INTERVAL;
+                    }
+                }
+            }
+
+            // Let what was queued finish
+            while (!queued.isEmpty()) {
+                queued.peek().join();
+                advance(queued, queuedPositions, unsaved);
+            }
+            save(unsaved);
+            logger.info(getStatus());
+            logger.info(stopped ? "Pregeneration of {} stopped" : "Pregeneration of {} is done", dimension.getId());
+            completion.complete(null);
+        } catch (Throwable e) {
+            logger.error("Pregeneration of {} failed", dimension.getId(), e);
+            completion.completeExceptionally(e);
+        }
+    }
+
+    // Moves past the chunks at the head of the queue that are finished, a failed one fails the job
+    private void advance(ArrayDeque<CompletableFuture<ChunkData>> queued, ArrayDeque<ChunkPos> positions, List<ChunkPos> unsaved) {
+        while (!queued.isEmpty() && queued.peek().isDone()) {
+            queued.poll().join();
+            unsaved.add(positions.poll());
+            done++;
+        }
+    }
+
+    /**
+     * @return Position {@code i} of {@code ring}, the square at {@code ring} chunks from the center, walked
+     * clockwise from its corner at the lowest x and z.
+     */
+    private ChunkPos spiral(int ring, int i) {
+        if (ring == 0) return new ChunkPos(centerX, centerZ);
+        int side = ring * 2, offset = i % side;
+        return switch (i / side) {
+            case 0 -> new ChunkPos(centerX - ring + offset, centerZ - ring);
+            case 1 -> new ChunkPos(centerX + ring, centerZ - ring + offset);
+            case 2 -> new ChunkPos(centerX + ring - offset, centerZ + ring);
+            default -> new ChunkPos(centerX - ring, centerZ + ring - offset);
+        };
+    }
+
+    private void save(List<ChunkPos> unsaved) throws IOException {
+        if (worldName == null || unsaved.isEmpty()) return;
+        WorldData.saveChunks(dimension, worldName, unsaved);
+        unsaved.clear();
+
+        // Only once the chunks are on disk
+        Path file = WorldData.getLevelPath(dimension, worldName).resolve(PROGRESS_FILE);
+        Path temporary = file.resolveSibling(PROGRESS_FILE + ".tmp");
+        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(temporary.toFile()))) {
+            stream.writeInt(seed());
+            stream.writeInt(minX);
+            stream.writeInt(minZ);
+            stream.writeInt(maxX);
+            stream.writeInt(maxZ);
+            stream.writeInt(done);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return How many chunks of the spiral an earlier job over the same area and seed saved, 0 if there was none
+     */
+    private int loadProgress() throws IOException {
+        if (worldName == null) return 0;
+        File file = WorldData.getLevelPath(dimension, worldName).resolve(PROGRESS_FILE).toFile();
+        if (!file.exists()) return 0;
+
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(file))) {
+            if (stream.readInt() != seed()) return 0;
+            if (stream.readInt() != minX || stream.readInt() != minZ || stream.readInt() != maxX || stream.readInt() != maxZ) return 0;
+            return Math.min(stream.readInt(), total);
+        } catch (EOFException e) {
+            logger.warn("{} is truncated, pregenerating {} from the start", file, dimension.getId());
+            return 0;
+        }
+    }
+
+    // The seed the terrain noise was built with, a progress file of another world does not count
+    private int seed() {
+        return dimension.getSettings().elevation.toBuilder().seed();
+    }
+}
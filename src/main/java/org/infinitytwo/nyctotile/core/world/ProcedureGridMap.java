@@ -3,7 +3,7 @@ package org.infinitytwo.nyctotile.core.world;
 import org.infinitytwo.nyctotile.core.Window;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
 import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
-import org.infinitytwo.nyctotile.core.exception.IllegalChunkAccessException;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
 import org.infinitytwo.nyctotile.core.model.TextureAtlas;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
 import org.infinitytwo.nyctotile.core.renderer.Camera;
@@ -11,10 +11,10 @@ import org.infinitytwo.nyctotile.core.renderer.Chunk;
 import org.infinitytwo.nyctotile.core.renderer.ShaderProgram;
 import org.infinitytwo.nyctotile.core.world.generation.Biome;
 import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.TerrainGenerator;
 import org.joml.Vector2i;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import personthecat.fastnoise.FastNoise;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -25,8 +25,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Deprecated
 public class ProcedureGridMap extends GridMap {
     private final NoiseGenerationSettings dimension;
+    private final TerrainGenerator terrain;
     protected long seed;
-    private Random random;
     protected Logger logger = LoggerFactory.getLogger(ProcedureGridMap.class);
     protected static AtomicInteger generationLimit = new AtomicInteger(8);
     protected static AtomicInteger current = new AtomicInteger(0);
@@ -37,26 +37,6 @@ public class ProcedureGridMap extends GridMap {
     protected ChunkData nextData = null;
     protected final ConcurrentLinkedQueue<ChunkPos> processChunks = new ConcurrentLinkedQueue<>();
     
-    private List<ProcedureGridMap.BiomeWeight> findTopBiomes(float temperature, float humidity, Biome[] biomes) {
-        if (random == null) random = new Random(seed);
-        List<ProcedureGridMap.BiomeWeight> weighted = new ArrayList<>();
-        
-        for (Biome biome : biomes) {
-            float distSq = distanceSquared(temperature, humidity, biome.getTemperature(), biome.getHumidity());
-            float weight = 1.0f / (distSq + 0.001f);
-            weighted.add(new ProcedureGridMap.BiomeWeight(biome, weight));
-        }
-        
-        weighted.sort((a, b) -> Float.compare(b.weight, a.weight));
-        return weighted.subList(0, Math.min(3, weighted.size()));
-    }
-    
-    private float distanceSquared(float t1, float h1, float t2, float h2) {
-        float dt = t1 - t2;
-        float dh = h1 - h2;
-        return dt * dt + dh * dh;
-    }
-    
     public void generateBiomeChunkHeightmap(NoiseGenerationSettings settings, ChunkPos GenChunk, Biome[] biomes, ShaderProgram program, TextureAtlas atlas) {
         if (generationLimit.get() <= current.get() + 1) {
             logger.error("GENERATION SUCCEEDS THREAD LIMIT! SKIPPING!");
@@ -64,87 +44,17 @@ public class ProcedureGridMap extends GridMap {
         }
         
         current.incrementAndGet();
-        final int seaLevel = settings.seaLevel;
-        final int baseHeight = settings.baseHeight;
-        FastNoise tempNoise = settings.temperature;
-        FastNoise humidNoise = settings.humidity;
-        FastNoise elevNoise = settings.elevation;
-        FastNoise riverNoiseGen = settings.river;
-        Map<ChunkPos, ChunkData> chunkDataMap = new HashMap<>();
+        TerrainGenerator generator = settings == dimension && biomes == dimension.biomes ? terrain : new TerrainGenerator(settings, biomes, (int) seed + 45);
+        int[] blocks = new int[ChunkData.VOLUME];
+        generator.generate(GenChunk.x(), GenChunk.z(), blocks);
+        ChunkData data = new ChunkData(GenChunk);
+        data.modify(blocks);
         
-        for (int x = GenChunk.x() * Chunk.SIZE_X; x < (GenChunk.x() * Chunk.SIZE_X) + Chunk.SIZE_X; x++) {
-            for (int z = GenChunk.z() * Chunk.SIZE_X; z < GenChunk.z() * Chunk.SIZE_Z + Chunk.SIZE_X; z++) {
-                ChunkData data = chunkDataMap.computeIfAbsent(GenChunk, ChunkData::new);
-                
-                float temperature = tempNoise.getNoise(x, z);
-                float humidity = humidNoise.getNoise(x, z);
-                float elevationNoise = elevNoise.getNoise(x, z);
-                float riverNoise = riverNoiseGen.getNoise(x, z);
-                
-                List<BiomeWeight> topBiomes = findTopBiomes(temperature, humidity, biomes);
-                
-                float totalWeight = 0f;
-                for (BiomeWeight bw : topBiomes) {
-                    totalWeight += bw.weight;
-                }
-                for (BiomeWeight bw : topBiomes) {
-                    bw.weight /= totalWeight;
-                }
-                
-                float blendedElevation = 0f;
-                float hilliness = 0f;
-                float blendedTop = 0, blendedSoil = 0, blendedRocky = 0;
-                
-                for (BiomeWeight bw : topBiomes) {
-                    Biome b = bw.biome;
-                    float weight = bw.weight;
-                    FastNoise detailNoise = b.getDetailNoise((int) seed + 45);
-                    blendedElevation += (elevationNoise + detailNoise.getNoise(x, z)) * weight;
-                    
-                    switch (b.getType()) {
-                        case PLAINS -> hilliness += 3f * weight;
-                        case HILL -> hilliness += 10f * weight;
-                        case MOUNTAIN -> hilliness += 35f * weight;
-                        case CANYON -> hilliness -= 25f * weight;
-                        case RIVER, CORE -> hilliness += 0f;
-                        default -> hilliness += 5f * weight;
-                    }
-                    
-                    blendedTop += b.getTop() * weight;
-                    blendedSoil += b.getSoil() * weight;
-                    blendedRocky += b.getRocky() * weight;
-                }
-                
-                float riverBlend = Math.max(0, (0.10f - Math.abs(riverNoise)) / 0.10f);
-                int biomeHeight = baseHeight + (int) (blendedElevation * hilliness);
-                int height = (int) (biomeHeight * (1 - riverBlend) + (seaLevel - 2) * riverBlend);
-                
-                int localX = Math.floorMod(x, Chunk.SIZE_X);
-                int localZ = Math.floorMod(z, Chunk.SIZE_Z);
-                
-                for (int y = 0; y < Chunk.SIZE_Y; y++) {
-                    try {
-                        if (y > height) {
-                            continue;
-                        } else if (y == height) {
-                            data.setBlock(localX, y, localZ, (short) Math.round(blendedTop));
-                        } else if (y >= height - 3) {
-                            data.setBlock(localX, y, localZ, (short) Math.round(blendedSoil));
-                        } else if (y == 0) {
-                            data.setBlock(localX, y, localZ, (short) 4);
-                        } else {
-                            data.setBlock(localX, y, localZ, (short) Math.round(blendedRocky));
-                        }
-                    } catch (IllegalChunkAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                synchronized (chunks) {
-                    if (!chunks.containsKey(GenChunk)) {
-                        chunkData.add(data);
-                    }
-                }
-                
+        // Queued only once it is complete and lit
+        LightingEngine.lightSky(data, registry);
+        synchronized (chunks) {
+            if (!chunks.containsKey(GenChunk)) {
+                chunkData.add(data);
             }
         }
         
@@ -168,21 +78,12 @@ public class ProcedureGridMap extends GridMap {
         }
     }
     
-    private static class BiomeWeight {
-        Biome biome;
-        float weight;
-        
-        BiomeWeight(Biome biome, float weight) {
-            this.biome = biome;
-            this.weight = weight;
-        }
-    }
-    
     public ProcedureGridMap(ShaderProgram program, TextureAtlas atlas, int generatorThreads, NoiseGenerationSettings dimension, BlockRegistry registry) {
         super(registry);
         this.program = program;
         this.atlas = atlas;
         this.dimension = dimension;
+        this.terrain = new TerrainGenerator(dimension, (int) seed + 45);
         generationThreads = Executors.newFixedThreadPool(generatorThreads);
     }
     
@@ -5,6 +5,8 @@ import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
 import org.joml.Vector2i;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -13,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ServerGridMap extends GMap {
     protected final ConcurrentHashMap<ChunkPos, ChunkData> chunks = new ConcurrentHashMap<>();
     protected final BlockRegistry registry;
+    protected volatile ChunkCache cache;
     
     public ServerGridMap(BlockRegistry registry) {
         this.registry = registry;
@@ -20,6 +23,9 @@ public class ServerGridMap extends GMap {
     
     public void addChunk(ChunkData chunk) {
         chunks.put(new ChunkPos(chunk.getPosition().x, chunk.getPosition().y), chunk);
+        ChunkCache cache = this.cache;
+        if (cache != null) cache.loaded(chunk, false);
+        lightingEngine.chunkAdded(chunk.getPosition().x, chunk.getPosition().y);
     }
     
     public Collection<ChunkData> getChunks() {
@@ -35,11 +41,70 @@ public class ServerGridMap extends GMap {
         return registry;
     }
     
+    /**
+     * @return The chunk if it is loaded, marked as used for the {@link ChunkCache}
+     */
     @Override
     public ChunkData getChunk(ChunkPos pos) {
+        ChunkData chunk = chunks.get(pos);
+        ChunkCache cache = this.cache;
+        if (chunk != null && cache != null) cache.touch(pos);
+        return chunk;
+    }
+    
+    /**
+     * @return The chunk if it is loaded, without counting as a use
+     */
+    public ChunkData getLoadedChunk(ChunkPos pos) {
         return chunks.get(pos);
     }
     
+    /**
+     * Looks a chunk up, loading it back from the region files if the {@link ChunkCache} unloaded it.
+     * May read from disk, keep it off threads that must not wait.
+     * @return The chunk, {@code null} if it was never generated
+     */
+    public ChunkData loadChunk(ChunkPos pos) {
+        ChunkData chunk = getChunk(pos);
+        ChunkCache cache = this.cache;
+        if (cache == null) return chunk;
+        if (chunk != null) {
+            cache.hit();
+            return chunk;
+        }
+        try {
+            chunk = cache.load(pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load chunk " + pos, e);
+        }
+        if (chunk == null) cache.miss();
+        return chunk;
+    }
+    
+    /**
+     * @return Whether the chunk is loaded, or is in the region files of the {@link ChunkCache} to be loaded from
+     */
+    public boolean hasChunk(ChunkPos pos) {
+        ChunkCache cache = this.cache;
+        if (chunks.containsKey(pos)) return true;
+        try {
+            return cache != null && cache.isUnloaded(pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to look for chunk " + pos, e);
+        }
+    }
+    
+    public ChunkCache getChunkCache() {
+        return cache;
+    }
+    
+    /**
+     * Keeps the chunks within the memory budget of {@code cache} from now on, {@code null} keeps every chunk.
+     */
+    public void setChunkCache(ChunkCache cache) {
+        this.cache = cache;
+    }
+    
     @Override
     public List<ChunkData> getAllChunks() {
         return chunks.values().stream().toList();
@@ -1,261 +1,163 @@
 package org.infinitytwo.nyctotile.core.world;
 
 import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
-import org.infinitytwo.nyctotile.core.manager.WorkerThreads;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
+import org.infinitytwo.nyctotile.core.manager.MainThreadExecutor;
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
-import org.infinitytwo.nyctotile.core.exception.IllegalChunkAccessException;
 import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
-import org.infinitytwo.nyctotile.core.world.generation.Biome;
-import org.infinitytwo.nyctotile.core.world.generation.CaveWorm;
-import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
+import org.infinitytwo.nyctotile.core.world.generation.*;
 import org.joml.Vector2i;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import personthecat.fastnoise.FastNoise;
 
 import java.util.*;
 import java.util.concurrent.*;
 
 public class ServerProcedureGridMap extends ServerGridMap {
     private final NoiseGenerationSettings dimension;
-    protected long seed;
-    private Random random;
-    private final ConcurrentMap<ChunkPos, Future<ChunkData>> activeGenerations = new ConcurrentHashMap<>();
+    protected final long seed;
     protected Logger logger = LoggerFactory.getLogger(ServerProcedureGridMap.class);
-    protected WorkerThreads threads = new WorkerThreads(5);
+    protected final ForkJoinPool generationPool;
+    protected final GenerationPipeline pipeline;
+    private final TerrainGenerator terrain;
+    private static final ThreadLocal<int[]> blockBuffers = ThreadLocal.withInitial(() -> new int[ChunkData.VOLUME]);
     
-    private List<BiomeWeight> findTopBiomes(float temperature, float humidity, Biome[] biomes) {
-        if (random == null) random = new Random(seed);
-        List<BiomeWeight> weighted = new ArrayList<>();
-
-        for (Biome biome : biomes) {
-            float distSq = distanceSquared(temperature, humidity, biome.getTemperature(), biome.getHumidity());
-            float weight = 1.0f / (distSq + 0.001f);
-            weighted.add(new BiomeWeight(biome, weight));
+    public void generateBiomeChunkHeightmap(NoiseGenerationSettings settings, ChunkPos GenChunk, Biome[] biomes) {
+        if (settings == dimension && biomes == dimension.biomes) {
+            getChunkOrGenerate(GenChunk.x(), GenChunk.z());
+            return;
         }
-
-        weighted.sort((a, b) -> Float.compare(b.weight, a.weight));
-        return weighted.subList(0, Math.min(3, weighted.size()));
-    }
-
-    private float distanceSquared(float t1, float h1, float t2, float h2) {
-        float dt = t1 - t2;
-        float dh = h1 - h2;
-        return dt * dt + dh * dh;
+        // Other settings only get the terrain, the pipeline and its features belong to this world's dimension
+        publish(generateTerrain(new TerrainGenerator(settings, biomes, (int) seed + 45), GenChunk));
     }
     
-    public void generateBiomeChunkHeightmap(NoiseGenerationSettings settings, ChunkPos GenChunk, Biome[] biomes) {
-        final int seaLevel = settings.seaLevel;
-        final int baseHeight = settings.baseHeight;
-        FastNoise tempNoise = settings.temperature;
-        FastNoise humidNoise = settings.humidity;
-        FastNoise elevNoise = settings.elevation;
-        FastNoise riverNoiseGen = settings.river;
-        FastNoise holes = settings.holes;
-
-        Map<ChunkPos, ChunkData> chunkDataMap = new HashMap<>();
-
-        for (int x = GenChunk.x() * ChunkData.SIZE_X; x < (GenChunk.x() * ChunkData.SIZE_X) + ChunkData.SIZE_X; x++) {
-            for (int z = GenChunk.z() * ChunkData.SIZE_X; z < GenChunk.z() * ChunkData.SIZE_Z +ChunkData.SIZE_X; z++) {
-                ChunkData data = chunkDataMap.computeIfAbsent(GenChunk, ChunkData::new);
-
-                float temperature = tempNoise.getNoise(x, z);
-                float humidity = humidNoise.getNoise(x, z);
-                float elevationNoise = elevNoise.getNoise(x, z);
-                float riverNoise = riverNoiseGen.getNoise(x, z);
-
-                List<BiomeWeight> topBiomes = findTopBiomes(temperature, humidity, biomes);
-
-                float totalWeight = 0f;
-                for (BiomeWeight bw : topBiomes) {
-                    totalWeight += bw.weight;
-                }
-                for (BiomeWeight bw : topBiomes) {
-                    bw.weight /= totalWeight;
-                }
-
-                float blendedElevation = 0f;
-                float hilliness = 0f;
-                float blendedTop = 0, blendedSoil = 0, blendedRocky = 0;
-
-                for (BiomeWeight bw : topBiomes) {
-                    Biome b = bw.biome;
-                    float weight = bw.weight;
-                    FastNoise detailNoise = b.getDetailNoise((int) seed + 45);
-                    blendedElevation += (elevationNoise + detailNoise.getNoise(x, z)) * weight;
-
-                    switch (b.getType()) {
-                        case PLAINS -> hilliness += 3f * weight;
-                        case HILL -> hilliness += 10f * weight;
-                        case MOUNTAIN -> hilliness += 35f * weight;
-                        case CANYON -> hilliness -= 25f * weight;
-                        case RIVER, CORE -> hilliness += 0f;
-                        default -> hilliness += 5f * weight;
-                    }
-
-                    blendedTop += b.getTop() * weight;
-                    blendedSoil += b.getSoil() * weight;
-                    blendedRocky += b.getRocky() * weight;
-                }
-
-                float riverBlend = Math.max(0, (0.10f - Math.abs(riverNoise)) / 0.10f);
-                int biomeHeight = baseHeight + (int) (blendedElevation * hilliness);
-                int height = (int) (biomeHeight * (1 - riverBlend) + (seaLevel - 2) * riverBlend);
-
-                int localX = Math.floorMod(x, ChunkData.SIZE_X);
-                int localZ = Math.floorMod(z, ChunkData.SIZE_Z);
-
-                for (int y = 0; y < ChunkData.SIZE_Y; y++) {
-                    try {
-                        if (y > height) {
-                            continue;
-                        } else if (y == height) {
-                            validate(Math.round(blendedTop));
-                            data.setBlock(localX, y, localZ, Math.round(blendedTop));
-                        } else if (y >= height - 3) {
-                            validate(Math.round(blendedSoil));
-                            data.setBlock(localX, y, localZ, Math.round(blendedSoil));
-                        } else if (y == 0) {
-                            validate(4);
-                            data.setBlock(localX, y, localZ, 4);
-                        } else {
-                            validate(Math.round(blendedRocky));
-                            data.setBlock(localX, y, localZ, Math.round(blendedRocky));
-                        }
-                    } catch (IllegalChunkAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-
-//                    try {
-//                        List<CaveWorm> worms = generateCavePaths(GenChunk);
-//                        for (CaveWorm worm : worms) {
-//                            carveWormPath(data,worm);
-//                        }
-//                    } catch (IllegalChunkAccessExecption e) {
-//                        new RuntimeException("Something went wrong while generation caves", e).printStackTrace();
-//                    }
-                }
-                synchronized (chunks) {
-                    if (!chunks.containsKey(GenChunk)) {
-                        chunks.put(GenChunk,data);
-                    }
-                }
-            }
+    private ChunkData generateTerrain(TerrainGenerator generator, ChunkPos pos) {
+        int[] blocks = blockBuffers.get();
+        generator.generate(pos.x(), pos.z(), blocks);
+        
+        int last = 0;
+        for (int id : blocks) {
+            if (id != last) validate(last = id);
         }
+        ChunkData data = new ChunkData(pos);
+        data.modify(blocks);
+        LightingEngine.lightSky(data, registry);
+        return data;
     }
-
+    
+    /**
+     * Makes a complete chunk visible in one step, unless another generation of it got there first.
+     * @return The chunk that is in the map now
+     */
+    private ChunkData publish(ChunkData data) {
+        ChunkPos pos = new ChunkPos(data.getPosition().x, data.getPosition().y);
+        ChunkData existing = chunks.putIfAbsent(pos, data);
+        if (existing != null) return existing;
+        
+        ChunkCache cache = this.cache;
+        if (cache != null) cache.loaded(data, false);
+        lightingEngine.chunkAdded(pos.x(), pos.z());
+        return data;
+    }
+    
     private void validate(int id) { // Only used for debugging
         if (id == 0) return;
         try {
             registry.get(id);
         } catch (Exception e) {
-            WorkerThreads.dispatch(() -> {throw new RuntimeException(e);});
+            MainThreadExecutor.execute(() -> {throw new RuntimeException(e);});
         }
     }
-
-    @Deprecated
-    private void carveWormPath(ChunkData data, CaveWorm worm) throws IllegalChunkAccessException {
-        int steps = 80 + random.nextInt(60); // random tunnel length (80–140)
-        float baseRadius = worm.radius;
-
-        for (int i = 0; i < steps; i++) {
-            worm.step();
-
-            int cy = (int) Math.floor(worm.y);
-            if (cy <= 1 || cy >= ChunkData.SIZE_Y - 1) continue;
-
-            // Smoothly vary radius along the path
-            float t = (float) i / steps;
-            float radius = baseRadius * (0.75f + 0.5f * (float) Math.sin(t * Math.PI));
-
-            worm.carve(
-                    data,
-                    steps
-            );
+    
+    /**
+     * @return The pipeline this world generates through, features are added to it before anything is generated
+     */
+    public GenerationPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    /**
+     * Starts generating a chunk, waiting while the generation queue is full.
+     */
+    public void generate(ChunkPos chunk) {
+        if (hasChunk(chunk)) return;
+        try {
+            pipeline.submit(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
-
-    @Deprecated
-    private List<CaveWorm> generateCavePaths(ChunkPos chunk) {
-        List<CaveWorm> worms = new ArrayList<>();
-
-        // maybe 0–3 worms per chunk
-        int wormCount = random.nextInt(1,3);
-        for (int i = 0; i < wormCount; i++) {
-            double startX = chunk.x() * ChunkData.SIZE_X + random.nextInt(ChunkData.SIZE_X);
-            double startZ = chunk.z() * ChunkData.SIZE_Z + random.nextInt(ChunkData.SIZE_Z);
-            double startY = 20 + random.nextInt(40); // safe above bedrock, below surface
-
-            CaveWorm worm = new CaveWorm(startX, startY, startZ, random);
-            worms.add(worm);
+    
+    /**
+     * Queues every missing chunk from {@code (minX, minZ)} up to but not including {@code (maxX, maxZ)}, row by row.
+     * Returns once the last one is queued, which waits whenever the generation queue is full; each chunk is
+     * published as soon as it is ready.
+     * @return Completes when the whole area is in the map
+     */
+    public CompletableFuture<Void> generateArea(int minX, int minZ, int maxX, int maxZ) {
+        List<CompletableFuture<ChunkData>> futures = new ArrayList<>();
+        try {
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    ChunkPos pos = new ChunkPos(x, z);
+                    if (!hasChunk(pos)) futures.add(pipeline.submit(pos));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.add(CompletableFuture.failedFuture(e));
         }
-        return worms;
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
     }
     
-    public void generate(ChunkPos chunk) {
-        if (chunks.containsKey(chunk) || activeGenerations.containsKey(chunk)) return;
+    /**
+     * Asks for a chunk without waiting for it, for threads that must not block such as the network handler.
+     * Requests for a chunk that is already being generated share that generation. A chunk to generate counts
+     * against the generation queue like the chunks of {@link #generateArea}, but instead of waiting while the queue
+     * is full the request fails, and has to be made again later. Only a loaded chunk is looked up on the calling
+     * thread, whether one is in the region files, and reading it back, happens on a generation thread.
+     * @return Completes with the chunk in the map, on the thread that generated or read it, or exceptionally with a
+     * {@link RejectedExecutionException} if the generation queue is full
+     */
+    public CompletableFuture<ChunkData> requestChunk(ChunkPos pos) {
+        if (getChunk(pos) != null) return CompletableFuture.completedFuture(loadChunk(pos)); // Counts the hit
         
-        // 2. Submit the task and store the future
-        Future<ChunkData> future = threads.run(() -> {
-            generateBiomeChunkHeightmap(
-                    dimension,
-                    chunk,
-                    dimension.biomes
-            );
-            // The generateBiomeChunkHeightmap method MUST put the chunk into the 'chunks' map
-            return chunks.get(chunk);
+        // The region header may have to be read, or an old region converted first
+        return CompletableFuture.supplyAsync(() -> hasChunk(pos), generationPool).thenCompose(saved -> {
+            if (saved) return CompletableFuture.completedFuture(loadChunk(pos));
+            CompletableFuture<ChunkData> generated = pipeline.offer(pos);
+            if (generated == null) throw new RejectedExecutionException("The generation queue is full");
+            ChunkCache cache = this.cache;
+            if (cache != null) cache.miss();
+            // Null if it was finished in the meantime, then it is loaded or saved
+            return generated.thenApply(chunk -> chunk != null ? chunk : loadChunk(pos));
         });
-        
-        // 3. Store the Future for tracking
-        activeGenerations.put(chunk, future);
     }
     
     public boolean isChunkLoadedOrGenerating(ChunkPos p) {
-        // Check if it's already generated
-        if (chunks.containsKey(p)) {
+        // Check if it's already generated, loaded or not
+        if (hasChunk(p)) {
             return true;
         }
-        // Check if it's currently being generated
-        return activeGenerations.containsKey(p);
+        // Check if it's in the pipeline, including chunks only generated part way for a neighbour
+        return pipeline.isGenerating(p);
     }
     
     public ChunkData getChunkOrGenerate(Vector2i pos) {
         ChunkPos p = new ChunkPos(pos.x, pos.y);
         
-        // 1. Check if the chunk is already generated and ready
-        if (chunks.containsKey(p)) {
-            return chunks.get(p);
-        }
-        
-        // 2. Check if the chunk is already generating
-        Future<ChunkData> future = activeGenerations.get(p);
-        
-        if (future == null) {
-            // 3. Not generating, so submit a new generation task and get the future
-            // NOTE: This logic ensures only ONE thread creates the Future for this chunk.
-            future = activeGenerations.computeIfAbsent(p, k -> threads.run(() -> {
-                generateBiomeChunkHeightmap(
-                        dimension,
-                        k,
-                        dimension.biomes
-                );
-                return chunks.get(k); // Assumes generateBiomeChunkHeightmap puts it in 'chunks'
-            }));
-        }
+        // 1. Check if the chunk is already generated and ready, or saved by the chunk cache
+        ChunkData data = loadChunk(p);
+        if (data != null) return data;
         
         try {
-            // 4. BLOCK UNTIL THE CHUNK IS READY
-            ChunkData data = future.get();
-            
-            // 5. Cleanup: Generation is complete, remove the Future
-            activeGenerations.remove(p);
-            
-            return data;
+            // 2. BLOCK UNTIL THE CHUNK IS READY, a running generation is joined instead of started again
+            data = pipeline.submit(p).get();
         } catch (ExecutionException | InterruptedException e) {
-            // Handle failure, ensure the Future is removed if it failed
-            activeGenerations.remove(p);
             throw new RuntimeException("Chunk generation failed or was interrupted", e);
         }
+        // 3. Null if it was finished before, then it is loaded or saved
+        return data != null ? data : loadChunk(p);
     }
     
     public void generate(int x, int y) {
@@ -266,19 +168,28 @@ public class ServerProcedureGridMap extends ServerGridMap {
         return getChunkOrGenerate(new Vector2i(x,y));
     }
     
-    private static class BiomeWeight {
-        Biome biome;
-        float weight;
-
-        BiomeWeight(Biome biome, float weight) {
-            this.biome = biome;
-            this.weight = weight;
-        }
+    public ServerProcedureGridMap(NoiseGenerationSettings dimension, long seed, BlockRegistry registry) {
+        this(dimension, seed, registry, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
     }
-
-    public ServerProcedureGridMap(NoiseGenerationSettings dimension, BlockRegistry registry) {
+    
+    /**
+     * @param seed the seed of the dimension, the one {@code dimension} was built with, for the detail noise and the
+     * features of the pipeline
+     * @param generationThreads how many chunk stages may run at once, the generation queue holds eight times as many
+     * requested chunks (at least 16)
+     */
+    public ServerProcedureGridMap(NoiseGenerationSettings dimension, long seed, BlockRegistry registry, int generationThreads) {
         super(registry);
         this.dimension = dimension;
-        this.random = new Random(seed+58);
+        this.seed = seed;
+        this.terrain = new TerrainGenerator(dimension, (int) seed + 45);
+        this.generationPool = new ForkJoinPool(generationThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("generation-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.pipeline = new GenerationPipeline(terrain, registry, seed, generationPool, Math.max(16, generationThreads * 8), this::publish,
+                this::hasChunk)
+                .addFeature(GenerationStage.CARVE, new CaveCarver());
     }
 }
@@ -5,12 +5,14 @@ import org.infinitytwo.nyctotile.core.data.world.ChunkData;
 import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
 import org.infinitytwo.nyctotile.core.data.PlayerData;
 import org.infinitytwo.nyctotile.core.registry.Registerable;
+import org.infinitytwo.nyctotile.core.world.Pregeneration;
 import org.infinitytwo.nyctotile.core.world.ServerProcedureGridMap;
 import org.infinitytwo.nyctotile.core.world.generation.Biome;
 import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class Dimension implements Registerable {
     protected final NoiseGenerationSettings settings;
@@ -19,6 +21,7 @@ public abstract class Dimension implements Registerable {
     protected final ServerProcedureGridMap world;
     protected final List<PlayerData> playerData;
     protected final Biome[] biomes;
+    protected volatile Pregeneration pregeneration;
 
     public Dimension(String name, String id, NoiseGenerationSettings settings, ServerProcedureGridMap world, List<PlayerData> playerData) {
         this.name = name;
@@ -56,6 +59,40 @@ public abstract class Dimension implements Registerable {
 
     public void generate(ChunkPos chunk) { generate(chunk.x(), chunk.z());}
     
+    /**
+     * @return The chunk once it is loaded or generated, see {@link ServerProcedureGridMap#requestChunk}
+     */
+    public CompletableFuture<ChunkData> requestChunk(int x, int z) {
+        return world.requestChunk(new ChunkPos(x, z));
+    }
+    
+    /**
+     * Starts pregenerating the square of chunks up to {@code radius} chunks from {@code (centerX, centerZ)},
+     * see {@link Pregeneration}.
+     * @param worldName the world to save the chunks into, {@code null} to not save them
+     */
+    public Pregeneration pregenerate(String worldName, int centerX, int centerZ, int radius) {
+        return pregenerate(worldName, centerX - radius, centerZ - radius, centerX + radius + 1, centerZ + radius + 1);
+    }
+    
+    /**
+     * Starts pregenerating the chunks from {@code (minX, minZ)} up to but not including {@code (maxX, maxZ)},
+     * see {@link Pregeneration}. Only one pregeneration runs per dimension at a time.
+     * @param worldName the world to save the chunks into, {@code null} to not save them
+     * @throws IllegalStateException if a pregeneration of this dimension is still running
+     */
+    public synchronized Pregeneration pregenerate(String worldName, int minX, int minZ, int maxX, int maxZ) {
+        if (pregeneration != null && pregeneration.isRunning()) throw new IllegalStateException("A pregeneration of " + id + " is already running");
+        return pregeneration = new Pregeneration(this, worldName, minX, minZ, maxX, maxZ).start();
+    }
+    
+    /**
+     * @return The last pregeneration started in this dimension, {@code null} if there was none
+     */
+    public Pregeneration getPregeneration() {
+        return pregeneration;
+    }
+    
     public abstract void playerEntered(ServerContext context, PlayerData playerData);
     public abstract void playerLeave(PlayerData playerData);
     public abstract void tick(ServerContext context);
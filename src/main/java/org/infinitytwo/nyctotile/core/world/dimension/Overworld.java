@@ -12,22 +12,29 @@ import org.infinitytwo.nyctotile.core.world.generation.NoiseGenerationSettings;
 import java.util.ArrayList;
 
 public class Overworld extends Dimension {
+    /**
+     * Noise drift the terrain may take for cheaper generation, see {@link NoiseGenerationSettings#interpolationError}.
+     * Moves a few percent of the columns by a block.
+     */
+    public static final float INTERPOLATION_ERROR = 0.1f;
+    
     public Overworld(int seed, BlockRegistry registry) {
         super("Overworld", "overworld",
-                new NoiseGenerationSettings(
-                        62,64,seed, new Biome[]{
-                        Biomes.PLAINS.biome,
-                        Biomes.DESERT.biome,
-                        Biomes.MOUNTAINS.biome,
-                }), new ServerProcedureGridMap(new NoiseGenerationSettings(
-                        62,64,seed, new Biome[]{
-                        Biomes.PLAINS.biome,
-                        Biomes.DESERT.biome,
-                        Biomes.MOUNTAINS.biome,
-                }),registry),
+                settings(seed), new ServerProcedureGridMap(settings(seed), seed, registry),
                 new ArrayList<>());
     }
     
+    private static NoiseGenerationSettings settings(int seed) {
+        NoiseGenerationSettings settings = new NoiseGenerationSettings(
+                62,64,seed, new Biome[]{
+                Biomes.PLAINS.biome,
+                Biomes.DESERT.biome,
+                Biomes.MOUNTAINS.biome,
+        });
+        settings.interpolationError = INTERPOLATION_ERROR;
+        return settings;
+    }
+    
     @Override
     public void generate(int x, int y) {
         ServerProcedureGridMap world = this.world;
@@ -0,0 +1,24 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import java.util.Random;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.SIZE;
+
+/**
+ * Starts one or two {@link CaveWorm}s somewhere under the chunk, between y 20 and 60. The tunnels may run
+ * into the neighbouring chunks as far as the {@link GenerationStage#CARVE} stage reaches.
+ */
+public class CaveCarver implements GenerationFeature {
+    @Override
+    public void place(GenerationRegion region, Random random) {
+        int worms = random.nextInt(1, 3);
+        for (int i = 0; i < worms; i++) {
+            double startX = region.getCenter().x() * SIZE + random.nextInt(SIZE);
+            double startZ = region.getCenter().z() * SIZE + random.nextInt(SIZE);
+            double startY = 20 + random.nextInt(40); // safe above bedrock, below surface
+
+            CaveWorm worm = new CaveWorm(startX, startY, startZ, random);
+            worm.carve(region, 80 + random.nextInt(60)); // tunnel length 80–140, if it stays in the region
+        }
+    }
+}
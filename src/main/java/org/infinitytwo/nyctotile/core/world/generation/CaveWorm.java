@@ -1,13 +1,12 @@
 package org.infinitytwo.nyctotile.core.world.generation;
 
 import org.infinitytwo.nyctotile.core.data.world.ChunkData;
-import org.infinitytwo.nyctotile.core.exception.IllegalChunkAccessException;
-import org.infinitytwo.nyctotile.core.world.ServerGridMap;
-import org.joml.Vector3i;
 
 import java.util.Random;
 
-@Deprecated
+/**
+ * A tunnel that wanders from its start, carving air into a {@link GenerationRegion} as it goes.
+ */
 public class CaveWorm {
     public double x;
     public double y;
@@ -46,64 +45,40 @@ public class CaveWorm {
         normalizeDirection();
     }
 
-    public void carveEllipsoid(ChunkData grid, Vector3i pos, float radius, float radiusY) throws IllegalChunkAccessException {
-        int minX = (int) Math.floor(pos.x - radius);
-        int maxX = (int) Math.ceil(pos.x + radius);
-        int minY = (int) Math.floor(pos.y - radiusY);
-        int maxY = (int) Math.ceil(pos.y + radiusY);
-        int minZ = (int) Math.floor(pos.z - radius);
-        int maxZ = (int) Math.ceil(pos.z + radius);
+    /**
+     * Carves an ellipsoid of air around a point, leaving the bedrock layer at y 0.
+     * @return {@code false}, without carving, if the ellipsoid does not fit in the region
+     */
+    public boolean carveEllipsoid(GenerationRegion region, double cx, double cy, double cz, float radius, float radiusY) {
+        int minX = (int) Math.floor(cx - radius);
+        int maxX = (int) Math.ceil(cx + radius);
+        int minY = Math.max(1, (int) Math.floor(cy - radiusY));
+        int maxY = Math.min(ChunkData.SIZE_Y - 1, (int) Math.ceil(cy + radiusY));
+        int minZ = (int) Math.floor(cz - radius);
+        int maxZ = (int) Math.ceil(cz + radius);
+        if (!region.contains(minX, minZ, maxX, maxZ)) return false;
 
         for (int x = minX; x <= maxX; x++) {
             for (int y = minY; y <= maxY; y++) {
                 for (int z = minZ; z <= maxZ; z++) {
                     // normalize distances
-                    float dx = (x + 0.5f - pos.x) / radius;
-                    float dy = (y + 0.5f - pos.y) / radiusY;
-                    float dz = (z + 0.5f - pos.z) / radius;
+                    float dx = (float) (x + 0.5 - cx) / radius;
+                    float dy = (float) (y + 0.5 - cy) / radiusY;
+                    float dz = (float) (z + 0.5 - cz) / radius;
                     if (dx*dx + dy*dy + dz*dz < 1.0f) {
-                        grid.setBlock(ServerGridMap.convertToLocalChunk(x, y +2, z), (short)0); // carve air
+                        region.setBlock(x, y, z, 0); // carve air
                     }
                 }
             }
         }
+        return true;
     }
 
-    public void carveSphere(ChunkData grid, Vector3i pos, float radius) throws IllegalChunkAccessException {
-        int minY = (int) (pos.y - radius);
-        int maxY = (int) (pos.y + radius);
-
-        float cx = pos.x - 0.5f,
-                cy = pos.y - 0.5f,
-                cz = pos.z - 0.5f;
-
-        float r2 = radius * radius;
-
-        for (int y = minY; y <= maxY; y++) {
-            float dy = y - cy;
-            float dy2 = dy * dy;
-            float rSlice2 = r2 - dy2;
-            if (rSlice2 < 0) continue;
-
-            int rSlice = (int)Math.sqrt(rSlice2);
-            for (int x = (int)(cx - rSlice); x <= (int)(cx + rSlice); x++) {
-                float dx = x - cx;
-                float dx2 = dx * dx;
-                float dzMax = (float)Math.sqrt(rSlice2 - dx2);
-
-                int minZ = (int)(cz - dzMax);
-                int maxZ = (int)(cz + dzMax);
-
-                for (int z = minZ; z <= maxZ; z++) {
-                    int lx = x & (ChunkData.SIZE_X -1), ly = y & (ChunkData.SIZE_Y -1), lz = z & (ChunkData.SIZE_Z -1);
-
-                    grid.setBlock(lx, ly, lz, 0);
-                }
-            }
-        }
-    }
-
-    public void carve(ChunkData data, int steps) throws IllegalChunkAccessException {
+    /**
+     * Moves the worm up to {@code steps} times, carving at every step. Stops early where the tunnel would
+     * leave the region, so it ends there instead of being cut flat.
+     */
+    public void carve(GenerationRegion region, int steps) {
         for (int i = 0; i < steps; i++) {
             step();
 
@@ -114,7 +89,7 @@ public class CaveWorm {
             float radiusXZ = radius * (0.75f + rand.nextFloat() * 0.5f);
             float radiusY  = radiusXZ * (0.5f + rand.nextFloat() * 0.5f);
 
-            carveEllipsoid(data, new Vector3i((int)x, (int)y, (int)z), radiusXZ, radiusY);
+            if (!carveEllipsoid(region, x, y, z, radiusXZ, radiusY)) return;
         }
     }
 }
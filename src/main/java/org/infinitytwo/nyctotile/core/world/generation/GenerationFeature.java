@@ -0,0 +1,22 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import java.util.Random;
+
+/**
+ * Something the {@link GenerationPipeline} places while a chunk is in the {@link GenerationStage#CARVE} or
+ * {@link GenerationStage#DECORATE} stage, like caves.
+ * <br><br>
+ * A feature must be deterministic: the same region position and random give the same blocks. Features of
+ * neighbouring chunks run at the same time and may write the same blocks, so a feature must not read back
+ * blocks that another feature of the same stage may write. A {@link GenerationStage#CARVE} feature also runs
+ * again, with the same random, for a chunk that is in the world already when a neighbour is generated after it,
+ * in a region holding that neighbour alone, and must write the same blocks into it as the first time.
+ */
+@FunctionalInterface
+public interface GenerationFeature {
+    /**
+     * @param region the chunk the feature runs for and the neighbours the stage may write into
+     * @param random seeded from the world seed, the chunk position and the stage
+     */
+    void place(GenerationRegion region, Random random);
+}
@@ -0,0 +1,342 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+import org.infinitytwo.nyctotile.core.manager.LightingEngine;
+import org.infinitytwo.nyctotile.core.registry.BlockRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Generates chunks through the {@link GenerationStage}s. Each stage of each chunk runs once, as a task on the
+ * executor, as soon as the chunk and the neighbours the stage needs have been through the previous stage,
+ * so a carver can write into the {@link ProtoChunk}s around its own chunk through a {@link GenerationRegion}.
+ * <br><br>
+ * Chunks that were only generated part way because a neighbour needed them stay here, they may already hold
+ * blocks carved by their neighbours. Once every chunk that could still carve into one is in the world it is
+ * finished and handed to the world too, the same as if it had been requested then. A chunk whose neighbours
+ * carved before it was there, because they are in the world or it was dropped since, gets their
+ * {@link GenerationStage#CARVE} features run again into it alone right after its terrain. Once a chunk is ready it is
+ * handed to the world and forgotten: the pipeline asks the world whether a chunk was generated, in this run or
+ * saved by an earlier one, and never generates it again, asking for it gives {@code null} and the world has to
+ * look it up itself.
+ * <br><br>
+ * {@link #submit} and {@link #offer} bound how many requested chunks are in flight at once, so whoever keeps
+ * asking for chunks is held back instead of piling up proto chunks. The ones left part way at the edge of what
+ * was generated are bounded by {@link #setMaxProtoChunks}: past it the ones used longest ago that no requested
+ * chunk needs are dropped, and start over from the terrain if they are requested after all.
+ */
+public class GenerationPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationPipeline.class);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final long PROTO_CHUNK_BYTES = (long) ChunkData.VOLUME * Integer.BYTES;
+    // How far a stage may write into another chunk, and how far around a requested chunk stages run
+    private static final int REACH = Arrays.stream(GenerationStage.values()).mapToInt(stage -> stage.reach).max().orElse(0);
+    private static final int WINDOW = Arrays.stream(GenerationStage.values()).mapToInt(GenerationStage::neighbourRadius).sum();
+
+    private final TerrainGenerator terrain;
+    private final BlockRegistry registry;
+    private final long seed;
+    private final Executor executor;
+    private final UnaryOperator<ChunkData> publisher;
+    private final Predicate<ChunkPos> generated;
+    private final Semaphore slots;
+    private final ConcurrentMap<ChunkPos, ProtoChunk> protoChunks = new ConcurrentHashMap<>();
+    private final Map<GenerationStage, List<GenerationFeature>> features = new EnumMap<>(GenerationStage.class);
+    private final AtomicInteger evictions = new AtomicInteger(); // Asked for and not yet looked at
+    private volatile int maxProtoChunks;
+
+    /**
+     * @param capacity how many requested chunks {@link #submit} and {@link #offer} allow in flight at once
+     * @param publisher hands a lit chunk to the world and returns the one the world keeps
+     * @param generated whether the world has a chunk already, loaded or saved. Called from the threads that request
+     * chunks and from the executor, so it may read from disk but must not wait for generation.
+     */
+    public GenerationPipeline(TerrainGenerator terrain, BlockRegistry registry, long seed, Executor executor, int capacity,
+                              UnaryOperator<ChunkData> publisher, Predicate<ChunkPos> generated) {
+        this.terrain = terrain;
+        this.registry = registry;
+        this.seed = seed;
+        this.executor = executor;
+        this.publisher = publisher;
+        this.generated = generated;
+        this.slots = new Semaphore(capacity);
+        this.maxProtoChunks = (int) Math.max(capacity * (2 * WINDOW + 1) * (2 * WINDOW + 1),
+                Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16 / PROTO_CHUNK_BYTES));
+        features.put(GenerationStage.CARVE, new CopyOnWriteArrayList<>());
+        features.put(GenerationStage.DECORATE, new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * Adds a feature to the {@link GenerationStage#CARVE} or {@link GenerationStage#DECORATE} stage. Features of one
+     * stage run in the order they were added. Add them before generating anything.
+     */
+    public GenerationPipeline addFeature(GenerationStage stage, GenerationFeature feature) {
+        List<GenerationFeature> list = features.get(stage);
+        if (list == null) throw new IllegalArgumentException("Features can not be added to the " + stage + " stage");
+        list.add(feature);
+        return this;
+    }
+
+    public int getMaxProtoChunks() {
+        return maxProtoChunks;
+    }
+
+    /**
+     * Sets how many chunks may be part way through the pipeline, by default as many as fit in a sixteenth of the
+     * heap. The chunks requested, and the ones around them they need, are kept over it.
+     */
+    public void setMaxProtoChunks(int maxProtoChunks) {
+        this.maxProtoChunks = maxProtoChunks;
+    }
+
+    /**
+     * @return A random generator for one stage of one chunk, seeded from the world seed, the chunk position and the
+     * stage only. Generation must draw from this and never from a shared {@link Random}, or the result would
+     * depend on which thread got there first.
+     */
+    public static Random random(long seed, int chunkX, int chunkZ, GenerationStage stage) {
+        return new Random(seed ^ chunkX * 341873128712L ^ chunkZ * 132897987541L ^ (long) stage.ordinal() << 58);
+    }
+
+    /**
+     * Requests a chunk, waiting while the pipeline is full.
+     * @return The chunk the world keeps, once it is ready
+     */
+    public CompletableFuture<ChunkData> submit(ChunkPos pos) throws InterruptedException {
+        slots.acquire();
+        return track(request(pos));
+    }
+
+    /**
+     * Requests a chunk unless the pipeline is full.
+     * @return The chunk the world keeps once it is ready, or {@code null} if the pipeline is full
+     */
+    public CompletableFuture<ChunkData> offer(ChunkPos pos) {
+        if (!slots.tryAcquire()) return null;
+        return track(request(pos));
+    }
+
+    private CompletableFuture<ChunkData> track(CompletableFuture<ChunkData> future) {
+        future.whenComplete((chunk, e) -> slots.release());
+        return future;
+    }
+
+    /**
+     * Requests a chunk without counting it against the capacity.
+     * @return The chunk the world keeps, once it is ready; {@code null} if it was generated before
+     */
+    public CompletableFuture<ChunkData> request(ChunkPos pos) {
+        ProtoChunk proto = protoChunk(pos);
+        if (proto == null) return CompletableFuture.completedFuture(null);
+        return reach(proto, GenerationStage.READY).thenApply(v -> proto.chunk);
+    }
+
+    /**
+     * @return Whether the chunk is being generated, or was generated part way for a neighbour
+     */
+    public boolean isGenerating(ChunkPos pos) {
+        return protoChunks.containsKey(pos);
+    }
+
+    /**
+     * @return How many chunks are part way through the pipeline
+     */
+    public int getProtoChunkCount() {
+        return protoChunks.size();
+    }
+
+    // Null once the world has the chunk. It gets the chunk before the proto chunk goes, so there is no gap.
+    private ProtoChunk protoChunk(ChunkPos pos) {
+        ProtoChunk proto = protoChunks.get(pos);
+        if (proto == null) {
+            if (generated.test(pos)) return null;
+            proto = protoChunks.computeIfAbsent(pos, ProtoChunk::new);
+        }
+        proto.used = System.nanoTime();
+        return proto;
+    }
+
+    private static boolean isRequested(ProtoChunk proto) {
+        return proto.stages.get(GenerationStage.READY.ordinal()) != null;
+    }
+
+    /**
+     * @return A future completed once the chunk has been through {@code stage}. Starts the stage, and whatever it
+     * waits for, the first time it is asked for.
+     */
+    private CompletableFuture<Void> reach(ProtoChunk proto, GenerationStage stage) {
+        CompletableFuture<Void> future = proto.stages.get(stage.ordinal());
+        if (future != null) return future;
+        CompletableFuture<Void> placeholder = new CompletableFuture<>();
+        if (!proto.stages.compareAndSet(stage.ordinal(), null, placeholder)) return proto.stages.get(stage.ordinal());
+
+        // The stage is ours to start, no locks are held so the neighbours can be asked for theirs
+        GenerationStage previous = stage.previous();
+        List<CompletableFuture<Void>> waits = new ArrayList<>();
+        if (previous != null) {
+            int radius = stage.neighbourRadius();
+            try {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    for (int dz = -radius; dz <= radius; dz++) {
+                        ProtoChunk neighbour = dx == 0 && dz == 0 ? proto : protoChunk(new ChunkPos(proto.position.x() + dx, proto.position.z() + dz));
+                        waits.add(neighbour == null ? DONE : reach(neighbour, previous));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // The world could not tell whether a neighbour was generated, nobody may wait for this stage forever
+                placeholder.completeExceptionally(e);
+                return placeholder;
+            }
+        }
+
+        CompletableFuture.allOf(waits.toArray(CompletableFuture[]::new))
+                .thenRunAsync(() -> run(proto, stage), executor)
+                .whenComplete((v, e) -> {
+                    if (e == null) placeholder.complete(null);
+                    else placeholder.completeExceptionally(e);
+                });
+        return placeholder;
+    }
+
+    private void run(ProtoChunk proto, GenerationStage stage) {
+        try {
+            switch (stage) {
+                case TERRAIN -> {
+                    terrain.generate(proto.position.x(), proto.position.z(), proto.blocks);
+                    recarve(proto);
+                }
+                case CARVE, DECORATE -> place(proto, stage);
+                case LIGHT -> {
+                    ChunkData chunk = new ChunkData(proto.position);
+                    chunk.modify(proto.blocks);
+                    LightingEngine.lightSky(chunk, registry);
+                    proto.chunk = chunk;
+                }
+                case READY -> {
+                    proto.chunk = publisher.apply(proto.chunk);
+                    protoChunks.remove(proto.position, proto);
+                    finished(proto.position);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Generation of chunk {} failed in the {} stage", proto.position, stage, e);
+            throw e;
+        }
+    }
+
+    // A chunk is in the world now, the chunks around it may be complete and there may be too many proto chunks
+    private void finished(ChunkPos pos) {
+        try {
+            for (int dx = -REACH; dx <= REACH; dx++) {
+                for (int dz = -REACH; dz <= REACH; dz++) {
+                    ProtoChunk neighbour = protoChunks.get(new ChunkPos(pos.x() + dx, pos.z() + dz));
+                    if (neighbour != null && !isRequested(neighbour) && isComplete(neighbour.position)) request(neighbour.position);
+                }
+            }
+            if (protoChunks.size() > maxProtoChunks) evict();
+        } catch (RuntimeException e) {
+            logger.error("Failed to finish the chunks around {}", pos, e);
+        }
+    }
+
+    // Whether nothing can carve into the chunk any more: every chunk within reach is in the world. A neighbour that
+    // finishes after this looked at it looks again, the proto chunks are removed before that.
+    private boolean isComplete(ChunkPos pos) {
+        for (int dx = -REACH; dx <= REACH; dx++) {
+            for (int dz = -REACH; dz <= REACH; dz++) {
+                if (dx == 0 && dz == 0) continue;
+                ChunkPos neighbour = new ChunkPos(pos.x() + dx, pos.z() + dz);
+                if (protoChunks.containsKey(neighbour) || !generated.test(neighbour)) return false;
+            }
+        }
+        return true;
+    }
+
+    // Drops the proto chunks used longest ago until there are maxProtoChunks, except the requested ones and the
+    // ones within reach of their stages. A dropped one gets what its neighbours carved into it back from recarve
+    // if it is generated again. One thread at a time: a thread asking while another one evicts leaves it to that
+    // one, which looks again afterwards, as what it kept may no longer be needed by then.
+    private void evict() {
+        if (evictions.getAndIncrement() != 0) return;
+        int asked = 1;
+        do {
+            int excess = protoChunks.size() - maxProtoChunks;
+            if (excess > 0) drop(excess);
+        } while ((asked = evictions.addAndGet(-asked)) != 0);
+    }
+
+    private void drop(int excess) {
+        Set<ChunkPos> needed = new HashSet<>();
+        for (ProtoChunk proto : protoChunks.values()) {
+            CompletableFuture<Void> ready = proto.stages.get(GenerationStage.READY.ordinal());
+            if (ready == null || ready.isDone()) continue; // Done while still here, it failed
+            for (int dx = -WINDOW; dx <= WINDOW; dx++) {
+                for (int dz = -WINDOW; dz <= WINDOW; dz++) needed.add(new ChunkPos(proto.position.x() + dx, proto.position.z() + dz));
+            }
+        }
+        List<Idle> idle = new ArrayList<>();
+        for (ProtoChunk proto : protoChunks.values()) {
+            if (!needed.contains(proto.position)) idle.add(new Idle(proto.used, proto));
+        }
+        idle.sort(Comparator.comparingLong(Idle::used));
+
+        int dropped = 0;
+        for (Idle chunk : idle) {
+            if (dropped == excess) break;
+            if (protoChunks.remove(chunk.proto.position, chunk.proto)) dropped++;
+        }
+        logger.debug("Dropped {} chunks generated part way, {} are left", dropped, protoChunks.size());
+    }
+
+    private record Idle(long used, ProtoChunk proto) {
+    }
+
+    private void place(ProtoChunk proto, GenerationStage stage) {
+        List<GenerationFeature> list = features.get(stage);
+        if (list.isEmpty()) return;
+
+        // Every chunk in reach has been through the previous stage, the finished ones are left out
+        int radius = stage.reach, side = radius * 2 + 1;
+        ProtoChunk[] chunks = new ProtoChunk[side * side];
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                chunks[(dx + radius) * side + dz + radius] = protoChunks.get(new ChunkPos(proto.position.x() + dx, proto.position.z() + dz));
+            }
+        }
+        place(proto.position, stage, chunks);
+    }
+
+    // Runs the carvers of the neighbours that carved before this chunk was there again, into this chunk alone.
+    // Any other neighbour carves later, its stage waits for the terrain of this one.
+    private void recarve(ProtoChunk proto) {
+        if (features.get(GenerationStage.CARVE).isEmpty()) return;
+        int radius = GenerationStage.CARVE.reach, side = radius * 2 + 1;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                if (dx == 0 && dz == 0) continue;
+                ChunkPos pos = new ChunkPos(proto.position.x() + dx, proto.position.z() + dz);
+                ProtoChunk neighbour = protoChunks.get(pos);
+                GenerationStage reached = neighbour == null ? null : neighbour.getStage();
+                boolean carved = neighbour == null ? generated.test(pos) : reached != null && reached.compareTo(GenerationStage.CARVE) >= 0;
+                if (!carved) continue;
+
+                ProtoChunk[] chunks = new ProtoChunk[side * side];
+                chunks[(radius - dx) * side + radius - dz] = proto;
+                place(pos, GenerationStage.CARVE, chunks);
+            }
+        }
+    }
+
+    private void place(ChunkPos center, GenerationStage stage, ProtoChunk[] chunks) {
+        GenerationRegion region = new GenerationRegion(center, stage.reach, chunks);
+        Random random = random(seed, center.x(), center.z(), stage);
+        for (GenerationFeature feature : features.get(stage)) feature.place(region, random);
+    }
+}
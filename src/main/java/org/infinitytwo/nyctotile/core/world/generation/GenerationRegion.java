@@ -0,0 +1,73 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * The {@link ProtoChunk}s a stage may write into while it runs for the chunk in the middle, addressed in world
+ * coordinates. Chunks that are already finished are left out, writes to them or outside the region are dropped.
+ */
+public final class GenerationRegion {
+    private final ChunkPos center;
+    private final int radius, side;
+    private final ProtoChunk[] chunks;
+
+    GenerationRegion(ChunkPos center, int radius, ProtoChunk[] chunks) {
+        this.center = center;
+        this.radius = radius;
+        this.side = radius * 2 + 1;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return The chunk the stage runs for
+     */
+    public ChunkPos getCenter() {
+        return center;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return Whether the world columns from {@code (minX, minZ)} to {@code (maxX, maxZ)}, inclusive, are all in the region
+     */
+    public boolean contains(int minX, int minZ, int maxX, int maxZ) {
+        int low = (center.x() - radius) * SIZE, high = (center.x() + radius + 1) * SIZE;
+        if (minX < low || maxX >= high) return false;
+        low = (center.z() - radius) * SIZE;
+        high = (center.z() + radius + 1) * SIZE;
+        return minZ >= low && maxZ < high;
+    }
+
+    /**
+     * @return The block id, 0 outside the region
+     */
+    public int getBlock(int x, int y, int z) {
+        ProtoChunk chunk = chunkAt(x, z);
+        if (chunk == null || y < 0 || y >= SIZE_Y) return 0;
+        return chunk.blocks[index(x, y, z)];
+    }
+
+    /**
+     * @return {@code false} if the block is outside the region and nothing was written
+     */
+    public boolean setBlock(int x, int y, int z, int id) {
+        ProtoChunk chunk = chunkAt(x, z);
+        if (chunk == null || y < 0 || y >= SIZE_Y) return false;
+        chunk.blocks[index(x, y, z)] = id;
+        return true;
+    }
+
+    private ProtoChunk chunkAt(int x, int z) {
+        int i = Math.floorDiv(x, SIZE) - center.x() + radius, j = Math.floorDiv(z, SIZE) - center.z() + radius;
+        if (i < 0 || i >= side || j < 0 || j >= side) return null;
+        return chunks[i * side + j];
+    }
+
+    private static int index(int x, int y, int z) {
+        return Math.floorMod(x, SIZE) * SIZE_Y * SIZE + y * SIZE + Math.floorMod(z, SIZE);
+    }
+}
@@ -0,0 +1,48 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+/**
+ * The stages a chunk goes through in the {@link GenerationPipeline}, in order.
+ * <br><br>
+ * A stage may write blocks up to {@link #reach} chunks away from the chunk it runs for. So before a stage
+ * runs for a chunk, every chunk it may write into has to be done with the previous stage, and so does every
+ * chunk that may still write into this one during the previous stage: everything within
+ * {@link #neighbourRadius()}.
+ */
+public enum GenerationStage {
+    /** Height map terrain from noise, this chunk only */
+    TERRAIN(0),
+    /** Caves and other carvers, which may cut into the neighbouring chunks */
+    CARVE(1),
+    /** Surface features, this chunk only */
+    DECORATE(0),
+    /** The blocks are final, sky light */
+    LIGHT(0),
+    /** Handed to the world */
+    READY(0);
+
+    private static final GenerationStage[] VALUES = values();
+
+    /**
+     * How far from its own chunk, in chunks, this stage may write blocks.
+     */
+    public final int reach;
+
+    GenerationStage(int reach) {
+        this.reach = reach;
+    }
+
+    /**
+     * @return The stage before this one, {@code null} for the first
+     */
+    public GenerationStage previous() {
+        return ordinal() == 0 ? null : VALUES[ordinal() - 1];
+    }
+
+    /**
+     * @return How far, in chunks, the neighbours must have reached {@link #previous()} before this stage may run
+     */
+    public int neighbourRadius() {
+        GenerationStage previous = previous();
+        return previous == null ? 0 : Math.max(reach, previous.reach);
+    }
+}
@@ -13,6 +13,11 @@ public class NoiseGenerationSettings {
     public final int seaLevel;
     public final int baseHeight;
     public Biome[] biomes;
+    /**
+     * How far, in noise units, the generator may let a noise drift by sampling it on a coarse lattice
+     * and interpolating. 0 samples every noise for every column.
+     */
+    public float interpolationError;
 
     public NoiseGenerationSettings(FastNoise cave, FastNoise humidity, FastNoise temperature, FastNoise river, FastNoise elevation, int seaLevel, int baseHeight, Biome[] biomes) {
         this.holes = cave;
@@ -0,0 +1,43 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import org.infinitytwo.nyctotile.core.data.world.ChunkPos;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A chunk that is still going through the {@link GenerationPipeline}. The blocks are a flat array indexed like
+ * {@link ChunkData#getBlockIds()} until the {@link GenerationStage#LIGHT} stage turns them into a
+ * {@link ChunkData}.
+ */
+public final class ProtoChunk {
+    final ChunkPos position;
+    final int[] blocks = new int[ChunkData.VOLUME];
+    // One future per stage, completed once this chunk has been through it. Set once, by whoever asks first.
+    final AtomicReferenceArray<CompletableFuture<Void>> stages = new AtomicReferenceArray<>(GenerationStage.values().length);
+    volatile ChunkData chunk;
+    // When a request last went through this chunk, by System.nanoTime()
+    volatile long used;
+
+    ProtoChunk(ChunkPos position) {
+        this.position = position;
+    }
+
+    public ChunkPos getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The last stage this chunk has been through, {@code null} if none yet
+     */
+    public GenerationStage getStage() {
+        GenerationStage reached = null;
+        for (GenerationStage stage : GenerationStage.values()) {
+            CompletableFuture<Void> future = stages.get(stage.ordinal());
+            if (future == null || !future.isDone() || future.isCompletedExceptionally()) break;
+            reached = stage;
+        }
+        return reached;
+    }
+}
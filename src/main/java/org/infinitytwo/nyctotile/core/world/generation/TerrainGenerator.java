@@ -0,0 +1,260 @@
+package org.infinitytwo.nyctotile.core.world.generation;
+
+import org.infinitytwo.nyctotile.core.data.world.ChunkData;
+import personthecat.fastnoise.FastNoise;
+import personthecat.fastnoise.data.FractalType;
+import personthecat.fastnoise.data.NoiseBuilder;
+
+import java.util.Arrays;
+
+import static org.infinitytwo.nyctotile.core.data.world.ChunkData.*;
+
+/**
+ * Biome blended height map terrain for one dimension. Every noise generator, the biome detail noise
+ * included, is built once here and shared by all generation threads (they are immutable).
+ * A chunk is generated in passes over its 16x16 columns: each noise is sampled into its own grid,
+ * then the three closest biomes are picked per column, then their detail noise is sampled for the
+ * biomes that showed up, then the columns are blended and filled.
+ * The grids live in per thread scratch arrays, nothing is allocated per column.
+ * <p>
+ * With {@link NoiseGenerationSettings#interpolationError} above 0, a noise whose features are large compared
+ * to the lattice spacing is sampled on a coarse lattice (every 2, 4, 8 or 16 blocks, corners shared with
+ * the neighbouring chunks) and filled in bilinearly. The spacing is the coarsest one whose worst case
+ * interpolation error stays within the bound, so fast noise is still sampled per column.
+ */
+public class TerrainGenerator {
+    public static final int BEDROCK = 4;
+    public static final int BLENDED_BIOMES = 3;
+    private static final int COLUMNS = SIZE * SIZE;
+
+    private final NoiseGenerationSettings settings;
+    private final Biome[] biomes;
+    private final FastNoise[] detail;
+    private final float[] hilliness, top, soil, rocky;
+    private final int temperatureStep, humidityStep, elevationStep, riverStep;
+    private final int[] detailSteps;
+    private final ThreadLocal<Grids> grids;
+
+    public TerrainGenerator(NoiseGenerationSettings settings, int detailSeed) {
+        this(settings, settings.biomes, detailSeed);
+    }
+
+    /**
+     * @param biomes the biomes to blend, ties go to the one earlier in the array
+     * @param detailSeed the seed passed to {@link Biome#getDetailNoise(int)}
+     */
+    public TerrainGenerator(NoiseGenerationSettings settings, Biome[] biomes, int detailSeed) {
+        this.settings = settings;
+        this.biomes = biomes.clone();
+
+        float maxError = settings.interpolationError;
+        temperatureStep = latticeStep(settings.temperature, maxError);
+        humidityStep = latticeStep(settings.humidity, maxError);
+        elevationStep = latticeStep(settings.elevation, maxError);
+        riverStep = latticeStep(settings.river, maxError);
+
+        int count = biomes.length;
+        detail = new FastNoise[count];
+        detailSteps = new int[count];
+        hilliness = new float[count];
+        top = new float[count];
+        soil = new float[count];
+        rocky = new float[count];
+        for (int i = 0; i < count; i++) {
+            Biome biome = biomes[i];
+            detail[i] = biome.getDetailNoise(detailSeed);
+            detailSteps[i] = latticeStep(detail[i], maxError);
+            hilliness[i] = switch (biome.getType()) {
+                case PLAINS -> 3f;
+                case HILL -> 10f;
+                case MOUNTAIN -> 35f;
+                case CANYON -> -25f;
+                case RIVER, CORE -> 0f;
+                default -> 5f;
+            };
+            top[i] = biome.getTop();
+            soil[i] = biome.getSoil();
+            rocky[i] = biome.getRocky();
+        }
+        grids = ThreadLocal.withInitial(() -> new Grids(count));
+    }
+
+    /**
+     * Fills {@code blocks}, indexed like {@link ChunkData#getBlockIds()}, with the terrain of a chunk.
+     * Everything above the ground is set to air.
+     */
+    public void generate(int chunkX, int chunkZ, int[] blocks) {
+        Grids grids = this.grids.get();
+        int originX = chunkX * SIZE, originZ = chunkZ * SIZE;
+
+        sample(settings.temperature, temperatureStep, originX, originZ, grids.temperature, grids.lattice);
+        sample(settings.humidity, humidityStep, originX, originZ, grids.humidity, grids.lattice);
+        sample(settings.elevation, elevationStep, originX, originZ, grids.elevation, grids.lattice);
+        sample(settings.river, riverStep, originX, originZ, grids.river, grids.lattice);
+
+        // Closest biomes per column, then the detail of only those that were picked
+        Arrays.fill(grids.picked, false);
+        for (int column = 0; column < COLUMNS; column++) {
+            pickBiomes(grids.temperature[column], grids.humidity[column], grids, column * BLENDED_BIOMES);
+        }
+        for (int i = 0; i < biomes.length; i++) {
+            if (grids.picked[i]) sample(detail[i], detailSteps[i], originX, originZ, grids.detail[i], grids.lattice);
+        }
+
+        Arrays.fill(blocks, 0);
+        int seaLevel = settings.seaLevel, baseHeight = settings.baseHeight;
+        for (int column = 0; column < COLUMNS; column++) {
+            int first = column * BLENDED_BIOMES, count = grids.counts[column];
+
+            float totalWeight = 0f;
+            for (int i = 0; i < count; i++) totalWeight += grids.weights[first + i];
+
+            float elevation = grids.elevation[column];
+            float blendedElevation = 0f, blendedHilliness = 0f;
+            float blendedTop = 0, blendedSoil = 0, blendedRocky = 0;
+            for (int i = 0; i < count; i++) {
+                int biome = grids.biomes[first + i];
+                float weight = grids.weights[first + i] / totalWeight;
+
+                blendedElevation += (elevation + grids.detail[biome][column]) * weight;
+                blendedHilliness += hilliness[biome] * weight;
+                blendedTop += top[biome] * weight;
+                blendedSoil += soil[biome] * weight;
+                blendedRocky += rocky[biome] * weight;
+            }
+
+            float riverBlend = Math.max(0, (0.10f - Math.abs(grids.river[column])) / 0.10f);
+            int biomeHeight = baseHeight + (int) (blendedElevation * blendedHilliness);
+            int height = (int) (biomeHeight * (1 - riverBlend) + (seaLevel - 2) * riverBlend);
+
+            fillColumn(blocks, column / SIZE, column % SIZE, height,
+                    Math.round(blendedTop), Math.round(blendedSoil), Math.round(blendedRocky));
+        }
+    }
+
+    /**
+     * @return The noise lookups one chunk takes when every biome is picked, with the current lattice steps.
+     */
+    public int getSamplesPerChunk() {
+        int samples = samples(temperatureStep) + samples(humidityStep) + samples(elevationStep) + samples(riverStep);
+        for (int step : detailSteps) samples += samples(step);
+        return samples;
+    }
+
+    private static int samples(int step) {
+        int side = SIZE / step + (step == 1 ? 0 : 1);
+        return side * side;
+    }
+
+    /**
+     * The coarsest lattice spacing that interpolates {@code noise} within {@code maxError}. Bilinear
+     * interpolation over a spacing h is off by at most h²/8 times the second derivatives along x and z, which
+     * for noise of amplitude 1 and frequency f are at most (2πf)² each: (πfh)² in total. Fractal noise is
+     * judged by its finest octave.
+     */
+    public static int latticeStep(FastNoise noise, float maxError) {
+        if (maxError <= 0) return 1;
+
+        NoiseBuilder builder = noise.toBuilder();
+        float frequency = Math.max(builder.frequencyX(), builder.frequencyZ());
+        if (builder.fractal() != FractalType.NONE) {
+            frequency *= (float) Math.pow(Math.max(builder.lacunarityX(), builder.lacunarityZ()), builder.octaves() - 1);
+        }
+        for (int step = SIZE; step > 1; step /= 2) {
+            double error = Math.PI * frequency * step;
+            if (error * error <= maxError) return step;
+        }
+        return 1;
+    }
+
+    private static void sample(FastNoise noise, int step, int originX, int originZ, float[] grid, float[] lattice) {
+        if (step == 1) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int z = 0; z < SIZE; z++) grid[x * SIZE + z] = noise.getNoise(originX + x, originZ + z);
+            }
+            return;
+        }
+
+        // Lattice points from 0 to SIZE inclusive, the last row is the first of the next chunk
+        int side = SIZE / step + 1;
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) lattice[i * side + j] = noise.getNoise(originX + i * step, originZ + j * step);
+        }
+
+        float inverse = 1f / step;
+        for (int x = 0; x < SIZE; x++) {
+            int i = x / step;
+            float tx = (x - i * step) * inverse;
+            for (int z = 0; z < SIZE; z++) {
+                int j = z / step;
+                float tz = (z - j * step) * inverse;
+                int corner = i * side + j;
+                float near = lattice[corner] + (lattice[corner + 1] - lattice[corner]) * tz;
+                float far = lattice[corner + side] + (lattice[corner + side + 1] - lattice[corner + side]) * tz;
+                grid[x * SIZE + z] = near + (far - near) * tx;
+            }
+        }
+    }
+
+    /**
+     * Keeps the {@link #BLENDED_BIOMES} heaviest biomes, heaviest first and in array order on ties.
+     */
+    private void pickBiomes(float temperature, float humidity, Grids grids, int first) {
+        int[] picked = grids.biomes;
+        float[] weights = grids.weights;
+        int count = 0;
+
+        for (int i = 0; i < biomes.length; i++) {
+            Biome biome = biomes[i];
+            float dt = temperature - biome.getTemperature();
+            float dh = humidity - biome.getHumidity();
+            float weight = 1.0f / (dt * dt + dh * dh + 0.001f);
+
+            int slot = count;
+            while (slot > 0 && weights[first + slot - 1] < weight) slot--;
+            if (slot == BLENDED_BIOMES) continue;
+
+            for (int j = Math.min(count, BLENDED_BIOMES - 1); j > slot; j--) {
+                picked[first + j] = picked[first + j - 1];
+                weights[first + j] = weights[first + j - 1];
+            }
+            picked[first + slot] = i;
+            weights[first + slot] = weight;
+            if (count < BLENDED_BIOMES) count++;
+        }
+
+        grids.counts[first / BLENDED_BIOMES] = count;
+        for (int i = 0; i < count; i++) grids.picked[picked[first + i]] = true;
+    }
+
+    private static void fillColumn(int[] blocks, int x, int z, int height, int top, int soil, int rocky) {
+        int end = Math.min(height, SIZE_Y - 1);
+        for (int y = 0; y <= end; y++) {
+            int id;
+            if (y == height) id = top;
+            else if (y >= height - 3) id = soil;
+            else if (y == 0) id = BEDROCK;
+            else id = rocky;
+            blocks[x * SIZE_Y * SIZE + y * SIZE + z] = id;
+        }
+    }
+
+    private static class Grids {
+        final float[] temperature = new float[COLUMNS];
+        final float[] humidity = new float[COLUMNS];
+        final float[] elevation = new float[COLUMNS];
+        final float[] river = new float[COLUMNS];
+        final float[] lattice = new float[(SIZE / 2 + 1) * (SIZE / 2 + 1)];
+        final float[][] detail;
+        final boolean[] picked;
+        // Per column, BLENDED_BIOMES slots of the picked biomes and their weights
+        final int[] biomes = new int[COLUMNS * BLENDED_BIOMES];
+        final float[] weights = new float[COLUMNS * BLENDED_BIOMES];
+        final int[] counts = new int[COLUMNS];
+
+        Grids(int biomes) {
+            detail = new float[biomes][COLUMNS];
+            picked = new boolean[biomes];
+        }
+    }
+}